@@ -0,0 +1,87 @@
+/**
+ * @file
+ * @brief Benchmarks for encoding request arguments.
+ */
+package edu.stanford.slac.aida.client;
+
+import org.epics.pvaccess.server.rpc.RPCRequestException;
+import org.epics.pvdata.factory.PVDataFactory;
+import org.epics.pvdata.pv.PVStructure;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Throughput of building and filling in the arguments of a request, for scalar, list and nested
+ * structure arguments, and of building the whole NTURI with {@link AidaPvaRequest#uri()}.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class ArgumentBenchmark {
+    private List<String> bpms;
+    private Map<String, Object> struct;
+
+    @Setup
+    public void setup() {
+        bpms = new ArrayList<String>();
+        for (int i = 0; i < 64; i++) {
+            bpms.add("BPMS:LI11:" + (100 + i));
+        }
+
+        Map<String, Object> position = new HashMap<String, Object>();
+        position.put("x", 1.5);
+        position.put("y", -0.25);
+        struct = new HashMap<String, Object>();
+        struct.put("names", Arrays.asList("XCOR:LI31:41", "XCOR:LI31:42"));
+        struct.put("values", Arrays.asList(1.5f, 2.5f));
+        struct.put("position", position);
+    }
+
+    @Benchmark
+    public PVStructure scalarArguments() throws RPCRequestException {
+        ArgumentBuilder builder = new ArgumentBuilder();
+        builder.addArgument("BPMD", 57);
+        builder.addArgument("NRPOS", 180L);
+        builder.addArgument("DGRP", "DEV_DGRP");
+        builder.addArgument("VALUE", 5.5f);
+        return initialize(builder);
+    }
+
+    @Benchmark
+    public PVStructure listArguments() throws RPCRequestException {
+        ArgumentBuilder builder = new ArgumentBuilder();
+        builder.addArgument("BPMD", 57);
+        builder.addArgument("BPMS", bpms);
+        return initialize(builder);
+    }
+
+    @Benchmark
+    public PVStructure structArguments() throws RPCRequestException {
+        ArgumentBuilder builder = new ArgumentBuilder();
+        builder.addArgument("VALUE", struct);
+        return initialize(builder);
+    }
+
+    @Benchmark
+    public PVStructure uri() throws RPCRequestException {
+        return new AidaPvaRequest(null, "NDRFACET:BUFFACQ")
+                .with("BPMD", 57)
+                .with("NRPOS", 180)
+                .with("BPMS", bpms)
+                .uri();
+    }
+
+    /**
+     * Build the argument structure and fill in the values, as {@link AidaPvaRequest#uri()} does
+     */
+    private static PVStructure initialize(ArgumentBuilder builder) throws RPCRequestException {
+        PVStructure query = PVDataFactory.getPVDataCreate().createPVStructure(builder.build());
+        builder.initializeQuery(query);
+        return query;
+    }
+}
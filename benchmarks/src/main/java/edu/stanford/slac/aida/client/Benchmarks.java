@@ -0,0 +1,33 @@
+/**
+ * @file
+ * @brief Entry point for running the AIDA-PVA client benchmarks.
+ */
+package edu.stanford.slac.aida.client;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.CommandLineOptionException;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Runs the benchmarks with the GC profiler always on, so that every result reports allocation
+ * per operation and allocation rate alongside throughput.  Takes the usual JMH command line options,
+ * e.g. to run only the table benchmarks with 1M rows
+ * <pre>{@code
+ *      java -jar target/benchmarks.jar TableBenchmark -p rows=1000000
+ * }</pre>
+ * <p>
+ * The benchmarks are in the client's package so that they can reach the package private encode and
+ * decode methods that every request goes through.
+ */
+public class Benchmarks {
+    public static void main(String[] args) throws RunnerException, CommandLineOptionException {
+        new Runner(new OptionsBuilder()
+                .parent(new CommandLineOptions(args))
+                .addProfiler(GCProfiler.class)
+                .build()
+        ).run();
+    }
+}
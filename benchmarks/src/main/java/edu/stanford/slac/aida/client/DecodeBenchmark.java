@@ -0,0 +1,79 @@
+/**
+ * @file
+ * @brief Benchmarks for decoding scalar and array results.
+ */
+package edu.stanford.slac.aida.client;
+
+import edu.stanford.slac.aida.client.compat.AidaBiConsumer;
+import org.epics.nt.NTScalar;
+import org.epics.nt.NTScalarArray;
+import org.epics.pvaccess.server.rpc.RPCRequestException;
+import org.epics.pvdata.factory.ConvertFactory;
+import org.epics.pvdata.pv.*;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Throughput of {@link AidaPvaClientUtils#pvaUnpack(PVStructure)} for a scalar and for an array of
+ * each type that AIDA-PVA returns, and of {@link PVUtils#arrayLoop(PVScalarArray, AidaBiConsumer)}.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class DecodeBenchmark {
+    /**
+     * The scalar type of the result, one for each AidaType scalar and scalar array
+     */
+    @Param({"pvBoolean", "pvByte", "pvShort", "pvInt", "pvLong", "pvFloat", "pvDouble", "pvString"})
+    public String type;
+
+    /**
+     * The number of elements in array results
+     */
+    @Param({"4", "4096", "1048576"})
+    public int length;
+
+    private PVStructure scalar;
+    private PVStructure array;
+
+    @Setup
+    public void setup() {
+        ScalarType scalarType = ScalarType.valueOf(type);
+        String value = scalarType == ScalarType.pvBoolean ? "true" : "7";
+
+        scalar = NTScalar.createBuilder().value(scalarType).createPVStructure();
+        ConvertFactory.getConvert().fromString(scalar.getSubField(PVScalar.class, AidaType.NT_FIELD_NAME), value);
+
+        String[] values = new String[length];
+        for (int i = 0; i < length; i++) {
+            values[i] = scalarType == ScalarType.pvBoolean ? String.valueOf(i % 2 == 0) : String.valueOf(i % 100);
+        }
+        array = NTScalarArray.createBuilder().value(scalarType).createPVStructure();
+        ConvertFactory.getConvert().fromStringArray(array.getSubField(PVScalarArray.class, AidaType.NT_FIELD_NAME), 0, length, values, 0);
+    }
+
+    @Benchmark
+    public Object unpackScalar() throws RPCRequestException {
+        return AidaPvaClientUtils.pvaUnpack(scalar);
+    }
+
+    @Benchmark
+    public Object unpackArray() throws RPCRequestException {
+        return AidaPvaClientUtils.pvaUnpack(array);
+    }
+
+    @Benchmark
+    public void arrayLoop(final Blackhole blackhole) {
+        PVUtils.arrayLoop(array.getSubField(PVScalarArray.class, AidaType.NT_FIELD_NAME), new AidaBiConsumer<Object, Integer>() {
+            @Override
+            public void accept(Object value, Integer index) {
+                blackhole.consume(value);
+            }
+        });
+    }
+}
@@ -0,0 +1,81 @@
+/**
+ * @file
+ * @brief Benchmarks for answering requests from a recorded log.
+ */
+package edu.stanford.slac.aida.client;
+
+import edu.stanford.slac.aida.client.impl.RecordingRequestExecutor;
+import edu.stanford.slac.aida.client.impl.ReplayRequestExecutor;
+import org.epics.nt.NTScalarArray;
+import org.epics.pvaccess.server.rpc.RPCRequestException;
+import org.epics.pvdata.pv.PVDoubleArray;
+import org.epics.pvdata.pv.PVStructure;
+import org.epics.pvdata.pv.ScalarType;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Throughput of {@link ReplayRequestExecutor} lookups in a log of many recorded requests, each for a
+ * different BPM with the same arguments, and of a whole replayed `get()` including decoding.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class ReplayBenchmark {
+    /**
+     * The number of different requests recorded
+     */
+    @Param({"1000"})
+    public int requests;
+
+    private ReplayRequestExecutor replay;
+    private PVStructure uri;
+    private File log;
+
+    @Setup
+    public void setup() throws IOException, RPCRequestException {
+        final PVStructure waveform = NTScalarArray.createBuilder().value(ScalarType.pvDouble).createPVStructure();
+        waveform.getSubField(PVDoubleArray.class, AidaType.NT_FIELD_NAME).put(0, 4, new double[]{0.25, 1.25, 2.25, 3.25}, 0);
+
+        log = File.createTempFile("replay-benchmark", ".log");
+        RecordingRequestExecutor recorder = new RecordingRequestExecutor(new PvaRequestExecutor() {
+            @Override
+            public PVStructure executeRequest(String channelName, PVStructure request, Double timeout) {
+                return waveform;
+            }
+        }, log);
+        for (int i = 0; i < requests; i++) {
+            String channel = "BPMS:LI11:" + i + ":WAVEFORM";
+            recorder.executeRequest(channel, request(channel).uri(), 1.0);
+        }
+        recorder.close();
+
+        replay = new ReplayRequestExecutor(log);
+        uri = request("BPMS:LI11:" + requests / 2 + ":WAVEFORM").uri();
+    }
+
+    @TearDown
+    public void tearDown() {
+        log.delete();
+    }
+
+    @Benchmark
+    public PVStructure lookup() throws RPCRequestException {
+        return replay.executeRequest("BPMS:LI11:" + requests / 2 + ":WAVEFORM", uri, 1.0);
+    }
+
+    @Benchmark
+    public Object get() throws RPCRequestException {
+        return request("BPMS:LI11:" + requests / 2 + ":WAVEFORM").get();
+    }
+
+    private AidaPvaRequest request(String channel) {
+        return new AidaPvaRequest(replay, channel).with("BPMD", 57).with("N", 2800);
+    }
+}
@@ -0,0 +1,78 @@
+/**
+ * @file
+ * @brief Benchmarks for decoding table results.
+ */
+package edu.stanford.slac.aida.client;
+
+import org.epics.nt.NTTable;
+import org.epics.pvaccess.server.rpc.RPCRequestException;
+import org.epics.pvdata.pv.*;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Throughput of {@link AidaPvaClientUtils#tableResults(PVStructure)} on tables from a few rows, like a
+ * klystron status table, up to very large tables like buffered acquisition of many BPMs.  Each table has
+ * a string, a double, a float, an int and a boolean column.  The string column has a configurable number
+ * of distinct values.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Thread)
+public class TableBenchmark {
+    /**
+     * The number of rows in the table
+     */
+    @Param({"10", "100000", "1000000"})
+    public int rows;
+
+    /**
+     * The number of distinct values in the string column
+     */
+    @Param({"100"})
+    public int names;
+
+    private PVStructure table;
+
+    @Setup
+    public void setup() {
+        String[] labels = {"name", "x", "y", "id", "stat"};
+        table = NTTable.createBuilder()
+                .addColumn(labels[0], ScalarType.pvString)
+                .addColumn(labels[1], ScalarType.pvDouble)
+                .addColumn(labels[2], ScalarType.pvFloat)
+                .addColumn(labels[3], ScalarType.pvInt)
+                .addColumn(labels[4], ScalarType.pvBoolean)
+                .createPVStructure();
+        table.getSubField(PVStringArray.class, AidaType.NT_LABELS_NAME).put(0, labels.length, labels, 0);
+
+        String[] name = new String[rows];
+        double[] x = new double[rows];
+        float[] y = new float[rows];
+        int[] id = new int[rows];
+        boolean[] stat = new boolean[rows];
+        for (int i = 0; i < rows; i++) {
+            name[i] = "BPMS:LI11:" + (i % names);
+            x[i] = i * 0.001;
+            y[i] = i * 0.002f;
+            id[i] = i;
+            stat[i] = i % 3 == 0;
+        }
+
+        PVStructure value = table.getStructureField(AidaType.NT_FIELD_NAME);
+        value.getSubField(PVStringArray.class, labels[0]).put(0, rows, name, 0);
+        value.getSubField(PVDoubleArray.class, labels[1]).put(0, rows, x, 0);
+        value.getSubField(PVFloatArray.class, labels[2]).put(0, rows, y, 0);
+        value.getSubField(PVIntArray.class, labels[3]).put(0, rows, id, 0);
+        value.getSubField(PVBooleanArray.class, labels[4]).put(0, rows, stat, 0);
+    }
+
+    @Benchmark
+    public PvaTable tableResults() throws RPCRequestException {
+        return AidaPvaClientUtils.tableResults(table);
+    }
+}
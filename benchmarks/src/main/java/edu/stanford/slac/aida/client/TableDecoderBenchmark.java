@@ -0,0 +1,92 @@
+/**
+ * @file
+ * @brief Benchmarks comparing sequential and parallel decoding of tables.
+ */
+package edu.stanford.slac.aida.client;
+
+import org.epics.nt.NTTable;
+import org.epics.nt.NTTableBuilder;
+import org.epics.pvaccess.server.rpc.RPCRequestException;
+import org.epics.pvdata.pv.*;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import static org.epics.pvdata.pv.ScalarType.*;
+
+/**
+ * Time to decode BUFFACQ style tables of seven columns sequentially and in parallel, for tables from a hundred rows
+ * to a million.  The smallest table that decodes faster in parallel is where the parallel path starts to pay off,
+ * and its number of cells, seven times its rows, is a good value for `aida.pva.client.table.parallel.threshold`
+ * on the machine it ran on.
+ * <pre>{@code
+ *      java -jar target/benchmarks.jar TableDecoderBenchmark
+ * }</pre>
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class TableDecoderBenchmark {
+    private static final String[] FIELD_NAMES = {"name", "pulseId", "x", "y", "tmits", "stat", "goodmeas"};
+    private static final ScalarType[] TYPES = {pvString, pvInt, pvFloat, pvFloat, pvDouble, pvInt, pvBoolean};
+
+    /**
+     * The number of rows in the table
+     */
+    @Param({"100", "1000", "5000", "10000", "20000", "50000", "100000", "250000", "500000", "1000000"})
+    public int rows;
+
+    /**
+     * Whether to decode in parallel, whatever the size of the table
+     */
+    @Param({"false", "true"})
+    public boolean parallel;
+
+    private PVStructure table;
+
+    @Setup
+    public void setup() {
+        NTTableBuilder builder = NTTable.createBuilder();
+        for (int i = 0; i < FIELD_NAMES.length; i++) {
+            builder.addColumn(FIELD_NAMES[i], TYPES[i]);
+        }
+        table = builder.createPVStructure();
+        table.getSubField(PVStringArray.class, AidaType.NT_LABELS_NAME).put(0, FIELD_NAMES.length, FIELD_NAMES, 0);
+
+        Random random = new Random(42);
+        String[] names = new String[rows];
+        int[] pulseIds = new int[rows];
+        float[] x = new float[rows];
+        float[] y = new float[rows];
+        double[] tmits = new double[rows];
+        int[] stats = new int[rows];
+        boolean[] goodmeas = new boolean[rows];
+        for (int i = 0; i < rows; i++) {
+            names[i] = "BPMS:LI11:" + (i % 1000);
+            pulseIds[i] = 71311 + i;
+            x[i] = random.nextFloat();
+            y[i] = random.nextFloat();
+            tmits[i] = random.nextDouble();
+            stats[i] = 1;
+            goodmeas[i] = random.nextBoolean();
+        }
+
+        PVStructure value = table.getStructureField(AidaType.NT_FIELD_NAME);
+        value.getSubField(PVStringArray.class, "name").put(0, rows, names, 0);
+        value.getSubField(PVIntArray.class, "pulseId").put(0, rows, pulseIds, 0);
+        value.getSubField(PVFloatArray.class, "x").put(0, rows, x, 0);
+        value.getSubField(PVFloatArray.class, "y").put(0, rows, y, 0);
+        value.getSubField(PVDoubleArray.class, "tmits").put(0, rows, tmits, 0);
+        value.getSubField(PVIntArray.class, "stat").put(0, rows, stats, 0);
+        value.getSubField(PVBooleanArray.class, "goodmeas").put(0, rows, goodmeas, 0);
+    }
+
+    @Benchmark
+    public PvaTable decode() throws RPCRequestException {
+        return TableDecoder.decode(table, parallel ? 0 : Integer.MAX_VALUE);
+    }
+}
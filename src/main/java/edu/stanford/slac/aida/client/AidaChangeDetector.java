@@ -0,0 +1,89 @@
+/**
+ * @file
+ * @brief Skips decoding responses that have not changed since the last one.
+ */
+package edu.stanford.slac.aida.client;
+
+import org.epics.pvaccess.server.rpc.RPCRequestException;
+import org.epics.pvdata.pv.PVStructure;
+
+/**
+ * Makes repeated requests for the same value, and only decodes a response when it differs from the previous one.
+ * <p>
+ * Each response is fingerprinted before it is decoded, which reads the raw arrays without allocating.  When the
+ * fingerprint matches the previous response's, the object decoded from the previous response is returned again
+ * instead of decoding a new one, so a loop can test whether anything changed with `==`, or with
+ * {@link #isChanged()}.  The same object is returned to every caller and must not be changed.
+ * {@link AidaPolling} polls channels with a change detector each.
+ * <p>
+ * @code
+ *  AidaChangeDetector detector = new AidaChangeDetector();
+ *  while (running) {
+ *      Object waveform = detector.get(pvaRequest("KLYS:LI21:11:WAVEFORM"));
+ *      if (detector.isChanged()) {
+ *          display.update((Object[]) waveform);
+ *      }
+ *      Thread.sleep(100);
+ *  }
+ * @endcode
+ */
+public class AidaChangeDetector {
+    private final ResultUnpacker unpacker = new ResultUnpacker() {
+        @Override
+        Object unpack(PVStructure result) throws RPCRequestException {
+            long fingerprint = ResponseFingerprint.of(result);
+            if (decoded && fingerprint == lastFingerprint) {
+                changed = false;
+                unchanged++;
+                return lastValue;
+            }
+            Object value = AidaPvaClientUtils.pvaUnpack(result);
+            lastFingerprint = fingerprint;
+            lastValue = value;
+            decoded = true;
+            return value;
+        }
+    };
+
+    private boolean decoded;
+    private long lastFingerprint;
+    private Object lastValue;
+    private boolean changed;
+    private long unchanged;
+
+    /**
+     * Execute a request and return its value, as by {@link AidaPvaRequest#get()}, or the value returned last time
+     * if the response has not changed
+     *
+     * @param request the request
+     * @return the value
+     * @throws RPCRequestException if the request fails
+     */
+    public synchronized Object get(AidaPvaRequest request) throws RPCRequestException {
+        changed = true;
+        return request.get(unpacker);
+    }
+
+    /**
+     * @return true if the value returned by the last {@link #get(AidaPvaRequest)} was decoded from a response
+     * that differed from the one before
+     */
+    public synchronized boolean isChanged() {
+        return changed;
+    }
+
+    /**
+     * @return the number of responses that were unchanged and not decoded
+     */
+    public synchronized long getUnchanged() {
+        return unchanged;
+    }
+
+    /**
+     * Forget the last response, so that the next one is decoded whatever it is
+     */
+    public synchronized void reset() {
+        decoded = false;
+        lastValue = null;
+    }
+}
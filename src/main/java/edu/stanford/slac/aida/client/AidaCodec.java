@@ -0,0 +1,72 @@
+/**
+ * @file
+ * @brief Encoder and decoder between one pvData scalar type and Java values.
+ */
+package edu.stanford.slac.aida.client;
+
+import org.epics.pvaccess.server.rpc.RPCRequestException;
+import org.epics.pvdata.pv.PVScalar;
+import org.epics.pvdata.pv.PVScalarArray;
+import org.epics.pvdata.pv.ScalarType;
+
+/**
+ * Encoder and decoder between one pvData scalar type and Java values.  The codec for each
+ * type is held in the {@link AidaCodecs} registry, and is used for scalar results, the elements of
+ * array results, table columns and arguments.
+ * <p>
+ * Register a codec to support a type that has no built-in codec or to change how a type is
+ * decoded, e.g. to return unsigned longs as doubles.
+ */
+public interface AidaCodec {
+    /**
+     * Get the pvData scalar type this codec handles
+     *
+     * @return the scalar type
+     */
+    ScalarType getScalarType();
+
+    /**
+     * Get the Java class of the values this codec decodes to and encodes from
+     *
+     * @return the Java class
+     */
+    Class<?> getJavaClass();
+
+    /**
+     * Decode a scalar field
+     *
+     * @param field the field, whose scalar type is {@link #getScalarType()}
+     * @return the value
+     */
+    Object decode(PVScalar field);
+
+    /**
+     * Decode the elements from @p from (inclusive) to @p to (exclusive) of an array field into
+     * the destination array, starting at @p offset
+     *
+     * @param field       the field, whose element type is {@link #getScalarType()}
+     * @param from        the first element to decode
+     * @param to          the element after the last element to decode
+     * @param destination the destination array
+     * @param offset      the position in the destination of the first decoded element
+     */
+    void decode(PVScalarArray field, int from, int to, Object[] destination, int offset);
+
+    /**
+     * Encode a value into a scalar field
+     *
+     * @param field the field, whose scalar type is {@link #getScalarType()}
+     * @param value the value
+     * @throws RPCRequestException if the value can't be encoded as this type
+     */
+    void encode(PVScalar field, Object value) throws RPCRequestException;
+
+    /**
+     * Encode values into an array field, replacing its contents
+     *
+     * @param field  the field, whose element type is {@link #getScalarType()}
+     * @param values the values
+     * @throws RPCRequestException if a value can't be encoded as this type
+     */
+    void encode(PVScalarArray field, Object[] values) throws RPCRequestException;
+}
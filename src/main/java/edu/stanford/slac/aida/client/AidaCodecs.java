@@ -0,0 +1,100 @@
+/**
+ * @file
+ * @brief Registry of the codecs used to decode results and encode arguments.
+ */
+package edu.stanford.slac.aida.client;
+
+import org.epics.pvdata.pv.ScalarType;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Registry of the {@link AidaCodec}s used to decode results and encode arguments, indexed by
+ * pvData {@link ScalarType} and by Java class.
+ * <p>
+ * Results are decoded by looking up the codec for the scalar type of the value field, or of each
+ * column in a table, and arguments are encoded by looking up the codec for the Java class of the
+ * value.  Both lookups are a single table or hash lookup.  The codecs needed for a response are
+ * resolved once per response structure and cached, so registering a codec clears that cache.
+ * <p>
+ * Codecs are built in for all pvData scalar types.  Unsigned types are widened so that their values
+ * can't be negative: unsigned bytes are decoded to Short, unsigned shorts to Integer, unsigned ints to
+ * Long and unsigned longs to BigInteger.  The unsigned codecs are not used for arguments.
+ * <p>
+ * e.g. to get unsigned longs as doubles
+ * <pre>{@code
+ *      AidaCodecs.register(new AidaCodec() {
+ *          public ScalarType getScalarType() { return ScalarType.pvULong; }
+ *          public Class<?> getJavaClass() { return Double.class; }
+ *          ...
+ *      });
+ * }</pre>
+ */
+public class AidaCodecs {
+    /**
+     * Codecs indexed by the ordinal of their scalar type.  Replaced, never modified, when a codec is registered
+     */
+    private static volatile AidaCodec[] byScalarType = new AidaCodec[ScalarType.values().length];
+
+    /**
+     * Codecs used to encode arguments, indexed by Java class
+     */
+    private static final ConcurrentMap<Class<?>, AidaCodec> byJavaClass = new ConcurrentHashMap<Class<?>, AidaCodec>();
+
+    static {
+        for (AidaCodec codec : BuiltInCodecs.SIGNED) {
+            registerForArguments(codec);
+        }
+        for (AidaCodec codec : BuiltInCodecs.UNSIGNED) {
+            register(codec);
+        }
+    }
+
+    private AidaCodecs() {
+    }
+
+    /**
+     * Get the codec for the given scalar type
+     *
+     * @param scalarType the scalar type
+     * @return the codec or null if there is none
+     */
+    public static AidaCodec forScalarType(ScalarType scalarType) {
+        return byScalarType[scalarType.ordinal()];
+    }
+
+    /**
+     * Get the codec used to encode arguments of the given Java class
+     *
+     * @param javaClass the Java class
+     * @return the codec or null if there is none
+     */
+    public static AidaCodec forJavaClass(Class<?> javaClass) {
+        return byJavaClass.get(javaClass);
+    }
+
+    /**
+     * Register a codec for its scalar type, replacing any codec already registered for the type.
+     * It is used to decode all results of that type received after this call.
+     *
+     * @param codec the codec
+     */
+    public static synchronized void register(AidaCodec codec) {
+        AidaCodec[] codecs = byScalarType.clone();
+        codecs[codec.getScalarType().ordinal()] = codec;
+        byScalarType = codecs;
+        ResponseDecoder.clearCache();
+    }
+
+    /**
+     * Register a codec for its scalar type and for its Java class, so that argument values of
+     * that class are sent as that scalar type
+     *
+     * @param codec the codec
+     */
+    public static synchronized void registerForArguments(AidaCodec codec) {
+        register(codec);
+        byJavaClass.put(codec.getJavaClass(), codec);
+    }
+}
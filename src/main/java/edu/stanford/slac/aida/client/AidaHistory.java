@@ -0,0 +1,579 @@
+/**
+ * @file
+ * @brief Fixed size, off-heap history of a channel's numeric values.
+ */
+package edu.stanford.slac.aida.client;
+
+import java.lang.reflect.Array;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * A ring buffer of timestamped samples of one channel's value, a scalar or a waveform, held off the heap in a
+ * buffer whose size is fixed when the history is created.  When the buffer is full the oldest samples are dropped,
+ * so the history covers as much time as fits.
+ * <p>
+ * Samples are delta encoded: each element is stored as the XOR of its bits with the same element of the previous
+ * sample, as a byte giving the number of leading zero bytes and of remaining bytes, followed by the bytes from the
+ * first non-zero one to the last, so both the unchanged sign, exponent and high mantissa bits at the top and the
+ * unused mantissa bits at the bottom are left out.  Unchanged elements take one byte.  Values with short mantissas,
+ * such as integers, counts and floats widened to double, take two to five bytes when they change, and small
+ * changes to full precision doubles seven, e.g. 1.25 to 1.26.  Every {@link #KEYFRAME_INTERVAL} samples, and
+ * whenever the length changes, a sample is stored in full, in the same form, so that the oldest samples can be
+ * dropped a group at a time without decoding the rest.  Besides the buffer, the history holds about 17 bytes per
+ * waveform element on the heap to encode samples.
+ * <p>
+ * Histories can be filled from {@link AidaPolling} or {@link AidaMonitors} with an {@link AidaHistoryStore}.
+ * <p>
+ * @code
+ *  AidaHistory history = new AidaHistory(1 << 20, 1);
+ *  history.record(System.currentTimeMillis(), 1.25);
+ *  // ... then the last hour in one minute buckets
+ *  long now = System.currentTimeMillis();
+ *  for (AidaHistory.Bucket bucket : history.downsample(now - 3600000, now, 60)) {
+ *      plot(bucket.getStart(), bucket.getMin()[0], bucket.getMean()[0], bucket.getMax()[0]);
+ *  }
+ * @endcode
+ */
+public class AidaHistory {
+    /**
+     * The most samples stored as deltas between samples stored in full
+     */
+    public static final int KEYFRAME_INTERVAL = 16;
+
+    /**
+     * Record header: the record length and whether it is stored in full
+     */
+    private static final int HEADER_BYTES = 5;
+    private static final byte DELTA = 0;
+    private static final byte KEYFRAME = 1;
+
+    private final ByteBuffer data;
+    private final int capacityBytes;
+    private final int maxLength;
+
+    /**
+     * Encoding state: the record being encoded and the bits of the last sample recorded
+     */
+    private final byte[] record;
+    private final long[] lastBits;
+    private int lastLength;
+    private long lastTime;
+    private int sinceKeyframe;
+
+    /**
+     * Where the oldest record starts, where the next one is written, and where the records before the last wrap
+     * end, or the capacity if they don't wrap
+     */
+    private int head;
+    private int tail;
+    private int wrapEnd;
+    private int samples;
+
+    /**
+     * Create a history
+     *
+     * @param capacityBytes the size of the buffer the samples are stored in
+     * @param maxLength     the most elements in a sample, 1 for scalars
+     * @throws IllegalArgumentException if the buffer can't hold a sample of the longest length
+     */
+    public AidaHistory(int capacityBytes, int maxLength) {
+        checkCapacity(capacityBytes, maxLength);
+        this.capacityBytes = capacityBytes;
+        this.maxLength = maxLength;
+        this.data = ByteBuffer.allocateDirect(capacityBytes);
+        this.record = new byte[maxRecordBytes(maxLength)];
+        this.lastBits = new long[maxLength];
+        this.wrapEnd = capacityBytes;
+    }
+
+    /**
+     * Check that a buffer can hold a sample of the longest length
+     *
+     * @param capacityBytes the size of the buffer
+     * @param maxLength     the most elements in a sample
+     * @throws IllegalArgumentException if it can't
+     */
+    static void checkCapacity(int capacityBytes, int maxLength) {
+        if (maxLength < 1) {
+            throw new IllegalArgumentException("Invalid sample length: " + maxLength);
+        }
+        if (capacityBytes < maxRecordBytes(maxLength)) {
+            throw new IllegalArgumentException("Capacity of " + capacityBytes + " bytes can't hold samples of "
+                    + maxLength + " elements, " + maxRecordBytes(maxLength) + " bytes needed");
+        }
+    }
+
+    /**
+     * The longest record: the header, a timestamp and a length in 7 bit groups, and a byte of zero counts and a
+     * full 8 bytes for each element
+     */
+    private static int maxRecordBytes(int maxLength) {
+        return HEADER_BYTES + 10 + 5 + 9 * maxLength;
+    }
+
+    /**
+     * @return the size of the buffer the samples are stored in
+     */
+    public int getCapacityBytes() {
+        return capacityBytes;
+    }
+
+    /**
+     * @return the most elements in a sample
+     */
+    public int getMaxLength() {
+        return maxLength;
+    }
+
+    /**
+     * @return the number of samples held
+     */
+    public synchronized int size() {
+        return samples;
+    }
+
+    /**
+     * Record a sample of a scalar
+     *
+     * @param timeMillis the time of the sample
+     * @param value      the value
+     */
+    public void record(long timeMillis, double value) {
+        record(timeMillis, new double[]{value}, 1);
+    }
+
+    /**
+     * Record a sample of a value as returned by {@link AidaPvaClientUtils#pvaGet(String)}: a number, a boolean, or
+     * an array or list of them, or a primitive array such as a `double[]` or `float[]`
+     *
+     * @param timeMillis the time of the sample
+     * @param value      the value
+     * @throws IllegalArgumentException if the value is not numeric or is longer than the longest sample
+     */
+    public void record(long timeMillis, Object value) {
+        double[] values = toDoubles(value);
+        if (values == null) {
+            throw new IllegalArgumentException("Not a numeric value: " + value);
+        }
+        record(timeMillis, values, values.length);
+    }
+
+    /**
+     * Record a sample
+     *
+     * @param timeMillis the time of the sample
+     * @param values     the values of the sample's elements
+     * @param length     the number of elements
+     * @throws IllegalArgumentException if the sample is longer than the longest sample
+     */
+    public synchronized void record(long timeMillis, double[] values, int length) {
+        if (length < 0 || length > maxLength || length > values.length) {
+            throw new IllegalArgumentException("Invalid sample length: " + length);
+        }
+        boolean keyframe = samples == 0 || sinceKeyframe >= KEYFRAME_INTERVAL || length != lastLength;
+        int size = encode(timeMillis, values, length, keyframe);
+        makeRoom(size);
+        if (samples == 0 && !keyframe) {
+            // The sample this one is a delta of was dropped to make room
+            keyframe = true;
+            size = encode(timeMillis, values, length, true);
+            makeRoom(size);
+        }
+
+        data.position(tail);
+        data.put(record, 0, size);
+        tail += size;
+        samples++;
+
+        for (int i = 0; i < length; i++) {
+            lastBits[i] = Double.doubleToRawLongBits(values[i]);
+        }
+        lastLength = length;
+        lastTime = timeMillis;
+        sinceKeyframe = keyframe ? 1 : sinceKeyframe + 1;
+    }
+
+    /**
+     * Get the samples in a time range
+     *
+     * @param fromMillis the start of the range
+     * @param toMillis   the end of the range, exclusive
+     * @return the samples, oldest first
+     */
+    public synchronized List<Sample> samples(long fromMillis, long toMillis) {
+        List<Sample> result = new ArrayList<Sample>();
+        Decoder decoder = new Decoder();
+        for (int i = 0; i < samples; i++) {
+            decoder.next();
+            if (decoder.time >= fromMillis && decoder.time < toMillis) {
+                result.add(new Sample(decoder.time, decoder.values()));
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Summarise the samples in a time range as the minimum, maximum and mean of each element in buckets of
+     * equal duration
+     *
+     * @param fromMillis the start of the range
+     * @param toMillis   the end of the range, exclusive
+     * @param buckets    the number of buckets
+     * @return the buckets, oldest first.  Buckets without samples have a count of 0 and no elements
+     */
+    public synchronized Bucket[] downsample(long fromMillis, long toMillis, int buckets) {
+        if (buckets < 1 || toMillis <= fromMillis) {
+            throw new IllegalArgumentException("Invalid range or buckets: " + fromMillis + "-" + toMillis + ", " + buckets);
+        }
+        double duration = toMillis - fromMillis;
+        Bucket[] result = new Bucket[buckets];
+        for (int b = 0; b < buckets; b++) {
+            result[b] = new Bucket(fromMillis + (long) (duration * b / buckets), fromMillis + (long) (duration * (b + 1) / buckets));
+        }
+
+        Decoder decoder = new Decoder();
+        for (int i = 0; i < samples; i++) {
+            decoder.next();
+            if (decoder.time >= fromMillis && decoder.time < toMillis) {
+                int b = Math.min(buckets - 1, (int) ((decoder.time - fromMillis) * buckets / duration));
+                result[b].add(decoder.bits, decoder.length, maxLength);
+            }
+        }
+        for (Bucket bucket : result) {
+            bucket.finish();
+        }
+        return result;
+    }
+
+    /**
+     * Convert a value to the values of its elements
+     *
+     * @param value the value
+     * @return the element values, or null if the value is not numeric
+     */
+    static double[] toDoubles(Object value) {
+        if (value instanceof double[]) {
+            return ((double[]) value).clone();
+        }
+        if (value instanceof float[]) {
+            float[] elements = (float[]) value;
+            double[] values = new double[elements.length];
+            for (int i = 0; i < elements.length; i++) {
+                values[i] = elements[i];
+            }
+            return values;
+        }
+        if (value instanceof List) {
+            value = ((List<?>) value).toArray();
+        }
+        if (value != null && value.getClass().isArray()) {
+            // Object arrays, and the other primitive arrays boxed one element at a time
+            int length = Array.getLength(value);
+            double[] values = new double[length];
+            for (int i = 0; i < length; i++) {
+                Double element = toDouble(Array.get(value, i));
+                if (element == null) {
+                    return null;
+                }
+                values[i] = element;
+            }
+            return values;
+        }
+        Double scalar = toDouble(value);
+        return scalar == null ? null : new double[]{scalar};
+    }
+
+    private static Double toDouble(Object value) {
+        if (value instanceof Number) {
+            return ((Number) value).doubleValue();
+        }
+        if (value instanceof Boolean) {
+            return (Boolean) value ? 1.0 : 0.0;
+        }
+        return null;
+    }
+
+    /**
+     * Internal: Encode a sample into the record buffer
+     *
+     * @return the length of the record
+     */
+    private int encode(long timeMillis, double[] values, int length, boolean keyframe) {
+        int position = HEADER_BYTES;
+        position = putVarLong(position, zigzag(keyframe ? timeMillis : timeMillis - lastTime));
+        position = putVarLong(position, length);
+        for (int i = 0; i < length; i++) {
+            long bits = Double.doubleToRawLongBits(values[i]);
+            position = putBits(position, keyframe ? bits : bits ^ lastBits[i]);
+        }
+        record[0] = (byte) (position >>> 24);
+        record[1] = (byte) (position >>> 16);
+        record[2] = (byte) (position >>> 8);
+        record[3] = (byte) position;
+        record[4] = keyframe ? KEYFRAME : DELTA;
+        return position;
+    }
+
+    private int putVarLong(int position, long value) {
+        while ((value & ~0x7FL) != 0) {
+            record[position++] = (byte) ((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        record[position++] = (byte) value;
+        return position;
+    }
+
+    /**
+     * Internal: Put the bits of an element as a byte holding the number of leading zero bytes in its top four bits
+     * and of the bytes that follow in its bottom four, then those bytes, most significant first.  Trailing zero
+     * bytes are left out
+     */
+    private int putBits(int position, long bits) {
+        if (bits == 0) {
+            record[position++] = 0;
+            return position;
+        }
+        int leading = Long.numberOfLeadingZeros(bits) >>> 3;
+        int meaningful = 8 - leading - (Long.numberOfTrailingZeros(bits) >>> 3);
+        record[position++] = (byte) (leading << 4 | meaningful);
+        for (int shift = (7 - leading) * 8, end = shift - meaningful * 8; shift > end; shift -= 8) {
+            record[position++] = (byte) (bits >>> shift);
+        }
+        return position;
+    }
+
+    private static long zigzag(long value) {
+        return (value << 1) ^ (value >> 63);
+    }
+
+    /**
+     * Internal: Drop the oldest groups of samples until a record of the given size can be written at the tail,
+     * wrapping to the start of the buffer if it doesn't fit before the end
+     */
+    private void makeRoom(int size) {
+        if (samples == 0) {
+            head = tail = 0;
+            wrapEnd = capacityBytes;
+        }
+        if (tail + size > capacityBytes) {
+            while (samples > 0 && head >= tail) {
+                dropGroup();
+            }
+            wrapEnd = samples == 0 ? capacityBytes : tail;
+            tail = 0;
+        }
+        while (samples > 0 && head >= tail && head < tail + size) {
+            dropGroup();
+        }
+        if (samples == 0) {
+            head = tail;
+            wrapEnd = capacityBytes;
+        }
+    }
+
+    /**
+     * Internal: Drop the oldest sample and the deltas that depend on it
+     */
+    private void dropGroup() {
+        do {
+            head += data.getInt(head);
+            if (head == wrapEnd) {
+                head = 0;
+                wrapEnd = capacityBytes;
+            }
+            samples--;
+        } while (samples > 0 && data.get(head + 4) != KEYFRAME);
+    }
+
+    /**
+     * Decodes the samples in order from the oldest
+     */
+    private class Decoder {
+        private final long[] bits = new long[maxLength];
+        private int start = -1;
+        private int position;
+        private int length;
+        private long time;
+
+        private void next() {
+            if (start < 0) {
+                start = head;
+            } else {
+                start += data.getInt(start);
+                if (start == wrapEnd) {
+                    start = 0;
+                }
+            }
+            boolean keyframe = data.get(start + 4) == KEYFRAME;
+            position = start + HEADER_BYTES;
+            long timeMillis = unzigzag(readVarLong());
+            time = keyframe ? timeMillis : time + timeMillis;
+            length = (int) readVarLong();
+            for (int i = 0; i < length; i++) {
+                long value = readBits();
+                bits[i] = keyframe ? value : bits[i] ^ value;
+            }
+        }
+
+        private long readVarLong() {
+            long value = 0;
+            for (int shift = 0; ; shift += 7) {
+                byte b = data.get(position++);
+                value |= (long) (b & 0x7F) << shift;
+                if (b >= 0) {
+                    return value;
+                }
+            }
+        }
+
+        private long readBits() {
+            int zeros = data.get(position++);
+            int meaningful = zeros & 0xF;
+            if (meaningful == 0) {
+                return 0;
+            }
+            long value = 0;
+            for (int i = 0; i < meaningful; i++) {
+                value = value << 8 | (data.get(position++) & 0xFF);
+            }
+            return value << (8 * (8 - (zeros >>> 4) - meaningful));
+        }
+
+        private double[] values() {
+            double[] values = new double[length];
+            for (int i = 0; i < length; i++) {
+                values[i] = Double.longBitsToDouble(bits[i]);
+            }
+            return values;
+        }
+    }
+
+    private static long unzigzag(long value) {
+        return (value >>> 1) ^ -(value & 1);
+    }
+
+    /**
+     * A sample of the channel's value
+     */
+    public static class Sample {
+        private final long time;
+        private final double[] values;
+
+        private Sample(long time, double[] values) {
+            this.time = time;
+            this.values = values;
+        }
+
+        /**
+         * @return the time of the sample in milliseconds
+         */
+        public long getTime() {
+            return time;
+        }
+
+        /**
+         * @return the values of the sample's elements
+         */
+        public double[] getValues() {
+            return values;
+        }
+    }
+
+    /**
+     * A summary of the samples in a period of time
+     */
+    public static class Bucket {
+        private final long start;
+        private final long end;
+        private int count;
+        private double[] min;
+        private double[] max;
+        private double[] mean;
+        private int[] counts;
+        private int length;
+
+        private Bucket(long start, long end) {
+            this.start = start;
+            this.end = end;
+        }
+
+        /**
+         * @return the start of the bucket in milliseconds
+         */
+        public long getStart() {
+            return start;
+        }
+
+        /**
+         * @return the end of the bucket in milliseconds, exclusive
+         */
+        public long getEnd() {
+            return end;
+        }
+
+        /**
+         * @return the number of samples in the bucket
+         */
+        public int getCount() {
+            return count;
+        }
+
+        /**
+         * @return the minimum of each element
+         */
+        public double[] getMin() {
+            return min;
+        }
+
+        /**
+         * @return the maximum of each element
+         */
+        public double[] getMax() {
+            return max;
+        }
+
+        /**
+         * @return the mean of each element
+         */
+        public double[] getMean() {
+            return mean;
+        }
+
+        private void add(long[] bits, int sampleLength, int maxLength) {
+            if (count++ == 0) {
+                min = new double[maxLength];
+                max = new double[maxLength];
+                mean = new double[maxLength];
+                counts = new int[maxLength];
+            }
+            for (int i = 0; i < sampleLength; i++) {
+                double value = Double.longBitsToDouble(bits[i]);
+                if (counts[i]++ == 0) {
+                    min[i] = max[i] = value;
+                } else {
+                    min[i] = Math.min(min[i], value);
+                    max[i] = Math.max(max[i], value);
+                }
+                mean[i] += value;
+            }
+            length = Math.max(length, sampleLength);
+        }
+
+        private void finish() {
+            if (count == 0) {
+                min = max = mean = new double[0];
+                return;
+            }
+            min = Arrays.copyOf(min, length);
+            max = Arrays.copyOf(max, length);
+            mean = Arrays.copyOf(mean, length);
+            for (int i = 0; i < length; i++) {
+                mean[i] /= counts[i];
+            }
+            counts = null;
+        }
+    }
+}
@@ -0,0 +1,107 @@
+/**
+ * @file
+ * @brief Histories of polled and monitored channels.
+ */
+package edu.stanford.slac.aida.client;
+
+import org.epics.pvaccess.server.rpc.RPCRequestException;
+
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Keeps an {@link AidaHistory} for each channel it is given values of, each with the same fixed capacity, so the
+ * memory needed for a set of channels is known in advance.  The store is a listener for both {@link AidaPolling}
+ * and {@link AidaMonitors}, and records each value it is given with the time it arrived.  Values that are not
+ * numeric, such as strings and tables, are not recorded.
+ * <p>
+ * @code
+ *  AidaHistoryStore store = new AidaHistoryStore(1 << 20, 1);
+ *  AidaPolling.subscribe("XCOR:LI31:41:BCON", 1000, store);
+ *  AidaMonitors.subscribe("BPMS:LI11:501:X", store);
+ *  // ...
+ *  List<AidaHistory.Sample> lastMinute = store.get("BPMS:LI11:501:X").samples(now - 60000, now);
+ * @endcode
+ */
+public class AidaHistoryStore implements AidaPollListener, AidaMonitorListener {
+    private final int bytesPerChannel;
+    private final int maxLength;
+    private final ConcurrentMap<String, AidaHistory> histories = new ConcurrentHashMap<String, AidaHistory>();
+
+    /**
+     * Create a store
+     *
+     * @param bytesPerChannel the capacity of each channel's history
+     * @param maxLength       the most elements in a sample, 1 for scalars
+     * @throws IllegalArgumentException if the capacity can't hold a sample of the longest length
+     */
+    public AidaHistoryStore(int bytesPerChannel, int maxLength) {
+        AidaHistory.checkCapacity(bytesPerChannel, maxLength);
+        this.bytesPerChannel = bytesPerChannel;
+        this.maxLength = maxLength;
+    }
+
+    /**
+     * Get the history of a channel
+     *
+     * @param channel the channel
+     * @return the history, or null if no values of the channel have been recorded
+     */
+    public AidaHistory get(String channel) {
+        return histories.get(channel);
+    }
+
+    /**
+     * @return the channels with histories
+     */
+    public Set<String> getChannels() {
+        return histories.keySet();
+    }
+
+    /**
+     * @return the total capacity of the histories
+     */
+    public long getCapacityBytes() {
+        return (long) bytesPerChannel * histories.size();
+    }
+
+    /**
+     * Record a value of a channel, creating its history if it has none
+     *
+     * @param channel    the channel
+     * @param timeMillis the time of the value
+     * @param value      the value
+     * @return true if the value was numeric and was recorded
+     * @throws IllegalArgumentException if the value is longer than the longest sample
+     */
+    public boolean record(String channel, long timeMillis, Object value) {
+        double[] values = AidaHistory.toDoubles(value);
+        if (values == null) {
+            return false;
+        }
+        AidaHistory history = histories.get(channel);
+        if (history == null) {
+            AidaHistory created = new AidaHistory(bytesPerChannel, maxLength);
+            history = histories.putIfAbsent(channel, created);
+            if (history == null) {
+                history = created;
+            }
+        }
+        history.record(timeMillis, values, values.length);
+        return true;
+    }
+
+    @Override
+    public void valueChanged(String channel, Object value) {
+        record(channel, System.currentTimeMillis(), value);
+    }
+
+    @Override
+    public void pollFailed(String channel, RPCRequestException e) {
+    }
+
+    @Override
+    public void monitorFailed(String channel, RPCRequestException e) {
+    }
+}
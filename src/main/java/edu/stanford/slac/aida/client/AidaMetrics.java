@@ -0,0 +1,264 @@
+/**
+ * @file
+ * @brief Request metrics kept per channel and per provider prefix.
+ */
+package edu.stanford.slac.aida.client;
+
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.logging.Logger;
+
+/**
+ * Request counts, error counts and latency histograms kept for each channel, for each provider prefix
+ * and for all requests.
+ * <p>
+ * Every request made through {@link AidaPvaClientUtils} is recorded.  Recording is lock free: counts are
+ * striped across threads and latencies go into fixed log-linear histograms, so metrics can be left on
+ * under full load.  Metrics can be read here, with {@link #getInstance()}, or over JMX where they are
+ * published as {@value #OBJECT_NAME}.
+ * <p>
+ * The provider prefix of a channel is the part before `::` if there is one, e.g. `TEST` for
+ * `TEST::XCOR:LI03:120:LEFF`, otherwise the part before the first `:`, e.g. `XCOR` for `XCOR:LI03:120:LEFF`.
+ * At most {@value #MAX_CHANNELS} channels are tracked separately, later channels are counted under
+ * {@value #OTHER_CHANNELS}.
+ * <p>
+ * Metrics can be turned off with the `aida.pva.client.metrics` property or the `AIDA_PVA_CLIENT_METRICS`
+ * environment variable set to `false`.
+ * <p>
+ * e.g.
+ * <pre>{@code
+ *      ChannelMetrics bpms = AidaMetrics.getInstance().getChannel("NDRFACET:BUFFACQ");
+ *      System.out.println(bpms.getRequests() + " requests, p99 " + bpms.getP99Millis() + "ms");
+ * }</pre>
+ */
+public class AidaMetrics implements AidaMetricsMXBean {
+    private static final Logger logger = Logger.getLogger(AidaMetrics.class.getName());
+
+    /**
+     * The JMX object name the metrics are published as
+     */
+    public static final String OBJECT_NAME = "edu.stanford.slac.aida.client:type=AidaMetrics";
+
+    /**
+     * Maximum number of channels tracked separately
+     */
+    static final int MAX_CHANNELS = 4096;
+
+    /**
+     * Name under which channels beyond the maximum are counted
+     */
+    static final String OTHER_CHANNELS = "*";
+
+    private static final double NANOS_PER_MILLI = 1e6;
+
+    /**
+     * Are metrics recorded
+     */
+    static final boolean enabled;
+
+    private static final AidaMetrics instance = new AidaMetrics();
+
+    static {
+        String metrics = System.getProperty("aida.pva.client.metrics", "true");
+
+        // Override with the environment variable if it is set
+        String metricsEnv = System.getenv("AIDA_PVA_CLIENT_METRICS");
+        if (metricsEnv != null) {
+            metrics = metricsEnv;
+        }
+
+        enabled = !metrics.trim().equalsIgnoreCase("false");
+        if (enabled) {
+            try {
+                ManagementFactory.getPlatformMBeanServer().registerMBean(instance, new ObjectName(OBJECT_NAME));
+            } catch (Exception e) {
+                logger.warning("Unable to publish AIDA-PVA client metrics over JMX: " + e.getMessage());
+            }
+        } else {
+            logger.info("AIDA-PVA client metrics disabled");
+        }
+    }
+
+    private final ConcurrentMap<String, Recorder> channels = new ConcurrentHashMap<String, Recorder>();
+    private final ConcurrentMap<String, Recorder> providers = new ConcurrentHashMap<String, Recorder>();
+    private final Recorder total = new Recorder("total", null);
+    private volatile long startNanos = System.nanoTime();
+
+    AidaMetrics() {
+    }
+
+    /**
+     * Get the metrics for all requests made through {@link AidaPvaClientUtils}
+     *
+     * @return the metrics
+     */
+    public static AidaMetrics getInstance() {
+        return instance;
+    }
+
+    /**
+     * Get the provider prefix of a channel
+     *
+     * @param channel the channel name
+     * @return the provider prefix
+     */
+    public static String providerPrefix(String channel) {
+        int end = channel.indexOf("::");
+        if (end < 0) {
+            end = channel.indexOf(':');
+        }
+        return end < 0 ? channel : channel.substring(0, end);
+    }
+
+    /**
+     * Record one request
+     *
+     * @param channel the channel name
+     * @param nanos   the time taken in nanoseconds
+     * @param failed  true if the request failed
+     */
+    void record(String channel, long nanos, boolean failed) {
+        Recorder recorder = channels.get(channel);
+        if (recorder == null) {
+            recorder = recorderFor(channel);
+        }
+        recorder.record(nanos, failed);
+        (recorder.provider != null ? recorder.provider : providerFor(channel)).record(nanos, failed);
+        total.record(nanos, failed);
+    }
+
+    /**
+     * Internal: Get the recorder for a channel the first time it is seen, or the shared recorder
+     * once the maximum number of channels is tracked.  The shared recorder has no provider
+     */
+    private Recorder recorderFor(String channel) {
+        if (channels.size() >= MAX_CHANNELS) {
+            return putIfAbsent(channels, OTHER_CHANNELS, null);
+        }
+        return putIfAbsent(channels, channel, providerFor(channel));
+    }
+
+    /**
+     * Internal: Get the recorder for the provider of a channel
+     */
+    private Recorder providerFor(String channel) {
+        String prefix = providerPrefix(channel);
+        Recorder provider = providers.get(prefix);
+        return provider != null ? provider : putIfAbsent(providers, prefix, null);
+    }
+
+    /**
+     * Internal: Get the recorder with the given name, adding it to the map if it is not there
+     */
+    private static Recorder putIfAbsent(ConcurrentMap<String, Recorder> recorders, String name, Recorder provider) {
+        Recorder created = new Recorder(name, provider);
+        Recorder recorder = recorders.putIfAbsent(name, created);
+        return recorder == null ? created : recorder;
+    }
+
+    /**
+     * Get the metrics for one channel
+     *
+     * @param channel the channel name
+     * @return the metrics, or null if no requests have been made to the channel
+     */
+    public ChannelMetrics getChannel(String channel) {
+        Recorder recorder = channels.get(channel);
+        return recorder == null ? null : recorder.snapshot(startNanos);
+    }
+
+    /**
+     * Get the metrics for one provider prefix
+     *
+     * @param prefix the provider prefix
+     * @return the metrics, or null if no requests have been made to the provider
+     */
+    public ChannelMetrics getProvider(String prefix) {
+        Recorder recorder = providers.get(prefix);
+        return recorder == null ? null : recorder.snapshot(startNanos);
+    }
+
+    @Override
+    public ChannelMetrics getTotal() {
+        return total.snapshot(startNanos);
+    }
+
+    @Override
+    public ChannelMetrics[] getChannels() {
+        return snapshot(channels);
+    }
+
+    @Override
+    public ChannelMetrics[] getProviders() {
+        return snapshot(providers);
+    }
+
+    @Override
+    public void reset() {
+        channels.clear();
+        providers.clear();
+        total.reset();
+        startNanos = System.nanoTime();
+    }
+
+    /**
+     * Internal: Snapshot all recorders in a map, sorted by name
+     */
+    private ChannelMetrics[] snapshot(Map<String, Recorder> recorders) {
+        List<ChannelMetrics> metrics = new ArrayList<ChannelMetrics>(recorders.size());
+        long start = startNanos;
+        for (Recorder recorder : recorders.values()) {
+            metrics.add(recorder.snapshot(start));
+        }
+        Collections.sort(metrics, new Comparator<ChannelMetrics>() {
+            @Override
+            public int compare(ChannelMetrics o1, ChannelMetrics o2) {
+                return o1.getName().compareTo(o2.getName());
+            }
+        });
+        return metrics.toArray(new ChannelMetrics[metrics.size()]);
+    }
+
+    /**
+     * Counters and latency histogram for one channel or provider
+     */
+    private static class Recorder {
+        private final String name;
+        private final Recorder provider;
+        private final StripedCounter errors = new StripedCounter();
+        private final LatencyHistogram latencies = new LatencyHistogram();
+
+        private Recorder(String name, Recorder provider) {
+            this.name = name;
+            this.provider = provider;
+        }
+
+        private void record(long nanos, boolean failed) {
+            latencies.record(nanos);
+            if (failed) {
+                errors.increment();
+            }
+        }
+
+        private void reset() {
+            latencies.reset();
+            errors.reset();
+        }
+
+        private ChannelMetrics snapshot(long startNanos) {
+            LatencyHistogram.Snapshot snapshot = latencies.snapshot();
+            double seconds = (System.nanoTime() - startNanos) / 1e9;
+            return new ChannelMetrics(name, snapshot.count, errors.sum(),
+                    seconds > 0 ? snapshot.count / seconds : 0,
+                    snapshot.mean() / NANOS_PER_MILLI,
+                    snapshot.valueAtPercentile(50) / NANOS_PER_MILLI,
+                    snapshot.valueAtPercentile(90) / NANOS_PER_MILLI,
+                    snapshot.valueAtPercentile(99) / NANOS_PER_MILLI,
+                    snapshot.valueAtPercentile(99.9) / NANOS_PER_MILLI,
+                    snapshot.max / NANOS_PER_MILLI);
+        }
+    }
+}
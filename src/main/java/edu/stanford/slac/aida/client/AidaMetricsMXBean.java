@@ -0,0 +1,37 @@
+/**
+ * @file
+ * @brief JMX interface for the AIDA-PVA client request metrics.
+ */
+package edu.stanford.slac.aida.client;
+
+/**
+ * JMX interface for the AIDA-PVA client request metrics.  Registered with the platform MBean server
+ * as {@value AidaMetrics#OBJECT_NAME}.
+ */
+public interface AidaMetricsMXBean {
+    /**
+     * Get the metrics for all requests
+     *
+     * @return the metrics
+     */
+    ChannelMetrics getTotal();
+
+    /**
+     * Get the metrics for each channel
+     *
+     * @return the metrics, one per channel
+     */
+    ChannelMetrics[] getChannels();
+
+    /**
+     * Get the metrics for each provider prefix
+     *
+     * @return the metrics, one per provider prefix
+     */
+    ChannelMetrics[] getProviders();
+
+    /**
+     * Clear all metrics
+     */
+    void reset();
+}
@@ -0,0 +1,32 @@
+/**
+ * @file
+ * @brief Listener for values pushed to AIDA-PVA monitor subscriptions.
+ */
+package edu.stanford.slac.aida.client;
+
+import org.epics.pvaccess.server.rpc.RPCRequestException;
+
+/**
+ * Listener for the values of a channel monitored with {@link AidaMonitors}.
+ * <p>
+ * Each listener is called on one of the monitor delivery threads, never on more than one at a time, and never
+ * on the network thread that received the update.  The same value is given to every listener of the channel and
+ * must not be changed.
+ */
+public interface AidaMonitorListener {
+    /**
+     * Called with each value, or when the listener has fallen behind, with the latest values
+     *
+     * @param channel the channel
+     * @param value   the value, as returned by {@link AidaPvaClientUtils#pvaUnpack(org.epics.pvdata.pv.PVStructure)}
+     */
+    void valueChanged(String channel, Object value);
+
+    /**
+     * Called if the monitor fails or an update can't be decoded
+     *
+     * @param channel the channel
+     * @param e       the error
+     */
+    void monitorFailed(String channel, RPCRequestException e);
+}
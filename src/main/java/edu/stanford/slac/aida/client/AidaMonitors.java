@@ -0,0 +1,358 @@
+/**
+ * @file
+ * @brief Subscriptions to values pushed by AIDA-PVA servers.
+ */
+package edu.stanford.slac.aida.client;
+
+import edu.stanford.slac.aida.client.impl.PvaClientMonitorProvider;
+import org.epics.pvaccess.server.rpc.RPCRequestException;
+import org.epics.pvdata.pv.PVStructure;
+
+import java.util.*;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.logging.Logger;
+
+import static java.util.logging.Level.WARNING;
+
+/**
+ * Subscriptions to channels whose servers push their values, with pvAccess monitors instead of polling.
+ * <p>
+ * All subscriptions to a channel share one monitor.  Each update is decoded once, as by
+ * {@link AidaPvaClientUtils#pvaUnpack(PVStructure)}, and put on the queue of each subscription.  The queues are
+ * bounded and coalescing: when a listener falls behind and its queue is full the oldest value is dropped, so a
+ * slow listener sees the latest values instead of an ever growing backlog.  The default queue size of 1 delivers
+ * only the latest value.  Queues are drained by a small pool of delivery threads, one listener call at a time.
+ * <p>
+ * @code
+ *  AidaMonitors.Subscription subscription = AidaMonitors.subscribe("BPMS:LI11:501:X", new AidaMonitorListener() {
+ *      public void valueChanged(String channel, Object value) {
+ *          display.update((Double) value);
+ *      }
+ *
+ *      public void monitorFailed(String channel, RPCRequestException e) {
+ *          display.alarm(e.getMessage());
+ *      }
+ *  });
+ *  // ... when the display closes
+ *  subscription.cancel();
+ * @endcode
+ */
+public class AidaMonitors {
+    private static final Logger logger = Logger.getLogger(AidaMonitors.class.getName());
+
+    /**
+     * Number of threads delivering values to listeners
+     */
+    static final int DELIVERY_THREADS = 4;
+
+    /**
+     * Default number of values each subscription's queue holds
+     */
+    public static final int DEFAULT_QUEUE_SIZE = 1;
+
+    /**
+     * The monitors of the channels with subscriptions.  Guards all changes to monitors and their subscriptions,
+     * but is never held while the provider starts or stops a monitor, which can take as long as a connection
+     */
+    private static final Map<String, ChannelMonitor> monitors = new HashMap<String, ChannelMonitor>();
+    private static PvaMonitorProvider provider = new PvaClientMonitorProvider();
+
+    private AidaMonitors() {
+    }
+
+    /**
+     * Holder for the delivery threads so that they are only created when the first value arrives
+     */
+    private static class DeliveryHolder {
+        private static final ExecutorService delivery = Executors.newFixedThreadPool(DELIVERY_THREADS, new ThreadFactory() {
+            private int count = 0;
+
+            @Override
+            public synchronized Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, "aida-pva-monitor-" + (++count));
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+    }
+
+    /**
+     * Replace the monitor provider that subsequent subscriptions are made with
+     *
+     * @param monitorProvider the new monitor provider
+     * @throws IllegalArgumentException if the provider is null
+     */
+    public static void setMonitorProvider(PvaMonitorProvider monitorProvider) {
+        if (monitorProvider == null) {
+            throw new IllegalArgumentException("Monitor provider must not be null");
+        }
+        synchronized (monitors) {
+            provider = monitorProvider;
+        }
+    }
+
+    /**
+     * Get the monitor provider that subscriptions are made with
+     *
+     * @return the monitor provider
+     */
+    public static PvaMonitorProvider getMonitorProvider() {
+        synchronized (monitors) {
+            return provider;
+        }
+    }
+
+    /**
+     * Subscribe to the latest value of a channel
+     *
+     * @param channel  the channel
+     * @param listener the listener
+     * @return the subscription, to cancel it
+     * @throws RPCRequestException if the channel can't be monitored
+     */
+    public static Subscription subscribe(String channel, AidaMonitorListener listener) throws RPCRequestException {
+        return subscribe(channel, DEFAULT_QUEUE_SIZE, listener);
+    }
+
+    /**
+     * Subscribe to the values of a channel
+     *
+     * @param channel   the channel
+     * @param queueSize the most values to hold for the listener when it falls behind
+     * @param listener  the listener
+     * @return the subscription, to cancel it
+     * @throws RPCRequestException if the channel can't be monitored
+     */
+    public static Subscription subscribe(String channel, int queueSize, AidaMonitorListener listener) throws RPCRequestException {
+        if (channel == null || listener == null) {
+            throw new IllegalArgumentException("Channel and listener must not be null");
+        }
+        if (queueSize < 1) {
+            throw new IllegalArgumentException("Invalid queue size: " + queueSize);
+        }
+
+        PvaMonitorProvider monitorProvider;
+        synchronized (monitors) {
+            Subscription subscription = join(channel, queueSize, listener);
+            if (subscription != null) {
+                return subscription;
+            }
+            monitorProvider = provider;
+        }
+
+        // Start the monitor without the lock, so that a slow channel doesn't hold up subscriptions to others
+        ChannelMonitor channelMonitor = new ChannelMonitor(channel);
+        Subscription subscription = new Subscription(channelMonitor, queueSize, listener);
+        channelMonitor.subscriptions.add(subscription);
+        PvaMonitorProvider.Monitor monitor = monitorProvider.monitor(channel, channelMonitor);
+
+        Subscription joined;
+        synchronized (monitors) {
+            joined = join(channel, queueSize, listener);
+            if (joined == null) {
+                channelMonitor.monitor = monitor;
+                monitors.put(channel, channelMonitor);
+                return subscription;
+            }
+        }
+        // Another subscriber started a monitor of the channel first, so share that one
+        subscription.discard();
+        monitor.stop();
+        return joined;
+    }
+
+    /**
+     * Internal: Subscribe to a channel's monitor if it has one.  Must be called holding the monitors lock
+     *
+     * @return the subscription, or null if the channel has no monitor
+     */
+    private static Subscription join(String channel, int queueSize, AidaMonitorListener listener) {
+        ChannelMonitor channelMonitor = monitors.get(channel);
+        if (channelMonitor == null) {
+            return null;
+        }
+        Subscription subscription = new Subscription(channelMonitor, queueSize, listener);
+        channelMonitor.subscriptions.add(subscription);
+        return subscription;
+    }
+
+    /**
+     * Get the number of channels being monitored
+     *
+     * @return the number of channels
+     */
+    public static int getMonitoredChannels() {
+        synchronized (monitors) {
+            return monitors.size();
+        }
+    }
+
+    /**
+     * The shared monitor of one channel
+     */
+    private static class ChannelMonitor implements PvaMonitorProvider.Updates {
+        private final String channel;
+        private final List<Subscription> subscriptions = new CopyOnWriteArrayList<Subscription>();
+        private PvaMonitorProvider.Monitor monitor;
+
+        private ChannelMonitor(String channel) {
+            this.channel = channel;
+        }
+
+        @Override
+        public void update(PVStructure structure) {
+            Object value;
+            try {
+                value = AidaPvaClientUtils.pvaUnpack(structure);
+            } catch (RPCRequestException e) {
+                failed(e);
+                return;
+            }
+            for (Subscription subscription : subscriptions) {
+                subscription.offer(value == null ? NULL_VALUE : value);
+            }
+        }
+
+        @Override
+        public void failed(RPCRequestException e) {
+            Failure failure = new Failure(e);
+            for (Subscription subscription : subscriptions) {
+                subscription.offer(failure);
+            }
+        }
+    }
+
+    /**
+     * Queued in place of a null value, which the queue can't hold
+     */
+    private static final Object NULL_VALUE = new Object();
+
+    /**
+     * Queued in place of a value when the monitor fails
+     */
+    private static class Failure {
+        private final RPCRequestException e;
+
+        private Failure(RPCRequestException e) {
+            this.e = e;
+        }
+    }
+
+    /**
+     * A listener's subscription to a channel, with its queue of values waiting to be delivered
+     */
+    public static class Subscription {
+        private final ChannelMonitor channelMonitor;
+        private final int queueSize;
+        private final AidaMonitorListener listener;
+        private final Queue<Object> queue = new ArrayDeque<Object>();
+        private final Runnable drain = new Runnable() {
+            @Override
+            public void run() {
+                drain();
+            }
+        };
+        private boolean draining;
+        private boolean cancelled;
+        private long delivered;
+        private long dropped;
+
+        private Subscription(ChannelMonitor channelMonitor, int queueSize, AidaMonitorListener listener) {
+            this.channelMonitor = channelMonitor;
+            this.queueSize = queueSize;
+            this.listener = listener;
+        }
+
+        /**
+         * @return the channel subscribed to
+         */
+        public String getChannel() {
+            return channelMonitor.channel;
+        }
+
+        /**
+         * @return the number of values given to the listener
+         */
+        public synchronized long getDelivered() {
+            return delivered;
+        }
+
+        /**
+         * @return the number of values dropped because the listener fell behind
+         */
+        public synchronized long getDropped() {
+            return dropped;
+        }
+
+        /**
+         * Stop calling the listener and drop any values waiting for it.  The channel's monitor is stopped once it
+         * has no subscriptions
+         */
+        public void cancel() {
+            discard();
+            synchronized (monitors) {
+                if (!channelMonitor.subscriptions.remove(this) || !channelMonitor.subscriptions.isEmpty()) {
+                    return;
+                }
+                monitors.remove(channelMonitor.channel);
+            }
+            channelMonitor.monitor.stop();
+        }
+
+        /**
+         * Internal: Stop calling the listener and drop any values waiting for it
+         */
+        private synchronized void discard() {
+            cancelled = true;
+            queue.clear();
+        }
+
+        /**
+         * Internal: Queue a value for the listener, dropping the oldest if the queue is full, and start
+         * draining the queue if it is not already being drained
+         */
+        private synchronized void offer(Object value) {
+            if (cancelled) {
+                return;
+            }
+            if (queue.size() == queueSize) {
+                queue.poll();
+                dropped++;
+            }
+            queue.add(value);
+            if (!draining) {
+                draining = true;
+                DeliveryHolder.delivery.execute(drain);
+            }
+        }
+
+        /**
+         * Internal: Deliver queued values until the queue is empty
+         */
+        private void drain() {
+            while (true) {
+                Object value;
+                synchronized (this) {
+                    value = queue.poll();
+                    if (value == null) {
+                        draining = false;
+                        return;
+                    }
+                    delivered++;
+                }
+                try {
+                    if (value instanceof Failure) {
+                        listener.monitorFailed(channelMonitor.channel, ((Failure) value).e);
+                    } else {
+                        listener.valueChanged(channelMonitor.channel, value == NULL_VALUE ? null : value);
+                    }
+                } catch (RuntimeException e) {
+                    logger.log(WARNING, "Monitor listener failed for " + channelMonitor.channel, e);
+                }
+            }
+        }
+    }
+}
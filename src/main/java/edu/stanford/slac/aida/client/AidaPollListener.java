@@ -0,0 +1,32 @@
+/**
+ * @file
+ * @brief Listener for values polled by the AIDA-PVA polling service.
+ */
+package edu.stanford.slac.aida.client;
+
+import org.epics.pvaccess.server.rpc.RPCRequestException;
+
+/**
+ * Listener for the values of a channel polled by {@link AidaPolling}.
+ * <p>
+ * Listeners are called on the polling threads, so they should return quickly, e.g. by handing the value to
+ * a display thread.  The same value is given to every listener of the channel and must not be changed.
+ */
+public interface AidaPollListener {
+    /**
+     * Called with the first value polled, and then whenever the value moves beyond the subscription's deadband
+     *
+     * @param channel the channel
+     * @param value   the value, as returned by {@link AidaPvaClientUtils#pvaGet(String)}
+     */
+    void valueChanged(String channel, Object value);
+
+    /**
+     * Called whenever a poll fails.  The next value polled after a failure is always given to
+     * {@link #valueChanged(String, Object)}
+     *
+     * @param channel the channel
+     * @param e       the error
+     */
+    void pollFailed(String channel, RPCRequestException e);
+}
@@ -0,0 +1,352 @@
+/**
+ * @file
+ * @brief Shared periodic polling of AIDA-PVA channels.
+ */
+package edu.stanford.slac.aida.client;
+
+import org.epics.pvaccess.server.rpc.RPCRequestException;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.*;
+import java.util.logging.Logger;
+
+import static java.util.logging.Level.WARNING;
+import static org.epics.pvdata.pv.Status.StatusType.ERROR;
+
+/**
+ * Polls channels on a schedule and tells listeners when their values change, with one scheduler for the
+ * whole process instead of a thread and a `pvaGet` loop for each display.
+ * <p>
+ * All subscriptions to a channel share a single poll, made as often as the fastest subscription asks.
+ * A subscription that asked for a longer period only checks every so many polls, as many as make up its period.  The polls of different channels
+ * are spread across their periods so that they are not all made at once.  Listeners are called with the first
+ * value, and after that only when the value moves by more than the subscription's deadband.  Numbers, the
+ * elements of arrays and the numeric cells of tables are compared with the deadband, anything else must be
+ * equal.  Polls are made as by {@link AidaPvaClientUtils#pvaGet(String)}, so through the current request executor
+ * and any interceptors, with an {@link AidaChangeDetector}: a response that is the same as the last one is not
+ * decoded again, and its listeners are not called.
+ * <p>
+ * @code
+ *  AidaPolling.Subscription subscription = AidaPolling.subscribe("XCOR:LI31:41:BCON", 1000, 0.01, new AidaPollListener() {
+ *      public void valueChanged(String channel, Object value) {
+ *          display.update((Float) value);
+ *      }
+ *
+ *      public void pollFailed(String channel, RPCRequestException e) {
+ *          display.alarm(e.getMessage());
+ *      }
+ *  });
+ *  // ... when the display closes
+ *  subscription.cancel();
+ * @endcode
+ */
+public class AidaPolling {
+    private static final Logger logger = Logger.getLogger(AidaPolling.class.getName());
+
+    /**
+     * Number of threads making polls
+     */
+    static final int POLL_THREADS = 4;
+
+    /**
+     * Spreads the start of successive polls evenly across their period
+     */
+    private static final double GOLDEN_RATIO_CONJUGATE = 0.6180339887498949;
+
+    /**
+     * The polls of the channels with subscriptions.  Guards all changes to polls and their subscriptions
+     */
+    private static final Map<String, Poll> polls = new HashMap<String, Poll>();
+    private static int pollsStarted;
+
+    private AidaPolling() {
+    }
+
+    /**
+     * Holder for the scheduler so that it is only created when the first channel is subscribed to
+     */
+    private static class SchedulerHolder {
+        private static final ScheduledExecutorService scheduler = Executors.newScheduledThreadPool(POLL_THREADS, new ThreadFactory() {
+            private int count = 0;
+
+            @Override
+            public synchronized Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, "aida-pva-poll-" + (++count));
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+    }
+
+    /**
+     * Subscribe to every change of a channel's value
+     *
+     * @param channel      the channel
+     * @param periodMillis how often to poll the channel, in milliseconds
+     * @param listener     the listener
+     * @return the subscription, to cancel it
+     */
+    public static Subscription subscribe(String channel, long periodMillis, AidaPollListener listener) {
+        return subscribe(channel, periodMillis, 0.0, listener);
+    }
+
+    /**
+     * Subscribe to changes of a channel's value larger than a deadband
+     *
+     * @param channel      the channel
+     * @param periodMillis how often to poll the channel, in milliseconds
+     * @param deadband     how far a numeric value must move from the last value given to the listener before
+     *                     the listener is called again
+     * @param listener     the listener
+     * @return the subscription, to cancel it
+     */
+    public static Subscription subscribe(String channel, long periodMillis, double deadband, AidaPollListener listener) {
+        if (channel == null || listener == null) {
+            throw new IllegalArgumentException("Channel and listener must not be null");
+        }
+        if (periodMillis <= 0 || !(deadband >= 0)) {
+            throw new IllegalArgumentException("Invalid period or deadband: " + periodMillis + "ms, " + deadband);
+        }
+
+        synchronized (polls) {
+            Poll poll = polls.get(channel);
+            if (poll == null) {
+                poll = new Poll(channel, (pollsStarted++ * GOLDEN_RATIO_CONJUGATE) % 1.0);
+                polls.put(channel, poll);
+            }
+            Subscription subscription = new Subscription(poll, periodMillis, deadband, listener);
+            poll.subscriptions.add(subscription);
+            poll.schedule();
+            return subscription;
+        }
+    }
+
+    /**
+     * Get the number of channels being polled
+     *
+     * @return the number of channels
+     */
+    public static int getPolledChannels() {
+        synchronized (polls) {
+            return polls.size();
+        }
+    }
+
+    /**
+     * Get the period a channel is being polled at, the shortest period of its subscriptions
+     *
+     * @param channel the channel
+     * @return the period in milliseconds, or 0 if the channel is not being polled
+     */
+    public static long getPeriodMillis(String channel) {
+        synchronized (polls) {
+            Poll poll = polls.get(channel);
+            return poll == null ? 0 : poll.periodMillis;
+        }
+    }
+
+    /**
+     * Determine whether a value has moved beyond a deadband
+     *
+     * @param previous the last value given to the listener, or null if there is none
+     * @param current  the value just polled
+     * @param deadband the deadband
+     * @return true if the listener should be given the current value
+     */
+    static boolean moved(Object previous, Object current, double deadband) {
+        if (previous == null || current == null) {
+            return previous != current;
+        }
+        if (previous instanceof Number && current instanceof Number) {
+            double before = ((Number) previous).doubleValue(), after = ((Number) current).doubleValue();
+            if (Double.isNaN(before) || Double.isNaN(after)) {
+                return Double.isNaN(before) != Double.isNaN(after);
+            }
+            return Math.abs(after - before) > deadband;
+        }
+        if (previous instanceof Object[] && current instanceof Object[]) {
+            return moved((Object[]) previous, (Object[]) current, deadband);
+        }
+        if (previous instanceof List && current instanceof List) {
+            return moved(((List<?>) previous).toArray(), ((List<?>) current).toArray(), deadband);
+        }
+        if (previous instanceof PvaTable && current instanceof PvaTable) {
+            PvaTable before = (PvaTable) previous, after = (PvaTable) current;
+            if (!Arrays.equals(before.fieldNames, after.fieldNames)) {
+                return true;
+            }
+            for (String fieldName : after.fieldNames) {
+                if (moved(before.get(fieldName), after.get(fieldName), deadband)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+        return !previous.equals(current);
+    }
+
+    private static boolean moved(Object[] previous, Object[] current, double deadband) {
+        if (previous.length != current.length) {
+            return true;
+        }
+        for (int i = 0; i < current.length; i++) {
+            if (moved(previous[i], current[i], deadband)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * The shared poll of one channel
+     */
+    private static class Poll implements Runnable {
+        private final String channel;
+        private final double phase;
+        private final List<Subscription> subscriptions = new CopyOnWriteArrayList<Subscription>();
+        private final AidaChangeDetector detector = new AidaChangeDetector();
+        /**
+         * Written under the polls lock but read by the poll itself
+         */
+        private volatile long periodMillis;
+        private ScheduledFuture<?> future;
+
+        private Poll(String channel, double phase) {
+            this.channel = channel;
+            this.phase = phase;
+        }
+
+        /**
+         * Internal: (Re)schedule the poll at the shortest period of its subscriptions, or stop it if it has none
+         */
+        private void schedule() {
+            long fastest = Long.MAX_VALUE;
+            for (Subscription subscription : subscriptions) {
+                fastest = Math.min(fastest, subscription.periodMillis);
+            }
+            if (future != null) {
+                if (fastest == periodMillis) {
+                    return;
+                }
+                future.cancel(false);
+                future = null;
+            }
+            if (subscriptions.isEmpty()) {
+                polls.remove(channel);
+                periodMillis = 0;
+                return;
+            }
+            periodMillis = fastest;
+            future = SchedulerHolder.scheduler.scheduleAtFixedRate(this, (long) (phase * fastest), fastest, TimeUnit.MILLISECONDS);
+        }
+
+        @Override
+        public void run() {
+            Object value;
+            try {
+                value = detector.get(AidaPvaClientUtils.pvaRequest(channel));
+            } catch (RPCRequestException e) {
+                failed(e);
+                return;
+            } catch (RuntimeException e) {
+                failed(new RPCRequestException(ERROR, e.getMessage(), e));
+                return;
+            }
+            long pollPeriodMillis = periodMillis;
+            for (Subscription subscription : subscriptions) {
+                subscription.update(value, pollPeriodMillis);
+            }
+        }
+
+        private void failed(RPCRequestException e) {
+            for (Subscription subscription : subscriptions) {
+                subscription.failed(e);
+            }
+        }
+    }
+
+    /**
+     * A listener's subscription to a channel
+     */
+    public static class Subscription {
+        private final Poll poll;
+        private final long periodMillis;
+        private final double deadband;
+        private final AidaPollListener listener;
+        private Object lastValue;
+        private boolean notified;
+        private int skipped;
+        private boolean checked;
+
+        private Subscription(Poll poll, long periodMillis, double deadband, AidaPollListener listener) {
+            this.poll = poll;
+            this.periodMillis = periodMillis;
+            this.deadband = deadband;
+            this.listener = listener;
+        }
+
+        /**
+         * @return the channel subscribed to
+         */
+        public String getChannel() {
+            return poll.channel;
+        }
+
+        /**
+         * @return the period asked for, in milliseconds
+         */
+        public long getPeriodMillis() {
+            return periodMillis;
+        }
+
+        /**
+         * Stop calling the listener.  The channel is no longer polled once it has no subscriptions, and is
+         * polled less often if this was its fastest one
+         */
+        public void cancel() {
+            synchronized (polls) {
+                if (poll.subscriptions.remove(this)) {
+                    poll.schedule();
+                }
+            }
+        }
+
+        /**
+         * Internal: Give the listener a polled value if this subscription is due and the value has moved.
+         * Polls are made at the fastest period of all the subscriptions, so a subscription with a longer period
+         * only checks every so many polls, as many as make up its period.  Polls are counted rather than timed
+         * so that polls run late and then back to back after a slow one are not skipped
+         */
+        private synchronized void update(Object value, long pollPeriodMillis) {
+            long every = pollPeriodMillis <= 0 ? 1 : (periodMillis + pollPeriodMillis - 1) / pollPeriodMillis;
+            if (checked && ++skipped < every) {
+                return;
+            }
+            checked = true;
+            skipped = 0;
+            // An unchanged response is returned as the same object, so need not be compared
+            if (notified && (value == lastValue || !moved(lastValue, value, deadband))) {
+                return;
+            }
+            notified = true;
+            lastValue = value;
+            try {
+                listener.valueChanged(poll.channel, value);
+            } catch (RuntimeException e) {
+                logger.log(WARNING, "Poll listener failed for " + poll.channel, e);
+            }
+        }
+
+        private synchronized void failed(RPCRequestException e) {
+            notified = false;
+            try {
+                listener.pollFailed(poll.channel, e);
+            } catch (RuntimeException re) {
+                logger.log(WARNING, "Poll listener failed for " + poll.channel, re);
+            }
+        }
+    }
+}
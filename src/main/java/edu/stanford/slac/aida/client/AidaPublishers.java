@@ -0,0 +1,436 @@
+/**
+ * @file
+ * @brief Flow controlled streams of request results and table rows.
+ */
+package edu.stanford.slac.aida.client;
+
+import edu.stanford.slac.aida.client.compat.AidaFlow;
+import org.epics.pvaccess.server.rpc.RPCRequestException;
+
+import java.util.ArrayDeque;
+import java.util.Iterator;
+import java.util.Queue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+import static org.epics.pvdata.pv.Status.StatusType.ERROR;
+
+/**
+ * Publishers, in the style of reactive streams, for the results of many requests and for the rows of large tables.
+ * Items are only produced as fast as the subscriber asks for them with {@link AidaFlow.Subscription#request(long)},
+ * so however large the job, memory is bounded by what the subscriber has asked for.
+ * <p>
+ * For requests the demand also throttles the server load: a request is only sent once the subscriber has asked
+ * for its result, and no more than a given number are in flight at once.  Requests are taken from their iterable
+ * one at a time as they are sent, so they can be generated as they are needed.  Results are published in the order
+ * they complete, and a request that fails is published as a failed {@link Result} rather than ending the stream.
+ * <p>
+ * @code
+ *  AidaPublishers.gets(channels, 16).subscribe(new AidaFlow.Subscriber<AidaPublishers.Result>() {
+ *      private AidaFlow.Subscription subscription;
+ *
+ *      public void onSubscribe(AidaFlow.Subscription subscription) {
+ *          this.subscription = subscription;
+ *          subscription.request(100);
+ *      }
+ *
+ *      public void onNext(AidaPublishers.Result result) {
+ *          store(result.getChannel(), result.getValue());
+ *          subscription.request(1);
+ *      }
+ *
+ *      public void onError(Throwable throwable) {
+ *      }
+ *
+ *      public void onComplete() {
+ *      }
+ *  });
+ * @endcode
+ * See {@link AidaFlow} to use these publishers with `java.util.concurrent.Flow`.
+ */
+public class AidaPublishers {
+    private AidaPublishers() {
+    }
+
+    /**
+     * Holder for the threads making requests, so that they are only created when first needed.  Each publisher
+     * limits its own requests in flight, so the pool does not need to be bounded
+     */
+    private static class PoolHolder {
+        private static final ExecutorService pool = Executors.newCachedThreadPool(new ThreadFactory() {
+            private int count = 0;
+
+            @Override
+            public synchronized Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, "aida-pva-publisher-" + (++count));
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+    }
+
+    /**
+     * Publish the values of channels, as by {@link AidaPvaClientUtils#pvaGet(String)}
+     *
+     * @param channels    the channels
+     * @param maxInFlight the most requests to have in flight at once
+     * @return the publisher
+     */
+    public static AidaFlow.Publisher<Result> gets(final Iterable<String> channels, int maxInFlight) {
+        return requests(new Iterable<AidaPvaRequest>() {
+            @Override
+            public Iterator<AidaPvaRequest> iterator() {
+                final Iterator<String> iterator = channels.iterator();
+                return new Iterator<AidaPvaRequest>() {
+                    @Override
+                    public boolean hasNext() {
+                        return iterator.hasNext();
+                    }
+
+                    @Override
+                    public AidaPvaRequest next() {
+                        return AidaPvaClientUtils.pvaRequest(iterator.next());
+                    }
+
+                    @Override
+                    public void remove() {
+                        throw new UnsupportedOperationException();
+                    }
+                };
+            }
+        }, maxInFlight);
+    }
+
+    /**
+     * Publish the results of requests, as by {@link AidaPvaRequest#get()}
+     *
+     * @param requests    the requests
+     * @param maxInFlight the most requests to have in flight at once
+     * @return the publisher
+     */
+    public static AidaFlow.Publisher<Result> requests(final Iterable<? extends AidaPvaRequest> requests, final int maxInFlight) {
+        if (requests == null || maxInFlight < 1) {
+            throw new IllegalArgumentException("Invalid requests or requests in flight: " + maxInFlight);
+        }
+        return new AidaFlow.Publisher<Result>() {
+            @Override
+            public void subscribe(AidaFlow.Subscriber<? super Result> subscriber) {
+                new RequestSubscription(requests.iterator(), maxInFlight, subscriber).start();
+            }
+        };
+    }
+
+    /**
+     * Publish the rows of a table, each an array of its values in the order of {@link PvaTable#fieldNames}
+     *
+     * @param table the table
+     * @return the publisher
+     */
+    public static AidaFlow.Publisher<Object[]> rows(final PvaTable table) {
+        if (table == null) {
+            throw new IllegalArgumentException("Table must not be null");
+        }
+        return new AidaFlow.Publisher<Object[]>() {
+            @Override
+            public void subscribe(AidaFlow.Subscriber<? super Object[]> subscriber) {
+                new RowSubscription(table, subscriber).start();
+            }
+        };
+    }
+
+    /**
+     * The result of one published request
+     */
+    public static class Result {
+        private final long index;
+        private final String channel;
+        private final Object value;
+        private final RPCRequestException error;
+
+        private Result(long index, String channel, Object value, RPCRequestException error) {
+            this.index = index;
+            this.channel = channel;
+            this.value = value;
+            this.error = error;
+        }
+
+        /**
+         * @return the position of the request among the requests published, from 0
+         */
+        public long getIndex() {
+            return index;
+        }
+
+        /**
+         * @return the channel the request was made to
+         */
+        public String getChannel() {
+            return channel;
+        }
+
+        /**
+         * @return the value, or null if the request failed
+         */
+        public Object getValue() {
+            return value;
+        }
+
+        /**
+         * @return the error if the request failed, otherwise null
+         */
+        public RPCRequestException getError() {
+            return error;
+        }
+
+        /**
+         * @return true if the request failed
+         */
+        public boolean isFailed() {
+            return error != null;
+        }
+    }
+
+    /**
+     * Add demand without overflowing, as reactive streams treats demand of `Long.MAX_VALUE` as unbounded
+     */
+    private static long addDemand(long demand, long n) {
+        long total = demand + n;
+        return total < 0 ? Long.MAX_VALUE : total;
+    }
+
+    /**
+     * A subscription to the results of requests.  A request is only sent when there is demand for its result,
+     * which is reserved when it is sent, so every completed result can be published at once
+     */
+    private static class RequestSubscription implements AidaFlow.Subscription {
+        private final Iterator<? extends AidaPvaRequest> requests;
+        private final int maxInFlight;
+        private final AidaFlow.Subscriber<? super Result> subscriber;
+        private final Queue<Result> completed = new ArrayDeque<Result>();
+        private long demand;
+        private long sent;
+        private int inFlight;
+        private boolean exhausted;
+        private boolean emitting;
+        private boolean done;
+        private Throwable failure;
+
+        private RequestSubscription(Iterator<? extends AidaPvaRequest> requests, int maxInFlight, AidaFlow.Subscriber<? super Result> subscriber) {
+            this.requests = requests;
+            this.maxInFlight = maxInFlight;
+            this.subscriber = subscriber;
+        }
+
+        private void start() {
+            subscriber.onSubscribe(this);
+            publish();
+        }
+
+        @Override
+        public void request(long n) {
+            synchronized (this) {
+                if (done) {
+                    return;
+                }
+                if (n <= 0) {
+                    failure = new IllegalArgumentException("Demand must be positive: " + n);
+                } else {
+                    demand = addDemand(demand, n);
+                }
+            }
+            send();
+            publish();
+        }
+
+        @Override
+        public synchronized void cancel() {
+            done = true;
+            completed.clear();
+        }
+
+        /**
+         * Internal: Send requests while there is demand for their results and room in flight
+         */
+        private void send() {
+            while (true) {
+                final AidaPvaRequest request;
+                final long index;
+                synchronized (this) {
+                    if (done || failure != null || exhausted || demand == 0 || inFlight == maxInFlight) {
+                        return;
+                    }
+                    try {
+                        if (!requests.hasNext()) {
+                            exhausted = true;
+                            break;
+                        }
+                        request = requests.next();
+                    } catch (RuntimeException e) {
+                        failure = e;
+                        break;
+                    }
+                    demand--;
+                    inFlight++;
+                    index = sent++;
+                }
+
+                PoolHolder.pool.execute(new Runnable() {
+                    @Override
+                    public void run() {
+                        Result result;
+                        try {
+                            result = new Result(index, request.getChannel(), request.get(), null);
+                        } catch (RPCRequestException e) {
+                            result = new Result(index, request.getChannel(), null, e);
+                        } catch (RuntimeException e) {
+                            result = new Result(index, request.getChannel(), null, new RPCRequestException(ERROR, e.getMessage(), e));
+                        }
+                        synchronized (RequestSubscription.this) {
+                            inFlight--;
+                            if (!done) {
+                                completed.add(result);
+                            }
+                        }
+                        publish();
+                        send();
+                    }
+                });
+            }
+            publish();
+        }
+
+        /**
+         * Internal: Publish completed results, and the end of the stream, from one thread at a time
+         */
+        private void publish() {
+            synchronized (this) {
+                if (emitting) {
+                    return;
+                }
+                emitting = true;
+            }
+            while (true) {
+                Result result;
+                Throwable error = null;
+                boolean complete = false;
+                synchronized (this) {
+                    result = completed.poll();
+                    if (result == null) {
+                        if (!done && failure != null) {
+                            done = true;
+                            error = failure;
+                        } else if (!done && exhausted && inFlight == 0) {
+                            done = true;
+                            complete = true;
+                        }
+                        emitting = false;
+                    }
+                }
+                if (result == null) {
+                    if (error != null) {
+                        subscriber.onError(error);
+                    } else if (complete) {
+                        subscriber.onComplete();
+                    }
+                    return;
+                }
+                subscriber.onNext(result);
+            }
+        }
+    }
+
+    /**
+     * A subscription to the rows of a table, published on the thread that asks for them.  Like
+     * {@link RequestSubscription}, rows are published without holding the lock, so cancelling from another thread
+     * stops publishing at the next row
+     */
+    private static class RowSubscription implements AidaFlow.Subscription {
+        private final PvaTable table;
+        private final AidaFlow.Subscriber<? super Object[]> subscriber;
+        private final Object[][] columns;
+        private long demand;
+        private int row;
+        private boolean emitting;
+        private volatile boolean done;
+
+        private RowSubscription(PvaTable table, AidaFlow.Subscriber<? super Object[]> subscriber) {
+            this.table = table;
+            this.subscriber = subscriber;
+            this.columns = new Object[table.fieldNames.length][];
+            for (int i = 0; i < columns.length; i++) {
+                columns[i] = table.get(table.fieldNames[i]);
+            }
+        }
+
+        private void start() {
+            subscriber.onSubscribe(this);
+            publish();
+        }
+
+        @Override
+        public void request(long n) {
+            synchronized (this) {
+                if (done) {
+                    return;
+                }
+                if (n <= 0) {
+                    done = true;
+                } else {
+                    demand = addDemand(demand, n);
+                }
+            }
+            if (n <= 0) {
+                subscriber.onError(new IllegalArgumentException("Demand must be positive: " + n));
+                return;
+            }
+            publish();
+        }
+
+        @Override
+        public void cancel() {
+            done = true;
+        }
+
+        /**
+         * Internal: Publish rows while there is demand, from one thread at a time.  A request made while another
+         * thread, or this one further up its stack, is publishing only adds demand, which that loop picks up
+         */
+        private void publish() {
+            synchronized (this) {
+                if (emitting) {
+                    return;
+                }
+                emitting = true;
+            }
+            while (true) {
+                int next;
+                boolean complete = false;
+                synchronized (this) {
+                    if (done || demand == 0 || row == table.size) {
+                        if (!done && row == table.size) {
+                            done = true;
+                            complete = true;
+                        }
+                        emitting = false;
+                        next = -1;
+                    } else {
+                        demand--;
+                        next = row++;
+                    }
+                }
+                if (next < 0) {
+                    if (complete) {
+                        subscriber.onComplete();
+                    }
+                    return;
+                }
+                Object[] values = new Object[columns.length];
+                for (int i = 0; i < columns.length; i++) {
+                    values[i] = columns[i][next];
+                }
+                subscriber.onNext(values);
+            }
+        }
+    }
+}
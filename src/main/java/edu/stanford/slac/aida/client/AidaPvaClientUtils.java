@@ -11,23 +11,22 @@
  */
 package edu.stanford.slac.aida.client;
 
-import edu.stanford.slac.aida.client.compat.AidaBiConsumer;
-import edu.stanford.slac.aida.client.compat.AidaConsumer;
 import edu.stanford.slac.aida.client.impl.AidaPvaStruct;
+import edu.stanford.slac.aida.client.impl.ChannelAddressCache;
+import edu.stanford.slac.aida.client.impl.LoopbackRequestExecutor;
 import edu.stanford.slac.aida.client.impl.PvAccessRequestExecutor;
 import edu.stanford.slac.aida.client.impl.PvaClientRequestExecutor;
 import org.epics.pvaccess.server.rpc.RPCRequestException;
 import org.epics.pvdata.pv.PVField;
 import org.epics.pvdata.pv.PVScalarArray;
-import org.epics.pvdata.pv.PVStringArray;
 import org.epics.pvdata.pv.PVStructure;
 
+import java.io.File;
+import java.io.IOException;
+import java.nio.DoubleBuffer;
 import java.util.*;
 import java.util.logging.Logger;
 
-import static edu.stanford.slac.aida.client.PVUtils.arrayLoop;
-import static org.epics.pvdata.pv.Status.StatusType.ERROR;
-
 /**
  * @noop @formatter:off
  * Utility class to facilitate running AIDA-PVA requests.
@@ -77,7 +76,8 @@ public class AidaPvaClientUtils {
 
     private final static String DEFAULT_AIDA_PVA_CLIENT_REQUEST_EXECUTOR = "PvAccess";
 
-    private static final PvaRequestExecutor pvaRequestExecutor;
+    private static volatile PvaRequestExecutor requestExecutor;
+    private static volatile PvaRequestExecutor pvaRequestExecutor;
 
     static {
         // Get pva Request Executor property (commandline or resource file).
@@ -95,12 +95,73 @@ public class AidaPvaClientUtils {
         }
 
         if (requestExecutorName.equalsIgnoreCase("PvaClient")) {
-            pvaRequestExecutor = new PvaClientRequestExecutor();
+            setRequestExecutor(new PvaClientRequestExecutor());
+        } else if (requestExecutorName.equalsIgnoreCase("Loopback")) {
+            setRequestExecutor(new LoopbackRequestExecutor());
         } else {
-            pvaRequestExecutor = new PvAccessRequestExecutor();
+            setRequestExecutor(new PvAccessRequestExecutor(channelAddressCache()));
         }
     }
 
+    /**
+     * Internal: Get the channel address cache configured with `aida.pva.client.address.cache`, or the
+     * `AIDA_PVA_CLIENT_ADDRESS_CACHE` environment variable, as the path of the file to keep it in
+     *
+     * @return the channel address cache or null if none is configured
+     */
+    private static ChannelAddressCache channelAddressCache() {
+        String addressCache = System.getProperty("aida.pva.client.address.cache");
+
+        // Override with the environment variable if it is set
+        String addressCacheEnv = System.getenv("AIDA_PVA_CLIENT_ADDRESS_CACHE");
+        if (addressCacheEnv != null) {
+            addressCache = addressCacheEnv;
+        }
+
+        if (addressCache == null || addressCache.trim().isEmpty()) {
+            return null;
+        }
+        logger.info("Channel address cache: " + addressCache);
+        final ChannelAddressCache cache = new ChannelAddressCache(new File(addressCache.trim()));
+        Runtime.getRuntime().addShutdownHook(new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    cache.save();
+                } catch (IOException e) {
+                    logger.warning("Unable to save channel address cache: " + e.getMessage());
+                }
+            }
+        }));
+        return cache;
+    }
+
+    /**
+     * Get the request executor that requests are sent with
+     *
+     * @return the request executor
+     */
+    public static PvaRequestExecutor getRequestExecutor() {
+        return requestExecutor;
+    }
+
+    /**
+     * Replace the request executor that subsequent requests are sent with, e.g. to wrap it in a
+     * decorator that injects faults.  Metrics are still recorded for the requests it makes.
+     *
+     * @param executor the new request executor
+     * @throws IllegalArgumentException if the executor is null
+     */
+    public static synchronized void setRequestExecutor(PvaRequestExecutor executor) {
+        if (executor == null) {
+            throw new IllegalArgumentException("Request executor must not be null");
+        }
+        requestExecutor = executor;
+
+        // Record request metrics unless they have been turned off
+        pvaRequestExecutor = AidaMetrics.enabled ? new MeteredRequestExecutor(executor, AidaMetrics.getInstance()) : executor;
+    }
+
     /**
      * Builder for any type of request.
      *
@@ -137,6 +198,34 @@ public class AidaPvaClientUtils {
         }
     }
 
+    /**
+     * Call a channel getter with no arguments and copy the resulting array into the given array,
+     * so that one array can be reused for many reads.  The channel is asked for a double array,
+     * and float arrays are widened as they are copied.
+     *
+     * @param channel     the channel
+     * @param destination the array to copy the result into
+     * @param offset      the position in the array of the first element to copy
+     * @return the number of elements copied
+     * @throws IllegalArgumentException if the result does not fit in the array
+     */
+    public static int pvaGetInto(final String channel, double[] destination, int offset) throws RPCRequestException {
+        return new AidaPvaRequest(pvaRequestExecutor, channel).returning(AidaType.AIDA_DOUBLE_ARRAY).getInto(destination, offset);
+    }
+
+    /**
+     * Call a channel getter with no arguments and copy the resulting array into the given buffer
+     * at its current position.  The buffer can be a view of a direct ByteBuffer.
+     *
+     * @param channel     the channel
+     * @param destination the buffer to copy the result into
+     * @return the number of elements copied
+     * @throws IllegalArgumentException if the result does not fit in the remaining space in the buffer
+     */
+    public static int pvaGetInto(final String channel, DoubleBuffer destination) throws RPCRequestException {
+        return new AidaPvaRequest(pvaRequestExecutor, channel).returning(AidaType.AIDA_DOUBLE_ARRAY).getInto(destination);
+    }
+
     /**
      * Call a channel setter with the given value.
      *
@@ -144,7 +233,7 @@ public class AidaPvaClientUtils {
      * @param value   the value to set
      */
     public static void pvaSet(final String channel, Object value) throws RPCRequestException {
-        new AidaPvaRequest(pvaRequestExecutor, channel).setter(value);
+        new AidaPvaRequest(pvaRequestExecutor, channel).set(value, ResultUnpacker.NONE);
     }
 
     /**
@@ -154,23 +243,10 @@ public class AidaPvaClientUtils {
      * @return a simple scalar, scalar array, or PvaTable
      */
     public static Object pvaUnpack(PVStructure result) throws RPCRequestException {
-        AidaType type = AidaType.from(result);
-        Class<? extends PVField> clazz = type.toPVFieldClass();
-
-        if (type == AidaType.AIDA_VOID || clazz == null) {
+        if (result == null) {
             return null;
         }
-
-        String id = result.getStructure().getID();
-        if (AidaType.NTSCALAR_ID.equals(id)) {
-            return scalarResults(clazz, result);
-        } else if (AidaType.NTSCALARARRAY_ID.equals(id)) {
-            Class<? extends PVScalarArray> arrayClazz = type.toPVFieldClass();
-            return scalarArrayResults(result, arrayClazz);
-        } else if (AidaType.NTTABLE_ID.equals(id)) {
-            return tableResults(result);
-        }
-        return null;
+        return ResponseDecoder.forStructure(result.getStructure()).decode(result);
     }
 
     /**
@@ -193,15 +269,13 @@ public class AidaPvaClientUtils {
      * @return the list of objects of the desired type
      */
     private static <T extends PVScalarArray> Object[] getScalarArrayValues(PVStructure result, Class<T> clazz) {
-        final List<Object> values = new ArrayList<Object>();
         T array = result.getSubField(clazz, AidaType.NT_FIELD_NAME);
-        PVUtils.arrayIterator(array, new AidaConsumer<Object>() {
-            @Override
-            public void accept(Object e) {
-                values.add(e);
-            }
-        });
-        return values.toArray();
+        if (array == null) {
+            return new Object[0];
+        }
+        Object[] values = new Object[array.getLength()];
+        TableDecoder.decodeRange(array, null, values, 0, values.length);
+        return values;
     }
 
     /**
@@ -217,28 +291,6 @@ public class AidaPvaClientUtils {
         return pvaUnpack(result);
     }
 
-    /**
-     * Internal: Execute scalar array request.
-     * It uses the supplied result-supplier to get the result.
-     *
-     * @param supplier the supplier of the results
-     * @param clazz    the PVField class of the scalar array data that will be returned from the supplier
-     */
-    private static <T extends PVScalarArray> Object executeScalarArrayRequest(AidaRequest<PVStructure> supplier, Class<T> clazz) throws RPCRequestException {
-        return scalarArrayResults(supplier.execute(), clazz);
-    }
-
-    /**
-     * Execute a scalar request and return value.
-     * It uses the supplied result-supplier to get the result.
-     *
-     * @param supplier the supplier of the results
-     * @param clazz    the PVField class of the scalar data that will be returned from the supplier
-     */
-    private static <T extends PVField> Object executeScalarRequest(AidaRequest<PVStructure> supplier, Class<T> clazz) throws RPCRequestException {
-        return scalarResults(clazz, supplier.execute());
-    }
-
     /**
      * Internal: Call this to get a scalar channel with no arguments
      *
@@ -246,17 +298,15 @@ public class AidaPvaClientUtils {
      * @param type  the scalar type expected
      */
     private static Object getScalarRequest(final String query, final AidaType type) throws RPCRequestException {
-        Class<PVField> clazz = type.toPVFieldClass();
-        return executeScalarRequest(
-                new AidaRequest<PVStructure>() {
+        final Class<PVField> clazz = type.toPVFieldClass();
+        return new AidaPvaRequest(pvaRequestExecutor, query)
+                .returning(realReturnType(type))
+                .get(new ResultUnpacker() {
                     @Override
-                    public PVStructure execute() throws RPCRequestException {
-                        return new AidaPvaRequest(pvaRequestExecutor, query)
-                                .returning(realReturnType(type))
-                                .getter();
+                    Object unpack(PVStructure result) {
+                        return scalarResults(clazz, result);
                     }
-                },
-                clazz);
+                });
     }
 
     /**
@@ -267,17 +317,15 @@ public class AidaPvaClientUtils {
      * @return the array value
      */
     private static <T extends PVScalarArray> Object getArrayRequest(final String query, final AidaType type) throws RPCRequestException {
-        Class<T> clazz = type.toPVFieldClass();
-        return executeScalarArrayRequest(
-                new AidaRequest<PVStructure>() {
+        final Class<T> clazz = type.toPVFieldClass();
+        return new AidaPvaRequest(pvaRequestExecutor, query)
+                .returning(realReturnType(type))
+                .get(new ResultUnpacker() {
                     @Override
-                    public PVStructure execute() throws RPCRequestException {
-                        return new AidaPvaRequest(pvaRequestExecutor, query)
-                                .returning(realReturnType(type))
-                                .getter();
+                    Object unpack(PVStructure result) {
+                        return scalarArrayResults(result, clazz);
                     }
-                },
-                clazz);
+                });
     }
 
     /**
@@ -286,12 +334,14 @@ public class AidaPvaClientUtils {
      * @param query the request
      */
     private static PvaTable getTableRequest(final String query) throws RPCRequestException {
-        return getTableResults(new AidaRequest<PVStructure>() {
-            @Override
-            public PVStructure execute() throws RPCRequestException {
-                return new AidaPvaRequest(pvaRequestExecutor, query).returning(AidaType.AIDA_TABLE).getter();
-            }
-        });
+        return (PvaTable) new AidaPvaRequest(pvaRequestExecutor, query)
+                .returning(AidaType.AIDA_TABLE)
+                .get(new ResultUnpacker() {
+                    @Override
+                    Object unpack(PVStructure result) throws RPCRequestException {
+                        return tableResults(result);
+                    }
+                });
     }
 
     /**
@@ -307,54 +357,14 @@ public class AidaPvaClientUtils {
     }
 
     /**
-     * Internal: Get table results.
-     * It uses the supplied result-supplier to get the result and marshal it into a PvaTable object.
-     *
-     * @param supplier the supplier of the results
-     */
-    private static PvaTable getTableResults(AidaRequest<PVStructure> supplier) throws RPCRequestException {
-        return tableResults(supplier.execute());
-    }
-
-    /**
-     * Internal: To get an PvaTable from a PVStructure result object
+     * Internal: To get an PvaTable from a PVStructure result object.
+     * Large tables are decoded in parallel, see {@link TableDecoder}.
      *
      * @param result the results to be displayed
      * @return PvaTable
      */
     static PvaTable tableResults(PVStructure result) throws RPCRequestException {
-        // Get labels
-        PVStringArray labelsVector = result.getSubField(PVStringArray.class, AidaType.NT_LABELS_NAME);
-        final String[] labels = new String[labelsVector.getLength()];
-        arrayLoop(labelsVector, new AidaBiConsumer<Object, Integer>() {
-            @Override
-            public void accept(Object s, Integer i) {
-                labels[i] = s.toString();
-            }
-        });
-
-        // values
-        Map<String, Object[]> values = new LinkedHashMap<String, Object[]>();
-        PVField[] pvFields = result.getSubField(PVStructure.class, AidaType.NT_FIELD_NAME).getPVFields();
-        for (PVField column : pvFields) {
-            if (!(column instanceof PVScalarArray)) {
-                throw new RPCRequestException(ERROR, "Malformed vector in NTTABLE: " + column.getFieldName());
-            }
-            PVScalarArray vector = (PVScalarArray) column;
-            int size = vector.getLength();
-
-            final Object[] vectorElements = new Object[size];
-            arrayLoop(vector, new AidaBiConsumer<Object, Integer>() {
-                @Override
-                public void accept(Object s, Integer i) {
-                    vectorElements[i] = s;
-                }
-            });
-            values.put(vector.getFieldName(), vectorElements);
-        }
-
-        // Aida table for return - base the size off the number of labels
-        return new PvaTable(labels, values);
+        return TableDecoder.decode(result);
     }
 
     /**
@@ -402,12 +412,13 @@ public class AidaPvaClientUtils {
     private static final String PREFIX = "SLC::";
 
     /**
-     * For special cases of get requests that are serviced by a different provider than the setter we need to add a prefix
+     * For special cases of get requests that are serviced by a different provider than the setter we need to add a prefix.
+     * Request executors that cache gets use this to find the gets that a set changes
      *
      * @param channel original channel name
      * @return the prefixed channel name if the channel needs special handling, otherwise no change
      */
-    static String getterChannel(String channel) {
+    public static String getterChannel(String channel) {
         int len = channel.length();
         String channelEnding = len >= 5 ? channel.substring(len - 5) : channel;
         String channelStart = len >= 5 ? channel.substring(0, 5) : channel;
@@ -13,6 +13,7 @@ import org.epics.pvdata.factory.FieldFactory;
 import org.epics.pvdata.factory.PVDataFactory;
 import org.epics.pvdata.pv.*;
 
+import java.nio.DoubleBuffer;
 import java.util.concurrent.CountDownLatch;
 
 import static edu.stanford.slac.aida.client.AidaPvaClientUtils.getterChannel;
@@ -60,6 +61,13 @@ public class AidaPvaRequest {
     @Getter
     private Object response;
 
+    /**
+     * The time taken by each phase of the last request made with this object.  For asynchronously running
+     * requests this is set by the time the response or error callback is called
+     */
+    @Getter
+    private volatile RequestTiming timing;
+
     /**
      * If running asynchronously then this is the signal that the execution has
      * completed.  null or countdown = 0 means complete.
@@ -109,7 +117,8 @@ public class AidaPvaRequest {
 
     /**
      * Execute the request asynchronously.  Override the responseCallback() to be called when the results are
-     * ready.  Override errorCallback() to be notified of errors.  * Call isReady()
+     * ready.  Override errorCallback() to be notified of errors, including unexpected runtime failures which are
+     * reported wrapped in an RPCRequestException.  Call isReady()
      * to see if results are ready.  Call cancel() to cancel the request.
      *
      * @return this request object so that we can use it to get the response later
@@ -118,16 +127,17 @@ public class AidaPvaRequest {
         asynchRun(new Thread(new Runnable() {
             @Override
             public void run() {
+                Object response;
                 try {
-                    AidaPvaRequest.this.setResponse(AidaPvaClientUtils.executeRequest(new AidaRequest<PVStructure>() {
-                        @Override
-                        public PVStructure execute() throws RPCRequestException {
-                            return getter();
-                        }
-                    }));
+                    response = get(ResultUnpacker.VALUE);
                 } catch (RPCRequestException e) {
                     AidaPvaRequest.this.errorCallback(e);
+                    return;
+                } catch (RuntimeException e) {
+                    AidaPvaRequest.this.errorCallback(new RPCRequestException(ERROR, e.getMessage(), e));
+                    return;
                 }
+                AidaPvaRequest.this.setResponse(response);
             }
         }));
         return this;
@@ -158,20 +168,20 @@ public class AidaPvaRequest {
         asynchRun(new Thread(new Runnable() {
             @Override
             public void run() {
+                Object response;
                 try {
-                    Object response = AidaPvaClientUtils.executeRequest(new AidaRequest<PVStructure>() {
-                        @Override
-                        public PVStructure execute() throws RPCRequestException {
-                            return setter(value);
-                        }
-                    });
-                    if (response == null || response instanceof String) {
-                        AidaPvaRequest.this.setResponse(null);
-                    } else {
-                        AidaPvaRequest.this.setResponse(response);
-                    }
+                    response = set(value, ResultUnpacker.VALUE);
                 } catch (RPCRequestException e) {
                     AidaPvaRequest.this.errorCallback(e);
+                    return;
+                } catch (RuntimeException e) {
+                    AidaPvaRequest.this.errorCallback(new RPCRequestException(ERROR, e.getMessage(), e));
+                    return;
+                }
+                if (response == null || response instanceof String) {
+                    AidaPvaRequest.this.setResponse(null);
+                } else {
+                    AidaPvaRequest.this.setResponse(response);
                 }
             }
         }));
@@ -199,19 +209,139 @@ public class AidaPvaRequest {
     }
 
     /**
-     * Internal: Execute a request and return the PVStructure result.  Exceptions are thrown to caller
+     * Internal: Execute a request through the {@link AidaRequestInterceptors} chain, which unpacks the result as its
+     * innermost step, recording the time taken by each phase in a new {@link RequestTiming}.  Exceptions are thrown
+     * to caller
      *
-     * @return the PVStructure result
-     * @throws RPCRequestException if there is an error making the request
+     * @param unpacker converts the result into the value to return
+     * @return the unpacked result
+     * @throws RPCRequestException if there is an error making the request or unpacking the result
      */
-    private PVStructure execute() throws RPCRequestException {
-        PVStructure request = uri();
+    private Object execute(ResultUnpacker unpacker) throws RPCRequestException {
+        String channelName = getChannelName();
+        RequestTiming timing = new RequestTiming(channelName, argumentBuilder);
+        this.timing = timing;
 
-        // Execute the query
+        boolean failed = true;
         try {
-            return requestExecutor.executeRequest(getChannelName(), request, this.timeout);
-        } catch (RPCRequestException e) {
-            throw new RPCRequestException(ERROR, getChannelName() + "(" + argumentBuilder + ") :" + abbreviate(e.getMessage()));
+            Call call = new Call(channelName, timing, unpacker, AidaRequestInterceptors.chain());
+            Object value = call.value(call.proceed());
+            failed = false;
+            return value;
+        } finally {
+            timing.finished(failed);
+        }
+    }
+
+    /**
+     * One execution of this request on its way through the interceptor chain.  The same object is passed to
+     * every interceptor, and tracks which one is next.  After the last interceptor the request is executed and
+     * its result unpacked, and the unpacked value is kept here for when the chain returns
+     */
+    private class Call implements AidaRequestInterceptor.Chain {
+        private final String channelName;
+        private final RequestTiming timing;
+        private final ResultUnpacker unpacker;
+        private final AidaRequestInterceptor[] interceptors;
+        private int next;
+        private PVStructure request;
+        private boolean unpacked;
+        private PVStructure unpackedResult;
+        private Object value;
+
+        private Call(String channelName, RequestTiming timing, ResultUnpacker unpacker, AidaRequestInterceptor[] interceptors) {
+            this.channelName = channelName;
+            this.timing = timing;
+            this.unpacker = unpacker;
+            this.interceptors = interceptors;
+        }
+
+        @Override
+        public String getChannel() {
+            return channelName;
+        }
+
+        @Override
+        public String getArguments() {
+            return argumentBuilder.toString();
+        }
+
+        @Override
+        public boolean isSet() {
+            return argumentBuilder.contains("VALUE");
+        }
+
+        @Override
+        public double getTimeout() {
+            return timeout;
+        }
+
+        @Override
+        public PVStructure getRequest() throws RPCRequestException {
+            if (request == null) {
+                request = uri();
+                timing.uriBuilt();
+            }
+            return request;
+        }
+
+        @Override
+        public RequestTiming getTiming() {
+            return timing;
+        }
+
+        @Override
+        public PVStructure proceed() throws RPCRequestException {
+            if (next < interceptors.length) {
+                AidaRequestInterceptor interceptor = interceptors[next++];
+                try {
+                    return interceptor.intercept(this);
+                } finally {
+                    next--;
+                }
+            }
+            PVStructure result = executeRequest();
+            unpacked = false;
+            timing.decoding();
+            value = unpacker.unpack(result);
+            unpackedResult = result;
+            unpacked = true;
+            return result;
+        }
+
+        /**
+         * Internal: Get the unpacked value of the response the chain returned.  This is the value unpacked inside
+         * the chain unless an interceptor returned some other response, which is unpacked now
+         *
+         * @param result the response the chain returned
+         * @return the unpacked value
+         * @throws RPCRequestException if the response can't be unpacked
+         */
+        private Object value(PVStructure result) throws RPCRequestException {
+            if (unpacked && result == unpackedResult) {
+                return value;
+            }
+            timing.decoding();
+            return unpacker.unpack(result);
+        }
+
+        /**
+         * Internal: Build the NTURI and execute it
+         */
+        private PVStructure executeRequest() throws RPCRequestException {
+            PVStructure request = getRequest();
+
+            // Execute the query
+            PVStructure result;
+            timing.executing();
+            try {
+                result = requestExecutor.executeRequest(channelName, request, timeout);
+            } catch (RPCRequestException e) {
+                throw new RPCRequestException(ERROR, channelName + "(" + argumentBuilder + ") :" + abbreviate(e.getMessage()));
+            } finally {
+                timing.executed();
+            }
+            return result;
         }
     }
 
@@ -222,14 +352,64 @@ public class AidaPvaRequest {
      * @return the result of the request
      */
     public Object get() throws RPCRequestException {
-        return AidaPvaClientUtils.executeRequest(new AidaRequest<PVStructure>() {
+        return get(ResultUnpacker.VALUE);
+    }
+
+    /**
+     * Execute the request and copy the resulting double or float array into the given array
+     * starting at @p offset, so that one array can be reused for many requests.  Use
+     * {@link #returning(AidaType)} with {@link AidaType#AIDA_DOUBLE_ARRAY} if the channel
+     * does not return a double or float array by default.
+     *
+     * @param destination the array to copy the result into
+     * @param offset      the position in the array of the first element to copy
+     * @return the number of elements copied
+     * @throws RPCRequestException      if there is an error making the request or the result is not a double or float array
+     * @throws IllegalArgumentException if the result does not fit in the array
+     */
+    public int getInto(final double[] destination, final int offset) throws RPCRequestException {
+        return (Integer) get(new ResultUnpacker() {
+            @Override
+            Object unpack(PVStructure result) throws RPCRequestException {
+                return PVUtils.copyInto(valueArray(result), destination, offset);
+            }
+        });
+    }
+
+    /**
+     * Execute the request and copy the resulting double or float array into the given buffer
+     * at its current position, advancing the position past the copied elements.  The buffer can be
+     * a view of a direct ByteBuffer, see {@link java.nio.ByteBuffer#asDoubleBuffer()}.
+     *
+     * @param destination the buffer to copy the result into
+     * @return the number of elements copied
+     * @throws RPCRequestException      if there is an error making the request or the result is not a double or float array
+     * @throws IllegalArgumentException if the result does not fit in the remaining space in the buffer
+     */
+    public int getInto(final DoubleBuffer destination) throws RPCRequestException {
+        return (Integer) get(new ResultUnpacker() {
             @Override
-            public PVStructure execute() throws RPCRequestException {
-                return getter();
+            Object unpack(PVStructure result) throws RPCRequestException {
+                return PVUtils.copyInto(valueArray(result), destination);
             }
         });
     }
 
+    /**
+     * Internal: Get the array value of the given result
+     *
+     * @param result the result
+     * @return the array value
+     * @throws RPCRequestException if the result has no array value
+     */
+    private PVScalarArray valueArray(PVStructure result) throws RPCRequestException {
+        PVScalarArray array = result == null ? null : result.getSubField(PVScalarArray.class, AidaType.NT_FIELD_NAME);
+        if (array == null) {
+            throw new RPCRequestException(ERROR, this.channelName + ": expected an array result");
+        }
+        return array;
+    }
+
     /**
      * To get the channel name fixed up for getter requests whenever needed
      *
@@ -244,13 +424,23 @@ public class AidaPvaRequest {
     }
 
     /**
-     * Internal: Execute the request and return the result PVStructure which can be an NTScalar,
+     * Internal: Execute the request and unpack the result PVStructure which can be an NTScalar,
      * NTScalarArray or NTTable.  Exceptions are thrown to caller
      *
-     * @return the result of the request
+     * @param unpacker converts the result into the value to return
+     * @return the unpacked result of the request
+     */
+    Object get(ResultUnpacker unpacker) throws RPCRequestException {
+        return execute(unpacker);
+    }
+
+    /**
+     * Get the channel this request is made to
+     *
+     * @return the channel name
      */
-    PVStructure getter() throws RPCRequestException {
-        return execute();
+    public String getChannel() {
+        return channelName;
     }
 
     /**
@@ -316,13 +506,8 @@ public class AidaPvaRequest {
      * @param value to set
      * @return the PvaTable
      */
-    public PvaTable set(final Object value) throws RPCRequestException {
-        Object response = AidaPvaClientUtils.executeRequest(new AidaRequest<PVStructure>() {
-            @Override
-            public PVStructure execute() throws RPCRequestException {
-                return setter(value);
-            }
-        });
+    public PvaTable set(Object value) throws RPCRequestException {
+        Object response = set(value, ResultUnpacker.VALUE);
         if (response == null || response instanceof String) {
             return null;
         } else {
@@ -342,17 +527,18 @@ public class AidaPvaRequest {
     }
 
     /**
-     * Internal: Execute the set request with the given value and return the resulting
+     * Internal: Execute the set request with the given value and unpack the resulting
      * PVStructure which can an NTTable or empty.  Exceptions are thrown to caller
      *
-     * @param value to set
-     * @return the result of the request
+     * @param value    to set
+     * @param unpacker converts the result into the value to return
+     * @return the unpacked result of the request
      */
-    PVStructure setter(Object value) throws RPCRequestException {
+    Object set(Object value, ResultUnpacker unpacker) throws RPCRequestException {
         if (value != null) {
             argumentBuilder.addArgument("VALUE", value);
         }
-        return execute();
+        return execute(unpacker);
     }
 
     /**
@@ -0,0 +1,103 @@
+/**
+ * @file
+ * @brief Interceptor that wraps the execution of AIDA-PVA requests.
+ */
+package edu.stanford.slac.aida.client;
+
+import org.epics.pvaccess.server.rpc.RPCRequestException;
+import org.epics.pvdata.pv.PVStructure;
+
+/**
+ * Interceptor that wraps the execution of every request made with {@link AidaPvaRequest}, to add behaviour like
+ * caching, tracing, retries or fault injection without replacing the {@link PvaRequestExecutor}.
+ * <p>
+ * Interceptors registered with {@link AidaRequestInterceptors} form an ordered chain.  Each one is given the
+ * {@link Chain} for the request and calls {@link Chain#proceed()} to pass the request on to the next interceptor.
+ * After the last interceptor the request is executed: the NTURI is built and sent by the request executor, and the
+ * response is decoded into whatever the caller asked for.  So the time an interceptor measures around
+ * {@link Chain#proceed()} includes decoding, and decoding failures pass back out through every interceptor.
+ * The chain passes the raw response structure back out, whichever way the request was made, and the value
+ * decoded from it is returned to the caller.  An interceptor can return without proceeding, e.g. to return a
+ * cached response, which is then decoded once it leaves the outermost interceptor, call proceed more than once,
+ * e.g. to retry, or throw, e.g. to inject a fault.
+ * <p>
+ * e.g. to retry failed requests once
+ * <pre>{@code
+ *      AidaRequestInterceptors.add(new AidaRequestInterceptor() {
+ *          public PVStructure intercept(Chain chain) throws RPCRequestException {
+ *              try {
+ *                  return chain.proceed();
+ *              } catch (RPCRequestException e) {
+ *                  return chain.proceed();
+ *              }
+ *          }
+ *      });
+ * }</pre>
+ */
+public interface AidaRequestInterceptor {
+    /**
+     * Intercept a request
+     *
+     * @param chain the request and the rest of the chain
+     * @return the response, normally the one returned by {@link Chain#proceed()}.  Any other response is decoded
+     * after the chain returns, so must not be changed after it is returned
+     * @throws RPCRequestException if the request fails
+     */
+    PVStructure intercept(Chain chain) throws RPCRequestException;
+
+    /**
+     * A request on its way through the interceptor chain
+     */
+    interface Chain {
+        /**
+         * Get the channel the request is made to
+         *
+         * @return the channel name
+         */
+        String getChannel();
+
+        /**
+         * Get a summary of the request arguments, as shown in error messages
+         *
+         * @return the argument summary
+         */
+        String getArguments();
+
+        /**
+         * Is this a set request
+         *
+         * @return true if the request sets a value
+         */
+        boolean isSet();
+
+        /**
+         * Get the request timeout
+         *
+         * @return the timeout in seconds
+         */
+        double getTimeout();
+
+        /**
+         * Get the NTURI request structure.  It is built the first time it is needed and then reused
+         *
+         * @return the NTURI request
+         * @throws RPCRequestException if the arguments can't be encoded
+         */
+        PVStructure getRequest() throws RPCRequestException;
+
+        /**
+         * Get the timing of this request
+         *
+         * @return the timing record
+         */
+        RequestTiming getTiming();
+
+        /**
+         * Pass the request on to the next interceptor, or execute and decode it if this is the last one
+         *
+         * @return the raw response structure, or null if the request returned nothing
+         * @throws RPCRequestException if the request fails or its response can't be decoded
+         */
+        PVStructure proceed() throws RPCRequestException;
+    }
+}
@@ -0,0 +1,71 @@
+/**
+ * @file
+ * @brief Registry of the interceptors that wrap AIDA-PVA requests.
+ */
+package edu.stanford.slac.aida.client;
+
+/**
+ * The ordered chain of {@link AidaRequestInterceptor}s that wraps every request made with {@link AidaPvaRequest}.
+ * <p>
+ * Interceptors added first are outermost, so they see the request first and the result last.  The chain is held
+ * in an array that is replaced, never modified, when interceptors are added or removed, so requests read it
+ * with no locking and passing a request through the chain costs one call per interceptor.
+ */
+public class AidaRequestInterceptors {
+    private static final AidaRequestInterceptor[] NONE = new AidaRequestInterceptor[0];
+
+    private static volatile AidaRequestInterceptor[] interceptors = NONE;
+
+    private AidaRequestInterceptors() {
+    }
+
+    /**
+     * Internal: Get the current chain
+     *
+     * @return the interceptors, outermost first.  Must not be modified
+     */
+    static AidaRequestInterceptor[] chain() {
+        return interceptors;
+    }
+
+    /**
+     * Add an interceptor to the inner end of the chain
+     *
+     * @param interceptor the interceptor
+     */
+    public static synchronized void add(AidaRequestInterceptor interceptor) {
+        if (interceptor == null) {
+            throw new IllegalArgumentException("interceptor must not be null");
+        }
+        AidaRequestInterceptor[] chain = new AidaRequestInterceptor[interceptors.length + 1];
+        System.arraycopy(interceptors, 0, chain, 0, interceptors.length);
+        chain[interceptors.length] = interceptor;
+        interceptors = chain;
+    }
+
+    /**
+     * Remove an interceptor from the chain
+     *
+     * @param interceptor the interceptor
+     * @return true if the interceptor was in the chain
+     */
+    public static synchronized boolean remove(AidaRequestInterceptor interceptor) {
+        for (int i = 0; i < interceptors.length; i++) {
+            if (interceptors[i] == interceptor) {
+                AidaRequestInterceptor[] chain = new AidaRequestInterceptor[interceptors.length - 1];
+                System.arraycopy(interceptors, 0, chain, 0, i);
+                System.arraycopy(interceptors, i + 1, chain, i, chain.length - i);
+                interceptors = chain;
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Remove all interceptors
+     */
+    public static synchronized void clear() {
+        interceptors = NONE;
+    }
+}
@@ -0,0 +1,417 @@
+/**
+ * @file
+ * @brief Numeric reductions over array results and table columns.
+ */
+package edu.stanford.slac.aida.client;
+
+/**
+ * Numeric reductions over array results and table columns: sum, mean, RMS, min, max, variance,
+ * standard deviation and weighted sums.
+ * <p>
+ * The reductions work on primitive double arrays.  Use {@link #toDoubles(Object[])} once to unbox an
+ * array result from e.g. `pvaGet(channel, AIDA_DOUBLE_ARRAY)`, and use the `PvaTable` overloads to
+ * reduce a table column over its cached primitive view (see {@link PvaTable#getDoubles(String)}).
+ * <p>
+ * e.g.
+ * <pre>{@code
+ *      double[] waveform = AidaStatistics.toDoubles((Object[]) pvaGet("KLYS:LI21:11:WAVEFORM", AIDA_DOUBLE_ARRAY));
+ *      double rms = AidaStatistics.rms(waveform);
+ *
+ *      RunningStatistics x = AidaStatistics.summarize(table, "x");
+ *      double jitter = x.getStandardDeviation();
+ * }</pre>
+ * <p>
+ * Each reduction is a single tight loop over the array, unrolled with independent accumulators so
+ * that successive additions do not wait on each other.  Because the additions are grouped
+ * differently, results can differ from a naive loop in the last bits.  NaN values propagate, so
+ * filter missing values out first (e.g. with {@link PvaTable#query()}) if a column may have them.
+ * Variances and standard deviations are population values, i.e. divided by n.
+ * <p>
+ * For values that arrive one at a time, e.g. one reading per pulse, use {@link RunningStatistics}.
+ */
+public class AidaStatistics {
+    private AidaStatistics() {
+    }
+
+    /**
+     * Convert an array result to primitive doubles.  Booleans become 1.0 or 0.0 and
+     * anything that is not a number becomes NaN.
+     *
+     * @param values the array result
+     * @return the values as doubles
+     */
+    public static double[] toDoubles(Object[] values) {
+        double[] doubles = new double[values.length];
+        for (int i = 0; i < values.length; i++) {
+            Object value = values[i];
+            if (value instanceof Number) {
+                doubles[i] = ((Number) value).doubleValue();
+            } else if (value instanceof Boolean) {
+                doubles[i] = (Boolean) value ? 1.0 : 0.0;
+            } else {
+                doubles[i] = Double.NaN;
+            }
+        }
+        return doubles;
+    }
+
+    /**
+     * Sum of the values
+     *
+     * @param values the values
+     * @return the sum
+     */
+    public static double sum(double[] values) {
+        return sum(values, 0, values.length);
+    }
+
+    /**
+     * Sum of a range of values
+     *
+     * @param values the values
+     * @param offset the position of the first value
+     * @param length the number of values
+     * @return the sum
+     */
+    public static double sum(double[] values, int offset, int length) {
+        checkRange(values.length, offset, length);
+        double s0 = 0, s1 = 0, s2 = 0, s3 = 0;
+        int i = offset, end = offset + length, unrolledEnd = offset + (length & ~3);
+        for (; i < unrolledEnd; i += 4) {
+            s0 += values[i];
+            s1 += values[i + 1];
+            s2 += values[i + 2];
+            s3 += values[i + 3];
+        }
+        for (; i < end; i++) {
+            s0 += values[i];
+        }
+        return (s0 + s1) + (s2 + s3);
+    }
+
+    /**
+     * Mean of the values
+     *
+     * @param values the values
+     * @return the mean, or NaN if there are no values
+     */
+    public static double mean(double[] values) {
+        return mean(values, 0, values.length);
+    }
+
+    /**
+     * Mean of a range of values
+     *
+     * @param values the values
+     * @param offset the position of the first value
+     * @param length the number of values
+     * @return the mean, or NaN if there are no values
+     */
+    public static double mean(double[] values, int offset, int length) {
+        return length == 0 ? Double.NaN : sum(values, offset, length) / length;
+    }
+
+    /**
+     * Root mean square of the values
+     *
+     * @param values the values
+     * @return the RMS, or NaN if there are no values
+     */
+    public static double rms(double[] values) {
+        return rms(values, 0, values.length);
+    }
+
+    /**
+     * Root mean square of a range of values
+     *
+     * @param values the values
+     * @param offset the position of the first value
+     * @param length the number of values
+     * @return the RMS, or NaN if there are no values
+     */
+    public static double rms(double[] values, int offset, int length) {
+        return length == 0 ? Double.NaN : Math.sqrt(dot(values, offset, values, offset, length) / length);
+    }
+
+    /**
+     * Minimum of the values
+     *
+     * @param values the values
+     * @return the minimum, or NaN if there are no values
+     */
+    public static double min(double[] values) {
+        return min(values, 0, values.length);
+    }
+
+    /**
+     * Minimum of a range of values
+     *
+     * @param values the values
+     * @param offset the position of the first value
+     * @param length the number of values
+     * @return the minimum, or NaN if there are no values
+     */
+    public static double min(double[] values, int offset, int length) {
+        checkRange(values.length, offset, length);
+        if (length == 0) {
+            return Double.NaN;
+        }
+        double m0 = values[offset], m1 = m0, m2 = m0, m3 = m0;
+        int i = offset, end = offset + length, unrolledEnd = offset + (length & ~3);
+        for (; i < unrolledEnd; i += 4) {
+            m0 = Math.min(m0, values[i]);
+            m1 = Math.min(m1, values[i + 1]);
+            m2 = Math.min(m2, values[i + 2]);
+            m3 = Math.min(m3, values[i + 3]);
+        }
+        for (; i < end; i++) {
+            m0 = Math.min(m0, values[i]);
+        }
+        return Math.min(Math.min(m0, m1), Math.min(m2, m3));
+    }
+
+    /**
+     * Maximum of the values
+     *
+     * @param values the values
+     * @return the maximum, or NaN if there are no values
+     */
+    public static double max(double[] values) {
+        return max(values, 0, values.length);
+    }
+
+    /**
+     * Maximum of a range of values
+     *
+     * @param values the values
+     * @param offset the position of the first value
+     * @param length the number of values
+     * @return the maximum, or NaN if there are no values
+     */
+    public static double max(double[] values, int offset, int length) {
+        checkRange(values.length, offset, length);
+        if (length == 0) {
+            return Double.NaN;
+        }
+        double m0 = values[offset], m1 = m0, m2 = m0, m3 = m0;
+        int i = offset, end = offset + length, unrolledEnd = offset + (length & ~3);
+        for (; i < unrolledEnd; i += 4) {
+            m0 = Math.max(m0, values[i]);
+            m1 = Math.max(m1, values[i + 1]);
+            m2 = Math.max(m2, values[i + 2]);
+            m3 = Math.max(m3, values[i + 3]);
+        }
+        for (; i < end; i++) {
+            m0 = Math.max(m0, values[i]);
+        }
+        return Math.max(Math.max(m0, m1), Math.max(m2, m3));
+    }
+
+    /**
+     * Population variance of the values
+     *
+     * @param values the values
+     * @return the variance, or NaN if there are no values
+     */
+    public static double variance(double[] values) {
+        return variance(values, 0, values.length);
+    }
+
+    /**
+     * Population variance of a range of values.  This makes two passes, one for the mean and one
+     * for the squared deviations from it, which avoids the cancellation of the one pass formula.
+     *
+     * @param values the values
+     * @param offset the position of the first value
+     * @param length the number of values
+     * @return the variance, or NaN if there are no values
+     */
+    public static double variance(double[] values, int offset, int length) {
+        if (length == 0) {
+            return Double.NaN;
+        }
+        double mean = mean(values, offset, length);
+        double s0 = 0, s1 = 0, s2 = 0, s3 = 0;
+        int i = offset, end = offset + length, unrolledEnd = offset + (length & ~3);
+        for (; i < unrolledEnd; i += 4) {
+            double d0 = values[i] - mean, d1 = values[i + 1] - mean, d2 = values[i + 2] - mean, d3 = values[i + 3] - mean;
+            s0 += d0 * d0;
+            s1 += d1 * d1;
+            s2 += d2 * d2;
+            s3 += d3 * d3;
+        }
+        for (; i < end; i++) {
+            double d = values[i] - mean;
+            s0 += d * d;
+        }
+        return ((s0 + s1) + (s2 + s3)) / length;
+    }
+
+    /**
+     * Population standard deviation of the values
+     *
+     * @param values the values
+     * @return the standard deviation, or NaN if there are no values
+     */
+    public static double standardDeviation(double[] values) {
+        return Math.sqrt(variance(values));
+    }
+
+    /**
+     * Population standard deviation of a range of values
+     *
+     * @param values the values
+     * @param offset the position of the first value
+     * @param length the number of values
+     * @return the standard deviation, or NaN if there are no values
+     */
+    public static double standardDeviation(double[] values, int offset, int length) {
+        return Math.sqrt(variance(values, offset, length));
+    }
+
+    /**
+     * Weighted sum of the values, i.e. the dot product of the values and the weights
+     *
+     * @param values  the values
+     * @param weights the weights
+     * @return the weighted sum
+     * @throws IllegalArgumentException if there is not one weight per value
+     */
+    public static double weightedSum(double[] values, double[] weights) {
+        if (values.length != weights.length) {
+            throw new IllegalArgumentException("Expected " + values.length + " weights but got " + weights.length);
+        }
+        return dot(values, 0, weights, 0, values.length);
+    }
+
+    /**
+     * Weighted mean of the values
+     *
+     * @param values  the values
+     * @param weights the weights
+     * @return the weighted mean, or NaN if the weights sum to zero
+     * @throws IllegalArgumentException if there is not one weight per value
+     */
+    public static double weightedMean(double[] values, double[] weights) {
+        double totalWeight = sum(weights);
+        return totalWeight == 0 ? Double.NaN : weightedSum(values, weights) / totalWeight;
+    }
+
+    /**
+     * Element by element mean of a set of equal length arrays, e.g. the average waveform over many pulses
+     *
+     * @param pulses the arrays
+     * @return the mean of each element, or an empty array if there are no arrays
+     * @throws IllegalArgumentException if the arrays are not all the same length
+     */
+    public static double[] meanAcross(double[][] pulses) {
+        if (pulses.length == 0) {
+            return new double[0];
+        }
+        int length = pulses[0].length;
+        double[] mean = new double[length];
+        for (double[] pulse : pulses) {
+            if (pulse.length != length) {
+                throw new IllegalArgumentException("Expected arrays of length " + length + " but got " + pulse.length);
+            }
+            for (int i = 0; i < length; i++) {
+                mean[i] += pulse[i];
+            }
+        }
+        double scale = 1.0 / pulses.length;
+        for (int i = 0; i < length; i++) {
+            mean[i] *= scale;
+        }
+        return mean;
+    }
+
+    /**
+     * Mean of a table column
+     *
+     * @param table  the table
+     * @param column the column
+     * @return the mean, or NaN if the table is empty
+     * @throws IllegalArgumentException if the column does not exist or is not numeric
+     */
+    public static double mean(PvaTable table, String column) {
+        return mean(table.getDoubles(column));
+    }
+
+    /**
+     * Population standard deviation of a table column
+     *
+     * @param table  the table
+     * @param column the column
+     * @return the standard deviation, or NaN if the table is empty
+     * @throws IllegalArgumentException if the column does not exist or is not numeric
+     */
+    public static double standardDeviation(PvaTable table, String column) {
+        return standardDeviation(table.getDoubles(column));
+    }
+
+    /**
+     * Weighted sum of a table column using another column as the weights
+     *
+     * @param table         the table
+     * @param column        the column
+     * @param weightsColumn the column holding the weights
+     * @return the weighted sum
+     * @throws IllegalArgumentException if a column does not exist or is not numeric
+     */
+    public static double weightedSum(PvaTable table, String column, String weightsColumn) {
+        return weightedSum(table.getDoubles(column), table.getDoubles(weightsColumn));
+    }
+
+    /**
+     * Count, mean, variance, min, max and RMS of the values in one pass
+     *
+     * @param values the values
+     * @return the statistics, which can be updated with further values
+     */
+    public static RunningStatistics summarize(double[] values) {
+        RunningStatistics statistics = new RunningStatistics();
+        statistics.addAll(values, 0, values.length);
+        return statistics;
+    }
+
+    /**
+     * Count, mean, variance, min, max and RMS of a table column in one pass
+     *
+     * @param table  the table
+     * @param column the column
+     * @return the statistics, which can be updated with further values
+     * @throws IllegalArgumentException if the column does not exist or is not numeric
+     */
+    public static RunningStatistics summarize(PvaTable table, String column) {
+        return summarize(table.getDoubles(column));
+    }
+
+    /**
+     * Internal: Dot product of two ranges of the same length
+     */
+    private static double dot(double[] a, int aOffset, double[] b, int bOffset, int length) {
+        checkRange(a.length, aOffset, length);
+        checkRange(b.length, bOffset, length);
+        double s0 = 0, s1 = 0, s2 = 0, s3 = 0;
+        int i = 0, unrolledEnd = length & ~3;
+        for (; i < unrolledEnd; i += 4) {
+            s0 += a[aOffset + i] * b[bOffset + i];
+            s1 += a[aOffset + i + 1] * b[bOffset + i + 1];
+            s2 += a[aOffset + i + 2] * b[bOffset + i + 2];
+            s3 += a[aOffset + i + 3] * b[bOffset + i + 3];
+        }
+        for (; i < length; i++) {
+            s0 += a[aOffset + i] * b[bOffset + i];
+        }
+        return (s0 + s1) + (s2 + s3);
+    }
+
+    /**
+     * Internal: Check that a range is within an array so the loops need no further bounds checks
+     */
+    static void checkRange(int arrayLength, int offset, int length) {
+        if (offset < 0 || length < 0 || offset > arrayLength - length) {
+            throw new IllegalArgumentException("Range " + offset + ".." + (offset + length) + " is outside an array of length " + arrayLength);
+        }
+    }
+}
@@ -69,6 +69,32 @@ public enum AidaType {
      */
     public static final String NT_DESCRIPTIONS_NAME = "descriptions";
 
+    /**
+     * AidaType of scalar fields, indexed by the ordinal of their ScalarType
+     */
+    private static final AidaType[] SCALAR_TYPES = new AidaType[ScalarType.values().length];
+
+    /**
+     * AidaType of scalar array fields, indexed by the ordinal of their element ScalarType
+     */
+    private static final AidaType[] SCALAR_ARRAY_TYPES = new AidaType[ScalarType.values().length];
+
+    static {
+        mapScalarType(ScalarType.pvBoolean, AIDA_BOOLEAN, AIDA_BOOLEAN_ARRAY);
+        mapScalarType(ScalarType.pvByte, AIDA_BYTE, AIDA_BYTE_ARRAY);
+        mapScalarType(ScalarType.pvShort, AIDA_SHORT, AIDA_SHORT_ARRAY);
+        mapScalarType(ScalarType.pvInt, AIDA_INTEGER, AIDA_INTEGER_ARRAY);
+        mapScalarType(ScalarType.pvLong, AIDA_LONG, AIDA_LONG_ARRAY);
+        mapScalarType(ScalarType.pvFloat, AIDA_FLOAT, AIDA_FLOAT_ARRAY);
+        mapScalarType(ScalarType.pvDouble, AIDA_DOUBLE, AIDA_DOUBLE_ARRAY);
+        mapScalarType(ScalarType.pvString, AIDA_STRING, AIDA_STRING_ARRAY);
+    }
+
+    private static void mapScalarType(ScalarType scalarType, AidaType scalar, AidaType array) {
+        SCALAR_TYPES[scalarType.ordinal()] = scalar;
+        SCALAR_ARRAY_TYPES[scalarType.ordinal()] = array;
+    }
+
     /**
      * Return the string representation of the type without the prefix
      *
@@ -156,40 +182,17 @@ public enum AidaType {
         }
 
         PVField field = pvStructure.getSubField(fieldName);
-        if (field instanceof PVBoolean) {
-            return AIDA_BOOLEAN;
-        } else if (field instanceof PVByte) {
-            return AIDA_BYTE;
-        } else if (field instanceof PVShort) {
-            return AIDA_SHORT;
-        } else if (field instanceof PVInt) {
-            return AIDA_INTEGER;
-        } else if (field instanceof PVLong) {
-            return AIDA_LONG;
-        } else if (field instanceof PVFloat) {
-            return AIDA_FLOAT;
-        } else if (field instanceof PVDouble) {
-            return AIDA_DOUBLE;
-        } else if (field instanceof PVString) {
-            return AIDA_STRING;
-        } else if (field instanceof PVBooleanArray) {
-            return AIDA_BOOLEAN_ARRAY;
-        } else if (field instanceof PVByteArray) {
-            return AIDA_BYTE_ARRAY;
-        } else if (field instanceof PVShortArray) {
-            return AIDA_SHORT_ARRAY;
-        } else if (field instanceof PVIntArray) {
-            return AIDA_INTEGER_ARRAY;
-        } else if (field instanceof PVLongArray) {
-            return AIDA_LONG_ARRAY;
-        } else if (field instanceof PVFloatArray) {
-            return AIDA_FLOAT_ARRAY;
-        } else if (field instanceof PVDoubleArray) {
-            return AIDA_DOUBLE_ARRAY;
-        } else if (field instanceof PVStringArray) {
-            return AIDA_STRING_ARRAY;
-        } else {
+        if (field == null) {
             return AIDA_VOID;
         }
+
+        AidaType type = null;
+        Field introspection = field.getField();
+        if (introspection instanceof Scalar) {
+            type = SCALAR_TYPES[((Scalar) introspection).getScalarType().ordinal()];
+        } else if (introspection instanceof ScalarArray) {
+            type = SCALAR_ARRAY_TYPES[((ScalarArray) introspection).getElementType().ordinal()];
+        }
+        return type == null ? AIDA_VOID : type;
     }
 }
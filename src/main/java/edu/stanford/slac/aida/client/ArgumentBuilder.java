@@ -10,7 +10,6 @@ import org.epics.pvdata.pv.*;
 
 import java.util.*;
 
-import static edu.stanford.slac.aida.client.compat.ArrayUtils.toPrimitive;
 import static org.epics.pvdata.pv.Status.StatusType.ERROR;
 
 /**
@@ -107,118 +106,91 @@ class ArgumentBuilder {
     }
 
     /**
-     * Internal: From a given value determine the type of field that should be created to hold its value
+     * Internal: From a given value determine the type of field that should be created to hold its value.
+     * The type comes from the codec registered for the Java class of the value, or of its elements, except that
+     * floats and doubles holding whole numbers are sent as integers or longs.
      *
      * @param value the given value
      * @return the field to hold this value
      */
     @SuppressWarnings("unchecked")
     private Field getField(Object value) {
-        if (value instanceof Boolean) {
-            return (fieldCreate.createScalar(ScalarType.pvBoolean));
-        } else if (value instanceof Byte) {
-            return (fieldCreate.createScalar(ScalarType.pvByte));
-        } else if (value instanceof Short) {
-            return (fieldCreate.createScalar(ScalarType.pvShort));
-        } else if (value instanceof Integer) {
-            return (fieldCreate.createScalar(ScalarType.pvInt));
-        } else if (value instanceof Long) {
-            return (fieldCreate.createScalar(ScalarType.pvLong));
-        } else if (value instanceof Float) {
-            if (isInteger(((Float) value).doubleValue())) {
+        if (value instanceof Float || value instanceof Double) {
+            double doubleValue = ((Number) value).doubleValue();
+            if (isInteger(doubleValue)) {
                 return (fieldCreate.createScalar(ScalarType.pvInt));
-            } else if (isLong(((Float) value).doubleValue())) {
+            } else if (isLong(doubleValue)) {
                 return (fieldCreate.createScalar(ScalarType.pvLong));
             } else {
-                return (fieldCreate.createScalar(ScalarType.pvFloat));
+                return (fieldCreate.createScalar(value instanceof Float ? ScalarType.pvFloat : ScalarType.pvDouble));
             }
-        } else if (value instanceof Double) {
-            if (isInteger((Double) value)) {
-                return (fieldCreate.createScalar(ScalarType.pvInt));
-            } else if (isLong((Double) value)) {
-                return (fieldCreate.createScalar(ScalarType.pvLong));
-            } else {
-                return (fieldCreate.createScalar(ScalarType.pvDouble));
-            }
-        } else if (value instanceof String || value instanceof Character || value instanceof Character[]) {
+        } else if (value instanceof Character || value instanceof Character[]) {
             return (fieldCreate.createScalar(ScalarType.pvString));
         } else if (value instanceof Object[]) {
-            Object[] objects = (Object[]) value;
-            boolean hasElements = objects.length > 0;
-            if (value instanceof Boolean[] || (hasElements && objects[0] instanceof Boolean)) {
-                return (fieldCreate.createScalarArray(ScalarType.pvBoolean));
-            } else if (value instanceof Byte[] || (hasElements && objects[0] instanceof Byte)) {
-                return (fieldCreate.createScalarArray(ScalarType.pvByte));
-            } else if (value instanceof Short[] || (hasElements && objects[0] instanceof Short)) {
-                return (fieldCreate.createScalarArray(ScalarType.pvShort));
-            } else if (value instanceof Integer[] || (hasElements && objects[0] instanceof Integer)) {
-                return (fieldCreate.createScalarArray(ScalarType.pvInt));
-            } else if (value instanceof Long[] || (hasElements && objects[0] instanceof Long)) {
-                return (fieldCreate.createScalarArray(ScalarType.pvLong));
-            } else if (value instanceof Float[] || (hasElements && objects[0] instanceof Float)) {
-                if (areIntegers(Arrays.asList(((Object[]) value)))) {
-                    return (fieldCreate.createScalarArray(ScalarType.pvInt));
-                } else if (areLongs(Arrays.asList(((Object[]) value)))) {
-                    return (fieldCreate.createScalarArray(ScalarType.pvLong));
-                } else {
-                    return (fieldCreate.createScalarArray(ScalarType.pvFloat));
-                }
-            } else if (value instanceof Double[] || (hasElements && objects[0] instanceof Double)) {
-                if (areIntegers(Arrays.asList(((Object[]) value)))) {
-                    return (fieldCreate.createScalarArray(ScalarType.pvInt));
-                } else if (areLongs(Arrays.asList(((Object[]) value)))) {
-                    return (fieldCreate.createScalarArray(ScalarType.pvLong));
-                } else {
-                    return (fieldCreate.createScalarArray(ScalarType.pvDouble));
-                }
-            } else {
-                return (fieldCreate.createScalarArray(ScalarType.pvString));
+            List<Object> objects = Arrays.asList((Object[]) value);
+            Class<?> elementClass = value.getClass().getComponentType();
+            if (AidaCodecs.forJavaClass(elementClass) == null) {
+                // e.g. Object[] or Number[]: determine type of array by its first element
+                elementClass = firstElementClass(objects);
             }
+            return getArrayField(elementClass, objects, fieldCreate.createScalarArray(ScalarType.pvString));
         } else if (value instanceof List) {
             // determine type of list by getting first element.
-            List<?> valueList = (List<?>) value;
+            List<Object> valueList = (List<Object>) value;
             if (valueList.isEmpty()) {
                 return fieldCreate.createScalarArray(ScalarType.pvString);
             }
-            Object firstElement = valueList.get(0);
-            if (firstElement instanceof Boolean) {
-                return (fieldCreate.createScalarArray(ScalarType.pvBoolean));
-            } else if (firstElement instanceof Byte) {
-                return (fieldCreate.createScalarArray(ScalarType.pvByte));
-            } else if (firstElement instanceof Short) {
-                return (fieldCreate.createScalarArray(ScalarType.pvShort));
-            } else if (firstElement instanceof Integer) {
-                return (fieldCreate.createScalarArray(ScalarType.pvInt));
-            } else if (firstElement instanceof Long) {
-                return (fieldCreate.createScalarArray(ScalarType.pvLong));
-            } else if (firstElement instanceof Float) {
-                if (areIntegers((List<Object>) valueList)) {
-                    return (fieldCreate.createScalarArray(ScalarType.pvInt));
-                } else if (areLongs((List<Object>) value)) {
-                    return (fieldCreate.createScalarArray(ScalarType.pvLong));
-                } else {
-                    return (fieldCreate.createScalarArray(ScalarType.pvFloat));
-                }
-            } else if (firstElement instanceof Double) {
-                if (areIntegers((List<Object>) valueList)) {
-                    return (fieldCreate.createScalarArray(ScalarType.pvInt));
-                } else if (areLongs((List<Object>) value)) {
-                    return (fieldCreate.createScalarArray(ScalarType.pvLong));
-                } else {
-                    return (fieldCreate.createScalarArray(ScalarType.pvDouble));
-                }
-            } else if (firstElement instanceof String || firstElement instanceof Character) {
-                return (fieldCreate.createScalarArray(ScalarType.pvString));
-            }
-            return (fieldCreate.createScalar(ScalarType.pvString));
+            return getArrayField(firstElementClass(valueList), valueList, fieldCreate.createScalar(ScalarType.pvString));
         } else if (value instanceof Map) {
             // For structures then we recurse through this creating subfields for each key
             // with fields for the associated values
-            @SuppressWarnings("unchecked") Map<String, Object> map = (Map<String, Object>) value;
+            Map<String, Object> map = (Map<String, Object>) value;
             return getStructure(map);
-        } else {
+        }
+
+        AidaCodec codec = AidaCodecs.forJavaClass(value.getClass());
+        if (codec == null) {
             throw new RuntimeException("Unsupported type specified for argument value: " + value.getClass());
         }
+        return (fieldCreate.createScalar(codec.getScalarType()));
+    }
+
+    /**
+     * Internal: Get the class of the first element that is not null
+     *
+     * @param values the values
+     * @return the class, or null if there are no elements that are not null
+     */
+    private static Class<?> firstElementClass(List<Object> values) {
+        for (Object element : values) {
+            if (element != null) {
+                return element.getClass();
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Internal: Determine the type of array field that should be created to hold the given values
+     *
+     * @param elementClass the class of the elements
+     * @param values       the values
+     * @param unknown      the field to use if there is no codec for the element class
+     * @return the field to hold the values
+     */
+    private Field getArrayField(Class<?> elementClass, List<Object> values, Field unknown) {
+        if (elementClass == Float.class || elementClass == Double.class) {
+            if (areIntegers(values)) {
+                return (fieldCreate.createScalarArray(ScalarType.pvInt));
+            } else if (areLongs(values)) {
+                return (fieldCreate.createScalarArray(ScalarType.pvLong));
+            }
+        } else if (elementClass == Character.class) {
+            return (fieldCreate.createScalarArray(ScalarType.pvString));
+        }
+
+        AidaCodec codec = elementClass == null ? null : AidaCodecs.forJavaClass(elementClass);
+        return codec == null ? unknown : fieldCreate.createScalarArray(codec.getScalarType());
     }
 
     /**
@@ -233,198 +205,33 @@ class ArgumentBuilder {
 
     /**
      * Internal: Set the field values in the given structure.
-     * Assumes that the structure has been created with field names that match the keys in the valueMap
-     * Also assumes that the types of the values and structure fields match
+     * Assumes that the structure has been created with field names that match the keys in the valueMap.
+     * Each value is encoded by the codec registered for the scalar type of its field.
      *
      * @param structure the given structure
      * @param valueMap  the values to set in the structure
      */
-    @SuppressWarnings({"unchecked", "SuspiciousSystemArraycopy"})
+    @SuppressWarnings("unchecked")
     private void initializeStructure(PVStructure structure, Map<String, Object> valueMap) throws RPCRequestException {
         for (Map.Entry<String, Object> entrySet : valueMap.entrySet()) {
             String name = entrySet.getKey();
             Object value = entrySet.getValue();
             PVField pvField = structure.getSubField(name);
 
-            if (pvField instanceof PVBoolean) {
-                ((PVBoolean) (pvField)).put((Boolean) value);
-            } else if (pvField instanceof PVByte) {
-                ((PVByte) (pvField)).put((Byte) value);
-            } else if (pvField instanceof PVShort) {
-                ((PVShort) (pvField)).put((Short) value);
-            } else if (pvField instanceof PVInt) {
-                if (value instanceof Float) {
-                    ((PVInt) (pvField)).put(((Float) value).intValue());
-                } else if (value instanceof Double) {
-                    ((PVInt) (pvField)).put(((Double) value).intValue());
-                } else {
-                    ((PVInt) (pvField)).put((Integer) value);
-                }
-            } else if (pvField instanceof PVLong) {
-                if (value instanceof Float) {
-                    ((PVLong) (pvField)).put(((Float) value).longValue());
-                } else if (value instanceof Double) {
-                    ((PVLong) (pvField)).put(((Double) value).longValue());
-                } else {
-                    ((PVLong) (pvField)).put((Long) value);
-                }
-            } else if (pvField instanceof PVFloat) {
-                ((PVFloat) (pvField)).put((Float) value);
-            } else if (pvField instanceof PVDouble) {
-                ((PVDouble) (pvField)).put((Double) value);
-            } else if (pvField instanceof PVString) {
-                if (value instanceof Character) {
-                    ((PVString) (pvField)).put(((Character) value).toString());
-                } else if (value instanceof Character[]) {
-                    Character[] valueArray = ((Character[]) value);
-                    StringBuilder stringBuilder = new StringBuilder();
-                    for (char character : valueArray) {
-                        stringBuilder.append(character);
-                    }
-                    ((PVString) (pvField)).put(stringBuilder.toString());
-                } else {
-                    ((PVString) (pvField)).put((String) value);
-                }
-            } else if (pvField instanceof PVBooleanArray) {
-                Boolean[] list;
-                if (value instanceof Boolean[]) {
-                    list = (Boolean[]) value;
-                } else if (value instanceof Object[]) {
-                    Object[] objects = (Object[]) value;
-                    list = new Boolean[objects.length];
-                    try {
-                        System.arraycopy(objects, 0, list, 0, list.length);
-                    } catch (Exception e) {
-                        throw new RPCRequestException(ERROR, "Non-homogenous array detected while initialising NTURI");
-                    }
-                } else {
-                    List<Boolean> valueList = (List<Boolean>) value;
-                    list = valueList.toArray(new Boolean[0]);
-                }
-                ((PVBooleanArray) (pvField)).put(0, list.length, toPrimitive(list), 0);
-            } else if (pvField instanceof PVByteArray) {
-                Byte[] list;
-                if (value instanceof Byte[]) {
-                    list = (Byte[]) value;
-                } else if (value instanceof Character[]) {
-                    List<Byte> valueList = toByteList(Arrays.asList((Character[]) value));
-                    list = valueList.toArray(new Byte[0]);
-                } else if (value instanceof Object[]) {
-                    Object[] objects = (Object[]) value;
-                    list = new Byte[objects.length];
-                    try {
-                        System.arraycopy(objects, 0, list, 0, list.length);
-                    } catch (Exception e) {
-                        throw new RPCRequestException(ERROR, "Non-homogenous array detected while initialising NTURI");
-                    }
-                } else {
-                    List<Byte> valueList = toByteList((List<?>) value);
-                    list = valueList.toArray(new Byte[0]);
-                }
-                ((PVByteArray) (pvField)).put(0, list.length, toPrimitive(list), 0);
-            } else if (pvField instanceof PVShortArray) {
-                Short[] list;
-                if (value instanceof Short[]) {
-                    list = (Short[]) value;
-                } else if (value instanceof Object[]) {
-                    Object[] objects = (Object[]) value;
-                    list = new Short[objects.length];
-                    try {
-                        System.arraycopy(objects, 0, list, 0, list.length);
-                    } catch (Exception e) {
-                        throw new RPCRequestException(ERROR, "Non-homogenous array detected while initialising NTURI");
-                    }
-                } else {
-                    List<Short> valueList = (List<Short>) value;
-                    list = valueList.toArray(new Short[0]);
-                }
-                ((PVShortArray) (pvField)).put(0, list.length, toPrimitive(list), 0);
-            } else if (pvField instanceof PVIntArray) {
-                Integer[] list;
-                if (value instanceof Integer[]) {
-                    list = (Integer[]) value;
-                } else if (value instanceof Object[]) {
-                    List<Integer> valueList = toIntegerList(Arrays.asList((Object[]) value));
-                    list = valueList.toArray(new Integer[0]);
-                } else {
-                    List<Integer> valueList = toIntegerList((List<?>) value);
-                    list = valueList.toArray(new Integer[0]);
-                }
-                ((PVIntArray) (pvField)).put(0, list.length, toPrimitive(list), 0);
-            } else if (pvField instanceof PVLongArray) {
-                Long[] list;
-                if (value instanceof Long[]) {
-                    list = (Long[]) value;
-                } else if (value instanceof Object[]) {
-                    List<Long> valueList = toLongList(Arrays.asList((Object[]) value));
-                    list = valueList.toArray(new Long[0]);
+            if (pvField instanceof PVScalar) {
+                PVScalar pvScalar = (PVScalar) pvField;
+                getCodec(pvScalar.getScalar().getScalarType()).encode(pvScalar, value);
+            } else if (pvField instanceof PVScalarArray) {
+                PVScalarArray pvScalarArray = (PVScalarArray) pvField;
+                Object[] values;
+                if (value instanceof Object[]) {
+                    values = (Object[]) value;
+                } else if (value instanceof Collection) {
+                    values = ((Collection<?>) value).toArray();
                 } else {
-                    List<Long> valueList = toLongList((List<?>) value);
-                    list = valueList.toArray(new Long[0]);
+                    throw new RPCRequestException(ERROR, "Expected an array or list for argument " + name + " but got: " + value);
                 }
-                ((PVLongArray) (pvField)).put(0, list.length, toPrimitive(list), 0);
-            } else if (pvField instanceof PVFloatArray) {
-                Float[] list;
-                if (value instanceof Float[]) {
-                    list = (Float[]) value;
-                } else if (value instanceof Object[]) {
-                    Object[] objects = (Object[]) value;
-                    list = new Float[objects.length];
-                    try {
-                        System.arraycopy(objects, 0, list, 0, list.length);
-                    } catch (Exception e) {
-                        throw new RPCRequestException(ERROR, "Non-homogenous array detected while initialising NTURI");
-                    }
-                } else {
-                    // Some values may be given as doubles even though we want floats (e.g. PI) so we need to coerce all to Floats first
-                    List<Object> values = (List<Object>) value;
-                    list = new Float[values.size()];
-                    for (int i = 0; i < values.size(); i++) {
-                        Object val = values.get(i);
-                        if (val instanceof Float) {
-                            list[i] = ((Float) val);
-                        } else if (val instanceof Double) {
-                            list[i] = ((Double) val).floatValue();
-                        } else {
-                            list[i] = Float.parseFloat(val.toString());
-                        }
-                    }
-                }
-                ((PVFloatArray) (pvField)).put(0, list.length, toPrimitive(list), 0);
-            } else if (pvField instanceof PVDoubleArray) {
-                Double[] list;
-                if (value instanceof Double[]) {
-                    list = (Double[]) value;
-                } else if (value instanceof Object[]) {
-                    Object[] objects = (Object[]) value;
-                    list = new Double[objects.length];
-                    try {
-                        System.arraycopy(objects, 0, list, 0, list.length);
-                    } catch (Exception e) {
-                        throw new RPCRequestException(ERROR, "Non-homogenous array detected while initialising NTURI");
-                    }
-                } else {
-                    List<Double> valueList = (List<Double>) value;
-                    list = valueList.toArray(new Double[0]);
-                }
-                ((PVDoubleArray) (pvField)).put(0, list.length, toPrimitive(list), 0);
-            } else if (pvField instanceof PVStringArray) {
-                String[] list;
-                if (value instanceof String[]) {
-                    list = (String[]) value;
-                } else if (value instanceof Object[]) {
-                    Object[] objects = (Object[]) value;
-                    list = new String[objects.length];
-                    try {
-                        System.arraycopy(objects, 0, list, 0, list.length);
-                    } catch (Exception e) {
-                        throw new RPCRequestException(ERROR, "Non-homogenous array detected while initialising NTURI");
-                    }
-                } else {
-                    List<String> valueList = (List<String>) value;
-                    list = valueList.toArray(new String[0]);
-                }
-                ((PVStringArray) (pvField)).put(0, list.length, list, 0);
+                getCodec(pvScalarArray.getScalarArray().getElementType()).encode(pvScalarArray, values);
             } else if (pvField instanceof PVStructure) {
                 Map<String, Object> subValueMap = (Map<String, Object>) value;
                 initializeStructure((PVStructure) pvField, subValueMap);
@@ -435,67 +242,17 @@ class ArgumentBuilder {
     }
 
     /**
-     * Internal: When we need an integer list but may have been given floats and doubles
-     * use this method to convert everything to integers.  Must only be used if
-     * you've already called areIntegers() on the list.
-     *
-     * @param values the list of values to convert
-     * @return the converted list
-     */
-    private List<Integer> toIntegerList(List<?> values) {
-        List<Integer> list = new ArrayList<Integer>();
-        for (Object value : values) {
-            if (value instanceof Float) {
-                list.add(((Float) value).intValue());
-            } else if (value instanceof Double) {
-                list.add(((Double) value).intValue());
-            } else {
-                list.add((Integer) value);
-            }
-        }
-        return list;
-    }
-
-    /**
-     * Internal: When we need a long list but may have been given floats and doubles
-     * use this method to convert everything to longs.  Must only be used if
-     * you've already called areLongs() on the list.
+     * Internal: Get the codec for the given scalar type
      *
-     * @param values the list of values to convert
-     * @return the converted list
+     * @param scalarType the scalar type
+     * @return the codec
      */
-    private List<Long> toLongList(List<?> values) {
-        List<Long> list = new ArrayList<Long>();
-        for (Object value : values) {
-            if (value instanceof Float) {
-                list.add(((Float) value).longValue());
-            } else if (value instanceof Double) {
-                list.add(((Double) value).longValue());
-            } else {
-                list.add((Long) value);
-            }
-        }
-        return list;
-    }
-
-    /**
-     * Internal: When we need a byte list but may have been given chars
-     * use this method to convert everything to bytes.  Must only be used if
-     * you've already called areBytes() on the list.
-     *
-     * @param values the list of values to convert
-     * @return the converted list
-     */
-    private List<Byte> toByteList(List<?> values) {
-        List<Byte> list = new ArrayList<Byte>();
-        for (Object value : values) {
-            if (value instanceof Character) {
-                list.add((byte) ((Character) value).charValue());
-            } else {
-                list.add((Byte) value);
-            }
+    private static AidaCodec getCodec(ScalarType scalarType) {
+        AidaCodec codec = AidaCodecs.forScalarType(scalarType);
+        if (codec == null) {
+            throw new RuntimeException("Unknown type specified for argument value: " + scalarType);
         }
-        return list;
+        return codec;
     }
 
     /**
@@ -0,0 +1,486 @@
+/**
+ * @file
+ * @brief Built-in codecs for the pvData scalar types.
+ */
+package edu.stanford.slac.aida.client;
+
+import org.epics.pvaccess.server.rpc.RPCRequestException;
+import org.epics.pvdata.pv.*;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+
+import static org.epics.pvdata.pv.Status.StatusType.ERROR;
+
+/**
+ * Built-in codecs for the pvData scalar types, see {@link AidaCodecs}.
+ * <p>
+ * Each codec copies array elements straight out of the ArrayData buffer with a type specific loop.
+ * When encoding, any number can be put into a numeric field, and characters and numeric strings are
+ * converted to numbers, so that e.g. a list of doubles can be sent as a float array.
+ */
+class BuiltInCodecs {
+    private static final String NON_HOMOGENOUS_ARRAY = "Non-homogenous array detected while initialising NTURI";
+
+    private static final BigInteger UNSIGNED_LONG_OFFSET = BigInteger.ONE.shiftLeft(64);
+
+    static final AidaCodec BOOLEAN = new BuiltInCodec(ScalarType.pvBoolean, Boolean.class) {
+        @Override
+        public Object decode(PVScalar field) {
+            return ((PVBoolean) field).get();
+        }
+
+        @Override
+        public void decode(PVScalarArray field, int from, int to, Object[] destination, int offset) {
+            BooleanArrayData data = new BooleanArrayData();
+            int n = ((PVBooleanArray) field).get(from, to - from, data);
+            boolean[] source = data.data;
+            for (int i = 0, j = data.offset; i < n; i++, j++) {
+                destination[offset + i] = source[j];
+            }
+        }
+
+        @Override
+        public void encode(PVScalar field, Object value) throws RPCRequestException {
+            ((PVBoolean) field).put(toBoolean(value));
+        }
+
+        @Override
+        public void encode(PVScalarArray field, Object[] values) throws RPCRequestException {
+            boolean[] array = new boolean[values.length];
+            try {
+                for (int i = 0; i < values.length; i++) {
+                    array[i] = toBoolean(values[i]);
+                }
+            } catch (RPCRequestException e) {
+                throw new RPCRequestException(ERROR, NON_HOMOGENOUS_ARRAY);
+            }
+            ((PVBooleanArray) field).put(0, array.length, array, 0);
+        }
+    };
+
+    static final AidaCodec BYTE = new BuiltInCodec(ScalarType.pvByte, Byte.class) {
+        @Override
+        public Object decode(PVScalar field) {
+            return ((PVByte) field).get();
+        }
+
+        @Override
+        public void decode(PVScalarArray field, int from, int to, Object[] destination, int offset) {
+            ByteArrayData data = new ByteArrayData();
+            int n = ((PVByteArray) field).get(from, to - from, data);
+            byte[] source = data.data;
+            for (int i = 0, j = data.offset; i < n; i++, j++) {
+                destination[offset + i] = source[j];
+            }
+        }
+
+        @Override
+        public void encode(PVScalar field, Object value) throws RPCRequestException {
+            ((PVByte) field).put(toNumber(value).byteValue());
+        }
+
+        @Override
+        public void encode(PVScalarArray field, Object[] values) throws RPCRequestException {
+            byte[] array = new byte[values.length];
+            for (int i = 0; i < values.length; i++) {
+                array[i] = toArrayElement(values[i]).byteValue();
+            }
+            ((PVByteArray) field).put(0, array.length, array, 0);
+        }
+    };
+
+    static final AidaCodec SHORT = new BuiltInCodec(ScalarType.pvShort, Short.class) {
+        @Override
+        public Object decode(PVScalar field) {
+            return ((PVShort) field).get();
+        }
+
+        @Override
+        public void decode(PVScalarArray field, int from, int to, Object[] destination, int offset) {
+            ShortArrayData data = new ShortArrayData();
+            int n = ((PVShortArray) field).get(from, to - from, data);
+            short[] source = data.data;
+            for (int i = 0, j = data.offset; i < n; i++, j++) {
+                destination[offset + i] = source[j];
+            }
+        }
+
+        @Override
+        public void encode(PVScalar field, Object value) throws RPCRequestException {
+            ((PVShort) field).put(toNumber(value).shortValue());
+        }
+
+        @Override
+        public void encode(PVScalarArray field, Object[] values) throws RPCRequestException {
+            short[] array = new short[values.length];
+            for (int i = 0; i < values.length; i++) {
+                array[i] = toArrayElement(values[i]).shortValue();
+            }
+            ((PVShortArray) field).put(0, array.length, array, 0);
+        }
+    };
+
+    static final AidaCodec INT = new BuiltInCodec(ScalarType.pvInt, Integer.class) {
+        @Override
+        public Object decode(PVScalar field) {
+            return ((PVInt) field).get();
+        }
+
+        @Override
+        public void decode(PVScalarArray field, int from, int to, Object[] destination, int offset) {
+            IntArrayData data = new IntArrayData();
+            int n = ((PVIntArray) field).get(from, to - from, data);
+            int[] source = data.data;
+            for (int i = 0, j = data.offset; i < n; i++, j++) {
+                destination[offset + i] = source[j];
+            }
+        }
+
+        @Override
+        public void encode(PVScalar field, Object value) throws RPCRequestException {
+            ((PVInt) field).put(toNumber(value).intValue());
+        }
+
+        @Override
+        public void encode(PVScalarArray field, Object[] values) throws RPCRequestException {
+            int[] array = new int[values.length];
+            for (int i = 0; i < values.length; i++) {
+                array[i] = toArrayElement(values[i]).intValue();
+            }
+            ((PVIntArray) field).put(0, array.length, array, 0);
+        }
+    };
+
+    static final AidaCodec LONG = new BuiltInCodec(ScalarType.pvLong, Long.class) {
+        @Override
+        public Object decode(PVScalar field) {
+            return ((PVLong) field).get();
+        }
+
+        @Override
+        public void decode(PVScalarArray field, int from, int to, Object[] destination, int offset) {
+            LongArrayData data = new LongArrayData();
+            int n = ((PVLongArray) field).get(from, to - from, data);
+            long[] source = data.data;
+            for (int i = 0, j = data.offset; i < n; i++, j++) {
+                destination[offset + i] = source[j];
+            }
+        }
+
+        @Override
+        public void encode(PVScalar field, Object value) throws RPCRequestException {
+            ((PVLong) field).put(toNumber(value).longValue());
+        }
+
+        @Override
+        public void encode(PVScalarArray field, Object[] values) throws RPCRequestException {
+            long[] array = new long[values.length];
+            for (int i = 0; i < values.length; i++) {
+                array[i] = toArrayElement(values[i]).longValue();
+            }
+            ((PVLongArray) field).put(0, array.length, array, 0);
+        }
+    };
+
+    static final AidaCodec FLOAT = new BuiltInCodec(ScalarType.pvFloat, Float.class) {
+        @Override
+        public Object decode(PVScalar field) {
+            return ((PVFloat) field).get();
+        }
+
+        @Override
+        public void decode(PVScalarArray field, int from, int to, Object[] destination, int offset) {
+            FloatArrayData data = new FloatArrayData();
+            int n = ((PVFloatArray) field).get(from, to - from, data);
+            float[] source = data.data;
+            for (int i = 0, j = data.offset; i < n; i++, j++) {
+                destination[offset + i] = source[j];
+            }
+        }
+
+        @Override
+        public void encode(PVScalar field, Object value) throws RPCRequestException {
+            ((PVFloat) field).put(toNumber(value).floatValue());
+        }
+
+        @Override
+        public void encode(PVScalarArray field, Object[] values) throws RPCRequestException {
+            float[] array = new float[values.length];
+            for (int i = 0; i < values.length; i++) {
+                array[i] = toArrayElement(values[i]).floatValue();
+            }
+            ((PVFloatArray) field).put(0, array.length, array, 0);
+        }
+    };
+
+    static final AidaCodec DOUBLE = new BuiltInCodec(ScalarType.pvDouble, Double.class) {
+        @Override
+        public Object decode(PVScalar field) {
+            return ((PVDouble) field).get();
+        }
+
+        @Override
+        public void decode(PVScalarArray field, int from, int to, Object[] destination, int offset) {
+            DoubleArrayData data = new DoubleArrayData();
+            int n = ((PVDoubleArray) field).get(from, to - from, data);
+            double[] source = data.data;
+            for (int i = 0, j = data.offset; i < n; i++, j++) {
+                destination[offset + i] = source[j];
+            }
+        }
+
+        @Override
+        public void encode(PVScalar field, Object value) throws RPCRequestException {
+            ((PVDouble) field).put(toNumber(value).doubleValue());
+        }
+
+        @Override
+        public void encode(PVScalarArray field, Object[] values) throws RPCRequestException {
+            double[] array = new double[values.length];
+            for (int i = 0; i < values.length; i++) {
+                array[i] = toArrayElement(values[i]).doubleValue();
+            }
+            ((PVDoubleArray) field).put(0, array.length, array, 0);
+        }
+    };
+
+    static final AidaCodec STRING = new BuiltInCodec(ScalarType.pvString, String.class) {
+        @Override
+        public Object decode(PVScalar field) {
+            return ((PVString) field).get();
+        }
+
+        @Override
+        public void decode(PVScalarArray field, int from, int to, Object[] destination, int offset) {
+            StringArrayData data = new StringArrayData();
+            int n = ((PVStringArray) field).get(from, to - from, data);
+            System.arraycopy(data.data, data.offset, destination, from, n);
+        }
+
+        @Override
+        public void encode(PVScalar field, Object value) {
+            if (value instanceof Character[]) {
+                StringBuilder stringBuilder = new StringBuilder();
+                for (char character : (Character[]) value) {
+                    stringBuilder.append(character);
+                }
+                value = stringBuilder;
+            }
+            ((PVString) field).put(value == null ? null : value.toString());
+        }
+
+        @Override
+        public void encode(PVScalarArray field, Object[] values) {
+            String[] array = new String[values.length];
+            for (int i = 0; i < values.length; i++) {
+                array[i] = values[i] == null ? null : values[i].toString();
+            }
+            ((PVStringArray) field).put(0, array.length, array, 0);
+        }
+    };
+
+    static final AidaCodec UNSIGNED_BYTE = new BuiltInCodec(ScalarType.pvUByte, Short.class) {
+        @Override
+        public Object decode(PVScalar field) {
+            return (short) (((PVUByte) field).get() & 0xFF);
+        }
+
+        @Override
+        public void decode(PVScalarArray field, int from, int to, Object[] destination, int offset) {
+            ByteArrayData data = new ByteArrayData();
+            int n = ((PVUByteArray) field).get(from, to - from, data);
+            byte[] source = data.data;
+            for (int i = 0, j = data.offset; i < n; i++, j++) {
+                destination[offset + i] = (short) (source[j] & 0xFF);
+            }
+        }
+
+        @Override
+        public void encode(PVScalar field, Object value) throws RPCRequestException {
+            ((PVUByte) field).put(toNumber(value).byteValue());
+        }
+
+        @Override
+        public void encode(PVScalarArray field, Object[] values) throws RPCRequestException {
+            byte[] array = new byte[values.length];
+            for (int i = 0; i < values.length; i++) {
+                array[i] = toArrayElement(values[i]).byteValue();
+            }
+            ((PVUByteArray) field).put(0, array.length, array, 0);
+        }
+    };
+
+    static final AidaCodec UNSIGNED_SHORT = new BuiltInCodec(ScalarType.pvUShort, Integer.class) {
+        @Override
+        public Object decode(PVScalar field) {
+            return ((PVUShort) field).get() & 0xFFFF;
+        }
+
+        @Override
+        public void decode(PVScalarArray field, int from, int to, Object[] destination, int offset) {
+            ShortArrayData data = new ShortArrayData();
+            int n = ((PVUShortArray) field).get(from, to - from, data);
+            short[] source = data.data;
+            for (int i = 0, j = data.offset; i < n; i++, j++) {
+                destination[offset + i] = source[j] & 0xFFFF;
+            }
+        }
+
+        @Override
+        public void encode(PVScalar field, Object value) throws RPCRequestException {
+            ((PVUShort) field).put(toNumber(value).shortValue());
+        }
+
+        @Override
+        public void encode(PVScalarArray field, Object[] values) throws RPCRequestException {
+            short[] array = new short[values.length];
+            for (int i = 0; i < values.length; i++) {
+                array[i] = toArrayElement(values[i]).shortValue();
+            }
+            ((PVUShortArray) field).put(0, array.length, array, 0);
+        }
+    };
+
+    static final AidaCodec UNSIGNED_INT = new BuiltInCodec(ScalarType.pvUInt, Long.class) {
+        @Override
+        public Object decode(PVScalar field) {
+            return ((PVUInt) field).get() & 0xFFFFFFFFL;
+        }
+
+        @Override
+        public void decode(PVScalarArray field, int from, int to, Object[] destination, int offset) {
+            IntArrayData data = new IntArrayData();
+            int n = ((PVUIntArray) field).get(from, to - from, data);
+            int[] source = data.data;
+            for (int i = 0, j = data.offset; i < n; i++, j++) {
+                destination[offset + i] = source[j] & 0xFFFFFFFFL;
+            }
+        }
+
+        @Override
+        public void encode(PVScalar field, Object value) throws RPCRequestException {
+            ((PVUInt) field).put(toNumber(value).intValue());
+        }
+
+        @Override
+        public void encode(PVScalarArray field, Object[] values) throws RPCRequestException {
+            int[] array = new int[values.length];
+            for (int i = 0; i < values.length; i++) {
+                array[i] = toArrayElement(values[i]).intValue();
+            }
+            ((PVUIntArray) field).put(0, array.length, array, 0);
+        }
+    };
+
+    static final AidaCodec UNSIGNED_LONG = new BuiltInCodec(ScalarType.pvULong, BigInteger.class) {
+        @Override
+        public Object decode(PVScalar field) {
+            return unsigned(((PVULong) field).get());
+        }
+
+        @Override
+        public void decode(PVScalarArray field, int from, int to, Object[] destination, int offset) {
+            LongArrayData data = new LongArrayData();
+            int n = ((PVULongArray) field).get(from, to - from, data);
+            long[] source = data.data;
+            for (int i = 0, j = data.offset; i < n; i++, j++) {
+                destination[offset + i] = unsigned(source[j]);
+            }
+        }
+
+        @Override
+        public void encode(PVScalar field, Object value) throws RPCRequestException {
+            ((PVULong) field).put(toNumber(value).longValue());
+        }
+
+        @Override
+        public void encode(PVScalarArray field, Object[] values) throws RPCRequestException {
+            long[] array = new long[values.length];
+            for (int i = 0; i < values.length; i++) {
+                array[i] = toArrayElement(values[i]).longValue();
+            }
+            ((PVULongArray) field).put(0, array.length, array, 0);
+        }
+    };
+
+    /**
+     * The codecs for the signed types, which are also used to encode arguments
+     */
+    static final AidaCodec[] SIGNED = {BOOLEAN, BYTE, SHORT, INT, LONG, FLOAT, DOUBLE, STRING};
+
+    /**
+     * The codecs for the unsigned types
+     */
+    static final AidaCodec[] UNSIGNED = {UNSIGNED_BYTE, UNSIGNED_SHORT, UNSIGNED_INT, UNSIGNED_LONG};
+
+    private BuiltInCodecs() {
+    }
+
+    /**
+     * Internal: Base of the built-in codecs holding the scalar type and Java class
+     */
+    private abstract static class BuiltInCodec implements AidaCodec {
+        private final ScalarType scalarType;
+        private final Class<?> javaClass;
+
+        BuiltInCodec(ScalarType scalarType, Class<?> javaClass) {
+            this.scalarType = scalarType;
+            this.javaClass = javaClass;
+        }
+
+        @Override
+        public ScalarType getScalarType() {
+            return scalarType;
+        }
+
+        @Override
+        public Class<?> getJavaClass() {
+            return javaClass;
+        }
+
+        @Override
+        public String toString() {
+            return "BuiltInCodec(" + scalarType + " <-> " + javaClass.getSimpleName() + ")";
+        }
+    }
+
+    private static boolean toBoolean(Object value) throws RPCRequestException {
+        if (value instanceof Boolean) {
+            return (Boolean) value;
+        }
+        throw new RPCRequestException(ERROR, "Can't convert " + value + " to a boolean");
+    }
+
+    /**
+     * Internal: Convert a value to a number.  Characters are converted to their code
+     * and strings are parsed.
+     */
+    private static Number toNumber(Object value) throws RPCRequestException {
+        if (value instanceof Number) {
+            return (Number) value;
+        } else if (value instanceof Character) {
+            return (int) (Character) value;
+        } else if (value instanceof String) {
+            try {
+                return new BigDecimal(((String) value).trim());
+            } catch (NumberFormatException ignored) {
+                // fall through to the error below
+            }
+        }
+        throw new RPCRequestException(ERROR, "Can't convert " + value + " to a number");
+    }
+
+    private static Number toArrayElement(Object value) throws RPCRequestException {
+        try {
+            return toNumber(value);
+        } catch (RPCRequestException e) {
+            throw new RPCRequestException(ERROR, NON_HOMOGENOUS_ARRAY);
+        }
+    }
+
+    private static Object unsigned(long value) {
+        BigInteger bigInteger = BigInteger.valueOf(value);
+        return value >= 0 ? bigInteger : bigInteger.add(UNSIGNED_LONG_OFFSET);
+    }
+}
@@ -0,0 +1,61 @@
+/**
+ * @file
+ * @brief Snapshot of the request metrics for one channel or provider.
+ */
+package edu.stanford.slac.aida.client;
+
+import lombok.Getter;
+import lombok.ToString;
+
+import java.beans.ConstructorProperties;
+
+/**
+ * Snapshot of the request metrics for one channel or one provider prefix, taken by {@link AidaMetrics}.
+ * <p>
+ * Latencies are the time taken by the request executor, from sending the request until the response
+ * or error is received, and are reported in milliseconds to within about 3%.
+ */
+@Getter
+@ToString
+public class ChannelMetrics {
+    /**
+     * The channel name, or the provider prefix
+     */
+    private final String name;
+
+    /**
+     * Number of requests made, including those that failed
+     */
+    private final long requests;
+
+    /**
+     * Number of requests that failed
+     */
+    private final long errors;
+
+    /**
+     * Mean number of requests per second since the metrics were started or last reset
+     */
+    private final double requestsPerSecond;
+
+    private final double meanMillis;
+    private final double p50Millis;
+    private final double p90Millis;
+    private final double p99Millis;
+    private final double p999Millis;
+    private final double maxMillis;
+
+    @ConstructorProperties({"name", "requests", "errors", "requestsPerSecond", "meanMillis", "p50Millis", "p90Millis", "p99Millis", "p999Millis", "maxMillis"})
+    public ChannelMetrics(String name, long requests, long errors, double requestsPerSecond, double meanMillis, double p50Millis, double p90Millis, double p99Millis, double p999Millis, double maxMillis) {
+        this.name = name;
+        this.requests = requests;
+        this.errors = errors;
+        this.requestsPerSecond = requestsPerSecond;
+        this.meanMillis = meanMillis;
+        this.p50Millis = p50Millis;
+        this.p90Millis = p90Millis;
+        this.p99Millis = p99Millis;
+        this.p999Millis = p999Millis;
+        this.maxMillis = maxMillis;
+    }
+}
@@ -0,0 +1,195 @@
+/**
+ * @file
+ * @brief Lock free histogram of request latencies.
+ */
+package edu.stanford.slac.aida.client;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Lock free histogram of latencies in nanoseconds with log-linear buckets, in the style of
+ * HdrHistogram.
+ * <p>
+ * Each power of two range of values is split into 32 equal buckets, so any recorded value is
+ * reported to within about 3% whatever its magnitude.  Values from 0 up to about 73 minutes are
+ * held in a fixed array of 1216 counters, and larger values are counted in the last bucket.
+ * <p>
+ * The counters are striped across threads like a {@link StripedCounter}, so that threads recording
+ * similar latencies at the same time do not contend for the same counters.  Each stripe is a separate
+ * array of counters, only created when a thread first records in it, and snapshots sum the stripes.
+ * Recording a value is one bucket index calculation and one atomic increment in the thread's stripe.
+ */
+class LatencyHistogram {
+    /**
+     * Number of bits used to split each power of two range
+     */
+    private static final int SUB_BUCKET_BITS = 5;
+    private static final int SUB_BUCKET_COUNT = 1 << SUB_BUCKET_BITS;
+
+    /**
+     * Number of bits in the largest value held exactly
+     */
+    private static final int VALUE_BITS = 42;
+    private static final long MAX_VALUE = (1L << VALUE_BITS) - 1;
+
+    static final int BUCKET_COUNT = (VALUE_BITS - SUB_BUCKET_BITS + 1) * SUB_BUCKET_COUNT;
+
+    /**
+     * The bucket counters of each stripe, null until a thread records in the stripe
+     */
+    private final AtomicReferenceArray<AtomicLongArray> stripes = new AtomicReferenceArray<AtomicLongArray>(StripedCounter.STRIPES);
+    private final StripedCounter total = new StripedCounter();
+    private final AtomicLong max = new AtomicLong();
+
+    /**
+     * Record a latency
+     *
+     * @param nanos the latency in nanoseconds.  Negative values are recorded as zero
+     */
+    void record(long nanos) {
+        long value = nanos < 0 ? 0 : nanos;
+        counts(StripedCounter.stripe()).incrementAndGet(bucketOf(value));
+        total.add(value);
+
+        long currentMax = max.get();
+        while (value > currentMax && !max.compareAndSet(currentMax, value)) {
+            currentMax = max.get();
+        }
+    }
+
+    /**
+     * Clear all recorded values.  Values recorded while clearing may be lost
+     */
+    void reset() {
+        for (int stripe = 0; stripe < StripedCounter.STRIPES; stripe++) {
+            AtomicLongArray counts = stripes.get(stripe);
+            if (counts != null) {
+                for (int i = 0; i < BUCKET_COUNT; i++) {
+                    counts.set(i, 0);
+                }
+            }
+        }
+        total.reset();
+        max.set(0);
+    }
+
+    /**
+     * Take a copy of the recorded values
+     *
+     * @return the snapshot
+     */
+    Snapshot snapshot() {
+        long[] copy = new long[BUCKET_COUNT];
+        long count = 0;
+        for (int stripe = 0; stripe < StripedCounter.STRIPES; stripe++) {
+            AtomicLongArray counts = stripes.get(stripe);
+            if (counts != null) {
+                for (int i = 0; i < BUCKET_COUNT; i++) {
+                    long n = counts.get(i);
+                    copy[i] += n;
+                    count += n;
+                }
+            }
+        }
+        return new Snapshot(copy, count, total.sum(), max.get());
+    }
+
+    /**
+     * Get the bucket counters of a stripe, creating them if this is the first value recorded in it
+     *
+     * @param stripe the stripe
+     * @return the bucket counters
+     */
+    private AtomicLongArray counts(int stripe) {
+        AtomicLongArray counts = stripes.get(stripe);
+        if (counts == null) {
+            stripes.compareAndSet(stripe, null, new AtomicLongArray(BUCKET_COUNT));
+            counts = stripes.get(stripe);
+        }
+        return counts;
+    }
+
+    /**
+     * Get the bucket a value is counted in
+     *
+     * @param value the value, not negative
+     * @return the bucket index
+     */
+    static int bucketOf(long value) {
+        if (value < SUB_BUCKET_COUNT) {
+            return (int) value;
+        }
+        if (value > MAX_VALUE) {
+            return BUCKET_COUNT - 1;
+        }
+        int shift = (63 - Long.numberOfLeadingZeros(value)) - SUB_BUCKET_BITS;
+        return (shift + 1) * SUB_BUCKET_COUNT + (int) (value >>> shift) - SUB_BUCKET_COUNT;
+    }
+
+    /**
+     * Get the largest value counted in a bucket
+     *
+     * @param bucket the bucket index
+     * @return the largest value that is counted in the bucket
+     */
+    static long highestValueIn(int bucket) {
+        if (bucket < SUB_BUCKET_COUNT) {
+            return bucket;
+        }
+        int shift = bucket / SUB_BUCKET_COUNT - 1;
+        long subBucket = bucket % SUB_BUCKET_COUNT + SUB_BUCKET_COUNT;
+        return ((subBucket + 1) << shift) - 1;
+    }
+
+    /**
+     * A copy of the values recorded in a histogram at one time
+     */
+    static class Snapshot {
+        private final long[] counts;
+        final long count;
+        final long total;
+        final long max;
+
+        private Snapshot(long[] counts, long count, long total, long max) {
+            this.counts = counts;
+            this.count = count;
+            this.total = total;
+            this.max = max;
+        }
+
+        /**
+         * Get the mean of the recorded values
+         *
+         * @return the mean in nanoseconds, or 0 if nothing was recorded
+         */
+        double mean() {
+            return count == 0 ? 0 : (double) total / count;
+        }
+
+        /**
+         * Get the value at or below which the given percentage of recorded values lie
+         *
+         * @param percentile the percentage, from 0 to 100
+         * @return the value in nanoseconds, to within the bucket precision, or 0 if nothing was recorded
+         */
+        long valueAtPercentile(double percentile) {
+            if (count == 0) {
+                return 0;
+            }
+            long rank = (long) Math.ceil(Math.min(Math.max(percentile, 0.0), 100.0) / 100.0 * count);
+            if (rank < 1) {
+                rank = 1;
+            }
+            long seen = 0;
+            for (int i = 0; i < counts.length; i++) {
+                seen += counts[i];
+                if (seen >= rank) {
+                    return Math.min(highestValueIn(i), max);
+                }
+            }
+            return max;
+        }
+    }
+}
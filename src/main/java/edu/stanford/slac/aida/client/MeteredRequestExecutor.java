@@ -0,0 +1,35 @@
+/**
+ * @file
+ * @brief Request executor that records metrics for the requests it makes.
+ */
+package edu.stanford.slac.aida.client;
+
+import org.epics.pvaccess.server.rpc.RPCRequestException;
+import org.epics.pvdata.pv.PVStructure;
+
+/**
+ * Request executor that passes requests to another executor and records the latency and outcome of
+ * each one in {@link AidaMetrics}.
+ */
+class MeteredRequestExecutor implements PvaRequestExecutor {
+    private final PvaRequestExecutor executor;
+    private final AidaMetrics metrics;
+
+    MeteredRequestExecutor(PvaRequestExecutor executor, AidaMetrics metrics) {
+        this.executor = executor;
+        this.metrics = metrics;
+    }
+
+    @Override
+    public PVStructure executeRequest(String channelName, PVStructure request, Double timeout) throws RPCRequestException {
+        long start = System.nanoTime();
+        boolean failed = true;
+        try {
+            PVStructure result = executor.executeRequest(channelName, request, timeout);
+            failed = false;
+            return result;
+        } finally {
+            metrics.record(channelName, System.nanoTime() - start, failed);
+        }
+    }
+}
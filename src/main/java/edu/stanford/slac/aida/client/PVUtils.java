@@ -6,15 +6,23 @@ package edu.stanford.slac.aida.client;
 
 import edu.stanford.slac.aida.client.compat.AidaBiConsumer;
 import edu.stanford.slac.aida.client.compat.AidaConsumer;
+import org.epics.pvaccess.server.rpc.RPCRequestException;
 import org.epics.pvdata.pv.*;
 
-import static edu.stanford.slac.aida.client.ArrayConsumer.consumeArray;
+import java.nio.DoubleBuffer;
+import java.util.Arrays;
+
+import static org.epics.pvdata.pv.Status.StatusType.ERROR;
 
 
 /**
  * @brief Utilities to manipulate PVField.
  */
 public class PVUtils {
+    /**
+     * Number of elements decoded at a time when iterating over an array
+     */
+    private static final int LOOP_CHUNK_SIZE = 1024;
 
     /**
      * Internal: An iterator to iterate over PVArrays.  You can provide a consumer of the items to carry out
@@ -41,7 +49,8 @@ public class PVUtils {
     /**
      * Internal: Sometimes you want to process an array but have an index counter automatically maintained for
      * you so that you can know which element you're processing.  For that you'll use the
-     * array loop.
+     * array loop.  Elements are decoded a chunk at a time into a reused buffer, so iterating over a large array
+     * does not hold all of its elements decoded at once.
      * <p>
      * e.g.
      * <pre>{@code
@@ -54,313 +63,99 @@ public class PVUtils {
      *                 The consumer signature
      */
     static <T extends PVScalarArray> void arrayLoop(T array, final AidaBiConsumer<Object, Integer> consumer) {
-        if (array instanceof PVBooleanArray) {
-            booleanArrayLoop((PVBooleanArray) array, new AidaBiConsumer<Boolean, Integer>() {
-                @Override
-                public void accept(Boolean s, Integer i) {
-                    consumer.accept(s, i);
-                }
-            });
-        } else if (array instanceof PVShortArray) {
-            shortArrayLoop((PVShortArray) array, new AidaBiConsumer<Short, Integer>() {
-                @Override
-                public void accept(Short s, Integer i) {
-                    consumer.accept(s, i);
-                }
-            });
-        } else if (array instanceof PVIntArray) {
-            integerArrayLoop((PVIntArray) array, new AidaBiConsumer<Integer, Integer>() {
-                @Override
-                public void accept(Integer s, Integer i) {
-                    consumer.accept(s, i);
-                }
-            });
-        } else if (array instanceof PVLongArray) {
-            longArrayLoop((PVLongArray) array, new AidaBiConsumer<Long, Integer>() {
-                @Override
-                public void accept(Long s, Integer i) {
-                    consumer.accept(s, i);
-                }
-            });
-        } else if (array instanceof PVFloatArray) {
-            floatArrayLoop((PVFloatArray) array, new AidaBiConsumer<Float, Integer>() {
-                @Override
-                public void accept(Float s, Integer i) {
-                    consumer.accept(s, i);
-                }
-            });
-        } else if (array instanceof PVDoubleArray) {
-            doubleArrayLoop((PVDoubleArray) array, new AidaBiConsumer<Double, Integer>() {
-                @Override
-                public void accept(Double s, Integer i) {
-                    consumer.accept(s, i);
-                }
-            });
-        } else if (array instanceof PVStringArray) {
-            stringArrayLoop((PVStringArray) array, new AidaBiConsumer<String, Integer>() {
-                @Override
-                public void accept(String s, Integer i) {
-                    consumer.accept(s, i);
-                }
-            });
-        } else if (array instanceof PVByteArray) {
-            byteArrayLoop((PVByteArray) array, new AidaBiConsumer<Byte, Integer>() {
-                @Override
-                public void accept(Byte s, Integer i) {
-                    consumer.accept(s, i);
-                }
-            });
+        if (array == null) {
+            return;
         }
-    }
-
-    /**
-     * Internal: An iterator to iterate over PVBooleanArray.  You can provide a consumer of the items to carry out
-     * any action you want on the array elements.
-     *
-     * @param array    the pv boolean array
-     * @param consumer the consumer function you provide to process the elements.
-     *                 The consumer signature
-     *                 <pre>@{code aidaBiConsumer(Object o, Integer i); }</pre>
-     */
-    static void booleanArrayLoop(PVBooleanArray array, AidaBiConsumer<Boolean, Integer> consumer) {
-        consumeArray(array, new ArrayConsumer<PVBooleanArray, BooleanArrayData, Boolean>(consumer) {
-            @Override
-            public BooleanArrayData create() {
-                return new BooleanArrayData();
-            }
-
-            @Override
-            protected Boolean get(BooleanArrayData data, int i) {
-                return data.data[i];
-            }
-
-            @Override
-            public int get(PVBooleanArray array, int offset, int length, BooleanArrayData data) {
-                return array.get(offset, (length - offset), data);
-            }
-        });
-    }
-
-    /**
-     * Internal: An iterator to iterate over PVStringArray.  You can provide a consumer of the items to carry out
-     * any action you want on the array elements.
-     *
-     * @param array    the pv string array
-     * @param consumer the consumer function you provide to process the elements.
-     *                 The consumer signature
-     *                 <pre>@{code aidaBiConsumer(Object o, Integer i); }</pre>
-     */
-    static void stringArrayLoop(PVStringArray array, AidaBiConsumer<String, Integer> consumer) {
-        consumeArray(array, new ArrayConsumer<PVStringArray, StringArrayData, String>(consumer) {
-            @Override
-            public StringArrayData create() {
-                return new StringArrayData();
-            }
-
-            @Override
-            protected String get(StringArrayData data, int i) {
-                return data.data[i];
-            }
-
-            @Override
-            public int get(PVStringArray array, int offset, int length, StringArrayData data) {
-                return array.get(offset, (length - offset), data);
-            }
-        });
-    }
-
-    /**
-     * Internal: An iterator to iterate over PVDoubleArray.  You can provide a consumer of the items to carry out
-     * any action you want on the array elements.
-     *
-     * @param array    the pv double array
-     * @param consumer the consumer function you provide to process the elements.
-     *                 The consumer signature
-     *                 <pre>@{code aidaBiConsumer(Object o, Integer i); }</pre>
-     */
-    static void doubleArrayLoop(PVDoubleArray array, AidaBiConsumer<Double, Integer> consumer) {
-        consumeArray(array, new ArrayConsumer<PVDoubleArray, DoubleArrayData, Double>(consumer) {
-            @Override
-            public DoubleArrayData create() {
-                return new DoubleArrayData();
-            }
-
-            @Override
-            protected Double get(DoubleArrayData data, int i) {
-                return data.data[i];
-            }
-
-            @Override
-            public int get(PVDoubleArray array, int offset, int length, DoubleArrayData data) {
-                return array.get(offset, (length - offset), data);
-            }
-        });
-    }
-
-    /**
-     * Internal: An iterator to iterate over PVFloatArray.  You can provide a consumer of the items to carry out
-     * any action you want on the array elements.
-     *
-     * @param array    the pv float array
-     * @param consumer the consumer function you provide to process the elements.
-     *                 The consumer signature
-     *                 <pre>@{code aidaBiConsumer(Object o, Integer i); }</pre>
-     */
-    static void floatArrayLoop(PVFloatArray array, AidaBiConsumer<Float, Integer> consumer) {
-        consumeArray(array, new ArrayConsumer<PVFloatArray, FloatArrayData, Float>(consumer) {
-            @Override
-            public FloatArrayData create() {
-                return new FloatArrayData();
-            }
-
-            @Override
-            protected Float get(FloatArrayData data, int i) {
-                return data.data[i];
-            }
-
-            @Override
-            public int get(PVFloatArray array, int offset, int length, FloatArrayData data) {
-                return array.get(offset, (length - offset), data);
+        int length = array.getLength();
+        AidaCodec codec = AidaCodecs.forScalarType(array.getScalarArray().getElementType());
+        Object[] chunk = new Object[Math.min(length, LOOP_CHUNK_SIZE)];
+        for (int from = 0; from < length; from += chunk.length) {
+            int n = Math.min(chunk.length, length - from);
+            Arrays.fill(chunk, null);
+            TableDecoder.decodeRange(array, codec, chunk, from, from + n, 0);
+            for (int i = 0; i < n; i++) {
+                consumer.accept(chunk[i], from + i);
             }
-        });
-    }
-
-    /**
-     * Internal: An iterator to iterate over PVLongArray.  You can provide a consumer of the items to carry out
-     * any action you want on the array elements.
-     *
-     * @param array    the pv lon array
-     * @param consumer the consumer function you provide to process the elements.
-     *                 The consumer signature
-     *                 <pre>@{code aidaBiConsumer(Object o, Integer i); }</pre>
-     */
-    static void longArrayLoop(PVLongArray array, AidaBiConsumer<Long, Integer> consumer) {
-        consumeArray(array, new ArrayConsumer<PVLongArray, LongArrayData, Long>(consumer) {
-            @Override
-            public LongArrayData create() {
-                return new LongArrayData();
-            }
-
-            @Override
-            protected Long get(LongArrayData data, int i) {
-                return data.data[i];
-            }
-
-            @Override
-            public int get(PVLongArray array, int offset, int length, LongArrayData data) {
-                return array.get(offset, (length - offset), data);
-            }
-        });
+        }
     }
 
     /**
-     * Internal: An iterator to iterate over PVIntArray.  You can provide a consumer of the items to carry out
-     * any action you want on the array elements.
+     * Internal: Get a value from the given PVField using the codec for its scalar type
      *
-     * @param array    the pv integer array
-     * @param consumer the consumer function you provide to process the elements.
-     *                 The consumer signature
-     *                 <pre>@{code aidaBiConsumer(Object o, Integer i); }</pre>
+     * @param value the value to extract
+     * @return the extracted value
      */
-    static void integerArrayLoop(PVIntArray array, AidaBiConsumer<Integer, Integer> consumer) {
-        consumeArray(array, new ArrayConsumer<PVIntArray, IntArrayData, Integer>(consumer) {
-            @Override
-            public IntArrayData create() {
-                return new IntArrayData();
-            }
-
-            @Override
-            protected Integer get(IntArrayData data, int i) {
-                return data.data[i];
-            }
-
-            @Override
-            public int get(PVIntArray array, int offset, int length, IntArrayData data) {
-                return array.get(offset, (length - offset), data);
-            }
-        });
+    static Object extractScalarValue(PVField value) {
+        if (!(value instanceof PVScalar)) {
+            return null;
+        }
+        PVScalar scalar = (PVScalar) value;
+        AidaCodec codec = AidaCodecs.forScalarType(scalar.getScalar().getScalarType());
+        return codec == null ? null : codec.decode(scalar);
     }
 
     /**
-     * Internal: An iterator to iterate over PVShortArray.  You can provide a consumer of the items to carry out
-     * any action you want on the array elements.
+     * Internal: Copy a double or float array into the given array, starting at @p offset.
+     * The elements are copied straight out of the ArrayData buffer without boxing.
      *
-     * @param array    the pv short array
-     * @param consumer the consumer function you provide to process the elements.
-     *                 The consumer signature
-     *                 <pre>@{code aidaBiConsumer(Object o, Integer i); }</pre>
+     * @param array       the double or float array
+     * @param destination the array to copy into
+     * @param offset      the position in the destination of the first element
+     * @return the number of elements copied
+     * @throws RPCRequestException      if the array is not a double or float array
+     * @throws IllegalArgumentException if the array does not fit in the destination
      */
-    static void shortArrayLoop(PVShortArray array, AidaBiConsumer<Short, Integer> consumer) {
-        consumeArray(array, new ArrayConsumer<PVShortArray, ShortArrayData, Short>(consumer) {
-            @Override
-            public ShortArrayData create() {
-                return new ShortArrayData();
-            }
-
-            @Override
-            protected Short get(ShortArrayData data, int i) {
-                return data.data[i];
-            }
-
-            @Override
-            public int get(PVShortArray array, int offset, int length, ShortArrayData data) {
-                return array.get(offset, (length - offset), data);
+    static int copyInto(PVScalarArray array, double[] destination, int offset) throws RPCRequestException {
+        int length = array.getLength();
+        if (offset < 0 || offset > destination.length - length) {
+            throw new IllegalArgumentException("Result of " + length + " elements does not fit in an array of length " + destination.length + " at offset " + offset);
+        }
+        if (array instanceof PVDoubleArray) {
+            DoubleArrayData data = new DoubleArrayData();
+            int n = ((PVDoubleArray) array).get(0, length, data);
+            System.arraycopy(data.data, data.offset, destination, offset, n);
+            return n;
+        } else if (array instanceof PVFloatArray) {
+            FloatArrayData data = new FloatArrayData();
+            int n = ((PVFloatArray) array).get(0, length, data);
+            float[] source = data.data;
+            for (int i = 0, j = data.offset; i < n; i++, j++) {
+                destination[offset + i] = source[j];
             }
-        });
+            return n;
+        }
+        throw new RPCRequestException(ERROR, "Expected a double or float array but got: " + array.getScalarArray().getElementType());
     }
 
     /**
-     * Internal: An iterator to iterate over PVByteArray.  You can provide a consumer of the items to carry out
-     * any action you want on the array elements.
+     * Internal: Copy a double or float array into the given buffer at its current position,
+     * advancing the position past the copied elements
      *
-     * @param array    the pv byte array
-     * @param consumer the consumer function you provide to process the elements.
-     *                 The consumer signature
-     *                 <pre>@{code aidaBiConsumer(Object o, Integer i); }</pre>
+     * @param array       the double or float array
+     * @param destination the buffer to copy into
+     * @return the number of elements copied
+     * @throws RPCRequestException      if the array is not a double or float array
+     * @throws IllegalArgumentException if the array does not fit in the remaining space in the buffer
      */
-    static void byteArrayLoop(PVByteArray array, AidaBiConsumer<Byte, Integer> consumer) {
-        consumeArray(array, new ArrayConsumer<PVByteArray, ByteArrayData, Byte>(consumer) {
-            @Override
-            public ByteArrayData create() {
-                return new ByteArrayData();
-            }
-
-            @Override
-            protected Byte get(ByteArrayData data, int i) {
-                return data.data[i];
-            }
-
-            @Override
-            public int get(PVByteArray array, int offset, int length, ByteArrayData data) {
-                return array.get(offset, (length - offset), data);
+    static int copyInto(PVScalarArray array, DoubleBuffer destination) throws RPCRequestException {
+        int length = array.getLength();
+        if (length > destination.remaining()) {
+            throw new IllegalArgumentException("Result of " + length + " elements does not fit in a buffer with " + destination.remaining() + " elements remaining");
+        }
+        if (array instanceof PVDoubleArray) {
+            DoubleArrayData data = new DoubleArrayData();
+            int n = ((PVDoubleArray) array).get(0, length, data);
+            destination.put(data.data, data.offset, n);
+            return n;
+        } else if (array instanceof PVFloatArray) {
+            FloatArrayData data = new FloatArrayData();
+            int n = ((PVFloatArray) array).get(0, length, data);
+            float[] source = data.data;
+            for (int i = 0, j = data.offset; i < n; i++, j++) {
+                destination.put(source[j]);
             }
-        });
-    }
-
-    /**
-     * Internal: Get a value from the given PVField by using the PVField class provided as the determinant
-     *
-     * @param value the value to extract
-     * @return the extracted value
-     */
-    static Object extractScalarValue(PVField value) {
-        if (value instanceof PVBoolean) {
-            return ((PVBoolean) value).get();
-        } else if (value instanceof PVShort) {
-            return ((PVShort) value).get();
-        } else if (value instanceof PVInt) {
-            return ((PVInt) value).get();
-        } else if (value instanceof PVLong) {
-            return ((PVLong) value).get();
-        } else if (value instanceof PVFloat) {
-            return ((PVFloat) value).get();
-        } else if (value instanceof PVDouble) {
-            return ((PVDouble) value).get();
-        } else if (value instanceof PVString) {
-            return ((PVString) value).get();
-        } else if (value instanceof PVByte) {
-            return ((PVByte) value).get();
+            return n;
         }
-        return null;
+        throw new RPCRequestException(ERROR, "Expected a double or float array but got: " + array.getScalarArray().getElementType());
     }
 }
@@ -0,0 +1,97 @@
+/**
+ * @file
+ * @brief Shared pool for splitting client side work across processors.
+ */
+package edu.stanford.slac.aida.client;
+
+import java.util.List;
+import java.util.concurrent.*;
+import java.util.logging.Logger;
+
+/**
+ * Shared pool of daemon threads used to split large client side jobs, like decoding or querying
+ * big tables, into tasks that run across all processors.
+ * <p>
+ * The size at which jobs are split can be set with the `aida.pva.client.table.parallel.threshold` property
+ * or the `AIDA_PVA_CLIENT_TABLE_PARALLEL_THRESHOLD` environment variable.  It is measured in table cells
+ * (rows x columns).
+ */
+class ParallelTasks {
+    private static final Logger logger = Logger.getLogger(ParallelTasks.class.getName());
+
+    /**
+     * Number of cells below which work is always done on the calling thread
+     */
+    static final int DEFAULT_PARALLEL_THRESHOLD = 200000;
+
+    /**
+     * Number of rows handled by each task when work is split into row ranges
+     */
+    static final int ROW_CHUNK_SIZE = 65536;
+
+    /**
+     * The configured parallel threshold
+     */
+    static final int parallelThreshold;
+
+    static {
+        String threshold = System.getProperty("aida.pva.client.table.parallel.threshold");
+
+        // Override with the environment variable if it is set
+        String thresholdEnv = System.getenv("AIDA_PVA_CLIENT_TABLE_PARALLEL_THRESHOLD");
+        if (thresholdEnv != null) {
+            threshold = thresholdEnv;
+        }
+
+        int configuredThreshold = DEFAULT_PARALLEL_THRESHOLD;
+        if (threshold != null) {
+            try {
+                configuredThreshold = Integer.parseInt(threshold.trim());
+                logger.info("Table parallel threshold: " + configuredThreshold);
+            } catch (NumberFormatException e) {
+                logger.warning("Ignoring invalid table parallel threshold: " + threshold);
+            }
+        }
+        parallelThreshold = configuredThreshold;
+    }
+
+    /**
+     * Holder for the thread pool so that it is only created when it is first needed
+     */
+    private static class PoolHolder {
+        private static final ExecutorService pool = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors(), new ThreadFactory() {
+            private int count = 0;
+
+            @Override
+            public synchronized Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, "aida-pva-parallel-" + (++count));
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+    }
+
+    /**
+     * Should a job of the given size be split across the pool
+     *
+     * @param cells     the size of the job in table cells
+     * @param threshold the threshold to compare against
+     * @return true if the job should be run in parallel
+     */
+    static boolean isParallel(long cells, int threshold) {
+        return cells >= threshold && Runtime.getRuntime().availableProcessors() > 1;
+    }
+
+    /**
+     * Run all the given tasks on the pool and wait for them to complete
+     *
+     * @param tasks the tasks to run
+     * @throws InterruptedException if interrupted while waiting
+     * @throws ExecutionException   if any task failed
+     */
+    static <T> void invokeAll(List<? extends Callable<T>> tasks) throws InterruptedException, ExecutionException {
+        for (Future<T> future : PoolHolder.pool.invokeAll(tasks)) {
+            future.get();
+        }
+    }
+}
@@ -0,0 +1,54 @@
+/**
+ * @file
+ * @brief Source of pushed updates for AIDA-PVA monitor subscriptions.
+ */
+package edu.stanford.slac.aida.client;
+
+import org.epics.pvaccess.server.rpc.RPCRequestException;
+import org.epics.pvdata.pv.PVStructure;
+
+/**
+ * Source of the updates that a server pushes for a channel, used by {@link AidaMonitors} as
+ * {@link PvaRequestExecutor} is used for requests.  The default is a pvAccess monitor made with PvaClient.
+ */
+public interface PvaMonitorProvider {
+    /**
+     * Start monitoring a channel
+     *
+     * @param channelName the channel
+     * @param updates     where to send the updates.  The structure given to it may be reused for the next
+     *                    update once it returns
+     * @return the monitor, to stop it
+     * @throws RPCRequestException if the channel can't be monitored
+     */
+    Monitor monitor(String channelName, Updates updates) throws RPCRequestException;
+
+    /**
+     * Receives the updates of a monitored channel
+     */
+    interface Updates {
+        /**
+         * Called with each update
+         *
+         * @param structure the channel's new value
+         */
+        void update(PVStructure structure);
+
+        /**
+         * Called if the monitor fails
+         *
+         * @param e the error
+         */
+        void failed(RPCRequestException e);
+    }
+
+    /**
+     * A running monitor
+     */
+    interface Monitor {
+        /**
+         * Stop the monitor
+         */
+        void stop();
+    }
+}
@@ -2,8 +2,13 @@ package edu.stanford.slac.aida.client;
 
 import lombok.ToString;
 
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 @ToString
 public class PvaTable {
@@ -12,8 +17,31 @@ public class PvaTable {
     public final String[] fieldNames;
     public final String[] descriptions;
     public final String[] units;
+
+    /**
+     * The columns, by field name.  The map can't be modified, and nor must the column arrays, as the primitive
+     * views, dictionaries and indexes derived from them are cached with the table
+     */
     public final Map<String, Object[]> values;
 
+    /**
+     * Numeric columns converted to primitive doubles.  Each is created the first time it is needed
+     */
+    @ToString.Exclude
+    private final Map<String, double[]> doubleColumns = new ConcurrentHashMap<String, double[]>();
+
+    /**
+     * Dictionary encodings of string columns
+     */
+    @ToString.Exclude
+    private final Map<String, StringDictionary> dictionaries = new ConcurrentHashMap<String, StringDictionary>();
+
+    /**
+     * Indexes on key columns.  Each is created the first time it is needed
+     */
+    @ToString.Exclude
+    private final ConcurrentMap<List<String>, PvaTableIndex> indexes = new ConcurrentHashMap<List<String>, PvaTableIndex>();
+
     /**
      * Constructor for PvaTable
      *
@@ -26,7 +54,7 @@ public class PvaTable {
         this.labels = labels;
         this.units = units;
         this.descriptions = descriptions;
-        this.values = values;
+        this.values = Collections.unmodifiableMap(values);
         this.fieldNames = values.keySet().toArray(new String[0]);
         Set<Map.Entry<String, Object[]>> entrySet = values.entrySet();
         if (!entrySet.isEmpty()) {
@@ -66,4 +94,195 @@ public class PvaTable {
     public Object[] get(String vector) {
         return this.values.get(vector);
     }
+
+    /**
+     * Get the specified numeric vector as an array of primitive doubles.  Booleans are
+     * returned as 1.0 or 0.0 and missing values as NaN.  The array is created on first use
+     * and shared by all subsequent callers, so it must not be modified.
+     *
+     * @param vector vector to retrieve
+     * @return an array of doubles
+     * @throws IllegalArgumentException if the vector does not exist or is not numeric
+     */
+    public double[] getDoubles(String vector) {
+        double[] doubles = doubleColumns.get(vector);
+        if (doubles == null) {
+            Object[] column = column(vector);
+            if (!isNumeric(vector)) {
+                throw new IllegalArgumentException("Not a numeric column: " + vector);
+            }
+            doubles = new double[column.length];
+            for (int i = 0; i < column.length; i++) {
+                Object value = column[i];
+                if (value instanceof Number) {
+                    doubles[i] = ((Number) value).doubleValue();
+                } else if (value instanceof Boolean) {
+                    doubles[i] = (Boolean) value ? 1.0 : 0.0;
+                } else {
+                    doubles[i] = Double.NaN;
+                }
+            }
+            doubleColumns.put(vector, doubles);
+        }
+        return doubles;
+    }
+
+    /**
+     * Get the dictionary codes of the specified string vector.  The value of row i is
+     * `getDictionary(vector)[getCodes(vector)[i]]`.  The array is shared so it must not be modified.
+     *
+     * @param vector vector to retrieve
+     * @return the code of each row, or null if the vector is not dictionary encoded
+     */
+    public int[] getCodes(String vector) {
+        StringDictionary dictionary = dictionaries.get(vector);
+        return dictionary == null ? null : dictionary.codes;
+    }
+
+    /**
+     * Get the dictionary of distinct values of the specified string vector, in order of first
+     * appearance.  The array is shared so it must not be modified.
+     *
+     * @param vector vector to retrieve
+     * @return the distinct values, or null if the vector is not dictionary encoded
+     */
+    public String[] getDictionary(String vector) {
+        StringDictionary dictionary = dictionaries.get(vector);
+        return dictionary == null ? null : dictionary.values;
+    }
+
+    /**
+     * Is the specified vector numeric.  Boolean vectors are considered numeric, and so are vectors with no
+     * rows, but vectors whose values are all missing are not
+     *
+     * @param vector vector to check
+     * @return true if the vector holds numbers or booleans
+     * @throws IllegalArgumentException if the vector does not exist
+     */
+    public boolean isNumeric(String vector) {
+        if (doubleColumns.containsKey(vector)) {
+            return true;
+        }
+        Object[] column = column(vector);
+        for (Object value : column) {
+            if (value != null) {
+                return value instanceof Number || value instanceof Boolean;
+            }
+        }
+        return column.length == 0;
+    }
+
+    /**
+     * Start a query over the rows of this table.
+     * <p>
+     * e.g.
+     * <pre>{@code
+     *      PvaTable good = table.query()
+     *          .whereEquals("stat", 1)
+     *          .orderBy("z")
+     *          .select("name", "x", "y")
+     *          .execute();
+     * }</pre>
+     *
+     * @return a new query on this table
+     */
+    public PvaTableQuery query() {
+        return new PvaTableQuery(this);
+    }
+
+    /**
+     * Get a hash index on the given key columns.  The index is built on first use and cached
+     * with this table so later calls with the same columns return the same index.
+     * <p>
+     * e.g.
+     * <pre>{@code
+     *      Object x = table.index("name").get("BPMS:LI21:201", "x");
+     * }</pre>
+     *
+     * @param keyColumns the columns that make up the key
+     * @return the index
+     * @throws IllegalArgumentException if a key column does not exist
+     */
+    public PvaTableIndex index(String... keyColumns) {
+        List<String> key = Arrays.asList(keyColumns.clone());
+        PvaTableIndex index = indexes.get(key);
+        if (index == null) {
+            index = new PvaTableIndex(this, keyColumns);
+            PvaTableIndex existing = indexes.putIfAbsent(key, index);
+            if (existing != null) {
+                index = existing;
+            }
+        }
+        return index;
+    }
+
+    /**
+     * Internal: Get the specified vector or fail if it does not exist
+     *
+     * @param vector vector to retrieve
+     * @return an array
+     * @throws IllegalArgumentException if the vector does not exist
+     */
+    Object[] column(String vector) {
+        Object[] column = this.values.get(vector);
+        if (column == null) {
+            throw new IllegalArgumentException("No such column: " + vector);
+        }
+        return column;
+    }
+
+    /**
+     * Internal: Get the primitive double view of the specified vector if it has already been created
+     *
+     * @param vector vector to retrieve
+     * @return an array of doubles or null
+     */
+    double[] cachedDoubles(String vector) {
+        return doubleColumns.get(vector);
+    }
+
+    /**
+     * Internal: Set the primitive double view of the specified vector
+     *
+     * @param vector  vector to set
+     * @param doubles the values of the vector as doubles
+     */
+    void cacheDoubles(String vector, double[] doubles) {
+        doubleColumns.put(vector, doubles);
+    }
+
+    /**
+     * Internal: Get the dictionary encoding of the specified vector
+     *
+     * @param vector vector to retrieve
+     * @return the dictionary encoding or null
+     */
+    StringDictionary cachedDictionary(String vector) {
+        return dictionaries.get(vector);
+    }
+
+    /**
+     * Internal: Set the dictionary encoding of the specified vector
+     *
+     * @param vector     vector to set
+     * @param dictionary the dictionary encoding of the vector
+     */
+    void cacheDictionary(String vector, StringDictionary dictionary) {
+        dictionaries.put(vector, dictionary);
+    }
+
+    /**
+     * Internal: Get the position of the specified vector in the table
+     *
+     * @param vector vector to find
+     * @return the position of the vector or -1 if it does not exist
+     */
+    int columnIndex(String vector) {
+        for (int i = 0; i < fieldNames.length; i++) {
+            if (fieldNames[i].equals(vector)) {
+                return i;
+            }
+        }
+        return -1;
+    }
 }
@@ -0,0 +1,202 @@
+/**
+ * @file
+ * @brief Hash index for constant time row lookup on PvaTable key columns.
+ */
+package edu.stanford.slac.aida.client;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * A hash index on one or more key columns of a PvaTable.
+ * <p>
+ * Get an index by calling {@link PvaTable#index(String...)}.  The index is built the first time it is
+ * requested and is then cached with the table, so looking up many devices costs one pass over the
+ * table plus one hash lookup per device.
+ * <p>
+ * e.g.
+ * <pre>{@code
+ *      PvaTableIndex byName = table.index("name");
+ *      for (String device : devices) {
+ *          Object x = byName.get(device, "x");
+ *          ...
+ *      }
+ *
+ *      int row = table.index("name", "pulseId").rowOf("BPMS:LI11:501", 71313);
+ * }</pre>
+ * <p>
+ * Numeric keys are matched by value, so an int key finds a row in a short column.  When more than
+ * one row has the same key, {@link #rowOf(Object...)} returns the first and {@link #rowsOf(Object...)}
+ * returns them all in table order.
+ */
+public class PvaTableIndex {
+    private final PvaTable table;
+    private final String[] keyColumns;
+    private final boolean[] numeric;
+
+    /**
+     * First row for each key
+     */
+    private final Map<Object, Integer> firstRow;
+
+    /**
+     * Next row with the same key as each row, or -1
+     */
+    private final int[] nextRow;
+
+    /**
+     * Internal: Build an index.  Use {@link PvaTable#index(String...)}
+     *
+     * @param table      the table to index
+     * @param keyColumns the key columns
+     * @throws IllegalArgumentException if a key column does not exist
+     */
+    PvaTableIndex(PvaTable table, String... keyColumns) {
+        if (keyColumns.length == 0) {
+            throw new IllegalArgumentException("An index needs at least one key column");
+        }
+        this.table = table;
+        this.keyColumns = keyColumns.clone();
+        this.numeric = new boolean[keyColumns.length];
+
+        Object[][] columns = new Object[keyColumns.length][];
+        for (int k = 0; k < keyColumns.length; k++) {
+            columns[k] = table.column(keyColumns[k]);
+            numeric[k] = table.isNumeric(keyColumns[k]);
+        }
+
+        int size = table.size;
+        this.firstRow = new HashMap<Object, Integer>(Math.max(16, (int) (size / 0.75f) + 1));
+        this.nextRow = new int[size];
+        Arrays.fill(nextRow, -1);
+
+        // Walk backwards so that each key ends up pointing at its first row
+        Object[] key = new Object[keyColumns.length];
+        for (int row = size - 1; row >= 0; row--) {
+            for (int k = 0; k < key.length; k++) {
+                key[k] = columns[k][row];
+            }
+            Integer next = firstRow.put(normalize(key), row);
+            if (next != null) {
+                nextRow[row] = next;
+            }
+        }
+    }
+
+    /**
+     * Get the key columns of this index
+     *
+     * @return the key columns
+     */
+    public String[] getKeyColumns() {
+        return keyColumns.clone();
+    }
+
+    /**
+     * Is there a row with the given key
+     *
+     * @param key the key, one value per key column
+     * @return true if there is a row with the given key
+     */
+    public boolean contains(Object... key) {
+        return rowOf(key) >= 0;
+    }
+
+    /**
+     * Get the position of the first row with the given key
+     *
+     * @param key the key, one value per key column
+     * @return the position of the row or -1 if there is none
+     */
+    public int rowOf(Object... key) {
+        Integer row = firstRow.get(normalize(key));
+        return row == null ? -1 : row;
+    }
+
+    /**
+     * Get the positions of all rows with the given key
+     *
+     * @param key the key, one value per key column
+     * @return the positions of the rows in table order
+     */
+    public int[] rowsOf(Object... key) {
+        int row = rowOf(key);
+        int count = 0;
+        for (int r = row; r >= 0; r = nextRow[r]) {
+            count++;
+        }
+        int[] rows = new int[count];
+        for (int r = row, i = 0; r >= 0; r = nextRow[r]) {
+            rows[i++] = r;
+        }
+        return rows;
+    }
+
+    /**
+     * Get the value of a column in the first row with the given single column key
+     *
+     * @param key    the key
+     * @param column the column to get the value from
+     * @return the value, or null if there is no row with the key
+     * @throws IllegalArgumentException if the column does not exist
+     */
+    public Object get(Object key, String column) {
+        return get(new Object[]{key}, column);
+    }
+
+    /**
+     * Get the value of a column in the first row with the given key
+     *
+     * @param key    the key, one value per key column
+     * @param column the column to get the value from
+     * @return the value, or null if there is no row with the key
+     * @throws IllegalArgumentException if the column does not exist
+     */
+    public Object get(Object[] key, String column) {
+        Object[] values = table.column(column);
+        int row = rowOf(key);
+        return row < 0 ? null : values[row];
+    }
+
+    /**
+     * Internal: Get the position of the next row with the same key as the given row
+     *
+     * @param row the position of a row
+     * @return the position of the next row with the same key or -1 if there is none
+     */
+    int nextRowOf(int row) {
+        return nextRow[row];
+    }
+
+    /**
+     * Internal: Turn key values into a hash key.  Numbers are converted to doubles for numeric
+     * key columns so that they match whatever width the column has.
+     *
+     * @param key the key values
+     * @return the hash key
+     * @throws IllegalArgumentException if the number of key values is wrong
+     */
+    private Object normalize(Object[] key) {
+        if (key.length != keyColumns.length) {
+            throw new IllegalArgumentException("Expected " + keyColumns.length + " key values for " + Arrays.toString(keyColumns) + " but got " + key.length);
+        }
+        if (key.length == 1) {
+            return normalize(key[0], numeric[0]);
+        }
+        Object[] normalized = new Object[key.length];
+        for (int k = 0; k < key.length; k++) {
+            normalized[k] = normalize(key[k], numeric[k]);
+        }
+        return Arrays.asList(normalized);
+    }
+
+    private static Object normalize(Object value, boolean numeric) {
+        if (numeric && value instanceof Number) {
+            double d = ((Number) value).doubleValue();
+            // -0.0 and 0.0 must be the same key
+            return d == 0.0 ? 0.0 : d;
+        }
+        return value;
+    }
+}
@@ -0,0 +1,501 @@
+/**
+ * @file
+ * @brief Join and union operators to combine PvaTable results.
+ */
+package edu.stanford.slac.aida.client;
+
+import java.util.*;
+
+/**
+ * Join and union operators to combine PvaTable results, e.g. BPM readings with magnet settings and
+ * klystron status keyed on device name.
+ * <p>
+ * e.g.
+ * <pre>{@code
+ *      PvaTable orbit = PvaTableJoin.hashJoin(bpms, magnets, "name");
+ *      PvaTable status = PvaTableJoin.leftJoin(orbit, klystrons, "name");
+ *
+ *      Map<String, PvaTable> batches = new LinkedHashMap<String, PvaTable>();
+ *      batches.put("LI21:BPMS", pvaRequest("LI21:BPMS").get());
+ *      batches.put("LI22:BPMS", pvaRequest("LI22:BPMS").get());
+ *      PvaTable all = PvaTableJoin.union(batches);
+ * }</pre>
+ * <p>
+ * Results are new columnar tables.  Their cells are shared with the source tables, not copied or
+ * boxed again, and any primitive double views or dictionary encodings in the sources are carried
+ * over.  A joined table has all the columns of the left table followed by the non-key columns of the
+ * right table.  A right column whose name is already taken is renamed with a `_2`, `_3`, ... suffix.
+ * <p>
+ * Rows with a null key value never match.  Numeric keys are matched by value, so an int key column
+ * joins to a short key column.
+ */
+public class PvaTableJoin {
+    /**
+     * Name of the column that {@link #union(Map)} adds to hold the channel each row came from
+     */
+    public static final String SOURCE_COLUMN = "channel";
+
+    private PvaTableJoin() {
+    }
+
+    /**
+     * Inner join of two tables using a hash index on the right table.  The index is cached with the
+     * right table (see {@link PvaTable#index(String...)}) so joining several tables to the same
+     * right table only builds it once.  Rows are in left table order and, for each left row, matching
+     * right rows are in right table order.
+     *
+     * @param left       the left table
+     * @param right      the right table
+     * @param keyColumns the key columns, present in both tables
+     * @return the joined table
+     * @throws IllegalArgumentException if a key column does not exist
+     */
+    public static PvaTable hashJoin(PvaTable left, PvaTable right, String... keyColumns) {
+        return hashJoin(left, right, keyColumns, false);
+    }
+
+    /**
+     * Left outer join of two tables using a hash index on the right table.  Like
+     * {@link #hashJoin(PvaTable, PvaTable, String...)} except that left rows without a matching right
+     * row are kept, with null values (NaN in the primitive double view) in the right columns.
+     *
+     * @param left       the left table
+     * @param right      the right table
+     * @param keyColumns the key columns, present in both tables
+     * @return the joined table
+     * @throws IllegalArgumentException if a key column does not exist
+     */
+    public static PvaTable leftJoin(PvaTable left, PvaTable right, String... keyColumns) {
+        return hashJoin(left, right, keyColumns, true);
+    }
+
+    /**
+     * Inner join of two tables by sorting both on the key columns and merging them.  This does not
+     * build a hash index so use it for large tables that are joined only once.  Rows are in ascending
+     * key order, ties are in left then right table order.
+     *
+     * @param left       the left table
+     * @param right      the right table
+     * @param keyColumns the key columns, present in both tables
+     * @return the joined table
+     * @throws IllegalArgumentException if a key column does not exist or is numeric in only one of the tables
+     */
+    public static PvaTable mergeJoin(PvaTable left, PvaTable right, String... keyColumns) {
+        checkKeyColumns(keyColumns);
+        KeyComparator comparator = new KeyComparator(left, right, keyColumns);
+        int[] leftRows = sortedRows(left, keyColumns);
+        int[] rightRows = sortedRows(right, keyColumns);
+        KeyComparator leftComparator = new KeyComparator(left, left, keyColumns);
+        KeyComparator rightComparator = new KeyComparator(right, right, keyColumns);
+        Object[][] leftKeys = keyValues(left, keyColumns);
+        Object[][] rightKeys = keyValues(right, keyColumns);
+
+        RowPairs pairs = new RowPairs(Math.max(left.size, right.size));
+        int i = 0, j = 0;
+        while (i < leftRows.length && j < rightRows.length) {
+            if (hasNullKey(leftKeys, leftRows[i])) {
+                i++;
+                continue;
+            }
+            if (hasNullKey(rightKeys, rightRows[j])) {
+                j++;
+                continue;
+            }
+            int compare = comparator.compare(leftRows[i], rightRows[j]);
+            if (compare < 0) {
+                i++;
+            } else if (compare > 0) {
+                j++;
+            } else {
+                // Find the runs of equal keys on both sides and emit their cross product
+                int leftEnd = i + 1, rightEnd = j + 1;
+                while (leftEnd < leftRows.length && leftComparator.compare(leftRows[i], leftRows[leftEnd]) == 0) {
+                    leftEnd++;
+                }
+                while (rightEnd < rightRows.length && rightComparator.compare(rightRows[j], rightRows[rightEnd]) == 0) {
+                    rightEnd++;
+                }
+                for (int l = i; l < leftEnd; l++) {
+                    for (int r = j; r < rightEnd; r++) {
+                        pairs.add(leftRows[l], rightRows[r]);
+                    }
+                }
+                i = leftEnd;
+                j = rightEnd;
+            }
+        }
+        return combine(left, right, keyColumns, pairs);
+    }
+
+    /**
+     * Concatenate the results of batched queries into one table with a {@value #SOURCE_COLUMN}
+     * column holding the channel each row came from.
+     *
+     * @param results the results keyed on channel, in the order their rows should appear
+     * @return the concatenated table
+     * @throws IllegalArgumentException if a result already has a {@value #SOURCE_COLUMN} column
+     * @see #union(String, Map)
+     */
+    public static PvaTable union(Map<String, PvaTable> results) {
+        return union(SOURCE_COLUMN, results);
+    }
+
+    /**
+     * Concatenate the results of batched queries into one table with a column holding the channel
+     * each row came from.  The source column comes first, followed by the columns of all results in
+     * order of first appearance.  Rows from a result that does not have a column get null values
+     * in that column.  The source column is dictionary encoded, and string columns that are
+     * dictionary encoded in every result stay dictionary encoded.
+     *
+     * @param sourceColumn the name of the column to add
+     * @param results      the results keyed on channel, in the order their rows should appear
+     * @return the concatenated table
+     * @throws IllegalArgumentException if a result already has a column named @p sourceColumn
+     */
+    public static PvaTable union(String sourceColumn, Map<String, PvaTable> results) {
+        // Collect the columns in order of first appearance
+        Map<String, PvaTable> firstTableOf = new LinkedHashMap<String, PvaTable>();
+        int size = 0;
+        boolean hasUnits = false, hasDescriptions = false;
+        for (Map.Entry<String, PvaTable> entry : results.entrySet()) {
+            PvaTable table = entry.getValue();
+            for (String name : table.fieldNames) {
+                if (name.equals(sourceColumn)) {
+                    throw new IllegalArgumentException("Result for " + entry.getKey() + " already has a column named " + sourceColumn);
+                }
+                if (!firstTableOf.containsKey(name)) {
+                    firstTableOf.put(name, table);
+                }
+            }
+            hasUnits |= table.units.length > 0;
+            hasDescriptions |= table.descriptions.length > 0;
+            size += table.size;
+        }
+
+        int columns = firstTableOf.size() + 1;
+        String[] labels = new String[columns];
+        String[] units = hasUnits ? new String[columns] : new String[0];
+        String[] descriptions = hasDescriptions ? new String[columns] : new String[0];
+        Map<String, Object[]> values = new LinkedHashMap<String, Object[]>();
+        Map<String, double[]> doubles = new HashMap<String, double[]>();
+        Map<String, StringDictionary> dictionaries = new HashMap<String, StringDictionary>();
+
+        // The source column, dictionary encoded on the channel
+        labels[0] = sourceColumn;
+        Object[] sources = new Object[size];
+        int[] sourceCodes = new int[size];
+        String[] channels = new String[results.size()];
+        int channelCount = 0, row = 0;
+        for (Map.Entry<String, PvaTable> entry : results.entrySet()) {
+            int rows = entry.getValue().size;
+            if (rows == 0) {
+                continue;
+            }
+            String channel = StringPool.intern(entry.getKey());
+            channels[channelCount] = channel;
+            Arrays.fill(sources, row, row + rows, channel);
+            Arrays.fill(sourceCodes, row, row + rows, channelCount);
+            channelCount++;
+            row += rows;
+        }
+        values.put(sourceColumn, sources);
+        dictionaries.put(sourceColumn, new StringDictionary(sourceCodes, Arrays.copyOf(channels, channelCount)));
+
+        int c = 1;
+        for (Map.Entry<String, PvaTable> column : firstTableOf.entrySet()) {
+            String name = column.getKey();
+            PvaTable first = column.getValue();
+            int index = first.columnIndex(name);
+            labels[c] = index < first.labels.length ? first.labels[index] : name;
+            if (hasUnits) {
+                units[c] = index < first.units.length ? first.units[index] : null;
+            }
+            if (hasDescriptions) {
+                descriptions[c] = index < first.descriptions.length ? first.descriptions[index] : null;
+            }
+
+            Object[] to = new Object[size];
+            double[] toDoubles = new double[size];
+            boolean allDoubles = true, allEncoded = true;
+            row = 0;
+            for (PvaTable table : results.values()) {
+                Object[] from = table.values.get(name);
+                if (from != null) {
+                    System.arraycopy(from, 0, to, row, table.size);
+                    double[] fromDoubles = table.cachedDoubles(name);
+                    if (fromDoubles != null) {
+                        System.arraycopy(fromDoubles, 0, toDoubles, row, table.size);
+                    } else {
+                        allDoubles = false;
+                    }
+                    allEncoded &= table.cachedDictionary(name) != null;
+                } else {
+                    Arrays.fill(toDoubles, row, row + table.size, Double.NaN);
+                    allEncoded &= table.size == 0;
+                }
+                row += table.size;
+            }
+            values.put(name, to);
+            if (allDoubles) {
+                doubles.put(name, toDoubles);
+            }
+            if (allEncoded) {
+                dictionaries.put(name, mergeDictionaries(name, results.values(), size));
+            }
+            c++;
+        }
+
+        PvaTable result = new PvaTable(labels, units, descriptions, values);
+        for (Map.Entry<String, double[]> entry : doubles.entrySet()) {
+            result.cacheDoubles(entry.getKey(), entry.getValue());
+        }
+        for (Map.Entry<String, StringDictionary> entry : dictionaries.entrySet()) {
+            result.cacheDictionary(entry.getKey(), entry.getValue());
+        }
+        return result;
+    }
+
+    /**
+     * Internal: Hash join, optionally keeping left rows that have no match
+     */
+    private static PvaTable hashJoin(PvaTable left, PvaTable right, String[] keyColumns, boolean keepUnmatched) {
+        checkKeyColumns(keyColumns);
+        PvaTableIndex index = right.index(keyColumns);
+        Object[][] leftKeys = keyValues(left, keyColumns);
+
+        RowPairs pairs = new RowPairs(left.size);
+        Object[] key = new Object[keyColumns.length];
+        for (int row = 0; row < left.size; row++) {
+            int match = -1;
+            if (!hasNullKey(leftKeys, row)) {
+                for (int k = 0; k < key.length; k++) {
+                    key[k] = leftKeys[k][row];
+                }
+                match = index.rowOf(key);
+            }
+            if (match < 0) {
+                if (keepUnmatched) {
+                    pairs.add(row, -1);
+                }
+                continue;
+            }
+            for (; match >= 0; match = index.nextRowOf(match)) {
+                pairs.add(row, match);
+            }
+        }
+        return combine(left, right, keyColumns, pairs);
+    }
+
+    /**
+     * Internal: Build the joined table from the matched row pairs
+     *
+     * @param left       the left table
+     * @param right      the right table
+     * @param keyColumns the key columns, which are only taken from the left table
+     * @param pairs      the matched row pairs
+     * @return the joined table
+     */
+    private static PvaTable combine(PvaTable left, PvaTable right, String[] keyColumns, RowPairs pairs) {
+        List<String> keys = Arrays.asList(keyColumns);
+        List<String> rightColumns = new ArrayList<String>();
+        for (String name : right.fieldNames) {
+            if (!keys.contains(name)) {
+                rightColumns.add(name);
+            }
+        }
+
+        PvaTable leftPart = PvaTableQuery.gather(left, left.fieldNames, pairs.left, pairs.size);
+        PvaTable rightPart = PvaTableQuery.gather(right, rightColumns.toArray(new String[0]), pairs.right, pairs.size);
+
+        int leftColumns = leftPart.fieldNames.length, columns = leftColumns + rightPart.fieldNames.length;
+        boolean hasUnits = leftPart.units.length > 0 || rightPart.units.length > 0;
+        boolean hasDescriptions = leftPart.descriptions.length > 0 || rightPart.descriptions.length > 0;
+        String[] labels = new String[columns];
+        String[] units = hasUnits ? new String[columns] : new String[0];
+        String[] descriptions = hasDescriptions ? new String[columns] : new String[0];
+        String[] names = new String[columns];
+        Map<String, Object[]> values = new LinkedHashMap<String, Object[]>();
+
+        PvaTable[] parts = {leftPart, rightPart};
+        int c = 0;
+        for (PvaTable part : parts) {
+            for (int i = 0; i < part.fieldNames.length; i++, c++) {
+                String name = part.fieldNames[i];
+                String unique = name;
+                for (int suffix = 2; values.containsKey(unique); suffix++) {
+                    unique = name + "_" + suffix;
+                }
+                names[c] = unique;
+                labels[c] = part.labels[i];
+                if (hasUnits && part.units.length > 0) {
+                    units[c] = part.units[i];
+                }
+                if (hasDescriptions && part.descriptions.length > 0) {
+                    descriptions[c] = part.descriptions[i];
+                }
+                values.put(unique, part.values.get(name));
+            }
+        }
+
+        PvaTable result = new PvaTable(labels, units, descriptions, values);
+        c = 0;
+        for (PvaTable part : parts) {
+            for (String name : part.fieldNames) {
+                double[] doubles = part.cachedDoubles(name);
+                if (doubles != null) {
+                    result.cacheDoubles(names[c], doubles);
+                }
+                StringDictionary dictionary = part.cachedDictionary(name);
+                if (dictionary != null) {
+                    result.cacheDictionary(names[c], dictionary);
+                }
+                c++;
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Internal: Merge the dictionary encodings of a column that is dictionary encoded in every table
+     *
+     * @param name   the column
+     * @param tables the tables in row order
+     * @param size   the total number of rows
+     * @return the merged dictionary encoding
+     */
+    private static StringDictionary mergeDictionaries(String name, Collection<PvaTable> tables, int size) {
+        Map<String, Integer> codeOf = new HashMap<String, Integer>();
+        List<String> merged = new ArrayList<String>();
+        int[] codes = new int[size];
+        int row = 0;
+        for (PvaTable table : tables) {
+            StringDictionary dictionary = table.cachedDictionary(name);
+            if (dictionary == null) {
+                continue;
+            }
+            int[] remap = new int[dictionary.values.length];
+            for (int code = 0; code < remap.length; code++) {
+                String value = dictionary.values[code];
+                Integer mergedCode = codeOf.get(value);
+                if (mergedCode == null) {
+                    mergedCode = merged.size();
+                    codeOf.put(value, mergedCode);
+                    merged.add(value);
+                }
+                remap[code] = mergedCode;
+            }
+            for (int i = 0; i < table.size; i++) {
+                codes[row++] = remap[dictionary.codes[i]];
+            }
+        }
+        return new StringDictionary(codes, merged.toArray(new String[0]));
+    }
+
+    private static void checkKeyColumns(String[] keyColumns) {
+        if (keyColumns.length == 0) {
+            throw new IllegalArgumentException("A join needs at least one key column");
+        }
+    }
+
+    private static Object[][] keyValues(PvaTable table, String[] keyColumns) {
+        Object[][] keys = new Object[keyColumns.length][];
+        for (int k = 0; k < keyColumns.length; k++) {
+            keys[k] = table.column(keyColumns[k]);
+        }
+        return keys;
+    }
+
+    private static boolean hasNullKey(Object[][] keys, int row) {
+        for (Object[] key : keys) {
+            if (key[row] == null) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static List<Boolean> ascending(int n) {
+        return Collections.nCopies(n, Boolean.TRUE);
+    }
+
+    private static int[] sortedRows(PvaTable table, String[] keyColumns) {
+        int[] rows = new int[table.size];
+        for (int i = 0; i < rows.length; i++) {
+            rows[i] = i;
+        }
+        PvaTableQuery.sort(rows, rows.length, PvaTableQuery.comparator(table, Arrays.asList(keyColumns), ascending(keyColumns.length)));
+        return rows;
+    }
+
+    /**
+     * Internal: Compares the key of a row in the left table to the key of a row in the right table.  Numeric keys
+     * are equal when they are the same number, so -0.0 equals 0.0 and NaN equals NaN, as they do in a
+     * {@link PvaTableIndex}
+     */
+    private static class KeyComparator {
+        private final double[][] leftNumeric, rightNumeric;
+        private final Object[][] leftObjects, rightObjects;
+
+        KeyComparator(PvaTable left, PvaTable right, String[] keyColumns) {
+            int keys = keyColumns.length;
+            leftNumeric = new double[keys][];
+            rightNumeric = new double[keys][];
+            leftObjects = new Object[keys][];
+            rightObjects = new Object[keys][];
+            for (int k = 0; k < keys; k++) {
+                String column = keyColumns[k];
+                boolean leftIsNumeric = left.isNumeric(column), rightIsNumeric = right.isNumeric(column);
+                if (leftIsNumeric != rightIsNumeric) {
+                    throw new IllegalArgumentException("Key column " + column + " is numeric in only one of the tables");
+                }
+                if (leftIsNumeric) {
+                    leftNumeric[k] = left.getDoubles(column);
+                    rightNumeric[k] = right.getDoubles(column);
+                } else {
+                    leftObjects[k] = left.column(column);
+                    rightObjects[k] = right.column(column);
+                }
+            }
+        }
+
+        @SuppressWarnings("unchecked")
+        int compare(int leftRow, int rightRow) {
+            for (int k = 0; k < leftNumeric.length; k++) {
+                int compare;
+                if (leftNumeric[k] != null) {
+                    double leftValue = leftNumeric[k][leftRow], rightValue = rightNumeric[k][rightRow];
+                    compare = leftValue == rightValue ? 0 : Double.compare(leftValue, rightValue);
+                } else {
+                    compare = ((Comparable<Object>) leftObjects[k][leftRow]).compareTo(rightObjects[k][rightRow]);
+                }
+                if (compare != 0) {
+                    return compare;
+                }
+            }
+            return 0;
+        }
+    }
+
+    /**
+     * Internal: Growable list of matched left and right row positions
+     */
+    private static class RowPairs {
+        int[] left, right;
+        int size;
+
+        RowPairs(int capacity) {
+            left = new int[Math.max(16, capacity)];
+            right = new int[left.length];
+        }
+
+        void add(int leftRow, int rightRow) {
+            if (size == left.length) {
+                left = Arrays.copyOf(left, size * 2);
+                right = Arrays.copyOf(right, size * 2);
+            }
+            left[size] = leftRow;
+            right[size] = rightRow;
+            size++;
+        }
+    }
+}
@@ -0,0 +1,941 @@
+/**
+ * @file
+ * @brief Query engine to filter, project, sort and group the rows of a PvaTable.
+ */
+package edu.stanford.slac.aida.client;
+
+import edu.stanford.slac.aida.client.compat.AidaPredicate;
+
+import java.util.*;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+
+/**
+ * An in-memory query over the rows of a PvaTable.
+ * <p>
+ * This follows the builder pattern.  Get a query by calling {@link PvaTable#query()}, add filters,
+ * orderings, projections or groupings and call {@link #execute()} to get a new PvaTable containing
+ * the results.  The source table is never modified.
+ * <p>
+ * e.g.
+ * <pre>{@code
+ *      PvaTable bySector = table.query()
+ *          .whereEquals("stat", 1)
+ *          .groupBy("sector")
+ *          .count()
+ *          .mean("x")
+ *          .max("z")
+ *          .orderBy("sector")
+ *          .execute();
+ * }</pre>
+ * <p>
+ * Filters on numeric columns run over the primitive double view of the column (see
+ * {@link PvaTable#getDoubles(String)}) and filters on dictionary encoded string columns compare
+ * codes (see {@link PvaTable#getCodes(String)}).  Each filter makes one pass over the rows that
+ * survived the previous filter, so put the most selective filters first.  Tables at or above the
+ * parallel threshold are filtered in row ranges on the shared pool, see {@link ParallelTasks}.
+ * <p>
+ * When grouping, the grouped rows have the group columns followed by a `count` column and a
+ * `<column>_min`, `<column>_max` or `<column>_mean` column for each aggregate, and
+ * {@link #orderBy(String)}, {@link #limit(int)} and {@link #select(String...)} apply to the grouped rows.
+ */
+public class PvaTableQuery {
+    /**
+     * Name of the column that holds the number of rows in each group
+     */
+    public static final String COUNT_COLUMN = "count";
+
+    private final PvaTable table;
+    private final List<Filter> filters = new ArrayList<Filter>();
+    private final List<String> orderColumns = new ArrayList<String>();
+    private final List<Boolean> orderAscending = new ArrayList<Boolean>();
+    private final List<String> aggregateFunctions = new ArrayList<String>();
+    private final List<String> aggregateColumns = new ArrayList<String>();
+    private String[] selectedColumns;
+    private String[] groupColumns;
+    private boolean countGroups;
+    private int limit = -1;
+
+    /**
+     * Internal: Constructor.  Use {@link PvaTable#query()}
+     *
+     * @param table the table to query
+     */
+    PvaTableQuery(PvaTable table) {
+        this.table = table;
+    }
+
+    /**
+     * Only return the given columns, in the given order
+     *
+     * @param columns the columns to return
+     * @return this query
+     */
+    public PvaTableQuery select(String... columns) {
+        this.selectedColumns = columns;
+        return this;
+    }
+
+    /**
+     * Only keep rows where the given column equals the given value.  Numbers are compared by value
+     * so `whereEquals("status", 18)` matches a short column.
+     *
+     * @param column the column to test
+     * @param value  the value to match
+     * @return this query
+     */
+    public PvaTableQuery whereEquals(String column, Object value) {
+        if (value instanceof Number && table.isNumeric(column)) {
+            double d = ((Number) value).doubleValue();
+            filters.add(new RangeFilter(table.getDoubles(column), d, d));
+        } else {
+            filters.add(objectFilter(column, Collections.singleton(value), false));
+        }
+        return this;
+    }
+
+    /**
+     * Only keep rows where the given column does not equal the given value
+     *
+     * @param column the column to test
+     * @param value  the value to exclude
+     * @return this query
+     */
+    public PvaTableQuery whereNotEquals(String column, Object value) {
+        if (value instanceof Number && table.isNumeric(column)) {
+            filters.add(new NotEqualsFilter(table.getDoubles(column), ((Number) value).doubleValue()));
+        } else {
+            filters.add(objectFilter(column, Collections.singleton(value), true));
+        }
+        return this;
+    }
+
+    /**
+     * Only keep rows where the given column is one of the given values
+     *
+     * @param column the column to test
+     * @param values the values to match
+     * @return this query
+     */
+    public PvaTableQuery whereIn(String column, Object... values) {
+        boolean allNumbers = table.isNumeric(column);
+        for (Object value : values) {
+            allNumbers &= value instanceof Number;
+        }
+
+        if (allNumbers) {
+            double[] sorted = new double[values.length];
+            for (int i = 0; i < values.length; i++) {
+                sorted[i] = ((Number) values[i]).doubleValue();
+            }
+            Arrays.sort(sorted);
+            filters.add(new NumericInFilter(table.getDoubles(column), sorted));
+        } else {
+            filters.add(objectFilter(column, new HashSet<Object>(Arrays.asList(values)), false));
+        }
+        return this;
+    }
+
+    /**
+     * Only keep rows where the given numeric column is between the given values (inclusive)
+     *
+     * @param column the column to test
+     * @param min    the minimum value
+     * @param max    the maximum value
+     * @return this query
+     */
+    public PvaTableQuery whereBetween(String column, double min, double max) {
+        filters.add(new RangeFilter(table.getDoubles(column), min, max));
+        return this;
+    }
+
+    /**
+     * Only keep rows where the given numeric column is greater than the given value
+     *
+     * @param column the column to test
+     * @param value  the value
+     * @return this query
+     */
+    public PvaTableQuery whereGreaterThan(String column, double value) {
+        filters.add(new RangeFilter(table.getDoubles(column), Math.nextUp(value), Double.POSITIVE_INFINITY));
+        return this;
+    }
+
+    /**
+     * Only keep rows where the given numeric column is less than the given value
+     *
+     * @param column the column to test
+     * @param value  the value
+     * @return this query
+     */
+    public PvaTableQuery whereLessThan(String column, double value) {
+        filters.add(new RangeFilter(table.getDoubles(column), Double.NEGATIVE_INFINITY, Math.nextAfter(value, Double.NEGATIVE_INFINITY)));
+        return this;
+    }
+
+    /**
+     * Only keep rows where the given predicate accepts the value in the given column.
+     * <p>
+     * On tables at or above the parallel threshold the predicate is called from the shared pool's threads,
+     * several at once, each on its own range of rows, as well as from the thread that executes the query.  It
+     * must be thread safe, should not block, and must not rely on being called in row order or on thread
+     * locals of the calling thread.
+     *
+     * @param column    the column to test
+     * @param predicate the predicate
+     * @return this query
+     */
+    public PvaTableQuery where(String column, AidaPredicate<Object> predicate) {
+        filters.add(new PredicateFilter(table.column(column), predicate));
+        return this;
+    }
+
+    /**
+     * Sort the results in ascending order of the given column.  Call more than once to
+     * sort on several columns.  Rows that compare equal keep their original order.
+     *
+     * @param column the column to sort on
+     * @return this query
+     */
+    public PvaTableQuery orderBy(String column) {
+        orderColumns.add(column);
+        orderAscending.add(true);
+        return this;
+    }
+
+    /**
+     * Sort the results in descending order of the given column.  Call more than once to
+     * sort on several columns.  Rows that compare equal keep their original order.
+     *
+     * @param column the column to sort on
+     * @return this query
+     */
+    public PvaTableQuery orderByDescending(String column) {
+        orderColumns.add(column);
+        orderAscending.add(false);
+        return this;
+    }
+
+    /**
+     * Only return the first @p k results.  Together with an ordering this gives the top-k rows
+     * without sorting the whole table.
+     *
+     * @param k the maximum number of rows to return
+     * @return this query
+     */
+    public PvaTableQuery limit(int k) {
+        this.limit = k;
+        return this;
+    }
+
+    /**
+     * Group the rows by the given columns
+     *
+     * @param columns the columns to group on
+     * @return this query
+     */
+    public PvaTableQuery groupBy(String... columns) {
+        this.groupColumns = columns;
+        return this;
+    }
+
+    /**
+     * Add the number of rows in each group to the grouped rows
+     *
+     * @return this query
+     */
+    public PvaTableQuery count() {
+        this.countGroups = true;
+        return this;
+    }
+
+    /**
+     * Add the minimum of the given numeric column in each group to the grouped rows
+     *
+     * @param column the column
+     * @return this query
+     */
+    public PvaTableQuery min(String column) {
+        return aggregate("min", column);
+    }
+
+    /**
+     * Add the maximum of the given numeric column in each group to the grouped rows
+     *
+     * @param column the column
+     * @return this query
+     */
+    public PvaTableQuery max(String column) {
+        return aggregate("max", column);
+    }
+
+    /**
+     * Add the mean of the given numeric column in each group to the grouped rows
+     *
+     * @param column the column
+     * @return this query
+     */
+    public PvaTableQuery mean(String column) {
+        return aggregate("mean", column);
+    }
+
+    /**
+     * Get the positions, in the source table, of the rows selected by the filters, ordering and limit.
+     * Grouping and projection are ignored.
+     *
+     * @return the selected row positions in result order
+     */
+    public int[] rows() {
+        int[] rows = filter();
+        if (!orderColumns.isEmpty()) {
+            RowComparator comparator = comparator(table, orderColumns, orderAscending);
+            if (limit >= 0 && limit < rows.length) {
+                rows = topK(rows, limit, comparator);
+            } else {
+                sort(rows, rows.length, comparator);
+            }
+        }
+        if (limit >= 0 && limit < rows.length) {
+            rows = Arrays.copyOf(rows, limit);
+        }
+        return rows;
+    }
+
+    /**
+     * Run the query
+     *
+     * @return a new PvaTable with the results
+     * @throws IllegalArgumentException if the query refers to columns that do not exist or are not numeric
+     */
+    public PvaTable execute() {
+        if (groupColumns != null) {
+            PvaTableQuery groupedQuery = group(filter()).query();
+            groupedQuery.orderColumns.addAll(orderColumns);
+            groupedQuery.orderAscending.addAll(orderAscending);
+            groupedQuery.limit = limit;
+            groupedQuery.selectedColumns = selectedColumns;
+            return groupedQuery.execute();
+        }
+
+        int[] rows = rows();
+        return gather(table, selectedColumns == null ? table.fieldNames : selectedColumns, rows, rows.length);
+    }
+
+    /**
+     * Internal: Add an aggregate
+     *
+     * @param function the aggregate function
+     * @param column   the column to aggregate
+     * @return this query
+     */
+    private PvaTableQuery aggregate(String function, String column) {
+        aggregateFunctions.add(function);
+        aggregateColumns.add(column);
+        return this;
+    }
+
+    /**
+     * Internal: Make a filter that tests for values in a set, using codes if the column is dictionary encoded
+     *
+     * @param column  the column to test
+     * @param values  the values to match
+     * @param exclude true to keep rows that do not match
+     * @return the filter
+     */
+    private Filter objectFilter(String column, Set<Object> values, boolean exclude) {
+        StringDictionary dictionary = table.cachedDictionary(column);
+        if (dictionary != null) {
+            return new CodeFilter(dictionary.codes, dictionary.codesOf(values), exclude);
+        }
+        return new InFilter(table.column(column), values, exclude);
+    }
+
+    /**
+     * Internal: Apply all the filters to the table
+     *
+     * @return the positions of the rows that pass all filters
+     */
+    private int[] filter() {
+        final int size = table.size;
+        if (filters.isEmpty() || !ParallelTasks.isParallel((long) size * filters.size(), ParallelTasks.parallelThreshold)) {
+            return filterRange(0, size);
+        }
+
+        final List<int[]> chunks = new ArrayList<int[]>();
+        List<Callable<Void>> tasks = new ArrayList<Callable<Void>>();
+        for (int from = 0; from < size; from += ParallelTasks.ROW_CHUNK_SIZE) {
+            final int start = from;
+            final int index = chunks.size();
+            chunks.add(null);
+            tasks.add(new Callable<Void>() {
+                @Override
+                public Void call() {
+                    int[] chunk = filterRange(start, Math.min(size, start + ParallelTasks.ROW_CHUNK_SIZE));
+                    synchronized (chunks) {
+                        chunks.set(index, chunk);
+                    }
+                    return null;
+                }
+            });
+        }
+
+        try {
+            ParallelTasks.invokeAll(tasks);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Interrupted while querying table", e);
+        } catch (ExecutionException e) {
+            throw new RuntimeException("Failed to query table: " + e.getCause().getMessage(), e.getCause());
+        }
+
+        int total = 0;
+        for (int[] chunk : chunks) {
+            total += chunk.length;
+        }
+        int[] rows = new int[total];
+        int offset = 0;
+        for (int[] chunk : chunks) {
+            System.arraycopy(chunk, 0, rows, offset, chunk.length);
+            offset += chunk.length;
+        }
+        return rows;
+    }
+
+    /**
+     * Internal: Apply all the filters to a range of rows
+     *
+     * @param from first row (inclusive)
+     * @param to   last row (exclusive)
+     * @return the positions of the rows in the range that pass all filters
+     */
+    private int[] filterRange(int from, int to) {
+        int n = to - from;
+        int[] rows = new int[n];
+        for (int i = 0; i < n; i++) {
+            rows[i] = from + i;
+        }
+        for (Filter filter : filters) {
+            n = filter.apply(rows, n);
+        }
+        return n == rows.length ? rows : Arrays.copyOf(rows, n);
+    }
+
+    /**
+     * Internal: Group the given rows and compute the aggregates
+     *
+     * @param rows the rows to group
+     * @return a table with one row per group
+     */
+    private PvaTable group(int[] rows) {
+        Object[][] keyColumns = new Object[groupColumns.length][];
+        for (int k = 0; k < groupColumns.length; k++) {
+            keyColumns[k] = table.column(groupColumns[k]);
+        }
+        double[][] aggregated = new double[aggregateColumns.size()][];
+        for (int a = 0; a < aggregated.length; a++) {
+            aggregated[a] = table.getDoubles(aggregateColumns.get(a));
+        }
+
+        // Assign a group to each row in order of first appearance
+        Map<Object, Integer> groups = new HashMap<Object, Integer>();
+        int[] firstRows = new int[16];
+        int[] groupOfRow = new int[rows.length];
+        for (int i = 0; i < rows.length; i++) {
+            Object key = groupKey(keyColumns, rows[i]);
+            Integer group = groups.get(key);
+            if (group == null) {
+                group = groups.size();
+                groups.put(key, group);
+                if (group == firstRows.length) {
+                    firstRows = Arrays.copyOf(firstRows, group * 2);
+                }
+                firstRows[group] = rows[i];
+            }
+            groupOfRow[i] = group;
+        }
+
+        // Accumulate
+        int numberOfGroups = groups.size();
+        int[] counts = new int[numberOfGroups];
+        double[][] results = new double[aggregated.length][numberOfGroups];
+        int[][] valueCounts = new int[aggregated.length][numberOfGroups];
+        for (int a = 0; a < aggregated.length; a++) {
+            String function = aggregateFunctions.get(a);
+            Arrays.fill(results[a], "min".equals(function) ? Double.POSITIVE_INFINITY : "max".equals(function) ? Double.NEGATIVE_INFINITY : 0.0);
+        }
+        for (int i = 0; i < rows.length; i++) {
+            counts[groupOfRow[i]]++;
+        }
+        for (int a = 0; a < aggregated.length; a++) {
+            double[] column = aggregated[a];
+            double[] result = results[a];
+            int[] valueCount = valueCounts[a];
+            String function = aggregateFunctions.get(a);
+            for (int i = 0; i < rows.length; i++) {
+                double value = column[rows[i]];
+                if (Double.isNaN(value)) {
+                    continue;
+                }
+                int group = groupOfRow[i];
+                valueCount[group]++;
+                if ("min".equals(function)) {
+                    result[group] = Math.min(result[group], value);
+                } else if ("max".equals(function)) {
+                    result[group] = Math.max(result[group], value);
+                } else {
+                    result[group] += value;
+                }
+            }
+        }
+
+        // Build the grouped table
+        PvaTable keys = gather(table, groupColumns, firstRows, numberOfGroups);
+        List<String> labels = new ArrayList<String>(Arrays.asList(keys.labels));
+        Map<String, Object[]> values = new LinkedHashMap<String, Object[]>(keys.values);
+        if (countGroups) {
+            Object[] countColumn = new Object[numberOfGroups];
+            for (int g = 0; g < numberOfGroups; g++) {
+                countColumn[g] = counts[g];
+            }
+            labels.add(COUNT_COLUMN);
+            values.put(COUNT_COLUMN, countColumn);
+        }
+        for (int a = 0; a < aggregated.length; a++) {
+            String function = aggregateFunctions.get(a);
+            Object[] column = new Object[numberOfGroups];
+            for (int g = 0; g < numberOfGroups; g++) {
+                if (valueCounts[a][g] == 0) {
+                    column[g] = Double.NaN;
+                } else if ("mean".equals(function)) {
+                    column[g] = results[a][g] / valueCounts[a][g];
+                } else {
+                    column[g] = results[a][g];
+                }
+            }
+            String name = aggregateColumns.get(a) + "_" + function;
+            labels.add(name);
+            values.put(name, column);
+        }
+        return new PvaTable(labels.toArray(new String[0]), values);
+    }
+
+    /**
+     * Internal: Get the group key for the given row
+     *
+     * @param keyColumns the columns to group on
+     * @param row        the row
+     * @return the key
+     */
+    private static Object groupKey(Object[][] keyColumns, int row) {
+        if (keyColumns.length == 1) {
+            return keyColumns[0][row];
+        }
+        Object[] key = new Object[keyColumns.length];
+        for (int k = 0; k < keyColumns.length; k++) {
+            key[k] = keyColumns[k][row];
+        }
+        return Arrays.asList(key);
+    }
+
+    /**
+     * Internal: Create a new table from the given columns and rows of a source table.
+     * Cells are shared with the source table, not copied, and any primitive
+     * double views or dictionary encodings in the source are carried over to the new table.
+     * A negative row position gives a row of missing values: null cells and NaN doubles.
+     *
+     * @param source  the source table
+     * @param columns the columns to take
+     * @param rows    the positions of the rows to take, or -1 for a missing row
+     * @param n       the number of rows to take
+     * @return the new table
+     */
+    static PvaTable gather(PvaTable source, String[] columns, int[] rows, int n) {
+        String[] labels = new String[columns.length];
+        boolean hasUnits = source.units.length == source.fieldNames.length && source.units.length > 0;
+        boolean hasDescriptions = source.descriptions.length == source.fieldNames.length && source.descriptions.length > 0;
+        String[] units = hasUnits ? new String[columns.length] : new String[0];
+        String[] descriptions = hasDescriptions ? new String[columns.length] : new String[0];
+        Map<String, Object[]> values = new LinkedHashMap<String, Object[]>();
+        Map<String, double[]> doubles = new HashMap<String, double[]>();
+        Map<String, StringDictionary> dictionaries = new HashMap<String, StringDictionary>();
+
+        boolean hasMissingRows = false;
+        for (int i = 0; i < n && !hasMissingRows; i++) {
+            hasMissingRows = rows[i] < 0;
+        }
+
+        for (int c = 0; c < columns.length; c++) {
+            String name = columns[c];
+            int index = source.columnIndex(name);
+            labels[c] = index >= 0 && index < source.labels.length ? source.labels[index] : name;
+            if (hasUnits) {
+                units[c] = index >= 0 ? source.units[index] : null;
+            }
+            if (hasDescriptions) {
+                descriptions[c] = index >= 0 ? source.descriptions[index] : null;
+            }
+
+            Object[] from = source.column(name);
+            Object[] to = new Object[n];
+            for (int i = 0; i < n; i++) {
+                int row = rows[i];
+                to[i] = row < 0 ? null : from[row];
+            }
+            values.put(name, to);
+
+            double[] fromDoubles = source.cachedDoubles(name);
+            if (fromDoubles != null) {
+                double[] toDoubles = new double[n];
+                for (int i = 0; i < n; i++) {
+                    int row = rows[i];
+                    toDoubles[i] = row < 0 ? Double.NaN : fromDoubles[row];
+                }
+                doubles.put(name, toDoubles);
+            }
+
+            StringDictionary dictionary = source.cachedDictionary(name);
+            // Missing rows have no code so the column is left unencoded
+            if (dictionary != null && !hasMissingRows) {
+                dictionaries.put(name, dictionary.gather(rows, n));
+            }
+        }
+
+        PvaTable result = new PvaTable(labels, units, descriptions, values);
+        for (Map.Entry<String, double[]> entry : doubles.entrySet()) {
+            result.cacheDoubles(entry.getKey(), entry.getValue());
+        }
+        for (Map.Entry<String, StringDictionary> entry : dictionaries.entrySet()) {
+            result.cacheDictionary(entry.getKey(), entry.getValue());
+        }
+        return result;
+    }
+
+    /**
+     * Internal: Make a comparator for rows of the given table
+     *
+     * @param table     the table
+     * @param columns   the columns to compare in order of priority
+     * @param ascending the direction for each column
+     * @return the comparator
+     */
+    static RowComparator comparator(PvaTable table, List<String> columns, List<Boolean> ascending) {
+        int keys = columns.size();
+        double[][] numeric = new double[keys][];
+        Object[][] objects = new Object[keys][];
+        int[] directions = new int[keys];
+        for (int k = 0; k < keys; k++) {
+            String column = columns.get(k);
+            if (table.isNumeric(column)) {
+                numeric[k] = table.getDoubles(column);
+            } else {
+                objects[k] = table.column(column);
+            }
+            directions[k] = ascending.get(k) ? 1 : -1;
+        }
+        return new RowComparator(numeric, objects, directions);
+    }
+
+    /**
+     * Internal: Stable merge sort of the first @p n row positions using the given comparator
+     *
+     * @param rows       the row positions
+     * @param n          the number of row positions to sort
+     * @param comparator the comparator
+     */
+    static void sort(int[] rows, int n, RowComparator comparator) {
+        int[] buffer = new int[n];
+        for (int width = 1; width < n; width *= 2) {
+            for (int left = 0; left < n; left += 2 * width) {
+                int middle = Math.min(left + width, n), right = Math.min(left + 2 * width, n);
+                int i = left, j = middle, k = left;
+                while (i < middle && j < right) {
+                    buffer[k++] = comparator.compare(rows[j], rows[i]) < 0 ? rows[j++] : rows[i++];
+                }
+                while (i < middle) {
+                    buffer[k++] = rows[i++];
+                }
+                while (j < right) {
+                    buffer[k++] = rows[j++];
+                }
+            }
+            System.arraycopy(buffer, 0, rows, 0, n);
+        }
+    }
+
+    /**
+     * Internal: Get the first @p k rows in sorted order using a bounded heap
+     *
+     * @param rows       the row positions
+     * @param k          the number of rows to keep
+     * @param comparator the comparator
+     * @return the first @p k row positions in sorted order
+     */
+    private static int[] topK(int[] rows, int k, RowComparator comparator) {
+        if (k == 0) {
+            return new int[0];
+        }
+
+        // Max-heap on (comparator, position) so the root is the worst row kept so far
+        int[] heap = new int[k];
+        int size = 0;
+        for (int row : rows) {
+            if (size < k) {
+                int i = size++;
+                heap[i] = row;
+                while (i > 0 && worse(heap[i], heap[(i - 1) / 2], comparator)) {
+                    swap(heap, i, (i - 1) / 2);
+                    i = (i - 1) / 2;
+                }
+            } else if (worse(heap[0], row, comparator)) {
+                heap[0] = row;
+                int i = 0;
+                while (true) {
+                    int left = 2 * i + 1, right = left + 1, worst = i;
+                    if (left < size && worse(heap[left], heap[worst], comparator)) {
+                        worst = left;
+                    }
+                    if (right < size && worse(heap[right], heap[worst], comparator)) {
+                        worst = right;
+                    }
+                    if (worst == i) {
+                        break;
+                    }
+                    swap(heap, i, worst);
+                    i = worst;
+                }
+            }
+        }
+
+        // Rows are ordered by position to break ties so sorting by position first keeps the sort stable
+        Arrays.sort(heap, 0, size);
+        sort(heap, size, comparator);
+        return heap;
+    }
+
+    /**
+     * Internal: Is row @p a after row @p b in sorted order, using row position to break ties
+     */
+    private static boolean worse(int a, int b, RowComparator comparator) {
+        int compare = comparator.compare(a, b);
+        return compare > 0 || (compare == 0 && a > b);
+    }
+
+    private static void swap(int[] array, int i, int j) {
+        int temp = array[i];
+        array[i] = array[j];
+        array[j] = temp;
+    }
+
+    /**
+     * Internal: Compares two rows of a table on a list of columns
+     */
+    static class RowComparator {
+        private final double[][] numeric;
+        private final Object[][] objects;
+        private final int[] directions;
+
+        RowComparator(double[][] numeric, Object[][] objects, int[] directions) {
+            this.numeric = numeric;
+            this.objects = objects;
+            this.directions = directions;
+        }
+
+        /**
+         * Compare two rows
+         *
+         * @param a position of the first row
+         * @param b position of the second row
+         * @return negative, zero or positive if row @p a is before, equal to or after row @p b
+         */
+        @SuppressWarnings("unchecked")
+        int compare(int a, int b) {
+            for (int k = 0; k < directions.length; k++) {
+                int compare;
+                if (numeric[k] != null) {
+                    compare = Double.compare(numeric[k][a], numeric[k][b]);
+                } else {
+                    Object x = objects[k][a], y = objects[k][b];
+                    if (x == null || y == null) {
+                        compare = x == null ? (y == null ? 0 : -1) : 1;
+                    } else {
+                        compare = ((Comparable<Object>) x).compareTo(y);
+                    }
+                }
+                if (compare != 0) {
+                    return compare * directions[k];
+                }
+            }
+            return 0;
+        }
+    }
+
+    /**
+     * Internal: A filter compacts a list of row positions in place, keeping only the rows that pass
+     */
+    private static abstract class Filter {
+        /**
+         * Apply this filter to the first @p n row positions
+         *
+         * @param rows the row positions, compacted in place
+         * @param n    the number of row positions to test
+         * @return the number of row positions that passed
+         */
+        abstract int apply(int[] rows, int n);
+    }
+
+    /**
+     * Internal: Keep rows with a numeric value in a range (inclusive)
+     */
+    private static class RangeFilter extends Filter {
+        private final double[] column;
+        private final double min, max;
+
+        RangeFilter(double[] column, double min, double max) {
+            this.column = column;
+            this.min = min;
+            this.max = max;
+        }
+
+        @Override
+        int apply(int[] rows, int n) {
+            int kept = 0;
+            for (int i = 0; i < n; i++) {
+                int row = rows[i];
+                double value = column[row];
+                if (value >= min && value <= max) {
+                    rows[kept++] = row;
+                }
+            }
+            return kept;
+        }
+    }
+
+    /**
+     * Internal: Keep rows with a numeric value not equal to the given value
+     */
+    private static class NotEqualsFilter extends Filter {
+        private final double[] column;
+        private final double value;
+
+        NotEqualsFilter(double[] column, double value) {
+            this.column = column;
+            this.value = value;
+        }
+
+        @Override
+        int apply(int[] rows, int n) {
+            int kept = 0;
+            for (int i = 0; i < n; i++) {
+                int row = rows[i];
+                if (column[row] != value) {
+                    rows[kept++] = row;
+                }
+            }
+            return kept;
+        }
+    }
+
+    /**
+     * Internal: Keep rows with a numeric value in a sorted list of values
+     */
+    private static class NumericInFilter extends Filter {
+        private final double[] column;
+        private final double[] sortedValues;
+
+        NumericInFilter(double[] column, double[] sortedValues) {
+            this.column = column;
+            this.sortedValues = sortedValues;
+        }
+
+        @Override
+        int apply(int[] rows, int n) {
+            int kept = 0;
+            for (int i = 0; i < n; i++) {
+                int row = rows[i];
+                if (Arrays.binarySearch(sortedValues, column[row]) >= 0) {
+                    rows[kept++] = row;
+                }
+            }
+            return kept;
+        }
+    }
+
+    /**
+     * Internal: Keep rows with (or without) a matching dictionary code
+     */
+    private static class CodeFilter extends Filter {
+        private final int[] codes;
+        private final boolean[] matches;
+        private final boolean exclude;
+
+        CodeFilter(int[] codes, boolean[] matches, boolean exclude) {
+            this.codes = codes;
+            this.matches = matches;
+            this.exclude = exclude;
+        }
+
+        @Override
+        int apply(int[] rows, int n) {
+            int kept = 0;
+            for (int i = 0; i < n; i++) {
+                int row = rows[i];
+                if (matches[codes[row]] != exclude) {
+                    rows[kept++] = row;
+                }
+            }
+            return kept;
+        }
+    }
+
+    /**
+     * Internal: Keep rows with a value in (or not in) a set of values
+     */
+    private static class InFilter extends Filter {
+        private final Object[] column;
+        private final Set<Object> values;
+        private final boolean exclude;
+
+        InFilter(Object[] column, Set<Object> values, boolean exclude) {
+            this.column = column;
+            this.values = values;
+            this.exclude = exclude;
+        }
+
+        @Override
+        int apply(int[] rows, int n) {
+            int kept = 0;
+            for (int i = 0; i < n; i++) {
+                int row = rows[i];
+                if (values.contains(column[row]) != exclude) {
+                    rows[kept++] = row;
+                }
+            }
+            return kept;
+        }
+    }
+
+    /**
+     * Internal: Keep rows with a value accepted by a predicate
+     */
+    private static class PredicateFilter extends Filter {
+        private final Object[] column;
+        private final AidaPredicate<Object> predicate;
+
+        PredicateFilter(Object[] column, AidaPredicate<Object> predicate) {
+            this.column = column;
+            this.predicate = predicate;
+        }
+
+        @Override
+        int apply(int[] rows, int n) {
+            int kept = 0;
+            for (int i = 0; i < n; i++) {
+                int row = rows[i];
+                if (predicate.test(column[row])) {
+                    rows[kept++] = row;
+                }
+            }
+            return kept;
+        }
+    }
+}
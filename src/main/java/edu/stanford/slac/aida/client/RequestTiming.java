@@ -0,0 +1,238 @@
+/**
+ * @file
+ * @brief Time taken by each phase of one request, and the slow request log.
+ */
+package edu.stanford.slac.aida.client;
+
+import java.util.logging.Logger;
+
+/**
+ * Time taken by each phase of one request made with {@link AidaPvaRequest}, measured in nanoseconds.
+ * <p>
+ * The phases are:
+ * - **uri**: building the NTURI request structure from the channel and arguments
+ * - **connect**: searching for and connecting to the channel.  Only measured by request executors that
+ * call {@link #connected()}, otherwise it is included in rpc
+ * - **rpc**: sending the request and waiting for the response
+ * - **decode**: unpacking the response into Java values
+ * <p>
+ * The timing of the last request is available from {@link AidaPvaRequest#getTiming()}, and for asynchronous
+ * requests it is complete by the time the response or error callback is called.
+ * <p>
+ * Requests that take longer than a threshold are logged as warnings with their phase breakdown, channel and
+ * arguments.  Set the threshold in milliseconds with the `aida.pva.client.slow.request.threshold` property or
+ * the `AIDA_PVA_CLIENT_SLOW_REQUEST_THRESHOLD` environment variable.  Slow requests are not logged if it is not set.
+ */
+public class RequestTiming {
+    private static final Logger logger = Logger.getLogger(RequestTiming.class.getName());
+
+    private static final double NANOS_PER_MILLI = 1e6;
+
+    /**
+     * Longest argument summary that is shown
+     */
+    private static final int MAX_ARGUMENTS_LENGTH = 256;
+
+    /**
+     * Time in nanoseconds above which requests are logged, negative if they are never logged
+     */
+    static final long slowRequestThresholdNanos;
+
+    /**
+     * The timing of the request being executed on this thread, so that executors can mark when they connect
+     */
+    private static final ThreadLocal<RequestTiming> current = new ThreadLocal<RequestTiming>();
+
+    static {
+        String threshold = System.getProperty("aida.pva.client.slow.request.threshold");
+
+        // Override with the environment variable if it is set
+        String thresholdEnv = System.getenv("AIDA_PVA_CLIENT_SLOW_REQUEST_THRESHOLD");
+        if (thresholdEnv != null) {
+            threshold = thresholdEnv;
+        }
+
+        long configuredThreshold = -1;
+        if (threshold != null) {
+            try {
+                configuredThreshold = (long) (Double.parseDouble(threshold.trim()) * NANOS_PER_MILLI);
+                logger.info("Slow request threshold: " + threshold.trim() + "ms");
+            } catch (NumberFormatException e) {
+                logger.warning("Ignoring invalid slow request threshold: " + threshold);
+            }
+        }
+        slowRequestThresholdNanos = configuredThreshold;
+    }
+
+    private final String channel;
+    private final Object arguments;
+
+    /**
+     * Times at which each phase ended, 0 if the phase was not reached
+     */
+    private final long started;
+    private long uriBuilt;
+    private long connected;
+    private long executed;
+    private boolean decoded;
+    private long finished;
+    private boolean failed;
+
+    /**
+     * Internal: Start timing a request
+     *
+     * @param channel   the channel name
+     * @param arguments the request arguments, whose string form is only made if it is shown
+     */
+    RequestTiming(String channel, Object arguments) {
+        this.channel = channel;
+        this.arguments = arguments;
+        this.started = System.nanoTime();
+    }
+
+    /**
+     * Mark the end of the connect phase of the request being executed on the current thread.
+     * Request executors call this once the channel is connected, before sending the request.
+     */
+    public static void connected() {
+        RequestTiming timing = current.get();
+        if (timing != null) {
+            timing.connected = System.nanoTime();
+        }
+    }
+
+    /**
+     * Internal: Mark the end of the uri phase
+     */
+    void uriBuilt() {
+        uriBuilt = System.nanoTime();
+    }
+
+    /**
+     * Internal: Make this the timing of the request being executed on the current thread, just before
+     * it is passed to the request executor.  If the request is retried only the last attempt is timed
+     */
+    void executing() {
+        connected = 0;
+        current.set(this);
+    }
+
+    /**
+     * Internal: Mark the end of the rpc phase
+     */
+    void executed() {
+        executed = System.nanoTime();
+        current.remove();
+    }
+
+    /**
+     * Internal: Mark the start of the decode phase, which follows straight on from the rpc phase.
+     * Requests that fail before they receive a result have no decode phase
+     */
+    void decoding() {
+        decoded = true;
+    }
+
+    /**
+     * Internal: Mark the end of the request and log it if it was slow
+     *
+     * @param failed true if the request failed
+     */
+    void finished(boolean failed) {
+        this.finished = System.nanoTime();
+        this.failed = failed;
+        if (slowRequestThresholdNanos >= 0 && getTotalNanos() > slowRequestThresholdNanos) {
+            logger.warning("Slow request: " + this);
+        }
+    }
+
+    /**
+     * Get the channel name
+     *
+     * @return the channel name
+     */
+    public String getChannel() {
+        return channel;
+    }
+
+    /**
+     * Did the request fail
+     *
+     * @return true if the request failed
+     */
+    public boolean isFailed() {
+        return failed;
+    }
+
+    /**
+     * Get the time taken to build the NTURI request structure
+     *
+     * @return the time in nanoseconds
+     */
+    public long getUriNanos() {
+        return between(started, uriBuilt);
+    }
+
+    /**
+     * Get the time taken to connect to the channel, 0 if the executor does not measure it
+     *
+     * @return the time in nanoseconds
+     */
+    public long getConnectNanos() {
+        return between(uriBuilt, connected);
+    }
+
+    /**
+     * Get the time taken to send the request and receive the response
+     *
+     * @return the time in nanoseconds
+     */
+    public long getRpcNanos() {
+        return between(connected != 0 ? connected : uriBuilt, executed);
+    }
+
+    /**
+     * Get the time taken to decode the response
+     *
+     * @return the time in nanoseconds
+     */
+    public long getDecodeNanos() {
+        return decoded ? between(executed, finished) : 0;
+    }
+
+    /**
+     * Get the time taken by the whole request
+     *
+     * @return the time in nanoseconds
+     */
+    public long getTotalNanos() {
+        return between(started, finished);
+    }
+
+    /**
+     * Internal: The time between two marks, 0 if either was not reached
+     */
+    private static long between(long from, long to) {
+        return from == 0 || to == 0 ? 0 : to - from;
+    }
+
+    @Override
+    public String toString() {
+        String summary = String.valueOf(arguments);
+        if (summary.length() > MAX_ARGUMENTS_LENGTH) {
+            summary = summary.substring(0, MAX_ARGUMENTS_LENGTH) + "...";
+        }
+        return channel + "(" + summary + ")" + (failed ? " failed" : "") + " in " + millis(getTotalNanos())
+                + ": uri=" + millis(getUriNanos())
+                + ", connect=" + millis(getConnectNanos())
+                + ", rpc=" + millis(getRpcNanos())
+                + ", decode=" + millis(getDecodeNanos());
+    }
+
+    /**
+     * Internal: Format nanoseconds as milliseconds
+     */
+    private static String millis(long nanos) {
+        return String.format("%.3fms", nanos / NANOS_PER_MILLI);
+    }
+}
@@ -0,0 +1,155 @@
+/**
+ * @file
+ * @brief Decoder for one response structure, resolved once and cached.
+ */
+package edu.stanford.slac.aida.client;
+
+import org.epics.pvaccess.server.rpc.RPCRequestException;
+import org.epics.pvdata.pv.*;
+
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Decodes responses that have a given structure.
+ * <p>
+ * The kind of result (scalar, scalar array or table) and the {@link AidaCodec} for the value, or for
+ * each column, are worked out once per response {@link Structure} and cached, so decoding a
+ * response costs one cache lookup instead of a chain of type checks.  The cache is cleared
+ * whenever a codec is registered.
+ * <p>
+ * Lookups take no lock.  When the cache is full, one decoder is evicted for each new one, chosen like a
+ * clock: each decoder is marked when it is used, and eviction clears marks until it finds a decoder that
+ * has not been used since its mark was last cleared, so decoders in regular use stay cached.
+ */
+class ResponseDecoder {
+    /**
+     * Maximum number of cached decoders.  Decoders made by requests racing to add them can take the cache
+     * briefly past it
+     */
+    private static final int MAX_CACHED_DECODERS = 1024;
+
+    private static final ConcurrentMap<Structure, ResponseDecoder> decoders = new ConcurrentHashMap<Structure, ResponseDecoder>();
+
+    private enum Kind {
+        VOID, SCALAR, SCALAR_ARRAY, TABLE
+    }
+
+    private final Kind kind;
+    private final AidaCodec codec;
+    private final AidaCodec[] columnCodecs;
+
+    /**
+     * Set when the decoder is used, cleared by eviction
+     */
+    private volatile boolean used = true;
+
+    private ResponseDecoder(Kind kind, AidaCodec codec, AidaCodec[] columnCodecs) {
+        this.kind = kind;
+        this.codec = codec;
+        this.columnCodecs = columnCodecs;
+    }
+
+    /**
+     * Get the decoder for responses with the given structure
+     *
+     * @param structure the response structure
+     * @return the decoder
+     */
+    static ResponseDecoder forStructure(Structure structure) {
+        ResponseDecoder decoder = decoders.get(structure);
+        if (decoder != null) {
+            if (!decoder.used) {
+                decoder.used = true;
+            }
+            return decoder;
+        }
+        decoder = compile(structure);
+        ResponseDecoder cached = decoders.putIfAbsent(structure, decoder);
+        if (cached != null) {
+            return cached;
+        }
+        if (decoders.size() > MAX_CACHED_DECODERS) {
+            evictOne();
+        }
+        return decoder;
+    }
+
+    /**
+     * Internal: Evict one decoder that has not been used since eviction last passed it.  Two passes are
+     * enough, as the first clears every mark it passes
+     */
+    private static void evictOne() {
+        for (int pass = 0; pass < 2; pass++) {
+            Iterator<Map.Entry<Structure, ResponseDecoder>> entries = decoders.entrySet().iterator();
+            while (entries.hasNext()) {
+                ResponseDecoder decoder = entries.next().getValue();
+                if (decoder.used) {
+                    decoder.used = false;
+                } else {
+                    entries.remove();
+                    return;
+                }
+            }
+        }
+    }
+
+    /**
+     * Internal: Forget all cached decoders
+     */
+    static void clearCache() {
+        decoders.clear();
+    }
+
+    /**
+     * Decode a response
+     *
+     * @param result the response, which must have the structure this decoder was made for
+     * @return the scalar value, the array of values, the PvaTable, or null if there is no value
+     * @throws RPCRequestException if the response is malformed
+     */
+    Object decode(PVStructure result) throws RPCRequestException {
+        switch (kind) {
+            case SCALAR:
+                return codec.decode(result.getSubField(PVScalar.class, AidaType.NT_FIELD_NAME));
+            case SCALAR_ARRAY:
+                PVScalarArray array = result.getSubField(PVScalarArray.class, AidaType.NT_FIELD_NAME);
+                Object[] values = new Object[array.getLength()];
+                codec.decode(array, 0, values.length, values, 0);
+                return values;
+            case TABLE:
+                return TableDecoder.decode(result, ParallelTasks.parallelThreshold, columnCodecs);
+            default:
+                return null;
+        }
+    }
+
+    /**
+     * Internal: Work out how to decode responses with the given structure
+     */
+    private static ResponseDecoder compile(Structure structure) {
+        String id = structure.getID();
+        Field value = structure.getField(AidaType.NT_FIELD_NAME);
+
+        if (AidaType.NTTABLE_ID.equals(id) && value instanceof Structure) {
+            Field[] columns = ((Structure) value).getFields();
+            AidaCodec[] columnCodecs = new AidaCodec[columns.length];
+            for (int c = 0; c < columns.length; c++) {
+                if (columns[c] instanceof ScalarArray) {
+                    columnCodecs[c] = AidaCodecs.forScalarType(((ScalarArray) columns[c]).getElementType());
+                }
+            }
+            return new ResponseDecoder(Kind.TABLE, null, columnCodecs);
+        } else if (AidaType.NTSCALAR_ID.equals(id) && value instanceof Scalar) {
+            AidaCodec codec = AidaCodecs.forScalarType(((Scalar) value).getScalarType());
+            return new ResponseDecoder(codec == null ? Kind.VOID : Kind.SCALAR, codec, null);
+        } else if (AidaType.NTSCALARARRAY_ID.equals(id) && value instanceof ScalarArray) {
+            AidaCodec codec = AidaCodecs.forScalarType(((ScalarArray) value).getElementType());
+            return new ResponseDecoder(codec == null ? Kind.VOID : Kind.SCALAR_ARRAY, codec, null);
+        }
+        // Results that have no value
+        return new ResponseDecoder(Kind.VOID, null, null);
+    }
+}
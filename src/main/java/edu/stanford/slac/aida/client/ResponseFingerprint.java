@@ -0,0 +1,179 @@
+/**
+ * @file
+ * @brief Cheap fingerprints of response contents for change detection.
+ */
+package edu.stanford.slac.aida.client;
+
+import org.epics.pvdata.pv.*;
+
+/**
+ * Computes a 64 bit fingerprint of the parts of a response that {@link AidaPvaClientUtils#pvaUnpack(PVStructure)}
+ * decodes: its structure, and the contents of its `value` field and, for tables, its `labels`.  Other fields, such
+ * as time stamps, are ignored.
+ * <p>
+ * Array elements are read straight out of their ArrayData buffers and mixed into the fingerprint without boxing,
+ * which costs a small fraction of decoding them.  Every bit of each value goes into the fingerprint: the raw bits of
+ * numbers and every character of strings.  Two responses with the same fingerprint are taken to have the same
+ * contents; with 64 bits the chance that different contents collide is negligible.
+ */
+class ResponseFingerprint {
+    private static final long MULTIPLIER = 0x9E3779B97F4A7C15L;
+
+    private ResponseFingerprint() {
+    }
+
+    /**
+     * Compute the fingerprint of a response
+     *
+     * @param result the response, or null
+     * @return the fingerprint
+     */
+    static long of(PVStructure result) {
+        if (result == null) {
+            return 0;
+        }
+        long hash = mix(1, result.getStructure().hashCode());
+        hash = field(hash, result.getSubField(AidaType.NT_LABELS_NAME));
+        return field(hash, result.getSubField(AidaType.NT_FIELD_NAME));
+    }
+
+    private static long mix(long hash, long value) {
+        hash = (hash ^ value) * MULTIPLIER;
+        return hash ^ (hash >>> 29);
+    }
+
+    private static long field(long hash, PVField field) {
+        if (field == null) {
+            return mix(hash, 0);
+        } else if (field instanceof PVScalarArray) {
+            return array(hash, (PVScalarArray) field);
+        } else if (field instanceof PVStructure) {
+            for (PVField subField : ((PVStructure) field).getPVFields()) {
+                hash = field(string(hash, subField.getFieldName()), subField);
+            }
+            return hash;
+        } else if (field instanceof PVScalar) {
+            return scalar(hash, PVUtils.extractScalarValue(field));
+        }
+        // Structure arrays and unions are not decoded, fall back to their full contents
+        return string(hash, field.toString());
+    }
+
+    /**
+     * Internal: Mix all the bits of a decoded scalar into the fingerprint
+     */
+    private static long scalar(long hash, Object value) {
+        if (value == null) {
+            return mix(hash, 0);
+        } else if (value instanceof Double) {
+            return mix(hash, Double.doubleToRawLongBits((Double) value));
+        } else if (value instanceof Float) {
+            return mix(hash, Float.floatToRawIntBits((Float) value));
+        } else if (value instanceof Long || value instanceof Integer || value instanceof Short || value instanceof Byte) {
+            return mix(hash, ((Number) value).longValue());
+        } else if (value instanceof Boolean) {
+            return mix(hash, (Boolean) value ? 1 : 2);
+        }
+        return string(hash, value.toString());
+    }
+
+    /**
+     * Internal: Mix the length and every character of a string into the fingerprint, four characters at a time
+     */
+    private static long string(long hash, String value) {
+        if (value == null) {
+            return mix(hash, -1);
+        }
+        int length = value.length();
+        hash = mix(hash, length);
+        int i = 0;
+        for (; i + 4 <= length; i += 4) {
+            hash = mix(hash, (long) value.charAt(i) << 48 | (long) value.charAt(i + 1) << 32
+                    | (long) value.charAt(i + 2) << 16 | value.charAt(i + 3));
+        }
+        for (; i < length; i++) {
+            hash = mix(hash, value.charAt(i));
+        }
+        return hash;
+    }
+
+    /**
+     * Internal: Mix the length and elements of an array into the fingerprint
+     */
+    private static long array(long hash, PVScalarArray array) {
+        int length = array.getLength();
+        hash = mix(hash, length);
+        switch (array.getScalarArray().getElementType()) {
+            case pvDouble: {
+                DoubleArrayData data = new DoubleArrayData();
+                int n = ((PVDoubleArray) array).get(0, length, data);
+                for (int i = data.offset, end = data.offset + n; i < end; i++) {
+                    hash = mix(hash, Double.doubleToRawLongBits(data.data[i]));
+                }
+                return hash;
+            }
+            case pvFloat: {
+                FloatArrayData data = new FloatArrayData();
+                int n = ((PVFloatArray) array).get(0, length, data);
+                for (int i = data.offset, end = data.offset + n; i < end; i++) {
+                    hash = mix(hash, Float.floatToRawIntBits(data.data[i]));
+                }
+                return hash;
+            }
+            case pvLong:
+            case pvULong: {
+                LongArrayData data = new LongArrayData();
+                int n = array instanceof PVLongArray ? ((PVLongArray) array).get(0, length, data) : ((PVULongArray) array).get(0, length, data);
+                for (int i = data.offset, end = data.offset + n; i < end; i++) {
+                    hash = mix(hash, data.data[i]);
+                }
+                return hash;
+            }
+            case pvInt:
+            case pvUInt: {
+                IntArrayData data = new IntArrayData();
+                int n = array instanceof PVIntArray ? ((PVIntArray) array).get(0, length, data) : ((PVUIntArray) array).get(0, length, data);
+                for (int i = data.offset, end = data.offset + n; i < end; i++) {
+                    hash = mix(hash, data.data[i]);
+                }
+                return hash;
+            }
+            case pvShort:
+            case pvUShort: {
+                ShortArrayData data = new ShortArrayData();
+                int n = array instanceof PVShortArray ? ((PVShortArray) array).get(0, length, data) : ((PVUShortArray) array).get(0, length, data);
+                for (int i = data.offset, end = data.offset + n; i < end; i++) {
+                    hash = mix(hash, data.data[i]);
+                }
+                return hash;
+            }
+            case pvByte:
+            case pvUByte: {
+                ByteArrayData data = new ByteArrayData();
+                int n = array instanceof PVByteArray ? ((PVByteArray) array).get(0, length, data) : ((PVUByteArray) array).get(0, length, data);
+                for (int i = data.offset, end = data.offset + n; i < end; i++) {
+                    hash = mix(hash, data.data[i]);
+                }
+                return hash;
+            }
+            case pvBoolean: {
+                BooleanArrayData data = new BooleanArrayData();
+                int n = ((PVBooleanArray) array).get(0, length, data);
+                for (int i = data.offset, end = data.offset + n; i < end; i++) {
+                    hash = mix(hash, data.data[i] ? 1 : 2);
+                }
+                return hash;
+            }
+            case pvString: {
+                StringArrayData data = new StringArrayData();
+                int n = ((PVStringArray) array).get(0, length, data);
+                for (int i = data.offset, end = data.offset + n; i < end; i++) {
+                    hash = string(hash, data.data[i]);
+                }
+                return hash;
+            }
+            default:
+                return string(hash, array.toString());
+        }
+    }
+}
@@ -0,0 +1,43 @@
+/**
+ * @file
+ * @brief Converts a request result into the value returned to the caller.
+ */
+package edu.stanford.slac.aida.client;
+
+import org.epics.pvaccess.server.rpc.RPCRequestException;
+import org.epics.pvdata.pv.PVStructure;
+
+/**
+ * Converts the PVStructure result of a request into the value returned to the caller.  This is the
+ * decode phase of a request, which {@link AidaPvaRequest} times along with the other phases.
+ */
+abstract class ResultUnpacker {
+    /**
+     * Unpack results into a scalar, an array of values or a PvaTable, see {@link AidaPvaClientUtils#pvaUnpack(PVStructure)}
+     */
+    static final ResultUnpacker VALUE = new ResultUnpacker() {
+        @Override
+        Object unpack(PVStructure result) throws RPCRequestException {
+            return AidaPvaClientUtils.pvaUnpack(result);
+        }
+    };
+
+    /**
+     * Discard results
+     */
+    static final ResultUnpacker NONE = new ResultUnpacker() {
+        @Override
+        Object unpack(PVStructure result) {
+            return null;
+        }
+    };
+
+    /**
+     * Convert the result
+     *
+     * @param result the result, null if the request returned nothing
+     * @return the value to return to the caller
+     * @throws RPCRequestException if the result can't be converted
+     */
+    abstract Object unpack(PVStructure result) throws RPCRequestException;
+}
@@ -0,0 +1,160 @@
+/**
+ * @file
+ * @brief Single pass streaming statistics using Welford's method.
+ */
+package edu.stanford.slac.aida.client;
+
+import lombok.ToString;
+
+/**
+ * Streaming count, mean, variance, min, max and RMS of values that arrive one at a time,
+ * e.g. one reading per pulse, using Welford's single pass method.  Nothing is stored per value.
+ * <p>
+ * e.g.
+ * <pre>{@code
+ *      RunningStatistics charge = new RunningStatistics();
+ *      for (int pulse = 0; pulse < 1000; pulse++) {
+ *          charge.add((Float) pvaGet("BPMS:LI21:201:TMIT", AIDA_FLOAT));
+ *      }
+ *      System.out.println(charge.getMean() + " +/- " + charge.getStandardDeviation());
+ * }</pre>
+ * <p>
+ * Statistics gathered separately, e.g. per thread or per batch, can be combined with
+ * {@link #merge(RunningStatistics)}.  Variances are population values, i.e. divided by n, as in
+ * {@link AidaStatistics}.  This class is not thread safe.
+ */
+@ToString
+public class RunningStatistics {
+    private long count;
+    private double mean;
+    private double m2;
+    private double min = Double.NaN;
+    private double max = Double.NaN;
+
+    /**
+     * Add a value
+     *
+     * @param value the value
+     * @return this
+     */
+    public RunningStatistics add(double value) {
+        if (count == 0) {
+            min = max = value;
+        } else {
+            min = Math.min(min, value);
+            max = Math.max(max, value);
+        }
+        count++;
+        double delta = value - mean;
+        mean += delta / count;
+        m2 += delta * (value - mean);
+        return this;
+    }
+
+    /**
+     * Add a range of values
+     *
+     * @param values the values
+     * @param offset the position of the first value
+     * @param length the number of values
+     * @return this
+     */
+    public RunningStatistics addAll(double[] values, int offset, int length) {
+        AidaStatistics.checkRange(values.length, offset, length);
+        for (int i = offset, end = offset + length; i < end; i++) {
+            add(values[i]);
+        }
+        return this;
+    }
+
+    /**
+     * Combine the values of other statistics into these
+     *
+     * @param other the other statistics
+     * @return this
+     */
+    public RunningStatistics merge(RunningStatistics other) {
+        if (other.count == 0) {
+            return this;
+        }
+        if (count == 0) {
+            count = other.count;
+            mean = other.mean;
+            m2 = other.m2;
+            min = other.min;
+            max = other.max;
+            return this;
+        }
+        long total = count + other.count;
+        double delta = other.mean - mean;
+        mean += delta * other.count / total;
+        m2 += other.m2 + delta * delta * ((double) count * other.count / total);
+        count = total;
+        min = Math.min(min, other.min);
+        max = Math.max(max, other.max);
+        return this;
+    }
+
+    /**
+     * Get the number of values
+     *
+     * @return the number of values
+     */
+    public long getCount() {
+        return count;
+    }
+
+    /**
+     * Get the mean
+     *
+     * @return the mean, or NaN if there are no values
+     */
+    public double getMean() {
+        return count == 0 ? Double.NaN : mean;
+    }
+
+    /**
+     * Get the population variance
+     *
+     * @return the variance, or NaN if there are no values
+     */
+    public double getVariance() {
+        return count == 0 ? Double.NaN : m2 / count;
+    }
+
+    /**
+     * Get the population standard deviation
+     *
+     * @return the standard deviation, or NaN if there are no values
+     */
+    public double getStandardDeviation() {
+        return Math.sqrt(getVariance());
+    }
+
+    /**
+     * Get the root mean square, from the mean and variance
+     *
+     * @return the RMS, or NaN if there are no values
+     */
+    public double getRms() {
+        return Math.sqrt(getVariance() + mean * mean);
+    }
+
+    /**
+     * Get the minimum
+     *
+     * @return the minimum, or NaN if there are no values
+     */
+    public double getMin() {
+        return min;
+    }
+
+    /**
+     * Get the maximum
+     *
+     * @return the maximum, or NaN if there are no values
+     */
+    public double getMax() {
+        return max;
+    }
+}
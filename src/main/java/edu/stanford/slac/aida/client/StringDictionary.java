@@ -0,0 +1,123 @@
+/**
+ * @file
+ * @brief Dictionary encoding of a string column.
+ */
+package edu.stanford.slac.aida.client;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Dictionary encoding of a string column: an int code per row plus the
+ * dictionary of distinct values in order of first appearance.
+ */
+class StringDictionary {
+    /**
+     * Code for each row.  The value of row i is values[codes[i]]
+     */
+    final int[] codes;
+
+    /**
+     * The distinct values
+     */
+    final String[] values;
+
+    /**
+     * The code of each distinct value, shared by the dictionaries gathered from this one.  Built the first time
+     * it is needed unless it comes from encoding
+     */
+    private volatile Map<String, Integer> codeOf;
+
+    StringDictionary(int[] codes, String[] values) {
+        this(codes, values, null);
+    }
+
+    private StringDictionary(int[] codes, String[] values, Map<String, Integer> codeOf) {
+        this.codes = codes;
+        this.values = values;
+        this.codeOf = codeOf;
+    }
+
+    /**
+     * Internal: Encode the given strings.  Each distinct value is interned in the {@link StringPool}
+     * and the destination array is filled with the interned values.
+     *
+     * @param source      the strings to encode
+     * @param offset      the position of the first string in the source
+     * @param length      the number of strings to encode
+     * @param destination the array to fill with the interned values
+     * @return the dictionary encoding
+     */
+    static StringDictionary encode(String[] source, int offset, int length, Object[] destination) {
+        int[] codes = new int[length];
+        Map<String, Integer> codeOf = new HashMap<String, Integer>();
+        String[] values = new String[16];
+        for (int i = 0; i < length; i++) {
+            String value = source[offset + i];
+            Integer code = codeOf.get(value);
+            if (code == null) {
+                code = codeOf.size();
+                codeOf.put(value, code);
+                if (code == values.length) {
+                    values = Arrays.copyOf(values, code * 2);
+                }
+                values[code] = StringPool.intern(value);
+            }
+            codes[i] = code;
+            destination[i] = values[code];
+        }
+        return new StringDictionary(codes, Arrays.copyOf(values, codeOf.size()), codeOf);
+    }
+
+    /**
+     * Internal: Get the codes of the given values.  Values that are not in the dictionary are ignored.
+     * Each value is looked up in the reverse map, so this takes time in proportion to the number of values
+     * wanted, not to the size of the dictionary.
+     *
+     * @param wanted the values to look for
+     * @return a flag for each code, true if its value is one of the given values
+     */
+    boolean[] codesOf(Iterable<?> wanted) {
+        Map<String, Integer> codeOf = codeOf();
+        boolean[] matches = new boolean[values.length];
+        for (Object value : wanted) {
+            Integer code = codeOf.get(value);
+            if (code != null) {
+                matches[code] = true;
+            }
+        }
+        return matches;
+    }
+
+    /**
+     * Internal: Get the map from each distinct value to its code, building it if needed.  Racing threads may
+     * each build one, which is harmless as they are the same
+     */
+    private Map<String, Integer> codeOf() {
+        Map<String, Integer> map = codeOf;
+        if (map == null) {
+            map = new HashMap<String, Integer>(values.length * 2);
+            for (int code = 0; code < values.length; code++) {
+                map.put(values[code], code);
+            }
+            codeOf = map;
+        }
+        return map;
+    }
+
+    /**
+     * Internal: Create the dictionary encoding of the given rows of this column
+     *
+     * @param rows the positions of the rows to take
+     * @param n    the number of rows to take
+     * @return the dictionary encoding for the rows, sharing this dictionary
+     */
+    StringDictionary gather(int[] rows, int n) {
+        int[] gathered = new int[n];
+        for (int i = 0; i < n; i++) {
+            gathered[i] = codes[rows[i]];
+        }
+        return new StringDictionary(gathered, values, codeOf);
+    }
+}
@@ -0,0 +1,148 @@
+/**
+ * @file
+ * @brief Bounded process-wide intern pool for strings in AIDA-PVA results.
+ */
+package edu.stanford.slac.aida.client;
+
+import java.util.Iterator;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.logging.Logger;
+
+/**
+ * A bounded process-wide intern pool for the strings that repeat across AIDA-PVA results,
+ * like labels, device names, status strings and units.
+ * <p>
+ * Table results are decoded through this pool so that long running applications holding many
+ * tables keep one copy of each of these strings instead of one per response.  Unlike
+ * {@link String#intern()} the pool is bounded: it holds at most `capacity` strings, give or take
+ * a few being added at the same moment.  Once it is full each new string evicts an old one, chosen
+ * like a clock: strings are marked when they are interned, and a hand goes round the pool clearing
+ * marks until it reaches a string that has not been interned since the hand last passed it.  So
+ * strings that keep appearing in results stay pooled while the pool turns over as the channels an
+ * application uses change.  An evicted string stays in use wherever it was returned, it is just no
+ * longer shared with later results.
+ * <p>
+ * The capacity can be set with the `aida.pva.client.string.pool.capacity` property
+ * or the `AIDA_PVA_CLIENT_STRING_POOL_CAPACITY` environment variable.  Set it to 0 to disable pooling.
+ */
+public class StringPool {
+    private static final Logger logger = Logger.getLogger(StringPool.class.getName());
+
+    /**
+     * Default maximum number of strings in the pool
+     */
+    public static final int DEFAULT_CAPACITY = 100000;
+
+    private static final int capacity;
+
+    private static final ConcurrentMap<String, Entry> pool = new ConcurrentHashMap<String, Entry>();
+
+    /**
+     * Where eviction is in its round of the pool.  Guarded by the class lock
+     */
+    private static Iterator<Entry> hand;
+
+    static {
+        String capacityProperty = System.getProperty("aida.pva.client.string.pool.capacity");
+
+        // Override with the environment variable if it is set
+        String capacityEnv = System.getenv("AIDA_PVA_CLIENT_STRING_POOL_CAPACITY");
+        if (capacityEnv != null) {
+            capacityProperty = capacityEnv;
+        }
+
+        int configuredCapacity = DEFAULT_CAPACITY;
+        if (capacityProperty != null) {
+            try {
+                configuredCapacity = Integer.parseInt(capacityProperty.trim());
+                logger.info("String pool capacity: " + configuredCapacity);
+            } catch (NumberFormatException e) {
+                logger.warning("Ignoring invalid string pool capacity: " + capacityProperty);
+            }
+        }
+        capacity = configuredCapacity;
+    }
+
+    private StringPool() {
+    }
+
+    /**
+     * A pooled string, and whether it has been interned since eviction last looked at it
+     */
+    private static class Entry {
+        private final String string;
+        private volatile boolean used = true;
+
+        private Entry(String string) {
+            this.string = string;
+        }
+    }
+
+    /**
+     * Get the pooled copy of the given string.  If the string is not yet pooled then the given
+     * string becomes the pooled copy, evicting another if the pool is full.
+     *
+     * @param string the string
+     * @return the pooled copy, or the given string if pooling is disabled or the string is null
+     */
+    public static String intern(String string) {
+        if (string == null || capacity <= 0) {
+            return string;
+        }
+        Entry entry = pool.get(string);
+        if (entry == null) {
+            entry = pool.putIfAbsent(string, new Entry(string));
+            if (entry == null) {
+                if (pool.size() > capacity) {
+                    evictOne();
+                }
+                return string;
+            }
+        }
+        if (!entry.used) {
+            entry.used = true;
+        }
+        return entry.string;
+    }
+
+    /**
+     * Internal: Move the hand on to the next string that has not been interned since the hand last passed it,
+     * clearing the marks of those that have, and evict it.  Each mark cleared was set by an intern, so this
+     * costs a constant amount per intern on average
+     */
+    private static synchronized void evictOne() {
+        while (true) {
+            if (hand == null || !hand.hasNext()) {
+                hand = pool.values().iterator();
+                if (!hand.hasNext()) {
+                    return;
+                }
+            }
+            Entry entry = hand.next();
+            if (!entry.used) {
+                hand.remove();
+                return;
+            }
+            entry.used = false;
+        }
+    }
+
+    /**
+     * Get the number of strings in the pool
+     *
+     * @return the number of strings in the pool
+     */
+    public static int size() {
+        return pool.size();
+    }
+
+    /**
+     * Get the maximum number of strings in the pool
+     *
+     * @return the maximum number of strings in the pool
+     */
+    public static int capacity() {
+        return capacity;
+    }
+}
@@ -0,0 +1,82 @@
+/**
+ * @file
+ * @brief Lock free counter striped across threads.
+ */
+package edu.stanford.slac.aida.client;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Lock free counter that spreads updates over several cells so that threads counting at the same
+ * time rarely contend for the same cache line.  Reading the count sums the cells, so reads are
+ * more expensive than updates.
+ */
+class StripedCounter {
+    /**
+     * Distance, in longs, between cells so that each cell sits on its own cache line
+     */
+    private static final int PADDING = 8;
+
+    /**
+     * Number of cells, the next power of two above twice the number of processors, at most 64
+     */
+    static final int STRIPES;
+
+    static {
+        int stripes = 1;
+        while (stripes < 64 && stripes < Runtime.getRuntime().availableProcessors() * 2) {
+            stripes <<= 1;
+        }
+        STRIPES = stripes;
+    }
+
+    private final AtomicLongArray cells = new AtomicLongArray(STRIPES * PADDING);
+
+    /**
+     * Get the cell index for the current thread
+     *
+     * @return the index of the cell that the current thread updates
+     */
+    static int stripe() {
+        long id = Thread.currentThread().getId();
+        return (int) (id ^ (id >>> 16)) & (STRIPES - 1);
+    }
+
+    /**
+     * Add to the count
+     *
+     * @param delta the amount to add
+     */
+    void add(long delta) {
+        cells.addAndGet(stripe() * PADDING, delta);
+    }
+
+    /**
+     * Add one to the count
+     */
+    void increment() {
+        add(1);
+    }
+
+    /**
+     * Get the count.  Updates made while summing may or may not be included
+     *
+     * @return the count
+     */
+    long sum() {
+        long sum = 0;
+        for (int i = 0; i < STRIPES; i++) {
+            sum += cells.get(i * PADDING);
+        }
+        return sum;
+    }
+
+    /**
+     * Set the count to zero.  Updates made while resetting may be lost
+     */
+    void reset() {
+        for (int i = 0; i < STRIPES; i++) {
+            cells.set(i * PADDING, 0);
+        }
+    }
+}
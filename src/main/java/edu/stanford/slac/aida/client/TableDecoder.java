@@ -0,0 +1,219 @@
+/**
+ * @file
+ * @brief Decoder to turn NTTable results into PvaTables.
+ */
+package edu.stanford.slac.aida.client;
+
+import org.epics.pvaccess.server.rpc.RPCRequestException;
+import org.epics.pvdata.pv.*;
+
+import java.util.*;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+
+import static org.epics.pvdata.pv.Status.StatusType.ERROR;
+
+/**
+ * Decodes NTTable results into PvaTables.
+ * <p>
+ * Each column is decoded by the {@link AidaCodec} for its element type, which reads it straight
+ * out of its ArrayData buffer with a type specific loop.
+ * String columns are dictionary encoded (see {@link StringDictionary}) and their values,
+ * along with the labels, are shared through the {@link StringPool}.
+ * Small tables are decoded on the calling thread.  Once the number of cells in a table
+ * (rows x columns) reaches the parallel threshold, the work is split by column and,
+ * for long columns, by row range and run on the shared pool, see {@link ParallelTasks}.
+ */
+class TableDecoder {
+    /**
+     * Decode the given NTTable result using the configured parallel threshold
+     *
+     * @param result the NTTable result
+     * @return the PvaTable
+     * @throws RPCRequestException if the table is malformed
+     */
+    static PvaTable decode(PVStructure result) throws RPCRequestException {
+        return decode(result, ParallelTasks.parallelThreshold);
+    }
+
+    /**
+     * Decode the given NTTable result, looking up the codec for each column
+     *
+     * @param result    the NTTable result
+     * @param threshold number of cells at or above which the table is decoded in parallel
+     * @return the PvaTable
+     * @throws RPCRequestException if the table is malformed
+     */
+    static PvaTable decode(PVStructure result, int threshold) throws RPCRequestException {
+        return decode(result, threshold, null);
+    }
+
+    /**
+     * Decode the given NTTable result
+     *
+     * @param result    the NTTable result
+     * @param threshold number of cells at or above which the table is decoded in parallel
+     * @param codecs    the codec for each column, or null to look them up
+     * @return the PvaTable
+     * @throws RPCRequestException if the table is malformed
+     */
+    static PvaTable decode(PVStructure result, int threshold, AidaCodec[] codecs) throws RPCRequestException {
+        // Get labels
+        PVStringArray labelsVector = result.getSubField(PVStringArray.class, AidaType.NT_LABELS_NAME);
+        String[] labels = new String[labelsVector.getLength()];
+        BuiltInCodecs.STRING.decode(labelsVector, 0, labels.length, labels, 0);
+        for (int i = 0; i < labels.length; i++) {
+            labels[i] = StringPool.intern(labels[i]);
+        }
+
+        // Check columns and allocate space for the values
+        PVField[] pvFields = result.getSubField(PVStructure.class, AidaType.NT_FIELD_NAME).getPVFields();
+        PVScalarArray[] vectors = new PVScalarArray[pvFields.length];
+        AidaCodec[] columnCodecs = codecs != null && codecs.length == pvFields.length ? codecs : new AidaCodec[pvFields.length];
+        Object[][] columns = new Object[pvFields.length][];
+        StringDictionary[] dictionaries = new StringDictionary[pvFields.length];
+        long cells = 0;
+        for (int c = 0; c < pvFields.length; c++) {
+            PVField column = pvFields[c];
+            if (!(column instanceof PVScalarArray)) {
+                throw new RPCRequestException(ERROR, "Malformed vector in NTTABLE: " + column.getFieldName());
+            }
+            vectors[c] = (PVScalarArray) column;
+            columns[c] = new Object[vectors[c].getLength()];
+            cells += columns[c].length;
+        }
+
+        if (!ParallelTasks.isParallel(cells, threshold)) {
+            for (int c = 0; c < vectors.length; c++) {
+                dictionaries[c] = decodeColumn(vectors[c], columnCodecs[c], columns[c]);
+            }
+        } else {
+            parallelDecode(vectors, columnCodecs, columns, dictionaries);
+        }
+
+        Map<String, Object[]> values = new LinkedHashMap<String, Object[]>();
+        for (int c = 0; c < vectors.length; c++) {
+            values.put(vectors[c].getFieldName(), columns[c]);
+        }
+
+        // Aida table for return - base the size off the number of labels
+        PvaTable table = new PvaTable(labels, values);
+        for (int c = 0; c < vectors.length; c++) {
+            if (dictionaries[c] != null) {
+                table.cacheDictionary(vectors[c].getFieldName(), dictionaries[c]);
+            }
+        }
+        return table;
+    }
+
+    /**
+     * Internal: Decode a whole column.  String columns decoded by the built-in codec are dictionary encoded.
+     *
+     * @param vector      the column to decode
+     * @param codec       the codec for the column, or null to look it up
+     * @param destination the destination array
+     * @return the dictionary encoding for string columns, otherwise null
+     */
+    private static StringDictionary decodeColumn(PVScalarArray vector, AidaCodec codec, Object[] destination) {
+        if (codec == null) {
+            codec = AidaCodecs.forScalarType(vector.getScalarArray().getElementType());
+        }
+        if (codec == BuiltInCodecs.STRING) {
+            StringArrayData data = new StringArrayData();
+            int n = ((PVStringArray) vector).get(0, destination.length, data);
+            return StringDictionary.encode(data.data, data.offset, n, destination);
+        }
+        decodeRange(vector, codec, destination, 0, destination.length);
+        return null;
+    }
+
+    /**
+     * Internal: Decode the given columns on the shared thread pool.  One task is created for each
+     * row range of each numeric column, and one for each whole string column so that it can be
+     * dictionary encoded.
+     *
+     * @param vectors      the columns to decode
+     * @param codecs       the codec for each column, or null entries to look them up
+     * @param columns      the destination arrays for each column
+     * @param dictionaries filled with the dictionary encoding of each string column
+     * @throws RPCRequestException if decoding is interrupted or fails
+     */
+    private static void parallelDecode(final PVScalarArray[] vectors, final AidaCodec[] codecs, final Object[][] columns, final StringDictionary[] dictionaries) throws RPCRequestException {
+        List<Callable<Void>> tasks = new ArrayList<Callable<Void>>();
+        for (int c = 0; c < vectors.length; c++) {
+            final PVScalarArray vector = vectors[c];
+            final AidaCodec codec = codecs[c] != null ? codecs[c] : AidaCodecs.forScalarType(vector.getScalarArray().getElementType());
+            final Object[] column = columns[c];
+            if (codec == BuiltInCodecs.STRING) {
+                final int index = c;
+                tasks.add(new Callable<Void>() {
+                    @Override
+                    public Void call() {
+                        dictionaries[index] = decodeColumn(vector, codec, column);
+                        return null;
+                    }
+                });
+                continue;
+            }
+            for (int from = 0; from < column.length; from += ParallelTasks.ROW_CHUNK_SIZE) {
+                final int start = from;
+                final int end = Math.min(column.length, from + ParallelTasks.ROW_CHUNK_SIZE);
+                tasks.add(new Callable<Void>() {
+                    @Override
+                    public Void call() {
+                        decodeRange(vector, codec, column, start, end);
+                        return null;
+                    }
+                });
+            }
+        }
+
+        try {
+            ParallelTasks.invokeAll(tasks);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RPCRequestException(ERROR, "Interrupted while decoding NTTABLE", e);
+        } catch (ExecutionException e) {
+            throw new RPCRequestException(ERROR, "Failed to decode NTTABLE: " + e.getCause().getMessage(), e.getCause());
+        }
+    }
+
+    /**
+     * Internal: Decode the elements from @p from (inclusive) to @p to (exclusive) of the given
+     * vector into the same positions in the destination array.  Element types without a codec
+     * leave the destination untouched.
+     *
+     * @param vector      the vector to decode
+     * @param codec       the codec for the vector's element type, or null to look it up
+     * @param destination the destination array
+     * @param from        the first element to decode
+     * @param to          the element after the last element to decode
+     */
+    static void decodeRange(PVScalarArray vector, AidaCodec codec, Object[] destination, int from, int to) {
+        decodeRange(vector, codec, destination, from, to, from);
+    }
+
+    /**
+     * Internal: Decode the elements from @p from (inclusive) to @p to (exclusive) of the given
+     * vector into the destination array starting at @p offset.  Element types without a codec
+     * leave the destination untouched.
+     *
+     * @param vector      the vector to decode
+     * @param codec       the codec for the vector's element type, or null to look it up
+     * @param destination the destination array
+     * @param from        the first element to decode
+     * @param to          the element after the last element to decode
+     * @param offset      the position in the destination of the first decoded element
+     */
+    static void decodeRange(PVScalarArray vector, AidaCodec codec, Object[] destination, int from, int to, int offset) {
+        if (to <= from) {
+            return;
+        }
+        if (codec == null) {
+            codec = AidaCodecs.forScalarType(vector.getScalarArray().getElementType());
+        }
+        if (codec != null) {
+            codec.decode(vector, from, to, destination, offset);
+        }
+    }
+}
@@ -0,0 +1,88 @@
+package edu.stanford.slac.aida.client.compat;
+
+/**
+ * The interfaces of `java.util.concurrent.Flow`, the reactive streams API of Java 9 and later, for clients that
+ * run on older Java.  They have the same methods and rules, so adapting either way is one line per method.
+ * e.g. on Java 9 or later
+ * <pre>{@code
+ *      Flow.Publisher<Object[]> publisher = subscriber -> rows.subscribe(new AidaFlow.Subscriber<Object[]>() {
+ *          public void onSubscribe(final AidaFlow.Subscription s) {
+ *              subscriber.onSubscribe(new Flow.Subscription() {
+ *                  public void request(long n) { s.request(n); }
+ *                  public void cancel() { s.cancel(); }
+ *              });
+ *          }
+ *          public void onNext(Object[] row) { subscriber.onNext(row); }
+ *          public void onError(Throwable t) { subscriber.onError(t); }
+ *          public void onComplete() { subscriber.onComplete(); }
+ *      });
+ * }</pre>
+ */
+public final class AidaFlow {
+    private AidaFlow() {
+    }
+
+    /**
+     * A producer of items that sends them to subscribers only as fast as the subscribers ask for them
+     *
+     * @param <T> the type of the items
+     */
+    public interface Publisher<T> {
+        /**
+         * Add a subscriber.  Its {@link Subscriber#onSubscribe(Subscription)} is called before any other method
+         *
+         * @param subscriber the subscriber
+         */
+        void subscribe(Subscriber<? super T> subscriber);
+    }
+
+    /**
+     * A receiver of items.  Its methods are never called concurrently for one subscription
+     *
+     * @param <T> the type of the items
+     */
+    public interface Subscriber<T> {
+        /**
+         * Called first, with the subscription to ask for items with
+         *
+         * @param subscription the subscription
+         */
+        void onSubscribe(Subscription subscription);
+
+        /**
+         * Called with each item asked for
+         *
+         * @param item the item
+         */
+        void onNext(T item);
+
+        /**
+         * Called if the publisher fails, after which no more methods are called
+         *
+         * @param throwable the error
+         */
+        void onError(Throwable throwable);
+
+        /**
+         * Called when there are no more items, after which no more methods are called
+         */
+        void onComplete();
+    }
+
+    /**
+     * The link between a publisher and a subscriber
+     */
+    public interface Subscription {
+        /**
+         * Ask for more items.  Demand adds up, and may be asked for from within {@link Subscriber#onNext(Object)}
+         *
+         * @param n the number of items, which must be positive
+         */
+        void request(long n);
+
+        /**
+         * Stop sending items.  Items already on their way may still arrive
+         */
+        void cancel();
+    }
+}
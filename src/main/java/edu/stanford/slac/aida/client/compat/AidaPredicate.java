@@ -0,0 +1,11 @@
+package edu.stanford.slac.aida.client.compat;
+
+public interface AidaPredicate<T> {
+    /**
+     * Evaluates this predicate on the given argument.
+     *
+     * @param t the input argument
+     * @return true if the input argument matches the predicate, otherwise false
+     */
+    boolean test(T t);
+}
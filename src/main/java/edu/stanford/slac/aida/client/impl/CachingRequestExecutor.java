@@ -0,0 +1,206 @@
+/**
+ * @file
+ * @brief Request executor that keeps responses on local disk.
+ */
+package edu.stanford.slac.aida.client.impl;
+
+import edu.stanford.slac.aida.client.AidaPvaClientUtils;
+import edu.stanford.slac.aida.client.PvaRequestExecutor;
+import edu.stanford.slac.aida.client.RequestTiming;
+import org.epics.pvaccess.server.rpc.RPCRequestException;
+import org.epics.pvdata.pv.PVField;
+import org.epics.pvdata.pv.PVStructure;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Logger;
+import java.util.regex.Pattern;
+
+import static java.util.logging.Level.WARNING;
+
+/**
+ * Request executor that answers repeated gets from a persistent response store on local disk, and passes
+ * everything else on to another executor.
+ * <p>
+ * Only channels given a time to live with {@link #cache(String, long)} are cached.  The first get of such a
+ * channel, with given arguments, goes to the server and its response is kept until it expires.  Later gets
+ * are answered from the store, including after the application restarts, because the store is a memory mapped
+ * file that is indexed when it is opened.  Responses are decoded at most once and then shared, so callers
+ * must not change them.
+ * <p>
+ * Sets are always passed on, and remove any stored responses for their channel, including the `SLC::` getter
+ * channel of delegated channels.  Errors and empty responses are never stored.
+ * The store is compacted as it goes, when replaced and expired responses take up more space than current ones.
+ * <p>
+ * @code
+ *  CachingRequestExecutor cache = new CachingRequestExecutor(getRequestExecutor(), new File("aida.cache"))
+ *      .cache("*:BDES", 60000)
+ *      .cache("DEV_DGRP:*", 3600000);
+ *  setRequestExecutor(cache);
+ * @endcode
+ */
+public class CachingRequestExecutor implements PvaRequestExecutor, Closeable {
+    private static final Logger logger = Logger.getLogger(CachingRequestExecutor.class.getName());
+
+    private final PvaRequestExecutor executor;
+    private final ResponseStore store;
+    private volatile Rule[] rules = new Rule[0];
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+
+    /**
+     * Create a caching executor, opening the store, or creating it if it does not exist
+     *
+     * @param executor the executor to pass requests on to
+     * @param store    the store file
+     * @throws IOException if the store can't be opened
+     */
+    public CachingRequestExecutor(PvaRequestExecutor executor, File store) throws IOException {
+        if (executor == null) {
+            throw new IllegalArgumentException("Request executor must not be null");
+        }
+        this.executor = executor;
+        this.store = new ResponseStore(store);
+    }
+
+    /**
+     * Cache gets of matching channels.  The first matching rule applies
+     *
+     * @param channelPattern the channels to cache, where `*` matches any characters and `?` matches one
+     * @param ttlMillis      how long responses are kept, in milliseconds
+     * @return this executor
+     */
+    public synchronized CachingRequestExecutor cache(String channelPattern, long ttlMillis) {
+        if (channelPattern == null || ttlMillis <= 0) {
+            throw new IllegalArgumentException("Invalid cache rule: " + channelPattern + " for " + ttlMillis + "ms");
+        }
+        Rule[] rules = new Rule[this.rules.length + 1];
+        System.arraycopy(this.rules, 0, rules, 0, this.rules.length);
+        rules[this.rules.length] = new Rule(ChannelPatterns.compile(channelPattern), ttlMillis);
+        this.rules = rules;
+        return this;
+    }
+
+    /**
+     * @return the number of requests answered from the store
+     */
+    public long getHits() {
+        return hits.get();
+    }
+
+    /**
+     * @return the number of cacheable requests that went to the server
+     */
+    public long getMisses() {
+        return misses.get();
+    }
+
+    /**
+     * @return the number of responses in the store
+     */
+    public int size() {
+        return store.size();
+    }
+
+    @Override
+    public PVStructure executeRequest(String channelName, PVStructure request, Double timeout) throws RPCRequestException {
+        if (isSet(request)) {
+            try {
+                // Gets of delegated channels go to, and are cached under, a different channel than their sets
+                store.remove(channelName);
+                String getterChannel = AidaPvaClientUtils.getterChannel(channelName);
+                if (!getterChannel.equals(channelName)) {
+                    store.remove(getterChannel);
+                }
+            } catch (IOException e) {
+                logger.log(WARNING, "Unable to remove cached responses for " + channelName, e);
+            }
+            return executor.executeRequest(channelName, request, timeout);
+        }
+
+        long ttlMillis = ttl(channelName);
+        if (ttlMillis == 0) {
+            return executor.executeRequest(channelName, request, timeout);
+        }
+
+        String key = RequestLog.key(channelName, request);
+        PVStructure response = store.get(key, System.currentTimeMillis());
+        if (response != null) {
+            hits.incrementAndGet();
+            RequestTiming.connected();
+            return response;
+        }
+
+        misses.incrementAndGet();
+        response = executor.executeRequest(channelName, request, timeout);
+        if (response == null) {
+            return null;
+        }
+        try {
+            store.put(key, response, System.currentTimeMillis() + ttlMillis);
+        } catch (IOException e) {
+            logger.log(WARNING, "Unable to cache response for " + channelName, e);
+        }
+        return response;
+    }
+
+    /**
+     * Rewrite the store with only its current responses
+     *
+     * @throws IOException if the store can't be rewritten
+     */
+    public void compact() throws IOException {
+        store.compact();
+    }
+
+    /**
+     * Close the store.  The executor must not be used afterwards
+     *
+     * @throws IOException if the store can't be closed
+     */
+    @Override
+    public void close() throws IOException {
+        store.close();
+    }
+
+    /**
+     * Internal: Get the time to live for a channel from the first matching rule
+     *
+     * @return the time to live in milliseconds, or 0 if the channel is not cached
+     */
+    private long ttl(String channelName) {
+        for (Rule rule : rules) {
+            if (rule.pattern.matcher(channelName).matches()) {
+                return rule.ttlMillis;
+            }
+        }
+        return 0;
+    }
+
+    /**
+     * Internal: Determine whether a request is a set, i.e. has a VALUE argument
+     */
+    private static boolean isSet(PVStructure request) {
+        PVStructure query = request == null ? null : request.getStructureField("query");
+        if (query != null) {
+            for (PVField argument : query.getPVFields()) {
+                if ("VALUE".equalsIgnoreCase(argument.getFieldName())) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    private static class Rule {
+        private final Pattern pattern;
+        private final long ttlMillis;
+
+        private Rule(Pattern pattern, long ttlMillis) {
+            this.pattern = pattern;
+            this.ttlMillis = ttlMillis;
+        }
+    }
+}
@@ -0,0 +1,175 @@
+/**
+ * @file
+ * @brief Persistent cache of the servers that channels were found on.
+ */
+package edu.stanford.slac.aida.client.impl;
+
+import java.io.*;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.logging.Logger;
+
+import static java.util.logging.Level.WARNING;
+
+/**
+ * Remembers the address of the server that answered each channel, and for channels named `PROVIDER::CHANNEL`
+ * the server that answered for the provider prefix, and keeps them in a local file so that they survive
+ * restarts.  {@link PvAccessRequestExecutor} connects to a cached address directly instead of searching
+ * for the channel, and searches only when that fails.
+ * <p>
+ * The file is a properties file of channel names and prefixes to `host:port` addresses.  It is rewritten at
+ * most every few seconds while addresses are changing, and when {@link #save()} is called.
+ * <p>
+ * @code
+ *  setRequestExecutor(new PvAccessRequestExecutor(new ChannelAddressCache(new File("aida.addresses"))));
+ * @endcode
+ */
+public class ChannelAddressCache {
+    private static final Logger logger = Logger.getLogger(ChannelAddressCache.class.getName());
+
+    /**
+     * Least time between saves while addresses are changing
+     */
+    private static final long SAVE_INTERVAL_MILLIS = 5000;
+
+    private final File file;
+    private final Map<String, String> addresses = new ConcurrentHashMap<String, String>();
+    private volatile boolean changed;
+    private volatile long lastSaved;
+
+    /**
+     * Create a cache, loading the addresses saved in the given file if it exists
+     *
+     * @param file the file
+     */
+    public ChannelAddressCache(File file) {
+        this.file = file;
+        if (file.exists()) {
+            try {
+                Properties properties = new Properties();
+                InputStream in = new BufferedInputStream(new FileInputStream(file));
+                try {
+                    properties.load(in);
+                } finally {
+                    in.close();
+                }
+                for (String name : properties.stringPropertyNames()) {
+                    addresses.put(name, properties.getProperty(name));
+                }
+            } catch (IOException e) {
+                logger.log(WARNING, "Ignoring unreadable channel address cache: " + file, e);
+            }
+        }
+        lastSaved = System.currentTimeMillis();
+    }
+
+    /**
+     * Get the cached address for a channel, or failing that for its provider prefix
+     *
+     * @param channelName the channel
+     * @return the `host:port` of the server, or null if the channel has not been found before
+     */
+    public String lookup(String channelName) {
+        String address = addresses.get(channelName);
+        if (address == null) {
+            String prefix = prefix(channelName);
+            if (prefix != null) {
+                address = addresses.get(prefix);
+            }
+        }
+        return address;
+    }
+
+    /**
+     * Record the address of the server a channel was found on
+     *
+     * @param channelName the channel
+     * @param address     the `host:port` of the server
+     */
+    public void resolved(String channelName, String address) {
+        if (address == null) {
+            return;
+        }
+        if (!address.equals(addresses.put(channelName, address))) {
+            changed = true;
+        }
+        String prefix = prefix(channelName);
+        if (prefix != null && !address.equals(addresses.put(prefix, address))) {
+            changed = true;
+        }
+        saveIfDue();
+    }
+
+    /**
+     * Forget an address that a channel could not be reached on
+     *
+     * @param channelName the channel
+     * @param address     the `host:port` that failed
+     */
+    public void failed(String channelName, String address) {
+        if (addresses.remove(channelName) != null) {
+            changed = true;
+        }
+        String prefix = prefix(channelName);
+        if (prefix != null && address.equals(addresses.get(prefix))) {
+            addresses.remove(prefix);
+            changed = true;
+        }
+        saveIfDue();
+    }
+
+    /**
+     * @return the number of channels and prefixes cached
+     */
+    public int size() {
+        return addresses.size();
+    }
+
+    /**
+     * Write the cache to its file if it has changed, replacing the file in one step
+     *
+     * @throws IOException if the file can't be written
+     */
+    public synchronized void save() throws IOException {
+        if (!changed) {
+            return;
+        }
+        changed = false;
+        lastSaved = System.currentTimeMillis();
+
+        Properties properties = new Properties();
+        properties.putAll(addresses);
+        File saving = new File(file.getPath() + ".saving");
+        OutputStream out = new BufferedOutputStream(new FileOutputStream(saving));
+        try {
+            properties.store(out, "AIDA-PVA channel addresses");
+        } finally {
+            out.close();
+        }
+        if (!saving.renameTo(file)) {
+            changed = true;
+            throw new IOException("Unable to replace " + file + " with " + saving);
+        }
+    }
+
+    private void saveIfDue() {
+        if (changed && System.currentTimeMillis() - lastSaved >= SAVE_INTERVAL_MILLIS) {
+            try {
+                save();
+            } catch (IOException e) {
+                logger.log(WARNING, "Unable to save channel address cache: " + file, e);
+            }
+        }
+    }
+
+    /**
+     * Internal: Get the provider prefix of a channel, e.g. `SLC::` for `SLC::XCOR:LI31:41:BCON`
+     *
+     * @return the prefix, or null if the channel has none
+     */
+    private static String prefix(String channelName) {
+        int separator = channelName.indexOf("::");
+        return separator > 0 ? channelName.substring(0, separator + 2) : null;
+    }
+}
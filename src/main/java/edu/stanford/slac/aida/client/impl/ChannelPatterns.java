@@ -0,0 +1,35 @@
+/**
+ * @file
+ * @brief Matching channel names against patterns.
+ */
+package edu.stanford.slac.aida.client.impl;
+
+import java.util.regex.Pattern;
+
+/**
+ * Channel patterns, where `*` matches any characters and `?` any one character, e.g. `KLYS:*:TACT`
+ */
+final class ChannelPatterns {
+    private ChannelPatterns() {
+    }
+
+    /**
+     * Convert a channel pattern to a regular expression
+     *
+     * @param channelPattern the channel pattern
+     * @return the regular expression that matches the same channels
+     */
+    static Pattern compile(String channelPattern) {
+        StringBuilder regex = new StringBuilder();
+        for (String literal : channelPattern.split("((?<=[*?])|(?=[*?]))")) {
+            if ("*".equals(literal)) {
+                regex.append(".*");
+            } else if ("?".equals(literal)) {
+                regex.append('.');
+            } else if (literal.length() > 0) {
+                regex.append(Pattern.quote(literal));
+            }
+        }
+        return Pattern.compile(regex.toString());
+    }
+}
@@ -0,0 +1,333 @@
+/**
+ * @file
+ * @brief Request executor that injects faults into the requests it makes.
+ */
+package edu.stanford.slac.aida.client.impl;
+
+import edu.stanford.slac.aida.client.AidaType;
+import edu.stanford.slac.aida.client.PvaRequestExecutor;
+import org.epics.nt.NTScalar;
+import org.epics.nt.NTScalarArray;
+import org.epics.pvaccess.server.rpc.RPCRequestException;
+import org.epics.pvdata.factory.ConvertFactory;
+import org.epics.pvdata.factory.FieldFactory;
+import org.epics.pvdata.factory.PVDataFactory;
+import org.epics.pvdata.pv.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.regex.Pattern;
+
+import static org.epics.pvdata.pv.Status.StatusType.ERROR;
+
+/**
+ * Request executor that passes requests to another executor after injecting latency, and that fails or
+ * damages some of them, so that applications can be tested against a slow or flaky AIDA-PVA.
+ * <p>
+ * Faults are configured for channel patterns, where `*` matches any characters and `?` any one character.
+ * The first pattern that matches the channel is used, and channels that match no pattern are passed on
+ * untouched.  All random choices are drawn from one generator so a scenario replays exactly from its seed
+ * when requests are made in the same order.
+ * <p>
+ * @code
+ *  AidaPvaClientUtils.setRequestExecutor(new FaultInjectingRequestExecutor(AidaPvaClientUtils.getRequestExecutor(), 42)
+ *      .inject("*:WAVEFORM", new FaultInjectingRequestExecutor.Fault().latency(5, 50).errorRate(0.1))
+ *      .inject("*TACT", new FaultInjectingRequestExecutor.Fault().malformedRate(0.5)));
+ * @endcode
+ */
+public class FaultInjectingRequestExecutor implements PvaRequestExecutor {
+    private static final FieldCreate fieldCreate = FieldFactory.getFieldCreate();
+    private static final PVDataCreate pvDataCreate = PVDataFactory.getPVDataCreate();
+    private static final Convert convert = ConvertFactory.getConvert();
+
+    private final PvaRequestExecutor executor;
+    private final Random random;
+    private final List<Pattern> patterns = new ArrayList<Pattern>();
+    private final List<Fault> faults = new ArrayList<Fault>();
+
+    /**
+     * Create a fault injecting executor
+     *
+     * @param executor the executor to pass requests on to
+     * @param seed     the seed for all random choices
+     */
+    public FaultInjectingRequestExecutor(PvaRequestExecutor executor, long seed) {
+        if (executor == null) {
+            throw new IllegalArgumentException("Request executor must not be null");
+        }
+        this.executor = executor;
+        this.random = new Random(seed);
+    }
+
+    /**
+     * Inject faults into requests for channels that match the given pattern
+     *
+     * @param channelPattern the channel pattern, e.g. `KLYS:*`
+     * @param fault          the faults to inject
+     * @return this executor
+     */
+    public synchronized FaultInjectingRequestExecutor inject(String channelPattern, Fault fault) {
+        if (channelPattern == null || fault == null) {
+            throw new IllegalArgumentException("Channel pattern and fault must not be null");
+        }
+        patterns.add(ChannelPatterns.compile(channelPattern));
+        faults.add(fault.copy());
+        return this;
+    }
+
+    /**
+     * Stop injecting faults
+     */
+    public synchronized void clear() {
+        patterns.clear();
+        faults.clear();
+    }
+
+    @Override
+    public PVStructure executeRequest(String channelName, PVStructure request, Double timeout) throws RPCRequestException {
+        Fault fault = null;
+        long latency = 0;
+        double outcome = 1.0;
+        synchronized (this) {
+            for (int i = 0; i < patterns.size(); i++) {
+                if (patterns.get(i).matcher(channelName).matches()) {
+                    fault = faults.get(i);
+                    latency = fault.latency(random.nextDouble(), random.nextDouble());
+                    outcome = random.nextDouble();
+                    break;
+                }
+            }
+        }
+        if (fault == null) {
+            return executor.executeRequest(channelName, request, timeout);
+        }
+
+        sleep(latency);
+        if ((outcome -= fault.errorRate) < 0) {
+            throw new RPCRequestException(ERROR, "Injected error: " + channelName);
+        }
+        if ((outcome -= fault.disconnectRate) < 0) {
+            throw new RPCRequestException(ERROR, "Injected disconnect: channel " + channelName + " is not connected");
+        }
+        if ((outcome -= fault.timeoutRate) < 0) {
+            sleep(timeout == null ? 0 : (long) (timeout * 1000));
+            throw new RPCRequestException(ERROR, "Injected timeout: no response from " + channelName + " after " + timeout + "s");
+        }
+
+        PVStructure response = executor.executeRequest(channelName, request, timeout);
+        if (response == null) {
+            return null;
+        }
+        if ((outcome -= fault.malformedRate) < 0) {
+            return malformed(response);
+        }
+        if ((outcome -= fault.misTypedRate) < 0) {
+            return misTyped(response);
+        }
+        return response;
+    }
+
+    /**
+     * Damage the structure of a response.  Tables get a column that is not an array and anything else
+     * loses its value
+     *
+     * @param response the response
+     * @return the malformed response
+     */
+    private static PVStructure malformed(PVStructure response) {
+        String id = response.getStructure().getID();
+        PVStructure value = response.getStructureField(AidaType.NT_FIELD_NAME);
+        if (AidaType.NTTABLE_ID.equals(id) && value != null && value.getPVFields().length > 0) {
+            String[] columnNames = value.getStructure().getFieldNames();
+            Field[] columns = value.getStructure().getFields().clone();
+            columns[0] = fieldCreate.createScalar(ScalarType.pvString);
+            Structure table = fieldCreate.createStructure(id,
+                    new String[]{AidaType.NT_LABELS_NAME, AidaType.NT_FIELD_NAME},
+                    new Field[]{response.getStructure().getField(AidaType.NT_LABELS_NAME), fieldCreate.createStructure(columnNames, columns)});
+            PVStructure malformed = pvDataCreate.createPVStructure(table);
+            convert.copy(response.getSubField(AidaType.NT_LABELS_NAME), malformed.getSubField(AidaType.NT_LABELS_NAME));
+            PVStructure malformedValue = malformed.getStructureField(AidaType.NT_FIELD_NAME);
+            for (int c = 1; c < columnNames.length; c++) {
+                convert.copy(value.getSubField(columnNames[c]), malformedValue.getSubField(columnNames[c]));
+            }
+            return malformed;
+        }
+        return pvDataCreate.createPVStructure(fieldCreate.createStructure(id,
+                new String[]{AidaType.NT_FIELD_NAME},
+                new Field[]{fieldCreate.createStructure(new String[0], new Field[0])}));
+    }
+
+    /**
+     * Change the type of a response's values to strings, as a misbehaving provider might
+     *
+     * @param response the response
+     * @return the mis-typed response, or the response itself if it has no scalar or array value
+     */
+    private static PVStructure misTyped(PVStructure response) {
+        PVField value = response.getSubField(AidaType.NT_FIELD_NAME);
+        if (value instanceof PVScalar) {
+            PVStructure misTyped = NTScalar.createBuilder().value(ScalarType.pvString).createPVStructure();
+            misTyped.getSubField(PVString.class, AidaType.NT_FIELD_NAME).put(convert.toString((PVScalar) value));
+            return misTyped;
+        } else if (value instanceof PVScalarArray) {
+            PVScalarArray array = (PVScalarArray) value;
+            String[] strings = new String[array.getLength()];
+            convert.toStringArray(array, 0, strings.length, strings, 0);
+            PVStructure misTyped = NTScalarArray.createBuilder().value(ScalarType.pvString).createPVStructure();
+            misTyped.getSubField(PVStringArray.class, AidaType.NT_FIELD_NAME).put(0, strings.length, strings, 0);
+            return misTyped;
+        }
+        return response;
+    }
+
+    /**
+     * Internal: Wait, keeping the interrupt for the caller
+     */
+    private static void sleep(long millis) {
+        if (millis > 0) {
+            try {
+                Thread.sleep(millis);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    /**
+     * The faults to inject into requests for a channel pattern.  Latency is added to every request and then
+     * at most one of the failures is chosen, each with its own probability.  Errors, disconnects and timeouts
+     * fail the request without passing it on.  Malformed and mis-typed responses are made from the real response.
+     */
+    public static class Fault {
+        private long minLatency;
+        private long maxLatency;
+        private double meanExponentialLatency;
+        private double errorRate;
+        private double disconnectRate;
+        private double timeoutRate;
+        private double malformedRate;
+        private double misTypedRate;
+
+        /**
+         * Add a fixed latency
+         *
+         * @param millis the latency in milliseconds
+         * @return this fault
+         */
+        public Fault latency(long millis) {
+            return latency(millis, millis);
+        }
+
+        /**
+         * Add a latency chosen uniformly from a range
+         *
+         * @param minMillis the least latency in milliseconds
+         * @param maxMillis the greatest latency in milliseconds
+         * @return this fault
+         */
+        public Fault latency(long minMillis, long maxMillis) {
+            if (minMillis < 0 || maxMillis < minMillis) {
+                throw new IllegalArgumentException("Invalid latency range: " + minMillis + " to " + maxMillis);
+            }
+            this.minLatency = minMillis;
+            this.maxLatency = maxMillis;
+            return this;
+        }
+
+        /**
+         * Add an exponentially distributed latency, for the long tail of a loaded server, on top of any
+         * fixed or uniform latency
+         *
+         * @param meanMillis the mean of the extra latency in milliseconds
+         * @return this fault
+         */
+        public Fault exponentialLatency(double meanMillis) {
+            if (meanMillis < 0) {
+                throw new IllegalArgumentException("Invalid mean latency: " + meanMillis);
+            }
+            this.meanExponentialLatency = meanMillis;
+            return this;
+        }
+
+        /**
+         * @param rate the fraction of requests that fail with an error from the server
+         * @return this fault
+         */
+        public Fault errorRate(double rate) {
+            this.errorRate = rate(rate);
+            return this;
+        }
+
+        /**
+         * @param rate the fraction of requests that fail because the channel is not connected
+         * @return this fault
+         */
+        public Fault disconnectRate(double rate) {
+            this.disconnectRate = rate(rate);
+            return this;
+        }
+
+        /**
+         * @param rate the fraction of requests that fail after waiting for the whole timeout
+         * @return this fault
+         */
+        public Fault timeoutRate(double rate) {
+            this.timeoutRate = rate(rate);
+            return this;
+        }
+
+        /**
+         * @param rate the fraction of requests whose response has the wrong structure, e.g. a table column
+         *             that is not an array
+         * @return this fault
+         */
+        public Fault malformedRate(double rate) {
+            this.malformedRate = rate(rate);
+            return this;
+        }
+
+        /**
+         * @param rate the fraction of requests whose values are returned as strings
+         * @return this fault
+         */
+        public Fault misTypedRate(double rate) {
+            this.misTypedRate = rate(rate);
+            return this;
+        }
+
+        /**
+         * Internal: Choose a latency from the distribution given two uniform random numbers
+         */
+        private long latency(double uniform, double exponential) {
+            double latency = minLatency + uniform * (maxLatency - minLatency);
+            if (meanExponentialLatency > 0) {
+                latency -= meanExponentialLatency * Math.log(1.0 - exponential);
+            }
+            return Math.round(latency);
+        }
+
+        /**
+         * Internal: Copy, so that changes after the fault is injected have no effect
+         */
+        private Fault copy() {
+            Fault copy = new Fault().latency(minLatency, maxLatency).exponentialLatency(meanExponentialLatency);
+            copy.errorRate = errorRate;
+            copy.disconnectRate = disconnectRate;
+            copy.timeoutRate = timeoutRate;
+            copy.malformedRate = malformedRate;
+            copy.misTypedRate = misTypedRate;
+            if (errorRate + disconnectRate + timeoutRate + malformedRate + misTypedRate > 1.0) {
+                throw new IllegalArgumentException("Fault rates add up to more than 1");
+            }
+            return copy;
+        }
+
+        private static double rate(double rate) {
+            if (rate < 0 || rate > 1) {
+                throw new IllegalArgumentException("Invalid rate: " + rate);
+            }
+            return rate;
+        }
+    }
+}
@@ -0,0 +1,133 @@
+/**
+ * @file
+ * @brief Request executor that calls services in the same JVM.
+ */
+package edu.stanford.slac.aida.client.impl;
+
+import edu.stanford.slac.aida.client.PvaRequestExecutor;
+import edu.stanford.slac.aida.client.RequestTiming;
+import org.epics.pvaccess.server.rpc.RPCRequestException;
+import org.epics.pvaccess.server.rpc.RPCService;
+import org.epics.pvdata.pv.PVStructure;
+
+import java.util.regex.Pattern;
+
+import static org.epics.pvdata.pv.Status.StatusType.ERROR;
+
+/**
+ * Request executor that hands the request structure straight to an `RPCService` registered in the same JVM,
+ * without channel search, TCP or serialization.  Round trips take microseconds and are the same every time,
+ * so tests run quickly and benchmarks measure only the client.
+ * <p>
+ * Services are registered for channel patterns, where `*` matches any characters and `?` any one character,
+ * in the same way as they are registered with an `RPCServer`.  The first matching pattern is used.  Requests for
+ * channels that match no pattern go to the fallback executor if there is one, and fail otherwise.
+ * <p>
+ * Because nothing is serialized the service is called on the requesting thread and the response is the
+ * structure the service returned, so services must not change a structure after returning it.  The service
+ * is not interrupted at the timeout, but a response that took longer is discarded and the request fails with
+ * a timeout as it would over the network.
+ * <p>
+ * @code
+ *  LoopbackRequestExecutor loopback = new LoopbackRequestExecutor();
+ *  loopback.registerService("TEST::*", new AidaTestService());
+ *  AidaPvaClientUtils.setRequestExecutor(loopback);
+ * @endcode
+ * Setting `-Daida.pva.client.request.executor=Loopback` (or `AIDA_PVA_CLIENT_REQUEST_EXECUTOR`) installs one with
+ * no services, to which services are added through `AidaPvaClientUtils.getRequestExecutor()`.
+ */
+public class LoopbackRequestExecutor implements PvaRequestExecutor {
+    private final PvaRequestExecutor fallback;
+
+    private volatile Registration[] registrations = new Registration[0];
+
+    /**
+     * Create a loopback executor that fails requests for channels with no registered service
+     */
+    public LoopbackRequestExecutor() {
+        this(null);
+    }
+
+    /**
+     * Create a loopback executor that sends requests for channels with no registered service to another executor
+     *
+     * @param fallback the executor for other channels, or null to fail them
+     */
+    public LoopbackRequestExecutor(PvaRequestExecutor fallback) {
+        this.fallback = fallback;
+    }
+
+    /**
+     * Register a service for the channels that match the given pattern
+     *
+     * @param channelPattern the channel pattern, e.g. `TEST::*`
+     * @param service        the service
+     */
+    public synchronized void registerService(String channelPattern, RPCService service) {
+        if (channelPattern == null || service == null) {
+            throw new IllegalArgumentException("Channel pattern and service must not be null");
+        }
+        Registration[] newRegistrations = new Registration[registrations.length + 1];
+        System.arraycopy(registrations, 0, newRegistrations, 0, registrations.length);
+        newRegistrations[registrations.length] = new Registration(channelPattern, service);
+        registrations = newRegistrations;
+    }
+
+    /**
+     * Stop sending requests to the service registered with the given pattern
+     *
+     * @param channelPattern the channel pattern the service was registered with
+     */
+    public synchronized void unregisterService(String channelPattern) {
+        for (int i = 0; i < registrations.length; i++) {
+            if (registrations[i].channelPattern.equals(channelPattern)) {
+                Registration[] newRegistrations = new Registration[registrations.length - 1];
+                System.arraycopy(registrations, 0, newRegistrations, 0, i);
+                System.arraycopy(registrations, i + 1, newRegistrations, i, newRegistrations.length - i);
+                registrations = newRegistrations;
+                return;
+            }
+        }
+    }
+
+    @Override
+    public PVStructure executeRequest(String channelName, PVStructure request, Double timeout) throws RPCRequestException {
+        for (Registration registration : registrations) {
+            if (registration.pattern.matcher(channelName).matches()) {
+                RequestTiming.connected();
+                long start = System.nanoTime();
+                PVStructure response;
+                try {
+                    response = registration.service.request(request);
+                } catch (RPCRequestException e) {
+                    throw e;
+                } catch (Exception e) {
+                    throw new RPCRequestException(ERROR, e.getMessage(), e);
+                }
+                if (timeout != null && System.nanoTime() - start > timeout * 1e9) {
+                    throw new RPCRequestException(ERROR, "timeout");
+                }
+                return response;
+            }
+        }
+        if (fallback != null) {
+            return fallback.executeRequest(channelName, request, timeout);
+        }
+        throw new RPCRequestException(ERROR, "No loopback service for channel: " + channelName);
+    }
+
+    /**
+     * A service and the channels it is registered for
+     */
+    private static class Registration {
+        private final String channelPattern;
+        private final Pattern pattern;
+        private final RPCService service;
+
+        private Registration(String channelPattern, RPCService service) {
+            this.channelPattern = channelPattern;
+            this.pattern = ChannelPatterns.compile(channelPattern);
+            this.service = service;
+        }
+    }
+}
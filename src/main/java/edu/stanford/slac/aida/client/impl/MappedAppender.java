@@ -0,0 +1,85 @@
+/**
+ * @file
+ * @brief Appends to a file through memory mapped windows.
+ */
+package edu.stanford.slac.aida.client.impl;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * Appends to a file through memory mapped windows, so that appending costs a memory copy.  Mapping a window
+ * extends the file with zeros, so readers of a file that was not closed find zeros after the last write.
+ */
+class MappedAppender {
+    private static final int WINDOW_SIZE = 16 << 20;
+
+    private final RandomAccessFile file;
+    private final FileChannel channel;
+    private MappedByteBuffer window;
+    private long windowStart;
+    private long position;
+
+    /**
+     * Open a file for appending
+     *
+     * @param file     the file
+     * @param position where to start appending, anything after it is overwritten.  Zero to empty the file
+     * @throws IOException if the file can't be opened
+     */
+    MappedAppender(File file, long position) throws IOException {
+        this.file = new RandomAccessFile(file, "rw");
+        this.channel = this.file.getChannel();
+        if (position == 0) {
+            this.file.setLength(0);
+        }
+        this.position = position;
+    }
+
+    /**
+     * @return the position the next bytes will be written at
+     */
+    long position() {
+        return position;
+    }
+
+    /**
+     * Copy bytes to the end of the file, mapping new windows as needed
+     *
+     * @param bytes the bytes to write
+     * @throws IOException if the file can't be written
+     */
+    void write(ByteBuffer bytes) throws IOException {
+        while (bytes.hasRemaining()) {
+            if (window == null || position >= windowStart + window.capacity()) {
+                windowStart = position;
+                window = channel.map(FileChannel.MapMode.READ_WRITE, windowStart, Math.max(WINDOW_SIZE, bytes.remaining()));
+            }
+            window.position((int) (position - windowStart));
+            int n = Math.min(bytes.remaining(), window.remaining());
+            ByteBuffer chunk = bytes.duplicate();
+            chunk.limit(chunk.position() + n);
+            window.put(chunk);
+            bytes.position(bytes.position() + n);
+            position += n;
+        }
+    }
+
+    /**
+     * Trim the file to what has been written and close it
+     *
+     * @throws IOException if the file can't be closed
+     */
+    void close() throws IOException {
+        if (window != null) {
+            window.force();
+            window = null;
+        }
+        channel.truncate(position);
+        file.close();
+    }
+}
@@ -1,18 +1,57 @@
 package edu.stanford.slac.aida.client.impl;
 
 import edu.stanford.slac.aida.client.PvaRequestExecutor;
+import edu.stanford.slac.aida.client.RequestTiming;
 import org.epics.pvaccess.client.rpc.RPCClientImpl;
 import org.epics.pvaccess.server.rpc.RPCRequestException;
 import org.epics.pvdata.pv.PVStructure;
 
+import java.util.concurrent.atomic.AtomicLong;
+
 import static org.epics.pvdata.pv.Status.StatusType.ERROR;
 
 public class PvAccessRequestExecutor implements PvaRequestExecutor {
+    private final ChannelAddressCache addresses;
+    private final AtomicLong directConnections = new AtomicLong();
+
+    public PvAccessRequestExecutor() {
+        this(null);
+    }
+
+    /**
+     * Create an executor that connects channels directly to the server they were last found on, and only
+     * searches for channels it has no address for or that can't be reached at their cached address.
+     * Half of each request's timeout is allowed for connecting to a cached address before searching.
+     *
+     * @param addresses the channel address cache, or null to always search
+     */
+    public PvAccessRequestExecutor(ChannelAddressCache addresses) {
+        this.addresses = addresses;
+    }
+
+    /**
+     * @return the number of channels connected at their cached address, without searching
+     */
+    public long getDirectConnections() {
+        return directConnections.get();
+    }
+
     public PVStructure executeRequest(String channelName, PVStructure request, Double timeout) throws RPCRequestException {
+        if (addresses != null) {
+            return executeResolvedRequest(channelName, request, timeout);
+        }
+
         RPCClientImpl client = null;
         try {
+            long start = System.currentTimeMillis();
             client = new RPCClientImpl(channelName);
-            return client.request(request, timeout);
+            if (client.waitConnect(timeout)) {
+                RequestTiming.connected();
+            }
+
+            // Give the request whatever is left of the timeout, the client fails it if the channel did not connect
+            double remaining = timeout - (System.currentTimeMillis() - start) / 1000.0;
+            return client.request(request, Math.max(remaining, 0.0));
         } catch (Exception e) {
             throw new RPCRequestException(ERROR, e.getMessage(), e);
         } finally {
@@ -21,4 +60,48 @@ public class PvAccessRequestExecutor implements PvaRequestExecutor {
             }
         }
     }
+
+    /**
+     * Internal: Execute a request on a channel connected at its cached address if possible, otherwise found by
+     * searching, and cache the address it was found at.  Failures are thrown as RPCRequestExceptions, as they are
+     * for channels that are always searched for
+     */
+    private PVStructure executeResolvedRequest(String channelName, PVStructure request, Double timeout) throws RPCRequestException {
+        long start = System.currentTimeMillis();
+        RpcChannel channel = null;
+        try {
+            String address = addresses.lookup(channelName);
+            if (address != null) {
+                channel = new RpcChannel(channelName, address);
+                if (channel.waitConnect(timeout / 2)) {
+                    directConnections.incrementAndGet();
+                } else {
+                    channel.destroy();
+                    channel = null;
+                    addresses.failed(channelName, address);
+                }
+            }
+
+            if (channel == null) {
+                channel = new RpcChannel(channelName, null);
+                double remaining = timeout - (System.currentTimeMillis() - start) / 1000.0;
+                if (!channel.waitConnect(Math.max(remaining, 0.0))) {
+                    throw new RPCRequestException(ERROR, "ChannelRPC never connected.");
+                }
+                addresses.resolved(channelName, channel.remoteAddress());
+            }
+            RequestTiming.connected();
+
+            double remaining = timeout - (System.currentTimeMillis() - start) / 1000.0;
+            return channel.request(request, Math.max(remaining, 0.0));
+        } catch (RPCRequestException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new RPCRequestException(ERROR, e.getMessage(), e);
+        } finally {
+            if (channel != null) {
+                channel.destroy();
+            }
+        }
+    }
 }
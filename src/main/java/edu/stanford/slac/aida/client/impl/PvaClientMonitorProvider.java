@@ -0,0 +1,49 @@
+/**
+ * @file
+ * @brief Monitor provider using pvAccess monitors through PvaClient.
+ */
+package edu.stanford.slac.aida.client.impl;
+
+import edu.stanford.slac.aida.client.PvaMonitorProvider;
+import org.epics.pvaClient.PvaClient;
+import org.epics.pvaClient.PvaClientMonitor;
+import org.epics.pvaClient.PvaClientMonitorRequester;
+import org.epics.pvaccess.server.rpc.RPCRequestException;
+
+import static org.epics.pvdata.pv.Status.StatusType.ERROR;
+
+/**
+ * Monitor provider that makes a pvAccess monitor of the whole structure of each channel with PvaClient, whose
+ * channels are shared with {@link PvaClientRequestExecutor}.  Updates are taken from the monitor queue as soon as
+ * they arrive, so the server's queue does not overflow while the client is busy.
+ */
+public class PvaClientMonitorProvider implements PvaMonitorProvider {
+    @Override
+    public Monitor monitor(String channelName, final Updates updates) throws RPCRequestException {
+        final PvaClientMonitor monitor;
+        try {
+            monitor = PvaClient.get("pva").channel(channelName).monitor("field()", new PvaClientMonitorRequester() {
+                @Override
+                public void event(PvaClientMonitor monitor) {
+                    while (monitor.poll()) {
+                        try {
+                            updates.update(monitor.getData().getPVStructure());
+                        } finally {
+                            monitor.releaseEvent();
+                        }
+                    }
+                }
+            });
+        } catch (RuntimeException e) {
+            throw new RPCRequestException(ERROR, "Unable to monitor " + channelName + ": " + e.getMessage(), e);
+        }
+
+        return new Monitor() {
+            @Override
+            public void stop() {
+                monitor.stop();
+                monitor.destroy();
+            }
+        };
+    }
+}
@@ -1,6 +1,7 @@
 package edu.stanford.slac.aida.client.impl;
 
 import edu.stanford.slac.aida.client.PvaRequestExecutor;
+import edu.stanford.slac.aida.client.RequestTiming;
 import org.epics.pvaClient.PvaClient;
 import org.epics.pvaClient.PvaClientChannel;
 import org.epics.pvaccess.server.rpc.RPCRequestException;
@@ -13,6 +14,7 @@ public class PvaClientRequestExecutor implements PvaRequestExecutor {
         try {
             PvaClientChannel channel = PvaClient.get("pva").channel(channelName);
             channel.connect(timeout);
+            RequestTiming.connected();
             PVStructure response = channel.rpc(request);
             if (response == null) {
                 throw new RPCRequestException(ERROR, "error executing PvaRequest");
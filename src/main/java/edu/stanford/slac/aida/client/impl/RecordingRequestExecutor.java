@@ -0,0 +1,88 @@
+/**
+ * @file
+ * @brief Request executor that records requests and responses to a log.
+ */
+package edu.stanford.slac.aida.client.impl;
+
+import edu.stanford.slac.aida.client.PvaRequestExecutor;
+import org.epics.pvaccess.server.rpc.RPCRequestException;
+import org.epics.pvdata.pv.PVStructure;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.util.logging.Logger;
+
+import static java.util.logging.Level.WARNING;
+
+/**
+ * Request executor that passes requests to another executor and appends each request, with its response or
+ * error and its timing, to a request log that {@link ReplayRequestExecutor} can answer requests from later.
+ * <p>
+ * @code
+ *  RecordingRequestExecutor recorder = new RecordingRequestExecutor(AidaPvaClientUtils.getRequestExecutor(), new File("aida.log"));
+ *  AidaPvaClientUtils.setRequestExecutor(recorder);
+ *  // ... make requests
+ *  recorder.close();
+ * @endcode
+ * Requests are still made after the log is closed, but are no longer recorded.
+ */
+public class RecordingRequestExecutor implements PvaRequestExecutor, Closeable {
+    private static final Logger logger = Logger.getLogger(RecordingRequestExecutor.class.getName());
+
+    private final PvaRequestExecutor executor;
+    private final long origin = System.nanoTime();
+    private volatile RequestLog.Writer writer;
+
+    /**
+     * Create a recording executor, replacing any existing log
+     *
+     * @param executor the executor to pass requests on to
+     * @param log      the log file
+     * @throws IOException if the log can't be created
+     */
+    public RecordingRequestExecutor(PvaRequestExecutor executor, File log) throws IOException {
+        if (executor == null) {
+            throw new IllegalArgumentException("Request executor must not be null");
+        }
+        this.executor = executor;
+        this.writer = new RequestLog.Writer(log);
+    }
+
+    @Override
+    public PVStructure executeRequest(String channelName, PVStructure request, Double timeout) throws RPCRequestException {
+        long start = System.nanoTime();
+        PVStructure response = null;
+        String error = null;
+        try {
+            response = executor.executeRequest(channelName, request, timeout);
+            return response;
+        } catch (RPCRequestException e) {
+            error = e.getMessage();
+            throw e;
+        } finally {
+            RequestLog.Writer writer = this.writer;
+            if (writer != null && (response != null || error != null)) {
+                try {
+                    writer.append(start - origin, System.nanoTime() - start, channelName, request, response, error);
+                } catch (IOException e) {
+                    logger.log(WARNING, "Unable to record request for " + channelName, e);
+                }
+            }
+        }
+    }
+
+    /**
+     * Stop recording and close the log
+     *
+     * @throws IOException if the log can't be closed
+     */
+    @Override
+    public synchronized void close() throws IOException {
+        RequestLog.Writer writer = this.writer;
+        if (writer != null) {
+            this.writer = null;
+            writer.close();
+        }
+    }
+}
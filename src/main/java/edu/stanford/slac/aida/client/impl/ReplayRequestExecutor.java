@@ -0,0 +1,198 @@
+/**
+ * @file
+ * @brief Request executor that answers requests from a recorded log.
+ */
+package edu.stanford.slac.aida.client.impl;
+
+import edu.stanford.slac.aida.client.PvaRequestExecutor;
+import edu.stanford.slac.aida.client.RequestTiming;
+import org.epics.pvaccess.server.rpc.RPCRequestException;
+import org.epics.pvdata.pv.PVStructure;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.epics.pvdata.pv.Status.StatusType.ERROR;
+
+/**
+ * Request executor that answers requests from a log written by {@link RecordingRequestExecutor}, without a
+ * server, for offline debugging and for benchmarks.
+ * <p>
+ * Requests are matched on channel and arguments.  When the same request was recorded more than once the
+ * recorded responses are returned in turn, starting again after the last one.  Recorded errors are thrown
+ * again.  Requests that were not recorded go to the fallback executor if there is one, and fail otherwise.
+ * <p>
+ * The log is indexed when the executor is created and each response is decoded from the memory mapped log
+ * the first time it is needed and then shared, so callers must not change responses.  By default responses
+ * are returned immediately.  With {@link #timing(double)} each one takes its recorded latency, scaled.
+ * <p>
+ * @code
+ *  AidaPvaClientUtils.setRequestExecutor(new ReplayRequestExecutor(new File("aida.log")).timing(1.0));
+ * @endcode
+ */
+public class ReplayRequestExecutor implements PvaRequestExecutor {
+    private final Map<String, Recording> recordings;
+    private final PvaRequestExecutor fallback;
+    private volatile double timing;
+
+    /**
+     * Create a replay executor that fails requests that were not recorded
+     *
+     * @param log the log file
+     * @throws IOException if the log can't be read
+     */
+    public ReplayRequestExecutor(File log) throws IOException {
+        this(log, null);
+    }
+
+    /**
+     * Create a replay executor
+     *
+     * @param log      the log file
+     * @param fallback the executor for requests that were not recorded, or null to fail them
+     * @throws IOException if the log can't be read
+     */
+    public ReplayRequestExecutor(File log, PvaRequestExecutor fallback) throws IOException {
+        this.fallback = fallback;
+        this.recordings = index(RequestLog.map(log, RequestLog.MAGIC));
+    }
+
+    /**
+     * Make each response take its recorded latency multiplied by the given factor, e.g. 1.0 for the original
+     * timing or 0.0, the default, to return responses immediately
+     *
+     * @param factor the factor
+     * @return this executor
+     */
+    public ReplayRequestExecutor timing(double factor) {
+        if (factor < 0) {
+            throw new IllegalArgumentException("Invalid timing factor: " + factor);
+        }
+        this.timing = factor;
+        return this;
+    }
+
+    /**
+     * Get the number of different requests recorded
+     *
+     * @return the number of different requests
+     */
+    public int size() {
+        return recordings.size();
+    }
+
+    @Override
+    public PVStructure executeRequest(String channelName, PVStructure request, Double timeout) throws RPCRequestException {
+        Recording recording = recordings.get(RequestLog.key(channelName, request));
+        if (recording == null) {
+            if (fallback != null) {
+                return fallback.executeRequest(channelName, request, timeout);
+            }
+            throw new RPCRequestException(ERROR, "No recorded response for " + RequestLog.key(channelName, request));
+        }
+        RequestTiming.connected();
+
+        Response response = recording.next();
+        double timing = this.timing;
+        if (timing > 0) {
+            long nanos = (long) (response.latencyNanos * timing);
+            try {
+                Thread.sleep(nanos / 1000000, (int) (nanos % 1000000));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        return response.get();
+    }
+
+    /**
+     * Internal: Read the channel and request of every record and index the responses
+     */
+    private static Map<String, Recording> index(ByteBuffer log) {
+        Map<String, List<Response>> responses = new HashMap<String, List<Response>>();
+        while (log.remaining() >= 4) {
+            int length = log.getInt();
+            if (length <= 0 || length > log.remaining()) {
+                break;
+            }
+            int end = log.position() + length;
+            log.getLong();
+            long latencyNanos = log.getLong();
+            boolean failed = log.get() == RequestLog.FAILED;
+            String channelName = RequestLog.readString(log);
+            String key = RequestLog.key(channelName, RequestLog.readStructure(log));
+
+            ByteBuffer response = log.duplicate();
+            response.limit(end);
+            List<Response> list = responses.get(key);
+            if (list == null) {
+                list = new ArrayList<Response>(1);
+                responses.put(key, list);
+            }
+            list.add(new Response(response.slice(), failed, latencyNanos));
+            log.position(end);
+        }
+
+        Map<String, Recording> recordings = new HashMap<String, Recording>(responses.size() * 2);
+        for (Map.Entry<String, List<Response>> entry : responses.entrySet()) {
+            recordings.put(entry.getKey(), new Recording(entry.getValue().toArray(new Response[entry.getValue().size()])));
+        }
+        return recordings;
+    }
+
+    /**
+     * The responses recorded for one request
+     */
+    private static class Recording {
+        private final Response[] responses;
+        private final AtomicInteger next = new AtomicInteger();
+
+        private Recording(Response[] responses) {
+            this.responses = responses;
+        }
+
+        private Response next() {
+            if (responses.length == 1) {
+                return responses[0];
+            }
+            return responses[(next.getAndIncrement() & Integer.MAX_VALUE) % responses.length];
+        }
+    }
+
+    /**
+     * A recorded response, decoded when first used
+     */
+    private static class Response {
+        private final ByteBuffer bytes;
+        private final boolean failed;
+        private final long latencyNanos;
+        private volatile PVStructure response;
+        private volatile String error;
+
+        private Response(ByteBuffer bytes, boolean failed, long latencyNanos) {
+            this.bytes = bytes;
+            this.failed = failed;
+            this.latencyNanos = latencyNanos;
+        }
+
+        private PVStructure get() throws RPCRequestException {
+            if (failed) {
+                if (error == null) {
+                    error = RequestLog.readString(bytes.duplicate());
+                }
+                throw new RPCRequestException(ERROR, error);
+            }
+            PVStructure response = this.response;
+            if (response == null) {
+                response = this.response = RequestLog.readStructure(bytes.duplicate());
+            }
+            return response;
+        }
+    }
+}
@@ -0,0 +1,264 @@
+/**
+ * @file
+ * @brief Binary log of requests and their responses.
+ */
+package edu.stanford.slac.aida.client.impl;
+
+import org.epics.pvdata.factory.ConvertFactory;
+import org.epics.pvdata.factory.FieldFactory;
+import org.epics.pvdata.factory.PVDataFactory;
+import org.epics.pvdata.misc.SerializeHelper;
+import org.epics.pvdata.pv.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * The request log written by {@link RecordingRequestExecutor} and read by {@link ReplayRequestExecutor}.
+ * <p>
+ * Requests and responses are stored with pvData's own serialization, each structure's introspection
+ * data followed by its values.  The file starts with a magic number and then holds one record for each
+ * request:
+ * - `int` length of the rest of the record
+ * - `long` start of the request in nanoseconds since recording started
+ * - `long` latency in nanoseconds
+ * - `byte` {@link #OK} or {@link #FAILED}
+ * - `string` channel
+ * - `structure` request NTURI
+ * - `structure` response, or `string` error message if the request failed
+ * <p>
+ * The log is appended through memory mapped windows, so the end of a log that was not closed is zeros
+ * and a record length of zero marks the end.
+ */
+final class RequestLog {
+    static final long MAGIC = 0x4149444152455131L; // AIDAREQ1
+    static final byte OK = 0;
+    static final byte FAILED = 1;
+
+    private static final FieldCreate fieldCreate = FieldFactory.getFieldCreate();
+    private static final PVDataCreate pvDataCreate = PVDataFactory.getPVDataCreate();
+    private static final Convert convert = ConvertFactory.getConvert();
+
+    private RequestLog() {
+    }
+
+    /**
+     * Make the key that identifies a request by channel and arguments.  Arguments are taken in the order
+     * they appear in the request
+     *
+     * @param channelName the channel
+     * @param request     the request NTURI
+     * @return the key
+     */
+    static String key(String channelName, PVStructure request) {
+        StringBuilder key = new StringBuilder(channelName);
+        PVStructure query = request == null ? null : request.getStructureField("query");
+        if (query != null) {
+            char separator = '?';
+            for (PVField argument : query.getPVFields()) {
+                key.append(separator).append(argument.getFieldName()).append('=');
+                if (argument instanceof PVScalar) {
+                    key.append(convert.toString((PVScalar) argument));
+                } else {
+                    key.append(argument.toString().trim());
+                }
+                separator = '&';
+            }
+        }
+        return key.toString();
+    }
+
+    /**
+     * Read a structure, introspection data then values
+     *
+     * @param buffer the buffer positioned at the structure
+     * @return the structure
+     */
+    static PVStructure readStructure(ByteBuffer buffer) {
+        Deserializer deserializer = new Deserializer();
+        Structure structure = (Structure) deserializer.cachedDeserialize(buffer);
+        PVStructure pvStructure = pvDataCreate.createPVStructure(structure);
+        pvStructure.deserialize(buffer, deserializer);
+        return pvStructure;
+    }
+
+    /**
+     * Read a string
+     *
+     * @param buffer the buffer positioned at the string
+     * @return the string
+     */
+    static String readString(ByteBuffer buffer) {
+        return SerializeHelper.deserializeString(buffer);
+    }
+
+    /**
+     * Open a file of length prefixed records for reading
+     *
+     * @param file  the file
+     * @param magic the magic number the file must start with, e.g. {@link #MAGIC} for a request log
+     * @return the whole file, positioned at the first record
+     * @throws IOException if the file can't be read or does not start with the magic number
+     */
+    static ByteBuffer map(File file, long magic) throws IOException {
+        RandomAccessFile randomAccessFile = new RandomAccessFile(file, "r");
+        try {
+            FileChannel channel = randomAccessFile.getChannel();
+            if (channel.size() > Integer.MAX_VALUE) {
+                throw new IOException("Request log is too large to map: " + file);
+            }
+            MappedByteBuffer log = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            if (log.remaining() < 8 || log.getLong() != magic) {
+                throw new IOException("Unexpected file format: " + file);
+            }
+            return log;
+        } finally {
+            randomAccessFile.close();
+        }
+    }
+
+    /**
+     * Appends records to a log through memory mapped windows
+     */
+    static class Writer {
+        private final MappedAppender appender;
+        private final Serializer serializer = new Serializer();
+
+        Writer(File file) throws IOException {
+            this.appender = new MappedAppender(file, 0);
+            ByteBuffer magic = ByteBuffer.allocate(8).putLong(MAGIC);
+            magic.flip();
+            appender.write(magic);
+        }
+
+        /**
+         * Append a record
+         *
+         * @param startNanos   the start of the request since recording started
+         * @param latencyNanos the time the request took
+         * @param channelName  the channel
+         * @param request      the request NTURI
+         * @param response     the response, or null if the request failed
+         * @param error        the error message if the request failed
+         * @throws IOException if the log can't be written
+         */
+        synchronized void append(long startNanos, long latencyNanos, String channelName, PVStructure request, PVStructure response, String error) throws IOException {
+            serializer.begin()
+                    .putLong(startNanos)
+                    .putLong(latencyNanos)
+                    .put(response == null ? FAILED : OK);
+            serializer.writeString(channelName);
+            serializer.writeStructure(request);
+            if (response == null) {
+                serializer.writeString(error == null ? "" : error);
+            } else {
+                serializer.writeStructure(response);
+            }
+            appender.write(serializer.end());
+        }
+
+        /**
+         * Trim the log to the records written and close it
+         *
+         * @throws IOException if the log can't be closed
+         */
+        synchronized void close() throws IOException {
+            appender.close();
+        }
+    }
+
+    /**
+     * Serializes length prefixed records through a fixed buffer that is drained into a growing array whenever
+     * it fills, as pvAccess sends its buffer when it fills
+     */
+    static class Serializer implements SerializableControl {
+        private final ByteBuffer buffer = ByteBuffer.allocate(64 << 10);
+        private byte[] record = new byte[64 << 10];
+        private int size;
+
+        /**
+         * Start a record, leaving room for its length
+         *
+         * @return the buffer to write the fixed size fields of the record into
+         */
+        ByteBuffer begin() {
+            size = 0;
+            buffer.clear();
+            buffer.putInt(0);
+            return buffer;
+        }
+
+        /**
+         * Finish a record and fill in its length
+         *
+         * @return the record, ready to be read
+         */
+        ByteBuffer end() {
+            flushSerializeBuffer();
+            ByteBuffer bytes = ByteBuffer.wrap(record, 0, size);
+            bytes.putInt(0, size - 4);
+            return bytes;
+        }
+
+        void writeString(String value) {
+            SerializeHelper.serializeString(value, buffer, this);
+        }
+
+        void writeStructure(PVStructure pvStructure) {
+            cachedSerialize(pvStructure.getStructure(), buffer);
+            pvStructure.serialize(buffer, this);
+        }
+
+        @Override
+        public void flushSerializeBuffer() {
+            buffer.flip();
+            if (size + buffer.remaining() > record.length) {
+                byte[] larger = new byte[Math.max(record.length * 2, size + buffer.remaining())];
+                System.arraycopy(record, 0, larger, 0, size);
+                record = larger;
+            }
+            int n = buffer.remaining();
+            buffer.get(record, size, n);
+            size += n;
+            buffer.clear();
+        }
+
+        @Override
+        public void ensureBuffer(int size) {
+            if (buffer.remaining() < size) {
+                flushSerializeBuffer();
+            }
+        }
+
+        @Override
+        public void alignBuffer(int alignment) {
+        }
+
+        @Override
+        public void cachedSerialize(Field field, ByteBuffer buffer) {
+            field.serialize(buffer, this);
+        }
+    }
+
+    /**
+     * Deserializes from a buffer holding the whole record
+     */
+    private static class Deserializer implements DeserializableControl {
+        @Override
+        public void ensureData(int size) {
+        }
+
+        @Override
+        public void alignData(int alignment) {
+        }
+
+        @Override
+        public Field cachedDeserialize(ByteBuffer buffer) {
+            return fieldCreate.deserialize(buffer, this);
+        }
+    }
+}
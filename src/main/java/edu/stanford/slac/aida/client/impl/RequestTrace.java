@@ -0,0 +1,137 @@
+/**
+ * @file
+ * @brief Binary trace of the requests an application makes.
+ */
+package edu.stanford.slac.aida.client.impl;
+
+import org.epics.pvdata.pv.PVStructure;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+
+/**
+ * The request trace written by {@link TraceRecordingRequestExecutor} and replayed by {@link TraceReplayer}.
+ * <p>
+ * Unlike the {@link RequestLog} a trace holds no responses, only what is needed to make the same requests
+ * again at the same times, so it stays small and is written through an ordinary buffered stream.
+ * The file starts with a magic number and then holds one record for each request:
+ * - `int` length of the rest of the record
+ * - `long` start of the request in nanoseconds since recording started
+ * - `long` latency in nanoseconds
+ * - `byte` {@link RequestLog#OK} or {@link RequestLog#FAILED}
+ * - `string` channel
+ * - `structure` request NTURI, with the arguments
+ */
+final class RequestTrace {
+    static final long MAGIC = 0x4149444154524331L; // AIDATRC1
+
+    private RequestTrace() {
+    }
+
+    /**
+     * A request read from a trace
+     */
+    static class Entry {
+        final long startNanos;
+        final long latencyNanos;
+        final boolean failed;
+        final String channelName;
+        final PVStructure request;
+
+        private Entry(long startNanos, long latencyNanos, boolean failed, String channelName, PVStructure request) {
+            this.startNanos = startNanos;
+            this.latencyNanos = latencyNanos;
+            this.failed = failed;
+            this.channelName = channelName;
+            this.request = request;
+        }
+    }
+
+    /**
+     * Appends requests to a trace
+     */
+    static class Writer {
+        private final DataOutputStream out;
+        private final RequestLog.Serializer serializer = new RequestLog.Serializer();
+
+        Writer(File file) throws IOException {
+            this.out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file), 64 << 10));
+            this.out.writeLong(MAGIC);
+        }
+
+        /**
+         * Append a request
+         *
+         * @param startNanos   the start of the request since recording started
+         * @param latencyNanos the time the request took
+         * @param failed       true if the request failed
+         * @param channelName  the channel
+         * @param request      the request NTURI
+         * @throws IOException if the trace can't be written
+         */
+        synchronized void append(long startNanos, long latencyNanos, boolean failed, String channelName, PVStructure request) throws IOException {
+            serializer.begin()
+                    .putLong(startNanos)
+                    .putLong(latencyNanos)
+                    .put(failed ? RequestLog.FAILED : RequestLog.OK);
+            serializer.writeString(channelName);
+            serializer.writeStructure(request);
+            ByteBuffer record = serializer.end();
+            out.write(record.array(), record.arrayOffset() + record.position(), record.remaining());
+        }
+
+        synchronized void close() throws IOException {
+            out.close();
+        }
+    }
+
+    /**
+     * Reads the requests in a trace in order, one at a time
+     */
+    static class Reader {
+        private final DataInputStream in;
+        private byte[] record = new byte[4096];
+
+        Reader(File file) throws IOException {
+            this.in = new DataInputStream(new BufferedInputStream(new FileInputStream(file), 64 << 10));
+            if (in.readLong() != MAGIC) {
+                in.close();
+                throw new IOException("Not a request trace: " + file);
+            }
+        }
+
+        /**
+         * Read the next request
+         *
+         * @return the request, or null at the end of the trace
+         * @throws IOException if the trace can't be read
+         */
+        Entry next() throws IOException {
+            int length;
+            try {
+                length = in.readInt();
+            } catch (EOFException e) {
+                return null;
+            }
+            if (length > record.length) {
+                record = new byte[Math.max(length, record.length * 2)];
+            }
+            try {
+                in.readFully(record, 0, length);
+            } catch (EOFException e) {
+                // The last request was not completely written
+                return null;
+            }
+            ByteBuffer buffer = ByteBuffer.wrap(record, 0, length);
+            long startNanos = buffer.getLong();
+            long latencyNanos = buffer.getLong();
+            boolean failed = buffer.get() == RequestLog.FAILED;
+            String channelName = RequestLog.readString(buffer);
+            return new Entry(startNanos, latencyNanos, failed, channelName, RequestLog.readStructure(buffer));
+        }
+
+        void close() throws IOException {
+            in.close();
+        }
+    }
+}
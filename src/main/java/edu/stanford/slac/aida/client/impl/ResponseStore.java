@@ -0,0 +1,263 @@
+/**
+ * @file
+ * @brief Persistent store of responses with expiry times.
+ */
+package edu.stanford.slac.aida.client.impl;
+
+import org.epics.pvdata.pv.PVStructure;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * The store beneath {@link CachingRequestExecutor}, a file of responses that survives restarts.
+ * <p>
+ * The file is only ever appended to, through memory mapped windows.  It starts with a magic number followed
+ * by one record for each response stored or removed:
+ * - `int` length of the rest of the record
+ * - `long` expiry time in milliseconds since the epoch
+ * - `byte` {@link #VALUE} or {@link #REMOVED}
+ * - `string` key
+ * - `structure` the response, for values
+ * <p>
+ * A later record for a key replaces any earlier one.  When opened the file is scanned to build an index of the
+ * current, unexpired records, and their responses are decoded from the mapped file when first used.  Replaced,
+ * removed and expired records are dropped by compaction, which rewrites the file when they take up more space
+ * than current ones.
+ */
+final class ResponseStore {
+    static final long MAGIC = 0x4149444152535031L; // AIDARSP1
+    static final byte VALUE = 0;
+    static final byte REMOVED = 1;
+
+    /**
+     * Files smaller than this are not compacted automatically
+     */
+    private static final long MIN_COMPACTION_BYTES = 1 << 20;
+
+    private final File file;
+    private final Map<String, Entry> index = new ConcurrentHashMap<String, Entry>();
+    private final RequestLog.Serializer serializer = new RequestLog.Serializer();
+    private MappedAppender appender;
+    private long liveBytes;
+    private long deadBytes;
+
+    /**
+     * Open a store, creating it if it does not exist
+     *
+     * @param file the store file
+     * @throws IOException if the file can't be read or written, or is not a response store
+     */
+    ResponseStore(File file) throws IOException {
+        this.file = file;
+        if (file.length() == 0) {
+            create();
+        } else {
+            load(System.currentTimeMillis());
+            if (deadBytes > Math.max(liveBytes, MIN_COMPACTION_BYTES)) {
+                compact();
+            }
+        }
+    }
+
+    /**
+     * Get a stored response
+     *
+     * @param key the key
+     * @param now the current time in milliseconds since the epoch
+     * @return the response, or null if there is none or it has expired
+     */
+    PVStructure get(String key, long now) {
+        Entry entry = index.get(key);
+        return entry == null || entry.expires <= now ? null : entry.response();
+    }
+
+    /**
+     * @return the number of responses stored, including any that have expired since the store was opened
+     */
+    int size() {
+        return index.size();
+    }
+
+    /**
+     * Store a response
+     *
+     * @param key      the key
+     * @param response the response
+     * @param expires  when the response expires, in milliseconds since the epoch
+     * @throws IOException if the store can't be written
+     */
+    synchronized void put(String key, PVStructure response, long expires) throws IOException {
+        serializer.begin().putLong(expires).put(VALUE);
+        serializer.writeString(key);
+        serializer.writeStructure(response);
+        ByteBuffer record = serializer.end();
+        int length = record.remaining();
+        appender.write(record);
+
+        Entry entry = new Entry(expires, length, null);
+        entry.response = response;
+        replace(key, entry);
+        compactIfNeeded();
+    }
+
+    /**
+     * Remove the responses for a channel, whatever their arguments
+     *
+     * @param channelName the channel
+     * @throws IOException if the store can't be written
+     */
+    synchronized void remove(String channelName) throws IOException {
+        List<String> keys = new ArrayList<String>();
+        for (String key : index.keySet()) {
+            if (key.equals(channelName) || key.startsWith(channelName + "?")) {
+                keys.add(key);
+            }
+        }
+        for (String key : keys) {
+            serializer.begin().putLong(0).put(REMOVED);
+            serializer.writeString(key);
+            ByteBuffer record = serializer.end();
+            deadBytes += record.remaining();
+            appender.write(record);
+            replace(key, null);
+        }
+        compactIfNeeded();
+    }
+
+    /**
+     * Rewrite the store with only its current, unexpired responses
+     *
+     * @throws IOException if the store can't be rewritten
+     */
+    synchronized void compact() throws IOException {
+        long now = System.currentTimeMillis();
+        File compacted = new File(file.getPath() + ".compact");
+        MappedAppender writer = new MappedAppender(compacted, 0);
+        writeMagic(writer);
+        liveBytes = 0;
+        for (Map.Entry<String, Entry> mapEntry : new ArrayList<Map.Entry<String, Entry>>(index.entrySet())) {
+            Entry entry = mapEntry.getValue();
+            if (entry.expires <= now) {
+                index.remove(mapEntry.getKey());
+                continue;
+            }
+            serializer.begin().putLong(entry.expires).put(VALUE);
+            serializer.writeString(mapEntry.getKey());
+            serializer.writeStructure(entry.response());
+            ByteBuffer record = serializer.end();
+            liveBytes += record.remaining();
+            writer.write(record);
+        }
+        writer.close();
+
+        appender.close();
+        if (!compacted.renameTo(file)) {
+            throw new IOException("Unable to replace " + file + " with " + compacted);
+        }
+        appender = new MappedAppender(file, file.length());
+        deadBytes = 0;
+    }
+
+    /**
+     * Close the store
+     *
+     * @throws IOException if the store can't be closed
+     */
+    synchronized void close() throws IOException {
+        appender.close();
+    }
+
+    /**
+     * Internal: Start a new store
+     */
+    private void create() throws IOException {
+        appender = new MappedAppender(file, 0);
+        writeMagic(appender);
+    }
+
+    private static void writeMagic(MappedAppender appender) throws IOException {
+        ByteBuffer magic = ByteBuffer.allocate(8).putLong(MAGIC);
+        magic.flip();
+        appender.write(magic);
+    }
+
+    /**
+     * Internal: Index the records in an existing store, and append after the last complete one
+     */
+    private void load(long now) throws IOException {
+        ByteBuffer store = RequestLog.map(file, MAGIC);
+        while (store.remaining() >= 4) {
+            int position = store.position();
+            int length = store.getInt();
+            if (length <= 0 || length > store.remaining()) {
+                store.position(position);
+                break;
+            }
+            int end = store.position() + length;
+            long expires = store.getLong();
+            byte kind = store.get();
+            String key = RequestLog.readString(store);
+            if (kind == VALUE && expires > now) {
+                ByteBuffer response = store.duplicate();
+                response.limit(end);
+                replace(key, new Entry(expires, length + 4, response.slice()));
+            } else {
+                deadBytes += length + 4;
+                replace(key, null);
+            }
+            store.position(end);
+        }
+        appender = new MappedAppender(file, store.position());
+    }
+
+    /**
+     * Internal: Replace or remove the entry for a key, keeping count of the space used by current and
+     * replaced records
+     */
+    private void replace(String key, Entry entry) {
+        Entry previous = entry == null ? index.remove(key) : index.put(key, entry);
+        if (previous != null) {
+            liveBytes -= previous.length;
+            deadBytes += previous.length;
+        }
+        if (entry != null) {
+            liveBytes += entry.length;
+        }
+    }
+
+    private void compactIfNeeded() throws IOException {
+        if (deadBytes > Math.max(liveBytes, MIN_COMPACTION_BYTES)) {
+            compact();
+        }
+    }
+
+    /**
+     * A stored response, decoded from the file when first used
+     */
+    private static class Entry {
+        private final long expires;
+        private final int length;
+        private final ByteBuffer bytes;
+        private volatile PVStructure response;
+
+        private Entry(long expires, int length, ByteBuffer bytes) {
+            this.expires = expires;
+            this.length = length;
+            this.bytes = bytes;
+        }
+
+        private PVStructure response() {
+            PVStructure response = this.response;
+            if (response == null) {
+                response = this.response = RequestLog.readStructure(bytes.duplicate());
+            }
+            return response;
+        }
+    }
+}
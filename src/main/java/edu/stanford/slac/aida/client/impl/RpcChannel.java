@@ -0,0 +1,149 @@
+/**
+ * @file
+ * @brief A pvAccess RPC channel that can be connected to a known server.
+ */
+package edu.stanford.slac.aida.client.impl;
+
+import org.epics.pvaccess.ClientFactory;
+import org.epics.pvaccess.client.*;
+import org.epics.pvaccess.server.rpc.RPCRequestException;
+import org.epics.pvdata.copy.CreateRequest;
+import org.epics.pvdata.pv.MessageType;
+import org.epics.pvdata.pv.PVStructure;
+import org.epics.pvdata.pv.Status;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Logger;
+
+import static org.epics.pvdata.pv.Status.StatusType.ERROR;
+
+/**
+ * A pvAccess RPC channel for a single request, like `RPCClientImpl`, except that it can connect directly to
+ * a server at a known address instead of searching for the channel, and reports the address of the server
+ * it connected to.
+ */
+class RpcChannel implements ChannelRequester, ChannelRPCRequester {
+    private static final Logger logger = Logger.getLogger(RpcChannel.class.getName());
+    private static final PVStructure pvRequest = CreateRequest.create().createRequest("");
+
+    private final Channel channel;
+    private final CountDownLatch connected = new CountDownLatch(1);
+    private final CountDownLatch done = new CountDownLatch(1);
+    private volatile ChannelRPC channelRPC;
+    private volatile Status status;
+    private volatile PVStructure result;
+
+    /**
+     * Create a channel and start connecting it
+     *
+     * @param channelName the channel
+     * @param address     the `host:port` of the server to connect to, or null to search for the channel
+     */
+    RpcChannel(String channelName, String address) {
+        ClientFactory.start();
+        ChannelProvider provider = ChannelProviderRegistryFactory.getChannelProviderRegistry().getProvider("pva");
+        channel = address == null
+                ? provider.createChannel(channelName, this, ChannelProvider.PRIORITY_DEFAULT)
+                : provider.createChannel(channelName, this, ChannelProvider.PRIORITY_DEFAULT, address);
+        channel.createChannelRPC(this, pvRequest);
+    }
+
+    /**
+     * Wait for the channel to connect
+     *
+     * @param timeout the timeout in seconds
+     * @return true if the channel connected in time
+     */
+    boolean waitConnect(double timeout) {
+        try {
+            return connected.await((long) (timeout * 1000), TimeUnit.MILLISECONDS) && channelRPC != null;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+
+    /**
+     * Get the address of the server the channel is connected to
+     *
+     * @return the `host:port` of the server, or null if the channel is not connected
+     */
+    String remoteAddress() {
+        String address = channel.getRemoteAddress();
+        // An InetSocketAddress, "hostname/ip:port" or "/ip:port"
+        return address == null ? null : address.substring(address.indexOf('/') + 1);
+    }
+
+    /**
+     * Make the request on a connected channel
+     *
+     * @param request the request
+     * @param timeout the timeout in seconds
+     * @return the response
+     * @throws RPCRequestException if the request fails or times out
+     */
+    PVStructure request(PVStructure request, double timeout) throws RPCRequestException {
+        ChannelRPC channelRPC = this.channelRPC;
+        if (channelRPC == null) {
+            throw new RPCRequestException(ERROR, "ChannelRPC never connected.");
+        }
+        channelRPC.request(request);
+        try {
+            if (!done.await((long) (timeout * 1000), TimeUnit.MILLISECONDS)) {
+                throw new RPCRequestException(ERROR, "timeout");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RPCRequestException(ERROR, "interrupted");
+        }
+        Status status = this.status;
+        if (!status.isSuccess()) {
+            throw new RPCRequestException(status.getType(), status.getMessage());
+        }
+        return result;
+    }
+
+    /**
+     * Destroy the channel
+     */
+    void destroy() {
+        channel.destroy();
+    }
+
+    @Override
+    public void channelCreated(Status status, Channel channel) {
+        if (!status.isSuccess()) {
+            logger.fine("Channel not created: " + status.getMessage());
+        }
+    }
+
+    @Override
+    public void channelStateChange(Channel channel, Channel.ConnectionState connectionState) {
+    }
+
+    @Override
+    public void channelRPCConnect(Status status, ChannelRPC channelRPC) {
+        if (status.isSuccess()) {
+            this.channelRPC = channelRPC;
+        }
+        connected.countDown();
+    }
+
+    @Override
+    public void requestDone(Status status, ChannelRPC channelRPC, PVStructure result) {
+        this.result = result;
+        this.status = status;
+        done.countDown();
+    }
+
+    @Override
+    public String getRequesterName() {
+        return getClass().getName();
+    }
+
+    @Override
+    public void message(String message, MessageType messageType) {
+        logger.fine(message);
+    }
+}
@@ -0,0 +1,86 @@
+/**
+ * @file
+ * @brief Request executor that traces the requests it makes.
+ */
+package edu.stanford.slac.aida.client.impl;
+
+import edu.stanford.slac.aida.client.PvaRequestExecutor;
+import org.epics.pvaccess.server.rpc.RPCRequestException;
+import org.epics.pvdata.pv.PVStructure;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.util.logging.Logger;
+
+import static java.util.logging.Level.WARNING;
+
+/**
+ * Request executor that passes requests to another executor and writes the channel, arguments, start time,
+ * latency and outcome of each one to a compact request trace, so that {@link TraceReplayer} can make
+ * the same requests again later, e.g. against a test server for capacity planning.  Responses are not kept,
+ * see {@link RecordingRequestExecutor} for that.
+ * <p>
+ * @code
+ *  TraceRecordingRequestExecutor tracer = new TraceRecordingRequestExecutor(AidaPvaClientUtils.getRequestExecutor(), new File("aida.trace"));
+ *  AidaPvaClientUtils.setRequestExecutor(tracer);
+ *  // ... make requests
+ *  tracer.close();
+ * @endcode
+ */
+public class TraceRecordingRequestExecutor implements PvaRequestExecutor, Closeable {
+    private static final Logger logger = Logger.getLogger(TraceRecordingRequestExecutor.class.getName());
+
+    private final PvaRequestExecutor executor;
+    private final long origin = System.nanoTime();
+    private volatile RequestTrace.Writer writer;
+
+    /**
+     * Create a tracing executor, replacing any existing trace
+     *
+     * @param executor the executor to pass requests on to
+     * @param trace    the trace file
+     * @throws IOException if the trace can't be created
+     */
+    public TraceRecordingRequestExecutor(PvaRequestExecutor executor, File trace) throws IOException {
+        if (executor == null) {
+            throw new IllegalArgumentException("Request executor must not be null");
+        }
+        this.executor = executor;
+        this.writer = new RequestTrace.Writer(trace);
+    }
+
+    @Override
+    public PVStructure executeRequest(String channelName, PVStructure request, Double timeout) throws RPCRequestException {
+        long start = System.nanoTime();
+        boolean failed = true;
+        try {
+            PVStructure response = executor.executeRequest(channelName, request, timeout);
+            failed = false;
+            return response;
+        } finally {
+            RequestTrace.Writer writer = this.writer;
+            if (writer != null) {
+                try {
+                    writer.append(start - origin, System.nanoTime() - start, failed, channelName, request);
+                } catch (IOException e) {
+                    logger.log(WARNING, "Unable to trace request for " + channelName, e);
+                }
+            }
+        }
+    }
+
+    /**
+     * Stop tracing and close the trace
+     *
+     * @throws IOException if the trace can't be closed
+     */
+    @Override
+    public synchronized void close() throws IOException {
+        RequestTrace.Writer writer = this.writer;
+        if (writer != null) {
+            this.writer = null;
+            writer.close();
+        }
+    }
+}
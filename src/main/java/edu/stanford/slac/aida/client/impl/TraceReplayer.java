@@ -0,0 +1,313 @@
+/**
+ * @file
+ * @brief Replays a request trace as load.
+ */
+package edu.stanford.slac.aida.client.impl;
+
+import edu.stanford.slac.aida.client.AidaPvaClientUtils;
+import edu.stanford.slac.aida.client.PvaRequestExecutor;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Makes the requests in a trace written by {@link TraceRecordingRequestExecutor} again, on the original
+ * schedule or a faster or slower one, and reports the latency and throughput achieved.
+ * <p>
+ * Load is open loop: each request is sent at its scheduled time whether or not earlier requests have
+ * completed, from a pool of threads.  Latency is measured from the scheduled time, so time spent waiting for
+ * a free thread while the server falls behind counts, as it would for the applications the trace came from.
+ * The time spent in the executor alone is reported as service time.
+ * <p>
+ * @code
+ *  TraceReplayer.Report report = new TraceReplayer(AidaPvaClientUtils.getRequestExecutor(), new File("aida.trace"))
+ *      .speed(10.0)
+ *      .run();
+ * @endcode
+ * or from the command line, against the executor selected by `aida.pva.client.request.executor`:
+ * @code
+ *  java -cp aida-pva-client.jar edu.stanford.slac.aida.client.impl.TraceReplayer aida.trace 10 [threads]
+ * @endcode
+ */
+public class TraceReplayer {
+    private final PvaRequestExecutor executor;
+    private final File trace;
+    private double speed = 1.0;
+    private int threads = 64;
+    private double timeout = 3.0;
+
+    /**
+     * Create a replayer
+     *
+     * @param executor the executor to send requests with
+     * @param trace    the trace file
+     */
+    public TraceReplayer(PvaRequestExecutor executor, File trace) {
+        if (executor == null || trace == null) {
+            throw new IllegalArgumentException("Request executor and trace must not be null");
+        }
+        this.executor = executor;
+        this.trace = trace;
+    }
+
+    /**
+     * Set how many times faster than recorded to send requests, e.g. 10.0 to send them in a tenth of the time
+     *
+     * @param speed the speed, 1.0 by default
+     * @return this replayer
+     */
+    public TraceReplayer speed(double speed) {
+        if (!(speed > 0)) {
+            throw new IllegalArgumentException("Invalid speed: " + speed);
+        }
+        this.speed = speed;
+        return this;
+    }
+
+    /**
+     * Set the number of threads sending requests, the most requests that can be outstanding at once
+     *
+     * @param threads the number of threads, 64 by default
+     * @return this replayer
+     */
+    public TraceReplayer threads(int threads) {
+        if (threads < 1) {
+            throw new IllegalArgumentException("Invalid number of threads: " + threads);
+        }
+        this.threads = threads;
+        return this;
+    }
+
+    /**
+     * Set the timeout of each request
+     *
+     * @param seconds the timeout in seconds, 3.0 by default
+     * @return this replayer
+     */
+    public TraceReplayer timeout(double seconds) {
+        this.timeout = seconds;
+        return this;
+    }
+
+    /**
+     * Replay the trace
+     *
+     * @return the report
+     * @throws IOException          if the trace can't be read
+     * @throws InterruptedException if interrupted while replaying
+     */
+    public Report run() throws IOException, InterruptedException {
+        final Report report = new Report(speed);
+        final AtomicInteger threadNumber = new AtomicInteger();
+        ExecutorService pool = Executors.newFixedThreadPool(threads, new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, "TraceReplayer-" + threadNumber.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+
+        RequestTrace.Reader reader = new RequestTrace.Reader(trace);
+        try {
+            long origin = System.nanoTime();
+            report.started(origin);
+            long first = -1;
+            RequestTrace.Entry entry;
+            while ((entry = reader.next()) != null) {
+                if (first < 0) {
+                    first = entry.startNanos;
+                }
+                final long scheduled = origin + (long) ((entry.startNanos - first) / speed);
+                long delay;
+                while ((delay = scheduled - System.nanoTime()) > 0) {
+                    TimeUnit.NANOSECONDS.sleep(delay);
+                }
+                report.dispatched(entry.failed, entry.startNanos - first, -delay);
+
+                final RequestTrace.Entry request = entry;
+                pool.execute(new Runnable() {
+                    @Override
+                    public void run() {
+                        long start = System.nanoTime();
+                        boolean failed = true;
+                        try {
+                            executor.executeRequest(request.channelName, request.request, timeout);
+                            failed = false;
+                        } catch (Exception ignored) {
+                        } finally {
+                            long end = System.nanoTime();
+                            report.completed(end - scheduled, end - start, failed, end);
+                        }
+                    }
+                });
+            }
+        } finally {
+            reader.close();
+            pool.shutdown();
+        }
+        pool.awaitTermination(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+        return report;
+    }
+
+    /**
+     * Replay a trace from the command line and print the report
+     *
+     * @param args the trace file, the speed and optionally the number of threads
+     * @throws Exception if the trace can't be replayed
+     */
+    public static void main(String[] args) throws Exception {
+        if (args.length < 1) {
+            System.err.println("Usage: TraceReplayer <trace> [speed] [threads]");
+            System.exit(1);
+        }
+        TraceReplayer replayer = new TraceReplayer(AidaPvaClientUtils.getRequestExecutor(), new File(args[0]));
+        if (args.length > 1) {
+            replayer.speed(Double.parseDouble(args[1]));
+        }
+        if (args.length > 2) {
+            replayer.threads(Integer.parseInt(args[2]));
+        }
+        System.out.println(replayer.run());
+    }
+
+    /**
+     * The results of a replay
+     */
+    public static class Report {
+        private final double speed;
+        private long[] latencies = new long[1024];
+        private long[] serviceTimes = new long[1024];
+        private int requests;
+        private int errors;
+        private int recordedErrors;
+        private long recordedNanos;
+        private long maxLagNanos;
+        private long origin;
+        private long end;
+
+        private Report(double speed) {
+            this.speed = speed;
+        }
+
+        private synchronized void dispatched(boolean failed, long recordedNanos, long lagNanos) {
+            if (failed) {
+                recordedErrors++;
+            }
+            this.recordedNanos = recordedNanos;
+            maxLagNanos = Math.max(maxLagNanos, lagNanos);
+        }
+
+        private synchronized void started(long origin) {
+            this.origin = origin;
+        }
+
+        private synchronized void completed(long latencyNanos, long serviceNanos, boolean failed, long end) {
+            if (requests == latencies.length) {
+                latencies = Arrays.copyOf(latencies, requests * 2);
+                serviceTimes = Arrays.copyOf(serviceTimes, requests * 2);
+            }
+            latencies[requests] = latencyNanos;
+            serviceTimes[requests] = serviceNanos;
+            requests++;
+            if (failed) {
+                errors++;
+            }
+            this.end = Math.max(this.end, end);
+        }
+
+        /**
+         * @return the number of requests made
+         */
+        public synchronized int getRequests() {
+            return requests;
+        }
+
+        /**
+         * @return the number of requests that failed
+         */
+        public synchronized int getErrors() {
+            return errors;
+        }
+
+        /**
+         * @return the number of requests that failed when the trace was recorded
+         */
+        public synchronized int getRecordedErrors() {
+            return recordedErrors;
+        }
+
+        /**
+         * @return the time from the first request being sent to the last one completing, in seconds
+         */
+        public synchronized double getDurationSeconds() {
+            return (end - origin) / 1e9;
+        }
+
+        /**
+         * @return the rate requests were sent at, per second
+         */
+        public synchronized double getOfferedRate() {
+            return recordedNanos == 0 ? 0 : requests * 1e9 * speed / recordedNanos;
+        }
+
+        /**
+         * @return the rate requests completed at, per second
+         */
+        public synchronized double getThroughput() {
+            return end == origin ? 0 : requests * 1e9 / (end - origin);
+        }
+
+        /**
+         * @return how late the latest request was sent, in milliseconds, because the replayer could not keep up
+         */
+        public synchronized double getMaxLagMillis() {
+            return maxLagNanos / 1e6;
+        }
+
+        /**
+         * Get a percentile of the latency, from each request's scheduled time to its completion
+         *
+         * @param percentile the percentile, e.g. 99.9
+         * @return the latency in milliseconds
+         */
+        public synchronized double getLatencyMillis(double percentile) {
+            return percentile(latencies, percentile);
+        }
+
+        /**
+         * Get a percentile of the time spent in the executor
+         *
+         * @param percentile the percentile, e.g. 99.9
+         * @return the service time in milliseconds
+         */
+        public synchronized double getServiceMillis(double percentile) {
+            return percentile(serviceTimes, percentile);
+        }
+
+        private double percentile(long[] samples, double percentile) {
+            if (requests == 0) {
+                return 0;
+            }
+            long[] sorted = Arrays.copyOf(samples, requests);
+            Arrays.sort(sorted);
+            int index = (int) Math.ceil(percentile / 100.0 * requests) - 1;
+            return sorted[Math.max(0, Math.min(requests - 1, index))] / 1e6;
+        }
+
+        @Override
+        public synchronized String toString() {
+            return String.format("%d requests at %.1fx in %.3fs, %d errors (%d recorded): offered %.1f/s, throughput %.1f/s, " +
+                            "latency p50=%.3fms p90=%.3fms p99=%.3fms p99.9=%.3fms max=%.3fms, service p50=%.3fms p99=%.3fms, max lag %.3fms",
+                    requests, speed, getDurationSeconds(), errors, recordedErrors, getOfferedRate(), getThroughput(),
+                    getLatencyMillis(50), getLatencyMillis(90), getLatencyMillis(99), getLatencyMillis(99.9), getLatencyMillis(100),
+                    getServiceMillis(50), getServiceMillis(99), getMaxLagMillis());
+        }
+    }
+}
@@ -1,5 +1,6 @@
 package edu.stanford.slac.aida.test;
 
+import edu.stanford.slac.aida.client.impl.LoopbackRequestExecutor;
 import junit.framework.TestCase;
 import lombok.extern.java.Log;
 import org.epics.pvaccess.PVAException;
@@ -7,11 +8,13 @@ import org.epics.pvaccess.server.rpc.RPCServer;
 import org.junit.AfterClass;
 import org.junit.BeforeClass;
 
+import static edu.stanford.slac.aida.client.AidaPvaClientUtils.getRequestExecutor;
 import static java.util.logging.Level.SEVERE;
 
 @Log
 public abstract class AbstractAidaClientTest extends TestCase {
     public static final String PROVIDER_NAME = "TEST";
+    public static final String SYNTHETIC_PROVIDER_NAME = "SYNTH";
     public static final String TEST1_CHANNEL_NAME = "XCOR:LI31:41:BCON";
     public static final String TEST2_CHANNEL_NAME = "DEV_DGRP:XCOR:BDES";
     public static final String TEST3_CHANNEL_NAME = "KLYS:LI31:31:TACT";
@@ -19,23 +22,38 @@ public abstract class AbstractAidaClientTest extends TestCase {
     public static final String TEST5_CHANNEL_NAME = "KLYS:LI31:31:PDES";
     public static final String TEST6_CHANNEL_NAME = "XCOR:LI31:4100:BCON";
     public static final String TEST7_CHANNEL_NAME = "NDRFACET:BUFFACQ";
+    public static final String TEST8_CHANNEL_NAME = "KLYS:LI21:11:WAVEFORM";
 
     private static RPCServer server;
     private static Thread serverThread;
+    private static boolean loopbackRegistered;
 
     public static String getChannel(String channelName) {
         return channelName.substring(PROVIDER_NAME.length() + 2);
     }
 
     /**
-     * Start the Test AIDA service for tests
+     * Start the Test AIDA service for tests.  When the loopback request executor is selected,
+     * e.g. with `-Daida.pva.client.request.executor=Loopback`, the services are called in process instead
      */
     @BeforeClass
     public static void startServer() {
+        if (getRequestExecutor() instanceof LoopbackRequestExecutor) {
+            LoopbackRequestExecutor loopback = (LoopbackRequestExecutor) getRequestExecutor();
+            if (!loopbackRegistered) {
+                log.info("Registering Test RPC Services for loopback ...");
+                loopback.registerService(PROVIDER_NAME + "::*", new AidaTestService());
+                loopback.registerService(SYNTHETIC_PROVIDER_NAME + "::*", new SyntheticTestService());
+                loopbackRegistered = true;
+            }
+            return;
+        }
+
         log.info("Starting Test RPC Server ...");
         server = new RPCServer();
         AidaTestService testService = new AidaTestService();
         server.registerService(PROVIDER_NAME + "::*", testService);
+        server.registerService(SYNTHETIC_PROVIDER_NAME + "::*", new SyntheticTestService());
         server.printInfo();
         serverThread = new Thread(new Runnable() {
             @Override
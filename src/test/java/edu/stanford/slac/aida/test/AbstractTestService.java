@@ -7,7 +7,7 @@ import org.epics.nt.NTTableBuilder;
 import org.epics.pvdata.pv.*;
 
 import static edu.stanford.slac.aida.client.AidaType.NT_FIELD_NAME;
-import static org.epics.pvdata.pv.ScalarType.pvInt;
+import static org.epics.pvdata.pv.ScalarType.*;
 
 public class AbstractTestService {
     /**
@@ -106,6 +106,30 @@ public class AbstractTestService {
         return retVal;
     }
 
+    /**
+     * Create a double array response from the given list of values
+     *
+     * @param values the given list of values
+     * @return double array response
+     */
+    protected static PVStructure doubleArrayResponse(double... values) {
+        PVStructure retVal = NTScalarArray.createBuilder().value(pvDouble).createPVStructure();
+        ((PVDoubleArray) retVal.getSubField(NT_FIELD_NAME)).put(0, values.length, values, 0);
+        return retVal;
+    }
+
+    /**
+     * Create a float array response from the given list of values
+     *
+     * @param values the given list of values
+     * @return float array response
+     */
+    protected static PVStructure floatArrayResponse(float... values) {
+        PVStructure retVal = NTScalarArray.createBuilder().value(pvFloat).createPVStructure();
+        ((PVFloatArray) retVal.getSubField(NT_FIELD_NAME)).put(0, values.length, values, 0);
+        return retVal;
+    }
+
     /**
      * Return the given integer as the response
      *
@@ -0,0 +1,134 @@
+package edu.stanford.slac.aida.test;
+
+import edu.stanford.slac.aida.client.PvaRequestExecutor;
+import edu.stanford.slac.aida.client.impl.ChannelAddressCache;
+import edu.stanford.slac.aida.client.impl.LoopbackRequestExecutor;
+import edu.stanford.slac.aida.client.impl.PvAccessRequestExecutor;
+import lombok.extern.java.Log;
+import org.epics.pvaccess.server.rpc.RPCRequestException;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+
+import static edu.stanford.slac.aida.client.AidaPvaClientUtils.*;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assume.assumeFalse;
+
+/**
+ * Tests for connecting channels at the server address they were last found on.
+ * A Test Server is started to respond to the requests
+ */
+@RunWith(JUnit4.class)
+@Log
+public class AddressCacheTest extends AbstractAidaClientTest {
+    private static final String WAVEFORM = PROVIDER_NAME + "::" + TEST8_CHANNEL_NAME;
+    private static final String TABLE = PROVIDER_NAME + "::" + TEST2_CHANNEL_NAME;
+    private static final Object[] EXPECTED = {0.25, 1.25, 2.25, 3.25};
+
+    @Test
+    public void testCachedAddresses() throws IOException, RPCRequestException {
+        log.info("#############################################");
+        log.info("Test for connecting channels at cached addresses across restarts");
+        assumeFalse("Needs a pvAccess server", getRequestExecutor() instanceof LoopbackRequestExecutor);
+
+        File file = File.createTempFile("aida-pva-client", ".addresses");
+        file.delete();
+        file.deleteOnExit();
+
+        PvaRequestExecutor executor = getRequestExecutor();
+        try {
+            ChannelAddressCache cache = new ChannelAddressCache(file);
+            PvAccessRequestExecutor resolving = new PvAccessRequestExecutor(cache);
+            setRequestExecutor(resolving);
+            long start = System.nanoTime();
+            assertArrayEquals("Checking response after search", EXPECTED, (Object[]) pvaGet(WAVEFORM));
+            log.info("Request with search: " + (System.nanoTime() - start) / 1000 + "us");
+            assertEquals("Checking no direct connections", 0, resolving.getDirectConnections());
+            assertNotNull("Checking channel address cached", cache.lookup(WAVEFORM));
+            assertEquals("Checking channel and provider cached", 2, cache.size());
+            cache.save();
+            log.info("Cached address: " + cache.lookup(WAVEFORM));
+
+            // Restart
+            cache = new ChannelAddressCache(file);
+            resolving = new PvAccessRequestExecutor(cache);
+            setRequestExecutor(resolving);
+            start = System.nanoTime();
+            assertArrayEquals("Checking response at cached address", EXPECTED, (Object[]) pvaGet(WAVEFORM));
+            log.info("Request at cached address: " + (System.nanoTime() - start) / 1000 + "us");
+            pvaGet(TABLE);
+            assertEquals("Checking channel and provider addresses used", 2, resolving.getDirectConnections());
+
+            try {
+                pvaGet(PROVIDER_NAME + "::" + TEST6_CHANNEL_NAME);
+                fail("pvaGet: should have failed");
+            } catch (RPCRequestException e) {
+                log.info("pvaGet: failed as expected: " + e.getMessage());
+                assertTrue("Checking server error is not a connection failure", e.getMessage().contains("UnableToGetDataException"));
+            }
+        } finally {
+            setRequestExecutor(executor);
+        }
+
+        log.info("_____________________________________________\n");
+    }
+
+    @Test
+    public void testStaleAddress() throws IOException, RPCRequestException {
+        log.info("#############################################");
+        log.info("Test for searching when a cached address is stale");
+        assumeFalse("Needs a pvAccess server", getRequestExecutor() instanceof LoopbackRequestExecutor);
+
+        File file = File.createTempFile("aida-pva-client", ".addresses");
+        file.deleteOnExit();
+        FileWriter writer = new FileWriter(file);
+        writer.write(WAVEFORM.replace(":", "\\:") + "=127.0.0.1\\:1\n");
+        writer.close();
+
+        PvaRequestExecutor executor = getRequestExecutor();
+        try {
+            ChannelAddressCache cache = new ChannelAddressCache(file);
+            assertEquals("Checking stale address loaded", "127.0.0.1:1", cache.lookup(WAVEFORM));
+            PvAccessRequestExecutor resolving = new PvAccessRequestExecutor(cache);
+            setRequestExecutor(resolving);
+            assertArrayEquals("Checking response after falling back to search", EXPECTED, (Object[]) pvaGet(WAVEFORM));
+            assertEquals("Checking no direct connections", 0, resolving.getDirectConnections());
+            assertFalse("Checking stale address replaced", "127.0.0.1:1".equals(cache.lookup(WAVEFORM)));
+        } finally {
+            setRequestExecutor(executor);
+        }
+
+        log.info("_____________________________________________\n");
+    }
+
+    @Test
+    public void testResolvingFailure() throws IOException {
+        log.info("#############################################");
+        log.info("Test for failures of resolved requests being reported as request exceptions");
+
+        File file = File.createTempFile("aida-pva-client", ".addresses");
+        file.delete();
+        file.deleteOnExit();
+
+        final IllegalStateException failure = new IllegalStateException("Address cache unavailable");
+        PvAccessRequestExecutor resolving = new PvAccessRequestExecutor(new ChannelAddressCache(file) {
+            @Override
+            public String lookup(String channelName) {
+                throw failure;
+            }
+        });
+        try {
+            resolving.executeRequest(WAVEFORM, null, 1.0);
+            fail("executeRequest: should have failed");
+        } catch (RPCRequestException e) {
+            log.info("executeRequest: failed as expected: " + e.getMessage());
+            assertSame("Checking runtime failure is the cause", failure, e.getCause());
+        }
+
+        log.info("_____________________________________________\n");
+    }
+}
@@ -2,6 +2,7 @@ package edu.stanford.slac.aida.test;
 
 import edu.stanford.slac.aida.client.AidaPvaRequest;
 import edu.stanford.slac.aida.client.PvaTable;
+import edu.stanford.slac.aida.client.RequestTiming;
 import edu.stanford.slac.aida.client.compat.AidaConsumer;
 import lombok.extern.java.Log;
 import org.epics.pvaccess.server.rpc.RPCRequestException;
@@ -9,6 +10,8 @@ import org.junit.Test;
 import org.junit.runner.RunWith;
 import org.junit.runners.JUnit4;
 
+import java.nio.ByteBuffer;
+import java.nio.DoubleBuffer;
 import java.util.Arrays;
 import java.util.Map;
 import java.util.concurrent.CountDownLatch;
@@ -106,6 +109,40 @@ public class AidaClientTest extends AbstractAidaClientTest {
         log.info("_____________________________________________\n");
     }
 
+    @Test
+    public void testGetInto() {
+        try {
+            log.info("#############################################");
+            log.info("Test for pvaGetInto() - copy waveforms into caller owned memory");
+
+            double[] waveform = new double[6];
+            int n = pvaGetInto("TEST::KLYS:LI21:11:WAVEFORM", waveform, 1);
+            assertEquals("Checking number of elements copied", 4, n);
+            assertArrayEquals("Checking elements copied at offset", new double[]{0.0, 0.25, 1.25, 2.25, 3.25, 0.0}, waveform, 0.0);
+
+            n = pvaRequest("TEST::KLYS:LI21:11:WAVEFORM").returning(AIDA_FLOAT_ARRAY).getInto(waveform, 2);
+            assertEquals("Checking number of float elements copied", 4, n);
+            assertArrayEquals("Checking float elements widened", new double[]{0.0, 0.25, 0.5, 1.5, 2.5, 3.5}, waveform, 0.0);
+
+            DoubleBuffer buffer = ByteBuffer.allocateDirect(8 * Double.SIZE / Byte.SIZE).asDoubleBuffer();
+            pvaGetInto("TEST::KLYS:LI21:11:WAVEFORM", buffer);
+            pvaGetInto("TEST::KLYS:LI21:11:WAVEFORM", buffer);
+            assertEquals("Checking buffer position advanced", 8, buffer.position());
+            assertEquals("Checking direct buffer contents", 3.25, buffer.get(7), 0.0);
+
+            try {
+                pvaGetInto("TEST::KLYS:LI21:11:WAVEFORM", buffer);
+                fail("pvaGetInto: should have failed when the buffer is full");
+            } catch (IllegalArgumentException e) {
+                log.info("pvaGetInto: failed as expected: " + e.getMessage());
+            }
+
+            log.info("_____________________________________________\n");
+        } catch (RPCRequestException e) {
+            fail(e.getMessage());
+        }
+    }
+
     @Test
     public void testGetErrors() {
         try {
@@ -297,6 +334,38 @@ public class AidaClientTest extends AbstractAidaClientTest {
         }
     }
 
+    @Test
+    public void testRequestTiming() {
+        try {
+            log.info("#############################################");
+            log.info("Test for request phase timing");
+
+            AidaPvaRequest request = pvaRequest("TEST::KLYS:LI21:11:WAVEFORM").returning(AIDA_FLOAT_ARRAY);
+            request.get();
+            RequestTiming timing = request.getTiming();
+            log.info("Request timing: " + timing);
+            assertEquals("Checking channel", "TEST::KLYS:LI21:11:WAVEFORM", timing.getChannel());
+            assertFalse("Checking request succeeded", timing.isFailed());
+            assertTrue("Checking uri phase was timed", timing.getUriNanos() > 0);
+            assertTrue("Checking rpc phase was timed", timing.getRpcNanos() > 0);
+            assertEquals("Checking phases add up", timing.getTotalNanos(),
+                    timing.getUriNanos() + timing.getConnectNanos() + timing.getRpcNanos() + timing.getDecodeNanos());
+
+            request = pvaRequest("TEST::XCOR:LI31:4100:BCON");
+            try {
+                request.get();
+                fail("TEST::XCOR:LI31:4100:BCON: should have failed");
+            } catch (RPCRequestException e) {
+                assertTrue("Checking failed request timing", request.getTiming().isFailed());
+                assertEquals("Checking failed request has no decode phase", 0, request.getTiming().getDecodeNanos());
+            }
+
+            log.info("_____________________________________________\n");
+        } catch (RPCRequestException e) {
+            fail(e.getMessage());
+        }
+    }
+
     @Test
     public void testSetReturningTable() {
         try {
@@ -0,0 +1,121 @@
+package edu.stanford.slac.aida.test;
+
+import edu.stanford.slac.aida.client.AidaCodec;
+import edu.stanford.slac.aida.client.AidaCodecs;
+import edu.stanford.slac.aida.client.AidaType;
+import edu.stanford.slac.aida.client.PvaTable;
+import junit.framework.TestCase;
+import lombok.extern.java.Log;
+import org.epics.nt.NTScalar;
+import org.epics.nt.NTScalarArray;
+import org.epics.nt.NTTable;
+import org.epics.pvaccess.server.rpc.RPCRequestException;
+import org.epics.pvdata.pv.*;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+import java.math.BigInteger;
+
+import static edu.stanford.slac.aida.client.AidaPvaClientUtils.pvaUnpack;
+import static org.junit.Assert.assertArrayEquals;
+
+/**
+ * Tests for the codec registry used to decode results
+ */
+@RunWith(JUnit4.class)
+@Log
+public class AidaCodecTest extends TestCase {
+    @Test
+    public void testUnsignedTypes() {
+        try {
+            log.info("#############################################");
+            log.info("Test for built-in unsigned codecs");
+
+            PVStructure uint = NTScalar.createBuilder().value(ScalarType.pvUInt).createPVStructure();
+            uint.getSubField(PVUInt.class, "value").put(-1);
+            assertEquals("Checking unsigned int", 4294967295L, pvaUnpack(uint));
+
+            PVStructure ulong = NTScalar.createBuilder().value(ScalarType.pvULong).createPVStructure();
+            ulong.getSubField(PVULong.class, "value").put(-1L);
+            assertEquals("Checking unsigned long", BigInteger.ONE.shiftLeft(64).subtract(BigInteger.ONE), pvaUnpack(ulong));
+
+            PVStructure ubytes = NTScalarArray.createBuilder().value(ScalarType.pvUByte).createPVStructure();
+            ubytes.getSubField(PVUByteArray.class, "value").put(0, 3, new byte[]{1, (byte) 200, -1}, 0);
+            assertArrayEquals("Checking unsigned byte array", new Object[]{(short) 1, (short) 200, (short) 255}, (Object[]) pvaUnpack(ubytes));
+
+            PVStructure table = NTTable.createBuilder().addColumn("count", ScalarType.pvUShort).createPVStructure();
+            table.getSubField(PVStringArray.class, "labels").put(0, 1, new String[]{"count"}, 0);
+            table.getStructureField("value").getSubField(PVUShortArray.class, "count").put(0, 2, new short[]{7, -2}, 0);
+            PvaTable pvaTable = (PvaTable) pvaUnpack(table);
+            assertArrayEquals("Checking unsigned short column", new Object[]{7, 65534}, pvaTable.get("count"));
+            assertArrayEquals("Checking unsigned short column doubles", new double[]{7, 65534}, pvaTable.getDoubles("count"), 0.0);
+
+            log.info("_____________________________________________\n");
+        } catch (RPCRequestException e) {
+            fail(e.getMessage());
+        }
+    }
+
+    @Test
+    public void testRegisterCodec() {
+        AidaCodec builtIn = AidaCodecs.forScalarType(ScalarType.pvULong);
+        try {
+            log.info("#############################################");
+            log.info("Test for AidaCodecs.register() - user codecs replace built-in codecs");
+
+            PVStructure ulong = NTScalar.createBuilder().value(ScalarType.pvULong).createPVStructure();
+            ulong.getSubField(PVULong.class, "value").put(42L);
+            assertEquals("Checking built-in codec", BigInteger.valueOf(42), pvaUnpack(ulong));
+
+            AidaCodecs.register(new AidaCodec() {
+                @Override
+                public ScalarType getScalarType() {
+                    return ScalarType.pvULong;
+                }
+
+                @Override
+                public Class<?> getJavaClass() {
+                    return Double.class;
+                }
+
+                @Override
+                public Object decode(PVScalar field) {
+                    return (double) ((PVULong) field).get();
+                }
+
+                @Override
+                public void decode(PVScalarArray field, int from, int to, Object[] destination, int offset) {
+                    LongArrayData data = new LongArrayData();
+                    int n = ((PVULongArray) field).get(from, to - from, data);
+                    for (int i = 0; i < n; i++) {
+                        destination[offset + i] = (double) data.data[data.offset + i];
+                    }
+                }
+
+                @Override
+                public void encode(PVScalar field, Object value) {
+                    ((PVULong) field).put(((Number) value).longValue());
+                }
+
+                @Override
+                public void encode(PVScalarArray field, Object[] values) {
+                    throw new UnsupportedOperationException();
+                }
+            });
+            assertEquals("Checking registered codec replaces cached decoder", 42.0, pvaUnpack(ulong));
+            assertSame("Checking codec lookup by scalar type", Double.class, AidaCodecs.forScalarType(ScalarType.pvULong).getJavaClass());
+            assertSame("Checking argument codecs are not affected", ScalarType.pvDouble, AidaCodecs.forJavaClass(Double.class).getScalarType());
+
+            PVStructure doubles = NTScalarArray.createBuilder().value(ScalarType.pvDouble).createPVStructure();
+            assertEquals("Checking type lookup", AidaType.AIDA_DOUBLE_ARRAY, AidaType.from(doubles));
+            assertEquals("Checking unsigned types have no AidaType", AidaType.AIDA_VOID, AidaType.from(ulong));
+
+            log.info("_____________________________________________\n");
+        } catch (RPCRequestException e) {
+            fail(e.getMessage());
+        } finally {
+            AidaCodecs.register(builtIn);
+        }
+    }
+}
@@ -141,6 +141,19 @@ public class AidaTestService extends AbstractTestService implements RPCService {
         return tableResponse(fieldNames, types, names, pulseIds, x, y, tmits, statuses, goodmeasures);
     }
 
+    /**
+     * Return responses for requests for channel 8, a waveform returned as doubles unless floats are requested
+     *
+     * @param aidaType the parsed type parameter
+     * @return the PVStructure containing the test results
+     */
+    private static PVStructure channel8Responses(AidaType aidaType) {
+        if (aidaType == AidaType.AIDA_FLOAT_ARRAY) {
+            return floatArrayResponse(0.5f, 1.5f, 2.5f, 3.5f);
+        }
+        return doubleArrayResponse(0.25, 1.25, 2.25, 3.25);
+    }
+
     /**
      * All requests to this test service enter here.  We determine the channel name being called, and get
      * basic parameter information (not a full parse) to determine VALUE and TYPE arguments
@@ -203,6 +216,8 @@ public class AidaTestService extends AbstractTestService implements RPCService {
             throw new RPCRequestException(ERROR, " Unknown Unit requested; UnableToGetDataException; getting SLC db floating point device data");
         } else if (TEST7_CHANNEL_NAME.equals(channelName)) {
             return channel7Responses();
+        } else if (TEST8_CHANNEL_NAME.equals(channelName)) {
+            return channel8Responses(aidaType);
         }
         throw new RPCRequestException(ERROR, "Unsupported channel: " + channelName);
     }
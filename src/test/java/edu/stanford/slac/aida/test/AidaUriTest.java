@@ -3,7 +3,9 @@ package edu.stanford.slac.aida.test;
 import junit.framework.TestCase;
 import lombok.extern.java.Log;
 import org.epics.pvaccess.server.rpc.RPCRequestException;
+import org.epics.pvdata.pv.PVScalarArray;
 import org.epics.pvdata.pv.PVStructure;
+import org.epics.pvdata.pv.ScalarType;
 import org.junit.Test;
 import org.junit.runner.RunWith;
 import org.junit.runners.JUnit4;
@@ -33,4 +35,25 @@ public class AidaUriTest extends TestCase {
             fail(e.getMessage());
         }
     }
+
+    @Test
+    public void testArrayElementTypes() {
+        try {
+            log.info("#############################################");
+            log.info("Test for array argument types taken from their elements");
+
+            PVStructure uri = pvaRequest("channel")
+                    .with("NUMBERS", new Number[]{1, 2, 3})
+                    .with("OBJECTS", new Object[]{1L, 2L})
+                    .uri();
+            assertEquals("Checking Number[] of Integers sent as integers", ScalarType.pvInt,
+                    uri.getSubField(PVScalarArray.class, "query.NUMBERS").getScalarArray().getElementType());
+            assertEquals("Checking Object[] of Longs sent as longs", ScalarType.pvLong,
+                    uri.getSubField(PVScalarArray.class, "query.OBJECTS").getScalarArray().getElementType());
+
+            log.info("_____________________________________________\n");
+        } catch (RPCRequestException e) {
+            fail(e.getMessage());
+        }
+    }
 }
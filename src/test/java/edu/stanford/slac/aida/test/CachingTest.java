@@ -0,0 +1,185 @@
+package edu.stanford.slac.aida.test;
+
+import edu.stanford.slac.aida.client.PvaRequestExecutor;
+import edu.stanford.slac.aida.client.PvaTable;
+import edu.stanford.slac.aida.client.impl.CachingRequestExecutor;
+import edu.stanford.slac.aida.client.impl.LoopbackRequestExecutor;
+import lombok.extern.java.Log;
+import org.epics.nt.NTScalar;
+import org.epics.pvaccess.server.rpc.RPCRequestException;
+import org.epics.pvaccess.server.rpc.RPCService;
+import org.epics.pvdata.pv.PVDouble;
+import org.epics.pvdata.pv.PVField;
+import org.epics.pvdata.pv.PVStructure;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static edu.stanford.slac.aida.client.AidaPvaClientUtils.*;
+import static edu.stanford.slac.aida.client.AidaType.AIDA_FLOAT_ARRAY;
+import static edu.stanford.slac.aida.test.SyntheticTestService.TABLE_CHANNEL_NAME;
+import static edu.stanford.slac.aida.test.SyntheticTestService.WAVEFORM_CHANNEL_NAME;
+import static org.epics.pvdata.pv.ScalarType.pvDouble;
+import static org.junit.Assert.assertArrayEquals;
+
+/**
+ * Tests for the persistent response cache.
+ * A Test Server is started to respond to requests that are not cached
+ */
+@RunWith(JUnit4.class)
+@Log
+public class CachingTest extends AbstractAidaClientTest {
+    private static final String WAVEFORM = SYNTHETIC_PROVIDER_NAME + "::" + WAVEFORM_CHANNEL_NAME;
+    private static final String TABLE = SYNTHETIC_PROVIDER_NAME + "::" + TABLE_CHANNEL_NAME;
+
+    @Test
+    public void testWarmRestart() throws IOException, RPCRequestException {
+        log.info("#############################################");
+        log.info("Test for serving cached responses after a restart");
+
+        File file = File.createTempFile("aida-pva-client", ".cache");
+        file.deleteOnExit();
+
+        PvaRequestExecutor executor = getRequestExecutor();
+        try {
+            CachingRequestExecutor cache = new CachingRequestExecutor(executor, file).cache(SYNTHETIC_PROVIDER_NAME + "::*", 60000);
+            setRequestExecutor(cache);
+            PvaTable table = (PvaTable) pvaRequest(TABLE).with("SIZE", 1000).with("CARDINALITY", 10).get();
+            Object[] waveform = (Object[]) pvaRequest(WAVEFORM).with("SIZE", 1 << 16).returning(AIDA_FLOAT_ARRAY).get();
+            pvaRequest(TABLE).with("SIZE", 1000).with("CARDINALITY", 10).get();
+            assertEquals("Checking misses", 2, cache.getMisses());
+            assertEquals("Checking hits", 1, cache.getHits());
+            cache.close();
+            log.info("Cached " + file.length() + " bytes");
+
+            // Restart with no server at all
+            cache = new CachingRequestExecutor(new LoopbackRequestExecutor(), file).cache(SYNTHETIC_PROVIDER_NAME + "::*", 60000);
+            setRequestExecutor(cache);
+            assertEquals("Checking responses stored", 2, cache.size());
+
+            long start = System.nanoTime();
+            PvaTable cached = (PvaTable) pvaRequest(TABLE).with("SIZE", 1000).with("CARDINALITY", 10).get();
+            log.info("First response after restart: " + (System.nanoTime() - start) / 1000 + "us");
+            assertArrayEquals("Checking cached table", table.get("name"), cached.get("name"));
+            assertArrayEquals("Checking cached table", table.get("value"), cached.get("value"));
+            assertArrayEquals("Checking cached waveform", waveform,
+                    (Object[]) pvaRequest(WAVEFORM).with("SIZE", 1 << 16).returning(AIDA_FLOAT_ARRAY).get());
+            assertEquals("Checking hits after restart", 2, cache.getHits());
+
+            try {
+                pvaRequest(TABLE).with("SIZE", 10).get();
+                fail("pvaRequest: should have failed for a request that was not cached");
+            } catch (RPCRequestException e) {
+                log.info("pvaRequest: failed as expected: " + e.getMessage());
+            }
+            cache.close();
+        } finally {
+            setRequestExecutor(executor);
+        }
+
+        log.info("_____________________________________________\n");
+    }
+
+    @Test
+    public void testExpiryInvalidationAndCompaction() throws IOException, RPCRequestException, InterruptedException {
+        log.info("#############################################");
+        log.info("Test for expiring, invalidating and compacting cached responses");
+
+        File file = File.createTempFile("aida-pva-client", ".cache");
+        file.deleteOnExit();
+
+        PvaRequestExecutor executor = getRequestExecutor();
+        try {
+            CachingRequestExecutor cache = new CachingRequestExecutor(executor, file)
+                    .cache(WAVEFORM, 1)
+                    .cache(TABLE, 60000);
+            setRequestExecutor(cache);
+
+            for (int i = 0; i < 10; i++) {
+                pvaRequest(WAVEFORM).with("SIZE", 1 << 12).returning(AIDA_FLOAT_ARRAY).get();
+                Thread.sleep(2);
+            }
+            assertEquals("Checking expired responses are fetched again", 10, cache.getMisses());
+
+            pvaRequest(TABLE).with("SIZE", 10).get();
+            pvaRequest(TABLE).with("SIZE", 10).get();
+            assertEquals("Checking table hits", 1, cache.getHits());
+            pvaRequest(TABLE).set(1.0f);
+            pvaRequest(TABLE).with("SIZE", 10).get();
+            assertEquals("Checking set removed the cached table", 12, cache.getMisses());
+
+            cache.close();
+            long before = file.length();
+            cache = new CachingRequestExecutor(executor, file).cache(TABLE, 60000);
+            cache.compact();
+            cache.close();
+            log.info("Compacted " + before + " bytes to " + file.length());
+            assertTrue("Checking compaction removed expired responses", file.length() < before);
+
+            cache = new CachingRequestExecutor(executor, file).cache(TABLE, 60000);
+            assertEquals("Checking responses after reopening", 1, cache.size());
+            cache.close();
+        } finally {
+            setRequestExecutor(executor);
+        }
+
+        log.info("_____________________________________________\n");
+    }
+
+    @Test
+    public void testDelegatedChannelSet() throws IOException, RPCRequestException {
+        log.info("#############################################");
+        log.info("Test for sets removing the cached gets of delegated channels");
+
+        File file = File.createTempFile("aida-pva-client", ".cache");
+        file.deleteOnExit();
+
+        // Gets of PDES channels are made to SLC::<channel>, sets to the channel itself
+        final AtomicReference<Double> setting = new AtomicReference<Double>(1.0);
+        LoopbackRequestExecutor loopback = new LoopbackRequestExecutor();
+        loopback.registerService("*:PDES", new RPCService() {
+            @Override
+            public PVStructure request(PVStructure args) {
+                PVField value = args.getSubField("query.VALUE");
+                if (value != null) {
+                    setting.set(Double.valueOf(AbstractTestService.fieldToString(value)));
+                    return null;
+                }
+                PVStructure response = NTScalar.createBuilder().value(pvDouble).createPVStructure();
+                response.getSubField(PVDouble.class, "value").put(setting.get());
+                return response;
+            }
+        });
+        loopback.registerService("EMPTY::*", new RPCService() {
+            @Override
+            public PVStructure request(PVStructure args) {
+                return null;
+            }
+        });
+
+        PvaRequestExecutor executor = getRequestExecutor();
+        CachingRequestExecutor cache = new CachingRequestExecutor(loopback, file).cache("*", 60000);
+        try {
+            setRequestExecutor(cache);
+            String channel = "KLYS:LI31:31:PDES";
+            assertEquals("Checking get", 1.0, pvaGet(channel));
+            assertEquals("Checking cached get", 1.0, pvaGet(channel));
+            assertEquals("Checking get cached", 1, cache.getHits());
+
+            pvaSet(channel, 2.0);
+            assertEquals("Checking get after set", 2.0, pvaGet(channel));
+
+            assertNull("Checking empty response", pvaGet("EMPTY::CHANNEL"));
+            assertEquals("Checking empty response not cached", 1, cache.size());
+        } finally {
+            setRequestExecutor(executor);
+            cache.close();
+        }
+
+        log.info("_____________________________________________\n");
+    }
+}
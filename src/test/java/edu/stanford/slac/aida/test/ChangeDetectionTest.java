@@ -0,0 +1,174 @@
+package edu.stanford.slac.aida.test;
+
+import edu.stanford.slac.aida.client.AidaChangeDetector;
+import edu.stanford.slac.aida.client.AidaPollListener;
+import edu.stanford.slac.aida.client.AidaPolling;
+import edu.stanford.slac.aida.client.PvaRequestExecutor;
+import edu.stanford.slac.aida.client.PvaTable;
+import edu.stanford.slac.aida.client.impl.LoopbackRequestExecutor;
+import lombok.extern.java.Log;
+import org.epics.nt.NTScalar;
+import org.epics.nt.NTScalarArray;
+import org.epics.pvaccess.server.rpc.RPCRequestException;
+import org.epics.pvaccess.server.rpc.RPCService;
+import org.epics.pvdata.pv.PVDoubleArray;
+import org.epics.pvdata.pv.PVLong;
+import org.epics.pvdata.pv.PVString;
+import org.epics.pvdata.pv.PVStructure;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static edu.stanford.slac.aida.client.AidaPvaClientUtils.*;
+import static org.epics.pvdata.pv.ScalarType.*;
+
+/**
+ * Tests for skipping the decoding of unchanged responses.
+ * Waveforms are served by an in-process service that builds a new response, with a new time stamp, for every request
+ */
+@RunWith(JUnit4.class)
+@Log
+public class ChangeDetectionTest extends AbstractAidaClientTest {
+    private static final String WAVEFORM = "CHANGE::WAVEFORM";
+    private static final String TABLE = PROVIDER_NAME + "::" + TEST2_CHANNEL_NAME;
+
+    @Test
+    public void testUnchangedWaveforms() throws RPCRequestException {
+        log.info("#############################################");
+        log.info("Test for returning the previous value of unchanged waveforms");
+
+        final double[] waveform = new double[10000];
+        PvaRequestExecutor executor = getRequestExecutor();
+        LoopbackRequestExecutor loopback = new LoopbackRequestExecutor(executor);
+        loopback.registerService("CHANGE::*", new RPCService() {
+            @Override
+            public PVStructure request(PVStructure args) {
+                PVStructure response = NTScalarArray.createBuilder().value(pvDouble).addTimeStamp().createPVStructure();
+                response.getSubField(PVDoubleArray.class, "value").put(0, waveform.length, waveform, 0);
+                response.getSubField(PVLong.class, "timeStamp.secondsPastEpoch").put(System.nanoTime());
+                return response;
+            }
+        });
+        try {
+            setRequestExecutor(loopback);
+            AidaChangeDetector detector = new AidaChangeDetector();
+
+            Object first = detector.get(pvaRequest(WAVEFORM));
+            assertTrue("Checking first response decoded", detector.isChanged());
+            Object second = detector.get(pvaRequest(WAVEFORM));
+            assertFalse("Checking unchanged response", detector.isChanged());
+            assertSame("Checking previous value returned", first, second);
+
+            waveform[9999] = 1e-300;
+            Object third = detector.get(pvaRequest(WAVEFORM));
+            assertTrue("Checking change to one element detected", detector.isChanged());
+            assertNotSame("Checking new value decoded", second, third);
+            assertEquals("Checking changed element", 1e-300, ((Object[]) third)[9999]);
+
+            int polls = 1000;
+            for (int i = 0; i < polls; i++) {
+                detector.get(pvaRequest(WAVEFORM));
+                pvaGet(WAVEFORM);
+            }
+            long start = System.nanoTime();
+            for (int i = 0; i < polls; i++) {
+                detector.get(pvaRequest(WAVEFORM));
+            }
+            long detected = System.nanoTime() - start;
+            start = System.nanoTime();
+            for (int i = 0; i < polls; i++) {
+                pvaGet(WAVEFORM);
+            }
+            long decoded = System.nanoTime() - start;
+            log.info(polls + " unchanged polls: " + detected / polls / 1000 + "us with change detection, "
+                    + decoded / polls / 1000 + "us decoding every response");
+            assertEquals("Checking unchanged responses counted", 1 + 2 * polls, detector.getUnchanged());
+
+            detector.reset();
+            detector.get(pvaRequest(WAVEFORM));
+            assertTrue("Checking decoded after reset", detector.isChanged());
+        } finally {
+            setRequestExecutor(executor);
+        }
+
+        log.info("_____________________________________________\n");
+    }
+
+    @Test
+    public void testChangedScalars() throws RPCRequestException, InterruptedException {
+        log.info("#############################################");
+        log.info("Test for detecting changes to values with the same hash code");
+
+        final AtomicLong number = new AtomicLong(0);
+        final AtomicReference<String> string = new AtomicReference<String>("Aa");
+        PvaRequestExecutor executor = getRequestExecutor();
+        LoopbackRequestExecutor loopback = new LoopbackRequestExecutor(executor);
+        loopback.registerService("CHANGE::*", new RPCService() {
+            @Override
+            public PVStructure request(PVStructure args) {
+                if (args.getSubField(PVString.class, "path").get().endsWith("STRING")) {
+                    PVStructure response = NTScalar.createBuilder().value(pvString).createPVStructure();
+                    response.getSubField(PVString.class, "value").put(string.get());
+                    return response;
+                }
+                PVStructure response = NTScalar.createBuilder().value(pvLong).createPVStructure();
+                response.getSubField(PVLong.class, "value").put(number.get());
+                return response;
+            }
+        });
+        try {
+            setRequestExecutor(loopback);
+
+            // Long.valueOf(0).hashCode() == Long.valueOf(-1).hashCode()
+            final List<Object> polled = Collections.synchronizedList(new ArrayList<Object>());
+            AidaPolling.Subscription subscription = AidaPolling.subscribe("CHANGE::NUMBER", 20, new AidaPollListener() {
+                @Override
+                public void valueChanged(String channel, Object value) {
+                    polled.add(value);
+                }
+
+                @Override
+                public void pollFailed(String channel, RPCRequestException e) {
+                }
+            });
+            Thread.sleep(100);
+            number.set(-1);
+            Thread.sleep(100);
+            subscription.cancel();
+            log.info("Polled " + polled);
+            assertEquals("Checking first value", 0L, polled.get(0));
+            assertEquals("Checking change from 0 to -1 notified", -1L, polled.get(polled.size() - 1));
+
+            // "Aa".hashCode() == "BB".hashCode()
+            AidaChangeDetector detector = new AidaChangeDetector();
+            detector.get(pvaRequest("CHANGE::STRING"));
+            string.set("BB");
+            assertEquals("Checking changed string", "BB", detector.get(pvaRequest("CHANGE::STRING")));
+            assertTrue("Checking string change detected", detector.isChanged());
+        } finally {
+            setRequestExecutor(executor);
+        }
+
+        log.info("_____________________________________________\n");
+    }
+
+    @Test
+    public void testUnchangedTables() throws RPCRequestException {
+        log.info("#############################################");
+        log.info("Test for returning the previous value of unchanged tables");
+
+        AidaChangeDetector detector = new AidaChangeDetector();
+        PvaTable first = (PvaTable) detector.get(pvaRequest(TABLE));
+        PvaTable second = (PvaTable) detector.get(pvaRequest(TABLE));
+        assertFalse("Checking unchanged table", detector.isChanged());
+        assertSame("Checking previous table returned", first, second);
+
+        log.info("_____________________________________________\n");
+    }
+}
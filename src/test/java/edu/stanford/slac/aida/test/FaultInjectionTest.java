@@ -0,0 +1,116 @@
+package edu.stanford.slac.aida.test;
+
+import edu.stanford.slac.aida.client.PvaRequestExecutor;
+import edu.stanford.slac.aida.client.impl.FaultInjectingRequestExecutor;
+import edu.stanford.slac.aida.client.impl.FaultInjectingRequestExecutor.Fault;
+import lombok.extern.java.Log;
+import org.epics.nt.NTScalar;
+import org.epics.pvaccess.server.rpc.RPCRequestException;
+import org.epics.pvdata.pv.PVStructure;
+import org.epics.pvdata.pv.ScalarType;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+import static edu.stanford.slac.aida.client.AidaPvaClientUtils.*;
+import static edu.stanford.slac.aida.test.SyntheticTestService.TABLE_CHANNEL_NAME;
+import static org.junit.Assert.assertArrayEquals;
+
+/**
+ * Tests for the fault injecting request executor.
+ * A Test Server is started to respond to these requests
+ */
+@RunWith(JUnit4.class)
+@Log
+public class FaultInjectionTest extends AbstractAidaClientTest {
+    private static final String TACT = "TEST::KLYS:LI31:31:TACT";
+    private static final String WAVEFORM = "TEST::KLYS:LI21:11:WAVEFORM";
+
+    @Test
+    public void testInjectedFaults() throws RPCRequestException {
+        log.info("#############################################");
+        log.info("Test for injected faults");
+
+        PvaRequestExecutor executor = getRequestExecutor();
+        try {
+            setRequestExecutor(new FaultInjectingRequestExecutor(executor, 42)
+                    .inject(TACT, new Fault().errorRate(1.0))
+                    .inject("TEST::KLYS:*", new Fault().misTypedRate(1.0))
+                    .inject("*::" + TABLE_CHANNEL_NAME, new Fault().latency(20).malformedRate(1.0)));
+
+            try {
+                pvaGet(TACT);
+                fail("pvaGet: should have failed with an injected error");
+            } catch (RPCRequestException e) {
+                log.info("pvaGet: failed as expected: " + e.getMessage());
+                assertTrue("Checking error was injected", e.getMessage().contains("Injected error"));
+            }
+
+            assertArrayEquals("Checking mis-typed response", new Object[]{"0.25", "1.25", "2.25", "3.25"}, (Object[]) pvaGet(WAVEFORM));
+
+            long start = System.nanoTime();
+            try {
+                pvaGet(SYNTHETIC_PROVIDER_NAME + "::" + TABLE_CHANNEL_NAME);
+                fail("pvaGet: should have failed with a malformed table");
+            } catch (RPCRequestException e) {
+                log.info("pvaGet: failed as expected: " + e.getMessage());
+                assertTrue("Checking table was malformed", e.getMessage().contains("Malformed vector"));
+            }
+            assertTrue("Checking latency was injected", System.nanoTime() - start >= 20000000L);
+
+            assertNotNull("Checking other channels are untouched", pvaGet("TEST::DEV_DGRP:XCOR:BDES"));
+        } finally {
+            setRequestExecutor(executor);
+        }
+
+        log.info("_____________________________________________\n");
+    }
+
+    @Test
+    public void testReproducibleScenario() throws RPCRequestException {
+        log.info("#############################################");
+        log.info("Test that scenarios replay from their seed");
+
+        PvaRequestExecutor server = new PvaRequestExecutor() {
+            @Override
+            public PVStructure executeRequest(String channelName, PVStructure request, Double timeout) {
+                return NTScalar.createBuilder().value(ScalarType.pvDouble).createPVStructure();
+            }
+        };
+        Fault fault = new Fault().errorRate(0.3).disconnectRate(0.2).exponentialLatency(0.5);
+        boolean[] first = outcomes(new FaultInjectingRequestExecutor(server, 7).inject("*", fault));
+        boolean[] second = outcomes(new FaultInjectingRequestExecutor(server, 7).inject("*", fault));
+        assertArrayEquals("Checking the same seed gives the same faults", first, second);
+
+        try {
+            new FaultInjectingRequestExecutor(server, 7).inject("*", new Fault().timeoutRate(1.0)).executeRequest("X", null, 0.05);
+            fail("executeRequest: should have timed out");
+        } catch (RPCRequestException e) {
+            log.info("executeRequest: failed as expected: " + e.getMessage());
+        }
+
+        try {
+            new Fault().errorRate(1.5);
+            fail("Fault: should have rejected a rate above 1");
+        } catch (IllegalArgumentException e) {
+            log.info("Fault: failed as expected: " + e.getMessage());
+        }
+
+        log.info("_____________________________________________\n");
+    }
+
+    /**
+     * Make requests through the given executor and record which ones failed
+     */
+    private static boolean[] outcomes(PvaRequestExecutor executor) {
+        boolean[] failed = new boolean[50];
+        for (int i = 0; i < failed.length; i++) {
+            try {
+                executor.executeRequest("X", null, 1.0);
+            } catch (RPCRequestException e) {
+                failed[i] = true;
+            }
+        }
+        return failed;
+    }
+}
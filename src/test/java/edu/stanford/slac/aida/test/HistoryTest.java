@@ -0,0 +1,178 @@
+package edu.stanford.slac.aida.test;
+
+import edu.stanford.slac.aida.client.AidaHistory;
+import edu.stanford.slac.aida.client.AidaHistoryStore;
+import edu.stanford.slac.aida.client.AidaPolling;
+import lombok.extern.java.Log;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.assertArrayEquals;
+
+/**
+ * Tests for the fixed size histories of channel values
+ */
+@RunWith(JUnit4.class)
+@Log
+public class HistoryTest extends AbstractAidaClientTest {
+    private static final String TABLE = PROVIDER_NAME + "::" + TEST2_CHANNEL_NAME;
+    private static final String WAVEFORM = PROVIDER_NAME + "::" + TEST8_CHANNEL_NAME;
+
+    @Test
+    public void testRingBuffer() {
+        log.info("#############################################");
+        log.info("Test for dropping the oldest samples of a fixed size history");
+
+        AidaHistory history = new AidaHistory(4096, 1);
+        int recorded = 10000;
+        for (int i = 0; i < recorded; i++) {
+            history.record(1000L * i, Math.sin(i / 100.0));
+        }
+        List<AidaHistory.Sample> samples = history.samples(Long.MIN_VALUE, Long.MAX_VALUE);
+        log.info(samples.size() + " of " + recorded + " samples held in " + history.getCapacityBytes() + " bytes");
+
+        assertEquals("Checking size", history.size(), samples.size());
+        assertTrue("Checking oldest samples dropped", samples.size() < recorded);
+        assertTrue("Checking buffer used", samples.size() > 4096 / 20);
+        int first = recorded - samples.size();
+        for (int i = 0; i < samples.size(); i++) {
+            assertEquals("Checking time", 1000L * (first + i), samples.get(i).getTime());
+            assertEquals("Checking value", Math.sin((first + i) / 100.0), samples.get(i).getValues()[0], 0.0);
+        }
+        assertEquals("Checking time range", 10, history.samples(1000L * (recorded - 10), Long.MAX_VALUE).size());
+
+        log.info("_____________________________________________\n");
+    }
+
+    @Test
+    public void testWaveformDeltas() {
+        log.info("#############################################");
+        log.info("Test for delta encoded waveforms");
+
+        int length = 1000, capacity = 1 << 20;
+        AidaHistory history = new AidaHistory(capacity, length);
+        double[] waveform = new double[length];
+        for (int i = 0; i < length; i++) {
+            waveform[i] = Math.cos(i / 50.0);
+        }
+        int recorded = 2000;
+        for (int sample = 0; sample < recorded; sample++) {
+            // A slow moving waveform, with one element changing at each sample
+            waveform[sample % length] += 0.001;
+            history.record(sample, waveform, length);
+        }
+        log.info(history.size() + " waveforms of " + length + " elements held in " + capacity + " bytes, "
+                + capacity / (8 * length) + " without delta encoding");
+
+        assertTrue("Checking deltas smaller than waveforms", history.size() > 4 * capacity / (8 * length));
+        List<AidaHistory.Sample> samples = history.samples(recorded - 1, recorded);
+        assertArrayEquals("Checking latest waveform", waveform, samples.get(0).getValues(), 0.0);
+
+        // Different lengths are stored in full
+        history.record(recorded, new double[]{1.0, 2.0}, 2);
+        assertArrayEquals("Checking shorter waveform", new double[]{1.0, 2.0}, history.samples(recorded, recorded + 1).get(0).getValues(), 0.0);
+
+        log.info("_____________________________________________\n");
+    }
+
+    @Test
+    public void testDriftingValues() {
+        log.info("#############################################");
+        log.info("Test for the size of drifting readings");
+
+        int length = 100, capacity = 1 << 20, recorded = 5000;
+        Random random = new Random(42);
+        AidaHistory floats = new AidaHistory(capacity, length);
+        AidaHistory counts = new AidaHistory(capacity, length);
+        AidaHistory doubles = new AidaHistory(capacity, length);
+        float[] reading = new float[length];
+        double[] count = new double[length];
+        double[] precise = new double[length];
+        for (int i = 0; i < length; i++) {
+            reading[i] = 1.25f + i;
+            count[i] = 1000 * i;
+            precise[i] = 1.25 + i;
+        }
+        for (int sample = 0; sample < recorded; sample++) {
+            // Readings of float channels and counters, and full precision values, drifting by small steps
+            for (int i = 0; i < length; i++) {
+                reading[i] += (float) (random.nextGaussian() * 0.01);
+                count[i] += random.nextInt(3);
+                precise[i] += random.nextGaussian() * 0.01;
+            }
+            floats.record(sample, reading);
+            counts.record(sample, count);
+            doubles.record(sample, precise, length);
+        }
+        double floatBytes = (double) capacity / floats.size() / length;
+        double countBytes = (double) capacity / counts.size() / length;
+        double doubleBytes = (double) capacity / doubles.size() / length;
+        log.info(String.format("Bytes per element: %.2f for floats, %.2f for counts, %.2f for doubles",
+                floatBytes, countBytes, doubleBytes));
+
+        assertTrue("Checking float readings stored in under 5 bytes", floatBytes < 5);
+        assertTrue("Checking counts stored in under 3 bytes", countBytes < 3);
+        assertTrue("Checking doubles stored in under 8 bytes", doubleBytes < 8);
+        double[] latest = new double[length];
+        for (int i = 0; i < length; i++) {
+            latest[i] = reading[i];
+        }
+        assertArrayEquals("Checking latest float reading", latest, floats.samples(recorded - 1, recorded).get(0).getValues(), 0.0);
+        assertArrayEquals("Checking latest count", count, counts.samples(recorded - 1, recorded).get(0).getValues(), 0.0);
+        assertArrayEquals("Checking latest double", precise, doubles.samples(recorded - 1, recorded).get(0).getValues(), 0.0);
+
+        log.info("_____________________________________________\n");
+    }
+
+    @Test
+    public void testDownsample() {
+        log.info("#############################################");
+        log.info("Test for downsampling to min, max and mean");
+
+        AidaHistory history = new AidaHistory(1 << 16, 2);
+        for (int i = 0; i < 100; i++) {
+            history.record(i, new Object[]{i, -i});
+        }
+        AidaHistory.Bucket[] buckets = history.downsample(0, 200, 4);
+
+        assertEquals("Checking buckets", 4, buckets.length);
+        assertEquals("Checking bucket start", 50, buckets[1].getStart());
+        assertEquals("Checking count", 50, buckets[1].getCount());
+        assertArrayEquals("Checking min", new double[]{50, -99}, buckets[1].getMin(), 0.0);
+        assertArrayEquals("Checking max", new double[]{99, -50}, buckets[1].getMax(), 0.0);
+        assertArrayEquals("Checking mean", new double[]{74.5, -74.5}, buckets[1].getMean(), 1e-9);
+        assertEquals("Checking empty bucket", 0, buckets[2].getCount());
+        assertEquals("Checking empty bucket elements", 0, buckets[2].getMean().length);
+
+        log.info("_____________________________________________\n");
+    }
+
+    @Test
+    public void testPolledHistory() throws InterruptedException {
+        log.info("#############################################");
+        log.info("Test for filling histories from polls");
+
+        AidaHistoryStore store = new AidaHistoryStore(1 << 16, 16);
+        AidaPolling.Subscription table = AidaPolling.subscribe(TABLE, 20, store);
+        AidaPolling.Subscription waveform = AidaPolling.subscribe(WAVEFORM, 20, store);
+        Thread.sleep(200);
+        table.cancel();
+        waveform.cancel();
+
+        assertEquals("Checking tables not recorded", 1, store.getChannels().size());
+        assertEquals("Checking capacity", 1 << 16, store.getCapacityBytes());
+        List<AidaHistory.Sample> samples = store.get(WAVEFORM).samples(0, Long.MAX_VALUE);
+        log.info(samples.size() + " waveforms recorded");
+        assertTrue("Checking waveforms recorded", samples.size() > 0);
+        assertArrayEquals("Checking waveform", new double[]{0.25, 1.25, 2.25, 3.25}, samples.get(0).getValues(), 0.0);
+        assertFalse("Checking strings not recorded", store.record("STRING", 0, "value"));
+        assertTrue("Checking scalars recorded", store.record("SCALAR", 0, 1.5f));
+        assertEquals("Checking scalar", 1.5, store.get("SCALAR").samples(0, 1).get(0).getValues()[0], 0.0);
+
+        log.info("_____________________________________________\n");
+    }
+}
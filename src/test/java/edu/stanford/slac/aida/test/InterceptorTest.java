@@ -0,0 +1,157 @@
+package edu.stanford.slac.aida.test;
+
+import edu.stanford.slac.aida.client.AidaRequestInterceptor;
+import edu.stanford.slac.aida.client.AidaRequestInterceptors;
+import lombok.extern.java.Log;
+import org.epics.nt.NTScalarArray;
+import org.epics.pvaccess.server.rpc.RPCRequestException;
+import org.epics.pvdata.pv.PVDoubleArray;
+import org.epics.pvdata.pv.PVStructure;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static edu.stanford.slac.aida.client.AidaPvaClientUtils.*;
+import static edu.stanford.slac.aida.client.AidaType.AIDA_DOUBLE_ARRAY;
+import static edu.stanford.slac.aida.client.AidaType.AIDA_INTEGER;
+import static org.epics.pvdata.pv.ScalarType.pvDouble;
+import static org.epics.pvdata.pv.Status.StatusType.ERROR;
+import static org.junit.Assert.assertArrayEquals;
+
+/**
+ * Tests for the request interceptor chain.
+ * A Test Server is started to respond to these requests
+ */
+@RunWith(JUnit4.class)
+@Log
+public class InterceptorTest extends AbstractAidaClientTest {
+    @Test
+    public void testInterceptorChain() {
+        final List<String> calls = new ArrayList<String>();
+        AidaRequestInterceptor outer = new AidaRequestInterceptor() {
+            @Override
+            public PVStructure intercept(Chain chain) throws RPCRequestException {
+                calls.add("outer " + chain.getChannel());
+                try {
+                    return chain.proceed();
+                } catch (RPCRequestException e) {
+                    calls.add("retry");
+                    return chain.proceed();
+                }
+            }
+        };
+        AidaRequestInterceptor inner = new AidaRequestInterceptor() {
+            private boolean failed;
+
+            @Override
+            public PVStructure intercept(Chain chain) throws RPCRequestException {
+                calls.add("inner " + chain.getRequest().getStringField("path").get());
+                if (!failed) {
+                    failed = true;
+                    throw new RPCRequestException(ERROR, "injected fault");
+                }
+                return chain.proceed();
+            }
+        };
+
+        try {
+            log.info("#############################################");
+            log.info("Test for request interceptors - ordering, retries and injected faults");
+
+            AidaRequestInterceptors.add(outer);
+            AidaRequestInterceptors.add(inner);
+
+            Object[] waveform = (Object[]) pvaGet(PROVIDER_NAME + "::" + TEST8_CHANNEL_NAME, AIDA_DOUBLE_ARRAY);
+            assertEquals("Checking result passed through the chain", 4, waveform.length);
+            assertEquals("Checking interceptor calls", "[outer TEST::KLYS:LI21:11:WAVEFORM, inner TEST::KLYS:LI21:11:WAVEFORM, retry, inner TEST::KLYS:LI21:11:WAVEFORM]", calls.toString());
+
+            log.info("_____________________________________________\n");
+        } catch (RPCRequestException e) {
+            fail(e.getMessage());
+        } finally {
+            AidaRequestInterceptors.remove(outer);
+            AidaRequestInterceptors.remove(inner);
+        }
+    }
+
+    @Test
+    public void testShortCircuit() {
+        final PVStructure response = NTScalarArray.createBuilder().value(pvDouble).createPVStructure();
+        response.getSubField(PVDoubleArray.class, "value").put(0, 2, new double[]{1.0, 2.0}, 0);
+        AidaRequestInterceptor cache = new AidaRequestInterceptor() {
+            @Override
+            public PVStructure intercept(Chain chain) throws RPCRequestException {
+                if (chain.getArguments().contains("CACHED")) {
+                    return response;
+                }
+                return chain.proceed();
+            }
+        };
+
+        try {
+            log.info("#############################################");
+            log.info("Test for request interceptors - returning without executing the request");
+
+            AidaRequestInterceptors.add(cache);
+            Object[] cached = (Object[]) pvaRequest("TEST::NOT:A:CHANNEL").with("CACHED", true).get();
+            assertArrayEquals("Checking value returned by interceptor", new Object[]{1.0, 2.0}, cached);
+
+            // The same response is decoded for whichever way the request is made
+            double[] destination = new double[3];
+            assertEquals("Checking response copied", 2, pvaRequest("TEST::NOT:A:CHANNEL").with("CACHED", true).getInto(destination, 1));
+            assertArrayEquals("Checking copied values", new double[]{0.0, 1.0, 2.0}, destination, 0.0);
+
+            AidaRequestInterceptors.remove(cache);
+            try {
+                pvaRequest("TEST::NOT:A:CHANNEL").with("CACHED", true).get();
+                fail("TEST::NOT:A:CHANNEL: should have failed once the interceptor was removed");
+            } catch (RPCRequestException e) {
+                log.info("TEST::NOT:A:CHANNEL: failed as expected");
+            }
+
+            log.info("_____________________________________________\n");
+        } catch (RPCRequestException e) {
+            fail(e.getMessage());
+        } finally {
+            AidaRequestInterceptors.remove(cache);
+        }
+    }
+
+    @Test
+    public void testDecodingInChain() {
+        final List<String> failures = new ArrayList<String>();
+        AidaRequestInterceptor observer = new AidaRequestInterceptor() {
+            @Override
+            public PVStructure intercept(Chain chain) throws RPCRequestException {
+                try {
+                    return chain.proceed();
+                } catch (RPCRequestException e) {
+                    failures.add(e.getMessage());
+                    throw e;
+                }
+            }
+        };
+
+        try {
+            log.info("#############################################");
+            log.info("Test for request interceptors - decoding inside the chain");
+
+            AidaRequestInterceptors.add(observer);
+            try {
+                pvaRequest(PROVIDER_NAME + "::" + TEST1_CHANNEL_NAME).returning(AIDA_INTEGER).getInto(new double[1], 0);
+                fail("getInto: should have failed to copy a scalar");
+            } catch (RPCRequestException e) {
+                log.info("getInto: failed as expected: " + e.getMessage());
+            }
+            assertEquals("Checking decoding failure seen by the interceptor", 1, failures.size());
+            assertTrue("Checking decoding failure: " + failures.get(0), failures.get(0).contains("expected an array result"));
+
+            log.info("_____________________________________________\n");
+        } finally {
+            AidaRequestInterceptors.remove(observer);
+        }
+    }
+}
@@ -0,0 +1,475 @@
+package edu.stanford.slac.aida.test;
+
+import edu.stanford.slac.aida.client.AidaPvaRequest;
+import edu.stanford.slac.aida.client.compat.AidaConsumer;
+import org.epics.pvaccess.server.rpc.RPCRequestException;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.OperatingSystemMXBean;
+import java.lang.management.ThreadMXBean;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static edu.stanford.slac.aida.client.AidaPvaClientUtils.pvaRequest;
+import static edu.stanford.slac.aida.test.AbstractAidaClientTest.SYNTHETIC_PROVIDER_NAME;
+import static edu.stanford.slac.aida.test.SyntheticTestService.*;
+
+/**
+ * Drives a mix of get, set and table requests against the {@link SyntheticTestService} and reports
+ * throughput, latency percentiles, errors, and the CPU time and memory used by the client.
+ * <p>
+ * Requests are made either from a number of threads that each make one request at a time, or
+ * asynchronously with {@link AidaPvaRequest#asyncGet()} keeping a number of requests in flight.  In
+ * threaded mode CPU time and allocation are measured on the client threads only.  In asynchronous mode
+ * each request runs on its own short lived thread, so CPU time is for the whole process, including the
+ * in-process server, and allocation is not measured.
+ * <p>
+ * e.g.
+ * <pre>{@code
+ *      LoadGenerator.Report report = new LoadGenerator()
+ *          .threads(16)
+ *          .duration(30000)
+ *          .mix(60, 20, 20)
+ *          .size(100000)
+ *          .delay(2)
+ *          .run();
+ * }</pre>
+ */
+public class LoadGenerator {
+    private static final ThreadMXBean threadMXBean = ManagementFactory.getThreadMXBean();
+    private static final OperatingSystemMXBean osMXBean = ManagementFactory.getOperatingSystemMXBean();
+
+    private enum Operation {
+        GET, SET, TABLE
+    }
+
+    private int threads = 4;
+    private int concurrency = 0;
+    private long durationMillis = 1000;
+    private int getWeight = 60;
+    private int setWeight = 20;
+    private int tableWeight = 20;
+    private int delay = 0;
+    private int size = DEFAULT_SIZE;
+    private int errors = 0;
+
+    /**
+     * Make requests from the given number of threads, one at a time on each thread
+     *
+     * @param threads the number of threads
+     * @return this generator
+     */
+    public LoadGenerator threads(int threads) {
+        this.threads = threads;
+        this.concurrency = 0;
+        return this;
+    }
+
+    /**
+     * Make requests asynchronously, keeping the given number in flight
+     *
+     * @param concurrency the number of requests in flight
+     * @return this generator
+     */
+    public LoadGenerator async(int concurrency) {
+        this.concurrency = concurrency;
+        return this;
+    }
+
+    /**
+     * Set how long to make requests for
+     *
+     * @param durationMillis the duration in milliseconds
+     * @return this generator
+     */
+    public LoadGenerator duration(long durationMillis) {
+        this.durationMillis = durationMillis;
+        return this;
+    }
+
+    /**
+     * Set the relative weights of each kind of request
+     *
+     * @param gets   weight of waveform gets
+     * @param sets   weight of sets
+     * @param tables weight of table gets
+     * @return this generator
+     */
+    public LoadGenerator mix(int gets, int sets, int tables) {
+        if (gets < 0 || sets < 0 || tables < 0 || gets + sets + tables == 0) {
+            throw new IllegalArgumentException("Request mix weights must not be negative and must not all be zero");
+        }
+        this.getWeight = gets;
+        this.setWeight = sets;
+        this.tableWeight = tables;
+        return this;
+    }
+
+    /**
+     * Set the server side delay of each request
+     *
+     * @param delay the delay in milliseconds
+     * @return this generator
+     */
+    public LoadGenerator delay(int delay) {
+        this.delay = delay;
+        return this;
+    }
+
+    /**
+     * Set the number of waveform elements or table rows returned
+     *
+     * @param size the payload size
+     * @return this generator
+     */
+    public LoadGenerator size(int size) {
+        this.size = size;
+        return this;
+    }
+
+    /**
+     * Set the percentage of requests that the server fails
+     *
+     * @param errors the error percentage
+     * @return this generator
+     */
+    public LoadGenerator errors(int errors) {
+        this.errors = errors;
+        return this;
+    }
+
+    /**
+     * Run the load
+     *
+     * @return the report
+     * @throws InterruptedException if interrupted while waiting for requests to complete
+     */
+    public Report run() throws InterruptedException {
+        return concurrency > 0 ? runAsync() : runThreads();
+    }
+
+    /**
+     * Internal: Make requests from a number of threads
+     */
+    private Report runThreads() throws InterruptedException {
+        final long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(durationMillis);
+        Worker[] workers = new Worker[threads];
+        Thread[] workerThreads = new Thread[threads];
+        long start = System.nanoTime();
+        for (int i = 0; i < threads; i++) {
+            workers[i] = new Worker(deadline, new Random(i));
+            workerThreads[i] = new Thread(workers[i], "aida-load-" + i);
+            workerThreads[i].start();
+        }
+
+        Samples latencies = new Samples();
+        long errorCount = 0;
+        long cpuNanos = 0;
+        long allocatedBytes = 0;
+        for (int i = 0; i < threads; i++) {
+            workerThreads[i].join();
+            latencies.addAll(workers[i].latencies);
+            errorCount += workers[i].errors;
+            cpuNanos = cpuNanos < 0 || workers[i].cpuNanos < 0 ? -1 : cpuNanos + workers[i].cpuNanos;
+            allocatedBytes = allocatedBytes < 0 || workers[i].allocatedBytes < 0 ? -1 : allocatedBytes + workers[i].allocatedBytes;
+        }
+        return new Report(threads + " threads", latencies, errorCount, System.nanoTime() - start, cpuNanos, allocatedBytes);
+    }
+
+    /**
+     * Internal: Make requests asynchronously with a fixed number in flight
+     */
+    private Report runAsync() throws InterruptedException {
+        final Semaphore inFlight = new Semaphore(concurrency);
+        final Samples latencies = new Samples();
+        final AtomicLong errorCount = new AtomicLong();
+        Random random = new Random(0);
+
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(durationMillis);
+        long cpuStart = processCpuNanos();
+        long start = System.nanoTime();
+        while (System.nanoTime() < deadline) {
+            inFlight.acquire();
+            final long requestStart = System.nanoTime();
+            Operation operation = pick(random);
+            AidaPvaRequest request = request(operation)
+                    .setResponseCallback(new AidaConsumer<Object>() {
+                        @Override
+                        public void accept(Object response) {
+                            try {
+                                latencies.addSynchronized(System.nanoTime() - requestStart);
+                            } finally {
+                                inFlight.release();
+                            }
+                        }
+                    })
+                    .setErrorCallback(new AidaConsumer<Throwable>() {
+                        @Override
+                        public void accept(Throwable error) {
+                            try {
+                                errorCount.incrementAndGet();
+                                latencies.addSynchronized(System.nanoTime() - requestStart);
+                            } finally {
+                                inFlight.release();
+                            }
+                        }
+                    });
+            try {
+                if (operation == Operation.SET) {
+                    request.asynchSet(1.5f);
+                } else {
+                    request.asyncGet();
+                }
+            } catch (RuntimeException e) {
+                // The request never started so neither callback will release its permit
+                errorCount.incrementAndGet();
+                inFlight.release();
+            }
+        }
+
+        // Wait for the requests in flight to finish
+        if (!inFlight.tryAcquire(concurrency, 60, TimeUnit.SECONDS)) {
+            throw new IllegalStateException("Asynchronous requests did not complete");
+        }
+        long cpuNanos = processCpuNanos();
+        return new Report(concurrency + " in flight", latencies, errorCount.get(), System.nanoTime() - start,
+                cpuStart < 0 || cpuNanos < 0 ? -1 : cpuNanos - cpuStart, -1);
+    }
+
+    /**
+     * Internal: Pick the next kind of request according to the mix
+     */
+    private Operation pick(Random random) {
+        int choice = random.nextInt(getWeight + setWeight + tableWeight);
+        if (choice < getWeight) {
+            return Operation.GET;
+        }
+        return choice < getWeight + setWeight ? Operation.SET : Operation.TABLE;
+    }
+
+    /**
+     * Internal: Create a request of the given kind
+     */
+    private AidaPvaRequest request(Operation operation) {
+        String channel;
+        switch (operation) {
+            case SET:
+                channel = SETTING_CHANNEL_NAME;
+                break;
+            case TABLE:
+                channel = TABLE_CHANNEL_NAME;
+                break;
+            default:
+                channel = WAVEFORM_CHANNEL_NAME;
+        }
+        AidaPvaRequest request = pvaRequest(SYNTHETIC_PROVIDER_NAME + "::" + channel).with("SIZE", size);
+        if (delay > 0) {
+            request.with("DELAY", delay);
+        }
+        if (errors > 0) {
+            request.with("ERRORS", errors);
+        }
+        return request;
+    }
+
+    /**
+     * Internal: Make one request synchronously
+     */
+    private void execute(Operation operation) throws RPCRequestException {
+        AidaPvaRequest request = request(operation);
+        if (operation == Operation.SET) {
+            request.set(1.5f);
+        } else {
+            request.get();
+        }
+    }
+
+    /**
+     * Internal: CPU time used by the current thread, -1 if it can't be measured
+     */
+    private static long threadCpuNanos() {
+        return threadMXBean.isCurrentThreadCpuTimeSupported() ? threadMXBean.getCurrentThreadCpuTime() : -1;
+    }
+
+    /**
+     * Internal: Bytes allocated by the current thread, -1 if it can't be measured
+     */
+    private static long threadAllocatedBytes() {
+        if (threadMXBean instanceof com.sun.management.ThreadMXBean) {
+            return ((com.sun.management.ThreadMXBean) threadMXBean).getThreadAllocatedBytes(Thread.currentThread().getId());
+        }
+        return -1;
+    }
+
+    /**
+     * Internal: CPU time used by the process, -1 if it can't be measured
+     */
+    private static long processCpuNanos() {
+        if (osMXBean instanceof com.sun.management.OperatingSystemMXBean) {
+            return ((com.sun.management.OperatingSystemMXBean) osMXBean).getProcessCpuTime();
+        }
+        return -1;
+    }
+
+    /**
+     * Makes requests one at a time until the deadline
+     */
+    private class Worker implements Runnable {
+        private final long deadline;
+        private final Random random;
+        private final Samples latencies = new Samples();
+        private long errors;
+        private long cpuNanos;
+        private long allocatedBytes;
+
+        private Worker(long deadline, Random random) {
+            this.deadline = deadline;
+            this.random = random;
+        }
+
+        @Override
+        public void run() {
+            long cpuStart = threadCpuNanos();
+            long allocatedStart = threadAllocatedBytes();
+            while (System.nanoTime() < deadline) {
+                Operation operation = pick(random);
+                long start = System.nanoTime();
+                try {
+                    execute(operation);
+                } catch (RPCRequestException e) {
+                    errors++;
+                } catch (RuntimeException e) {
+                    errors++;
+                }
+                latencies.add(System.nanoTime() - start);
+            }
+            long cpuEnd = threadCpuNanos();
+            long allocatedEnd = threadAllocatedBytes();
+            cpuNanos = cpuStart < 0 ? -1 : cpuEnd - cpuStart;
+            allocatedBytes = allocatedStart < 0 ? -1 : allocatedEnd - allocatedStart;
+        }
+    }
+
+    /**
+     * Growable list of latency samples in nanoseconds
+     */
+    private static class Samples {
+        private long[] values = new long[1024];
+        private int count;
+
+        private void add(long value) {
+            if (count == values.length) {
+                values = Arrays.copyOf(values, count * 2);
+            }
+            values[count++] = value;
+        }
+
+        private synchronized void addSynchronized(long value) {
+            add(value);
+        }
+
+        private void addAll(Samples samples) {
+            for (int i = 0; i < samples.count; i++) {
+                add(samples.values[i]);
+            }
+        }
+
+        private synchronized long[] sorted() {
+            long[] sorted = Arrays.copyOf(values, count);
+            Arrays.sort(sorted);
+            return sorted;
+        }
+    }
+
+    /**
+     * The results of a load run
+     */
+    public static class Report {
+        private final String mode;
+        private final long[] latencies;
+        private final long errors;
+        private final long elapsedNanos;
+        private final long cpuNanos;
+        private final long allocatedBytes;
+
+        private Report(String mode, Samples latencies, long errors, long elapsedNanos, long cpuNanos, long allocatedBytes) {
+            this.mode = mode;
+            this.latencies = latencies.sorted();
+            this.errors = errors;
+            this.elapsedNanos = elapsedNanos;
+            this.cpuNanos = cpuNanos;
+            this.allocatedBytes = allocatedBytes;
+        }
+
+        /**
+         * Get the number of requests made, including those that failed
+         *
+         * @return the number of requests
+         */
+        public long getRequests() {
+            return latencies.length;
+        }
+
+        /**
+         * Get the number of requests that failed
+         *
+         * @return the number of errors
+         */
+        public long getErrors() {
+            return errors;
+        }
+
+        /**
+         * Get the number of requests completed per second
+         *
+         * @return the throughput
+         */
+        public double getThroughput() {
+            return latencies.length / (elapsedNanos / 1e9);
+        }
+
+        /**
+         * Get the latency at or below which the given percentage of requests completed
+         *
+         * @param percentile the percentage, from 0 to 100
+         * @return the latency in milliseconds, 0 if no requests were made
+         */
+        public double getLatencyMillis(double percentile) {
+            if (latencies.length == 0) {
+                return 0;
+            }
+            int index = (int) Math.ceil(percentile / 100.0 * latencies.length) - 1;
+            return latencies[Math.max(0, Math.min(index, latencies.length - 1))] / 1e6;
+        }
+
+        /**
+         * Get the CPU time used, by the client threads in threaded mode or by the process in asynchronous mode
+         *
+         * @return the CPU time in milliseconds, negative if it was not measured
+         */
+        public double getCpuMillis() {
+            return cpuNanos < 0 ? -1 : cpuNanos / 1e6;
+        }
+
+        /**
+         * Get the bytes allocated by the client threads
+         *
+         * @return the bytes allocated, negative if it was not measured
+         */
+        public long getAllocatedBytes() {
+            return allocatedBytes;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%s: %d requests (%d errors) in %.2fs = %.1f/s, latency p50=%.3fms p90=%.3fms p99=%.3fms p99.9=%.3fms max=%.3fms, cpu=%s, allocated=%s",
+                    mode, getRequests(), errors, elapsedNanos / 1e9, getThroughput(),
+                    getLatencyMillis(50), getLatencyMillis(90), getLatencyMillis(99), getLatencyMillis(99.9), getLatencyMillis(100),
+                    cpuNanos < 0 ? "n/a" : String.format("%.1fms", getCpuMillis()),
+                    allocatedBytes < 0 ? "n/a" : String.format("%.1fMB (%.1fKB/request)", allocatedBytes / 1048576.0, getRequests() == 0 ? 0 : allocatedBytes / 1024.0 / getRequests()));
+        }
+    }
+}
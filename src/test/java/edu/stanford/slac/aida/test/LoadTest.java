@@ -0,0 +1,73 @@
+package edu.stanford.slac.aida.test;
+
+import lombok.extern.java.Log;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+/**
+ * Load tests against the in-process synthetic service.
+ * <p>
+ * By default these make a short run to check the harness.  Longer runs can be configured with system properties,
+ * e.g. to compare executors:
+ * <pre>{@code
+ *      mvn test -Dtest=LoadTest -Daida.pva.load.threads=16 -Daida.pva.load.duration=30000 \
+ *          -Daida.pva.load.mix=60,20,20 -Daida.pva.load.size=100000 -Daida.pva.load.delay=2 \
+ *          -Daida.pva.client.request.executor=PvaClient
+ * }</pre>
+ * Other properties are `aida.pva.load.concurrency` for the number of asynchronous requests in flight
+ * and `aida.pva.load.errors` for the percentage of requests the server fails.
+ */
+@RunWith(JUnit4.class)
+@Log
+public class LoadTest extends AbstractAidaClientTest {
+    @Test
+    public void testThreadedLoad() throws InterruptedException {
+        log.info("#############################################");
+        log.info("Load test with synchronous requests from many threads");
+
+        LoadGenerator.Report report = configure(new LoadGenerator())
+                .threads(Integer.getInteger("aida.pva.load.threads", 4))
+                .run();
+        log.info(report.toString());
+        assertTrue("Checking requests were made", report.getRequests() > 0);
+        if (Integer.getInteger("aida.pva.load.errors", 0) == 0) {
+            assertEquals("Checking there were no errors", 0, report.getErrors());
+        }
+
+        log.info("_____________________________________________\n");
+    }
+
+    @Test
+    public void testAsyncLoad() throws InterruptedException {
+        log.info("#############################################");
+        log.info("Load test with asynchronous requests");
+
+        LoadGenerator.Report report = configure(new LoadGenerator())
+                .async(Integer.getInteger("aida.pva.load.concurrency", 8))
+                .run();
+        log.info(report.toString());
+        assertTrue("Checking requests were made", report.getRequests() > 0);
+        if (Integer.getInteger("aida.pva.load.errors", 0) == 0) {
+            assertEquals("Checking there were no errors", 0, report.getErrors());
+        }
+
+        log.info("_____________________________________________\n");
+    }
+
+    /**
+     * Apply the settings common to all load tests from the system properties
+     *
+     * @param generator the load generator
+     * @return the load generator
+     */
+    private static LoadGenerator configure(LoadGenerator generator) {
+        String[] mix = System.getProperty("aida.pva.load.mix", "60,20,20").split(",");
+        return generator
+                .duration(Long.getLong("aida.pva.load.duration", 1000L))
+                .mix(Integer.parseInt(mix[0].trim()), Integer.parseInt(mix[1].trim()), Integer.parseInt(mix[2].trim()))
+                .size(Integer.getInteger("aida.pva.load.size", SyntheticTestService.DEFAULT_SIZE))
+                .delay(Integer.getInteger("aida.pva.load.delay", 0))
+                .errors(Integer.getInteger("aida.pva.load.errors", 0));
+    }
+}
@@ -0,0 +1,57 @@
+package edu.stanford.slac.aida.test;
+
+import edu.stanford.slac.aida.client.PvaRequestExecutor;
+import edu.stanford.slac.aida.client.impl.LoopbackRequestExecutor;
+import lombok.extern.java.Log;
+import org.epics.pvaccess.server.rpc.RPCRequestException;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+import static edu.stanford.slac.aida.client.AidaPvaClientUtils.*;
+import static org.junit.Assert.assertArrayEquals;
+
+/**
+ * Tests for the in-process loopback request executor
+ */
+@RunWith(JUnit4.class)
+@Log
+public class LoopbackTest extends AbstractAidaClientTest {
+    private static final String WAVEFORM = "LOOP::" + TEST8_CHANNEL_NAME;
+
+    @Test
+    public void testLoopback() throws RPCRequestException {
+        log.info("#############################################");
+        log.info("Test for requests to in-process services");
+
+        PvaRequestExecutor executor = getRequestExecutor();
+        LoopbackRequestExecutor loopback = new LoopbackRequestExecutor(executor);
+        loopback.registerService("LOOP::*", new AidaTestService());
+        try {
+            setRequestExecutor(loopback);
+
+            int requests = 10000;
+            Object[] waveform = null;
+            long start = System.nanoTime();
+            for (int i = 0; i < requests; i++) {
+                waveform = (Object[]) pvaGet(WAVEFORM);
+            }
+            log.info("Loopback round trip: " + (System.nanoTime() - start) / requests / 1000.0 + "us");
+            assertArrayEquals("Checking loopback response", new Object[]{0.25, 1.25, 2.25, 3.25}, waveform);
+
+            assertNotNull("Checking other channels fall back", pvaGet("TEST::" + TEST2_CHANNEL_NAME));
+
+            loopback.unregisterService("LOOP::*");
+            try {
+                new LoopbackRequestExecutor().executeRequest(WAVEFORM, null, 1.0);
+                fail("executeRequest: should have failed with no service");
+            } catch (RPCRequestException e) {
+                log.info("executeRequest: failed as expected: " + e.getMessage());
+            }
+        } finally {
+            setRequestExecutor(executor);
+        }
+
+        log.info("_____________________________________________\n");
+    }
+}
@@ -0,0 +1,69 @@
+package edu.stanford.slac.aida.test;
+
+import edu.stanford.slac.aida.client.AidaMetrics;
+import edu.stanford.slac.aida.client.ChannelMetrics;
+import lombok.extern.java.Log;
+import org.epics.pvaccess.server.rpc.RPCRequestException;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+import javax.management.ObjectName;
+import javax.management.openmbean.CompositeData;
+import java.lang.management.ManagementFactory;
+
+import static edu.stanford.slac.aida.client.AidaPvaClientUtils.pvaGet;
+
+/**
+ * Tests for the request metrics.
+ * A Test Server is started to respond to these requests
+ */
+@RunWith(JUnit4.class)
+@Log
+public class MetricsTest extends AbstractAidaClientTest {
+    @Test
+    public void testMetrics() throws Exception {
+        log.info("#############################################");
+        log.info("Test for request metrics per channel and per provider");
+
+        AidaMetrics metrics = AidaMetrics.getInstance();
+        metrics.reset();
+
+        String waveform = PROVIDER_NAME + "::" + TEST8_CHANNEL_NAME;
+        String failing = PROVIDER_NAME + "::" + TEST6_CHANNEL_NAME;
+        for (int i = 0; i < 5; i++) {
+            pvaGet(waveform);
+        }
+        try {
+            pvaGet(failing);
+            fail(failing + ": should have failed");
+        } catch (RPCRequestException e) {
+            log.info(failing + ": failed as expected");
+        }
+
+        ChannelMetrics channel = metrics.getChannel(waveform);
+        log.info("Channel metrics: " + channel);
+        assertEquals("Checking channel request count", 5, channel.getRequests());
+        assertEquals("Checking channel error count", 0, channel.getErrors());
+        assertTrue("Checking latency percentiles are ordered", channel.getP50Millis() <= channel.getP99Millis() && channel.getP99Millis() <= channel.getMaxMillis());
+        assertTrue("Checking mean latency", channel.getMeanMillis() > 0 && channel.getMeanMillis() <= channel.getMaxMillis());
+
+        assertEquals("Checking failing channel error count", 1, metrics.getChannel(failing).getErrors());
+
+        ChannelMetrics provider = metrics.getProvider(PROVIDER_NAME);
+        log.info("Provider metrics: " + provider);
+        assertEquals("Checking provider request count", 6, provider.getRequests());
+        assertEquals("Checking provider error count", 1, provider.getErrors());
+        assertEquals("Checking total request count", 6, metrics.getTotal().getRequests());
+        assertEquals("Checking channels are listed", 2, metrics.getChannels().length);
+
+        CompositeData total = (CompositeData) ManagementFactory.getPlatformMBeanServer().getAttribute(new ObjectName(AidaMetrics.OBJECT_NAME), "Total");
+        assertEquals("Checking total request count over JMX", 6L, total.get("requests"));
+
+        metrics.reset();
+        assertNull("Checking reset clears channels", metrics.getChannel(waveform));
+        assertEquals("Checking reset clears totals", 0, metrics.getTotal().getRequests());
+
+        log.info("_____________________________________________\n");
+    }
+}
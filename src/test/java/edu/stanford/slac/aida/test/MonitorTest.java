@@ -0,0 +1,198 @@
+package edu.stanford.slac.aida.test;
+
+import edu.stanford.slac.aida.client.AidaMonitorListener;
+import edu.stanford.slac.aida.client.AidaMonitors;
+import edu.stanford.slac.aida.client.PvaMonitorProvider;
+import lombok.extern.java.Log;
+import org.epics.nt.NTScalar;
+import org.epics.pvaccess.server.rpc.RPCRequestException;
+import org.epics.pvdata.pv.PVDouble;
+import org.epics.pvdata.pv.PVStructure;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.epics.pvdata.pv.ScalarType.pvDouble;
+import static org.epics.pvdata.pv.Status.StatusType.ERROR;
+
+/**
+ * Tests for monitor subscriptions.
+ * Updates are pushed by an in-process monitor provider, reusing one structure as pvAccess does
+ */
+@RunWith(JUnit4.class)
+@Log
+public class MonitorTest extends AbstractAidaClientTest {
+    private static final String CHANNEL = "MONITOR::BPMS:LI11:501:X";
+    private static final String SLOW_CHANNEL = "MONITOR::BPMS:LI11:601:X";
+
+    @Test
+    public void testCoalescingSubscriptions() throws RPCRequestException, InterruptedException {
+        log.info("#############################################");
+        log.info("Test for shared monitors with coalescing queues");
+
+        PvaMonitorProvider provider = AidaMonitors.getMonitorProvider();
+        TestMonitorProvider testProvider = new TestMonitorProvider();
+        AidaMonitors.setMonitorProvider(testProvider);
+        try {
+            Recorder fast = new Recorder(0), slow = new Recorder(20);
+            AidaMonitors.Subscription all = AidaMonitors.subscribe(CHANNEL, 1000, fast);
+            AidaMonitors.Subscription latest = AidaMonitors.subscribe(CHANNEL, slow);
+            assertEquals("Checking one shared monitor", 1, testProvider.monitors.get());
+            assertEquals("Checking monitored channels", 1, AidaMonitors.getMonitoredChannels());
+
+            int updates = 200;
+            for (int i = 1; i <= updates; i++) {
+                testProvider.push(CHANNEL, i);
+            }
+            Thread.sleep(200);
+            log.info("Fast listener: " + fast.values.size() + " values, slow listener: " + slow.values.size()
+                    + " values, " + latest.getDropped() + " dropped");
+            assertEquals("Checking fast listener saw every update", updates, fast.values.size());
+            assertEquals("Checking updates in order", (double) updates, fast.values.get(updates - 1));
+            assertTrue("Checking slow listener coalesced", slow.values.size() < updates / 10);
+            assertEquals("Checking slow listener saw the latest value", (double) updates, slow.values.get(slow.values.size() - 1));
+            assertEquals("Checking nothing lost but dropped values", updates, slow.values.size() + latest.getDropped());
+
+            testProvider.fail(CHANNEL, "Server went away");
+            Thread.sleep(50);
+            assertEquals("Checking failure delivered to every listener", 1, fast.errors.size());
+            assertEquals("Checking failure delivered to slow listener", "Server went away", slow.errors.get(0));
+
+            all.cancel();
+            assertEquals("Checking monitor kept for remaining subscription", 0, testProvider.stopped.get());
+            latest.cancel();
+            assertEquals("Checking monitor stopped", 1, testProvider.stopped.get());
+            assertEquals("Checking no channels monitored", 0, AidaMonitors.getMonitoredChannels());
+        } finally {
+            AidaMonitors.setMonitorProvider(provider);
+        }
+
+        log.info("_____________________________________________\n");
+    }
+
+    @Test
+    public void testSlowMonitorStart() throws Exception {
+        log.info("#############################################");
+        log.info("Test for subscribing while another channel's monitor is starting");
+
+        PvaMonitorProvider provider = AidaMonitors.getMonitorProvider();
+        final TestMonitorProvider testProvider = new TestMonitorProvider();
+        testProvider.gate = new CountDownLatch(1);
+        AidaMonitors.setMonitorProvider(testProvider);
+        ExecutorService executor = Executors.newCachedThreadPool();
+        try {
+            // Two subscribers to a channel whose monitor takes a while to start
+            Callable<AidaMonitors.Subscription> slow = new Callable<AidaMonitors.Subscription>() {
+                @Override
+                public AidaMonitors.Subscription call() throws RPCRequestException {
+                    return AidaMonitors.subscribe(SLOW_CHANNEL, new Recorder(0));
+                }
+            };
+            Future<AidaMonitors.Subscription> first = executor.submit(slow);
+            Future<AidaMonitors.Subscription> second = executor.submit(slow);
+            assertTrue("Checking slow monitors starting", testProvider.starting.tryAcquire(2, 5, TimeUnit.SECONDS));
+
+            Future<AidaMonitors.Subscription> other = executor.submit(new Callable<AidaMonitors.Subscription>() {
+                @Override
+                public AidaMonitors.Subscription call() throws RPCRequestException {
+                    return AidaMonitors.subscribe(CHANNEL, new Recorder(0));
+                }
+            });
+            AidaMonitors.Subscription subscription = other.get(1, TimeUnit.SECONDS);
+            assertEquals("Checking other channel subscribed while slow monitor starts", CHANNEL, subscription.getChannel());
+            subscription.cancel();
+
+            testProvider.gate.countDown();
+            AidaMonitors.Subscription firstSubscription = first.get(5, TimeUnit.SECONDS);
+            AidaMonitors.Subscription secondSubscription = second.get(5, TimeUnit.SECONDS);
+            assertEquals("Checking one slow channel monitored", 1, AidaMonitors.getMonitoredChannels());
+            assertEquals("Checking monitor started second stopped", 2, testProvider.stopped.get());
+            firstSubscription.cancel();
+            secondSubscription.cancel();
+            assertEquals("Checking shared monitor stopped", 3, testProvider.stopped.get());
+            assertEquals("Checking no channels monitored", 0, AidaMonitors.getMonitoredChannels());
+        } finally {
+            testProvider.gate.countDown();
+            executor.shutdownNow();
+            AidaMonitors.setMonitorProvider(provider);
+        }
+
+        log.info("_____________________________________________\n");
+    }
+
+    private static class Recorder implements AidaMonitorListener {
+        private final long delayMillis;
+        private final List<Object> values = Collections.synchronizedList(new ArrayList<Object>());
+        private final List<String> errors = Collections.synchronizedList(new ArrayList<String>());
+
+        private Recorder(long delayMillis) {
+            this.delayMillis = delayMillis;
+        }
+
+        @Override
+        public void valueChanged(String channel, Object value) {
+            values.add(value);
+            if (delayMillis > 0) {
+                try {
+                    Thread.sleep(delayMillis);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        }
+
+        @Override
+        public void monitorFailed(String channel, RPCRequestException e) {
+            errors.add(e.getMessage());
+        }
+    }
+
+    /**
+     * Monitor provider whose updates are pushed by the test
+     */
+    private static class TestMonitorProvider implements PvaMonitorProvider {
+        private final Map<String, Updates> channels = new ConcurrentHashMap<String, Updates>();
+        private final PVStructure structure = NTScalar.createBuilder().value(pvDouble).createPVStructure();
+        private final AtomicInteger monitors = new AtomicInteger();
+        private final AtomicInteger stopped = new AtomicInteger();
+        private final Semaphore starting = new Semaphore(0);
+        private volatile CountDownLatch gate;
+
+        @Override
+        public Monitor monitor(final String channelName, Updates updates) {
+            if (channelName.equals(SLOW_CHANNEL)) {
+                starting.release();
+                try {
+                    gate.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+            monitors.incrementAndGet();
+            channels.put(channelName, updates);
+            return new Monitor() {
+                @Override
+                public void stop() {
+                    channels.remove(channelName);
+                    stopped.incrementAndGet();
+                }
+            };
+        }
+
+        private void push(String channelName, double value) {
+            structure.getSubField(PVDouble.class, "value").put(value);
+            channels.get(channelName).update(structure);
+        }
+
+        private void fail(String channelName, String message) {
+            channels.get(channelName).failed(new RPCRequestException(ERROR, message));
+        }
+    }
+}
@@ -0,0 +1,125 @@
+package edu.stanford.slac.aida.test;
+
+import edu.stanford.slac.aida.client.AidaPollListener;
+import edu.stanford.slac.aida.client.AidaPolling;
+import edu.stanford.slac.aida.client.PvaRequestExecutor;
+import edu.stanford.slac.aida.client.impl.LoopbackRequestExecutor;
+import lombok.extern.java.Log;
+import org.epics.nt.NTScalar;
+import org.epics.pvaccess.server.rpc.RPCRequestException;
+import org.epics.pvaccess.server.rpc.RPCService;
+import org.epics.pvdata.pv.PVDouble;
+import org.epics.pvdata.pv.PVStructure;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static edu.stanford.slac.aida.client.AidaPvaClientUtils.getRequestExecutor;
+import static edu.stanford.slac.aida.client.AidaPvaClientUtils.setRequestExecutor;
+import static org.epics.pvdata.pv.ScalarType.pvDouble;
+
+/**
+ * Tests for the polling service.
+ * Polls are answered by an in-process counter that goes up by 0.1 each time it is read
+ */
+@RunWith(JUnit4.class)
+@Log
+public class PollingTest extends AbstractAidaClientTest {
+    private static final String COUNTER = "POLL::COUNTER";
+    private static final String ERROR = PROVIDER_NAME + "::" + TEST6_CHANNEL_NAME;
+
+    @Test
+    public void testSharedPollsAndDeadband() throws InterruptedException {
+        log.info("#############################################");
+        log.info("Test for shared polls with a deadband");
+
+        final AtomicInteger reads = new AtomicInteger();
+        PvaRequestExecutor executor = getRequestExecutor();
+        LoopbackRequestExecutor loopback = new LoopbackRequestExecutor(executor);
+        loopback.registerService("POLL::*", new RPCService() {
+            @Override
+            public PVStructure request(PVStructure args) {
+                PVStructure response = NTScalar.createBuilder().value(pvDouble).createPVStructure();
+                response.getSubField(PVDouble.class, "value").put(reads.incrementAndGet() / 10.0);
+                return response;
+            }
+        });
+        try {
+            setRequestExecutor(loopback);
+
+            Recorder everyChange = new Recorder(), beyondDeadband = new Recorder(), slow = new Recorder();
+            AidaPolling.Subscription first = AidaPolling.subscribe(COUNTER, 20, everyChange);
+            AidaPolling.Subscription second = AidaPolling.subscribe(COUNTER, 20, 0.25, beyondDeadband);
+            AidaPolling.Subscription third = AidaPolling.subscribe(COUNTER, 100, slow);
+            assertEquals("Checking one shared poll", 1, AidaPolling.getPolledChannels());
+            assertEquals("Checking fastest period", 20, AidaPolling.getPeriodMillis(COUNTER));
+
+            Thread.sleep(500);
+            first.cancel();
+            second.cancel();
+            assertEquals("Checking remaining period", 100, AidaPolling.getPeriodMillis(COUNTER));
+            third.cancel();
+            assertEquals("Checking poll stopped", 0, AidaPolling.getPolledChannels());
+            // Cancelling does not wait for a poll already under way
+            Thread.sleep(50);
+            int polls = reads.get();
+            log.info(polls + " polls: " + everyChange.values.size() + " changes, " + beyondDeadband.values.size()
+                    + " beyond deadband, " + slow.values.size() + " at the slow period");
+
+            assertTrue("Checking polls shared", polls <= 500 / 20 + 2);
+            // A poll can complete between cancelling the first subscription and the last
+            assertTrue("Checking every change notified", everyChange.values.size() >= polls - 2);
+            for (int i = 1; i < beyondDeadband.values.size(); i++) {
+                double step = (Double) beyondDeadband.values.get(i) - (Double) beyondDeadband.values.get(i - 1);
+                assertTrue("Checking deadband: " + step, step > 0.25);
+            }
+            assertTrue("Checking deadband suppressed changes", beyondDeadband.values.size() < polls / 2 + 1);
+            assertTrue("Checking slow subscription not notified on every poll", slow.values.size() <= 500 / 100 + 2);
+
+            Thread.sleep(100);
+            assertEquals("Checking no polls after cancelling", polls, reads.get());
+        } finally {
+            setRequestExecutor(executor);
+        }
+
+        log.info("_____________________________________________\n");
+    }
+
+    @Test
+    public void testPollFailure() throws InterruptedException {
+        log.info("#############################################");
+        log.info("Test for failed polls");
+
+        Recorder recorder = new Recorder();
+        AidaPolling.Subscription subscription = AidaPolling.subscribe(ERROR, 50, recorder);
+        Thread.sleep(200);
+        subscription.cancel();
+
+        log.info(recorder.errors.size() + " failed polls: " + (recorder.errors.isEmpty() ? "" : recorder.errors.get(0)));
+        assertTrue("Checking failures notified", recorder.errors.size() > 0);
+        assertTrue("Checking error", recorder.errors.get(0).contains("UnableToGetDataException"));
+        assertEquals("Checking no values", 0, recorder.values.size());
+
+        log.info("_____________________________________________\n");
+    }
+
+    private static class Recorder implements AidaPollListener {
+        private final List<Object> values = Collections.synchronizedList(new ArrayList<Object>());
+        private final List<String> errors = Collections.synchronizedList(new ArrayList<String>());
+
+        @Override
+        public void valueChanged(String channel, Object value) {
+            values.add(value);
+        }
+
+        @Override
+        public void pollFailed(String channel, RPCRequestException e) {
+            errors.add(e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,237 @@
+package edu.stanford.slac.aida.test;
+
+import edu.stanford.slac.aida.client.AidaPublishers;
+import edu.stanford.slac.aida.client.PvaRequestExecutor;
+import edu.stanford.slac.aida.client.PvaTable;
+import edu.stanford.slac.aida.client.compat.AidaFlow;
+import edu.stanford.slac.aida.client.impl.LoopbackRequestExecutor;
+import lombok.extern.java.Log;
+import org.epics.nt.NTScalar;
+import org.epics.pvaccess.server.rpc.RPCRequestException;
+import org.epics.pvaccess.server.rpc.RPCService;
+import org.epics.pvdata.pv.PVDouble;
+import org.epics.pvdata.pv.PVStructure;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+import java.util.*;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static edu.stanford.slac.aida.client.AidaPvaClientUtils.*;
+import static edu.stanford.slac.aida.test.SyntheticTestService.TABLE_CHANNEL_NAME;
+import static org.epics.pvdata.pv.ScalarType.pvDouble;
+
+/**
+ * Tests for flow controlled publishers.
+ * Requests are answered by an in-process service that takes a few milliseconds and counts the requests in flight
+ */
+@RunWith(JUnit4.class)
+@Log
+public class PublisherTest extends AbstractAidaClientTest {
+    private static final String TABLE = SYNTHETIC_PROVIDER_NAME + "::" + TABLE_CHANNEL_NAME;
+    private static final String ERROR = PROVIDER_NAME + "::" + TEST6_CHANNEL_NAME;
+
+    @Test
+    public void testRequestsInFlight() throws InterruptedException {
+        log.info("#############################################");
+        log.info("Test for demand throttling the requests in flight");
+
+        final AtomicInteger inFlight = new AtomicInteger(), mostInFlight = new AtomicInteger();
+        PvaRequestExecutor executor = getRequestExecutor();
+        LoopbackRequestExecutor loopback = new LoopbackRequestExecutor(executor);
+        loopback.registerService("FLOW::*", new RPCService() {
+            @Override
+            public PVStructure request(PVStructure args) {
+                int now = inFlight.incrementAndGet();
+                synchronized (mostInFlight) {
+                    mostInFlight.set(Math.max(mostInFlight.get(), now));
+                }
+                try {
+                    Thread.sleep(2);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                PVStructure response = NTScalar.createBuilder().value(pvDouble).createPVStructure();
+                response.getSubField(PVDouble.class, "value").put(now);
+                inFlight.decrementAndGet();
+                return response;
+            }
+        });
+        try {
+            setRequestExecutor(loopback);
+
+            List<String> channels = new ArrayList<String>();
+            for (int i = 0; i < 200; i++) {
+                channels.add("FLOW::DEVICE:" + i);
+            }
+            channels.add(ERROR);
+
+            // A subscriber that keeps 8 results asked for, twice as many as may be in flight
+            Recorder<AidaPublishers.Result> recorder = new Recorder<AidaPublishers.Result>(8, 1);
+            AidaPublishers.gets(channels, 4).subscribe(recorder);
+            assertTrue("Checking completed", recorder.completed.await(30, TimeUnit.SECONDS));
+            log.info(recorder.items.size() + " results, at most " + mostInFlight.get() + " requests in flight");
+
+            assertEquals("Checking every result published", channels.size(), recorder.items.size());
+            assertTrue("Checking requests in flight limited", mostInFlight.get() <= 4);
+            Set<Long> indexes = new HashSet<Long>();
+            int failed = 0;
+            for (AidaPublishers.Result result : recorder.items) {
+                indexes.add(result.getIndex());
+                if (result.isFailed()) {
+                    failed++;
+                    assertEquals("Checking failed channel", ERROR, result.getChannel());
+                    assertTrue("Checking error", result.getError().getMessage().contains("UnableToGetDataException"));
+                }
+            }
+            assertEquals("Checking one failed result", 1, failed);
+            assertEquals("Checking each request published once", channels.size(), indexes.size());
+            assertNull("Checking stream not failed", recorder.error);
+        } finally {
+            setRequestExecutor(executor);
+        }
+
+        log.info("_____________________________________________\n");
+    }
+
+    @Test
+    public void testNoRequestsWithoutDemand() throws InterruptedException {
+        log.info("#############################################");
+        log.info("Test for no requests sent without demand");
+
+        final AtomicInteger made = new AtomicInteger();
+        Iterable<String> channels = new Iterable<String>() {
+            @Override
+            public Iterator<String> iterator() {
+                return new Iterator<String>() {
+                    @Override
+                    public boolean hasNext() {
+                        return true;
+                    }
+
+                    @Override
+                    public String next() {
+                        made.incrementAndGet();
+                        return PROVIDER_NAME + "::" + TEST8_CHANNEL_NAME;
+                    }
+
+                    @Override
+                    public void remove() {
+                        throw new UnsupportedOperationException();
+                    }
+                };
+            }
+        };
+
+        // An endless stream of requests, only three of which are asked for
+        Recorder<AidaPublishers.Result> recorder = new Recorder<AidaPublishers.Result>(3, 0);
+        AidaPublishers.gets(channels, 16).subscribe(recorder);
+        Thread.sleep(500);
+        assertEquals("Checking only the requests asked for were made", 3, made.get());
+        assertEquals("Checking results", 3, recorder.items.size());
+        assertFalse("Checking not failed", recorder.items.get(0).isFailed());
+        recorder.subscription.cancel();
+
+        log.info("_____________________________________________\n");
+    }
+
+    @Test
+    public void testTableRows() throws RPCRequestException, InterruptedException {
+        log.info("#############################################");
+        log.info("Test for publishing the rows of a table");
+
+        PvaTable table = (PvaTable) pvaRequest(TABLE).with("SIZE", 1000).with("COLUMNS", "INTEGER,STRING").get();
+        Recorder<Object[]> recorder = new Recorder<Object[]>(1, 1);
+        AidaPublishers.rows(table).subscribe(recorder);
+        assertTrue("Checking completed", recorder.completed.await(5, TimeUnit.SECONDS));
+
+        assertEquals("Checking every row published", 1000, recorder.items.size());
+        for (int i = 0; i < 1000; i += 99) {
+            Object[] row = recorder.items.get(i);
+            for (int column = 0; column < table.fieldNames.length; column++) {
+                assertEquals("Checking row " + i, table.get(table.fieldNames[column])[i], row[column]);
+            }
+        }
+
+        // Cancelling from another thread while a row is being handled stops the rows that follow
+        final Thread[] canceller = new Thread[1];
+        final AidaFlow.Subscription[] subscription = new AidaFlow.Subscription[1];
+        Recorder<Object[]> cancelled = new Recorder<Object[]>(Long.MAX_VALUE, 0) {
+            @Override
+            public void onSubscribe(AidaFlow.Subscription s) {
+                subscription[0] = s;
+                super.onSubscribe(s);
+            }
+
+            @Override
+            public void onNext(Object[] item) {
+                super.onNext(item);
+                if (canceller[0] == null) {
+                    canceller[0] = new Thread(new Runnable() {
+                        @Override
+                        public void run() {
+                            subscription[0].cancel();
+                        }
+                    });
+                    canceller[0].start();
+                    try {
+                        canceller[0].join(5000);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                }
+            }
+        };
+        AidaPublishers.rows(table).subscribe(cancelled);
+        assertFalse("Checking cancel not blocked by publishing", canceller[0].isAlive());
+        assertEquals("Checking no rows published after cancel", 1, cancelled.items.size());
+        assertEquals("Checking not completed after cancel", 1, cancelled.completed.getCount());
+
+        log.info("_____________________________________________\n");
+    }
+
+    /**
+     * Subscriber that asks for an initial number of items, and then for more as it receives each one
+     */
+    private static class Recorder<T> implements AidaFlow.Subscriber<T> {
+        private final long initial;
+        private final long each;
+        private final List<T> items = Collections.synchronizedList(new ArrayList<T>());
+        private final CountDownLatch completed = new CountDownLatch(1);
+        private AidaFlow.Subscription subscription;
+        private volatile Throwable error;
+
+        private Recorder(long initial, long each) {
+            this.initial = initial;
+            this.each = each;
+        }
+
+        @Override
+        public void onSubscribe(AidaFlow.Subscription subscription) {
+            this.subscription = subscription;
+            subscription.request(initial);
+        }
+
+        @Override
+        public void onNext(T item) {
+            items.add(item);
+            if (each > 0) {
+                subscription.request(each);
+            }
+        }
+
+        @Override
+        public void onError(Throwable throwable) {
+            error = throwable;
+            completed.countDown();
+        }
+
+        @Override
+        public void onComplete() {
+            completed.countDown();
+        }
+    }
+}
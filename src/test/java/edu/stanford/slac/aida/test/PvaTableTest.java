@@ -0,0 +1,387 @@
+package edu.stanford.slac.aida.test;
+
+import edu.stanford.slac.aida.client.PvaTable;
+import edu.stanford.slac.aida.client.PvaTableIndex;
+import edu.stanford.slac.aida.client.PvaTableJoin;
+import edu.stanford.slac.aida.client.StringPool;
+import edu.stanford.slac.aida.client.compat.AidaPredicate;
+import junit.framework.TestCase;
+import lombok.extern.java.Log;
+import org.epics.nt.NTTable;
+import org.epics.nt.NTTableBuilder;
+import org.epics.pvaccess.server.rpc.RPCRequestException;
+import org.epics.pvdata.pv.*;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import static edu.stanford.slac.aida.client.AidaPvaClientUtils.pvaUnpack;
+import static org.epics.pvdata.pv.ScalarType.*;
+import static org.junit.Assert.assertArrayEquals;
+
+/**
+ * Tests for the client side PvaTable operations.
+ * Tables are built locally so no server is needed
+ */
+@RunWith(JUnit4.class)
+@Log
+public class PvaTableTest extends TestCase {
+    private static final String[] NAMES = {"BPMS:LI21:201", "BPMS:LI21:301", "BPMS:LI22:201", "BPMS:LI22:301", "BPMS:LI23:201", "BPMS:LI23:301"};
+    private static final String[] SECTORS = {"LI21", "LI21", "LI22", "LI22", "LI23", "LI23"};
+    private static final double[] Z = {2050.5, 2060.5, 2150.5, 2040.5, 2250.5, 2260.5};
+    private static final float[] X = {0.1f, -0.2f, 0.3f, 0.4f, -0.5f, 0.6f};
+    private static final short[] STAT = {1, 1, 0, 1, 1, 0};
+
+    /**
+     * Make a BPM table
+     *
+     * @return the PvaTable
+     */
+    static PvaTable bpmTable() throws RPCRequestException {
+        String[] fieldNames = {"name", "sector", "z", "x", "stat"};
+        ScalarType[] types = {pvString, pvString, pvDouble, pvFloat, pvShort};
+        NTTableBuilder builder = NTTable.createBuilder();
+        for (int i = 0; i < fieldNames.length; i++) {
+            builder.addColumn(fieldNames[i], types[i]);
+        }
+        PVStructure table = builder.createPVStructure();
+        ((PVStringArray) table.getSubField("labels")).put(0, fieldNames.length, fieldNames, 0);
+        PVStructure value = table.getStructureField("value");
+        ((PVStringArray) value.getSubField("name")).put(0, NAMES.length, NAMES, 0);
+        ((PVStringArray) value.getSubField("sector")).put(0, SECTORS.length, SECTORS, 0);
+        ((PVDoubleArray) value.getSubField("z")).put(0, Z.length, Z, 0);
+        ((PVFloatArray) value.getSubField("x")).put(0, X.length, X, 0);
+        ((PVShortArray) value.getSubField("stat")).put(0, STAT.length, STAT, 0);
+        return (PvaTable) pvaUnpack(table);
+    }
+
+    /**
+     * Make a magnet table keyed on the name of the nearest BPM
+     *
+     * @return the PvaTable
+     */
+    static PvaTable magnetTable() throws RPCRequestException {
+        String[] fieldNames = {"name", "sector", "x", "bact"};
+        NTTableBuilder builder = NTTable.createBuilder()
+                .addColumn("name", pvString)
+                .addColumn("sector", pvString)
+                .addColumn("x", pvFloat)
+                .addColumn("bact", pvDouble);
+        PVStructure table = builder.createPVStructure();
+        ((PVStringArray) table.getSubField("labels")).put(0, fieldNames.length, fieldNames, 0);
+        PVStructure value = table.getStructureField("value");
+        ((PVStringArray) value.getSubField("name")).put(0, 4, new String[]{"BPMS:LI21:301", "BPMS:LI22:201", "BPMS:LI22:201", "BPMS:LI99:999"}, 0);
+        ((PVStringArray) value.getSubField("sector")).put(0, 4, new String[]{"LI21", "LI22", "LI22", "LI99"}, 0);
+        ((PVFloatArray) value.getSubField("x")).put(0, 4, new float[]{1.0f, 2.0f, 3.0f, 9.0f}, 0);
+        ((PVDoubleArray) value.getSubField("bact")).put(0, 4, new double[]{1.5, 2.5, 3.5, 9.5}, 0);
+        return (PvaTable) pvaUnpack(table);
+    }
+
+    @Test
+    public void testQueryFilterSortProject() {
+        try {
+            log.info("#############################################");
+            log.info("Test for PvaTable.query() - filter, sort and project");
+
+            PvaTable table = bpmTable();
+            PvaTable result = table.query()
+                    .whereEquals("stat", 1)
+                    .whereGreaterThan("z", 2045.0)
+                    .orderByDescending("z")
+                    .select("name", "z")
+                    .execute();
+
+            assertEquals("Checking number of rows", 3, result.size.intValue());
+            assertArrayEquals("Checking columns", new String[]{"name", "z"}, result.fieldNames);
+            assertArrayEquals("Checking labels", new String[]{"name", "z"}, result.labels);
+            assertArrayEquals("Checking order", new Object[]{"BPMS:LI23:201", "BPMS:LI21:301", "BPMS:LI21:201"}, result.get("name"));
+            assertArrayEquals("Checking primitive values", new double[]{2250.5, 2060.5, 2050.5}, result.getDoubles("z"), 0.0);
+
+            PvaTable bySector = table.query()
+                    .whereIn("sector", "LI21", "LI23")
+                    .where("name", new AidaPredicate<Object>() {
+                        @Override
+                        public boolean test(Object name) {
+                            return ((String) name).endsWith(":201");
+                        }
+                    })
+                    .execute();
+            assertArrayEquals("Checking predicate filter", new Object[]{"BPMS:LI21:201", "BPMS:LI23:201"}, bySector.get("name"));
+
+            log.info("query: returned: " + result);
+            log.info("_____________________________________________\n");
+        } catch (RPCRequestException e) {
+            fail(e.getMessage());
+        }
+    }
+
+    @Test
+    public void testQueryMultiKeySortAndTopK() {
+        try {
+            log.info("#############################################");
+            log.info("Test for PvaTable.query() - multi-key sort and top-k");
+
+            PvaTable table = bpmTable();
+            int[] rows = table.query()
+                    .orderBy("stat")
+                    .orderByDescending("x")
+                    .rows();
+            assertArrayEquals("Checking multi-key order", new int[]{5, 2, 3, 0, 1, 4}, rows);
+
+            int[] top = table.query()
+                    .orderByDescending("z")
+                    .limit(2)
+                    .rows();
+            assertArrayEquals("Checking top-k", new int[]{5, 4}, top);
+
+            log.info("_____________________________________________\n");
+        } catch (RPCRequestException e) {
+            fail(e.getMessage());
+        }
+    }
+
+    @Test
+    public void testQueryGroupBy() {
+        try {
+            log.info("#############################################");
+            log.info("Test for PvaTable.query() - group by");
+
+            PvaTable grouped = bpmTable().query()
+                    .groupBy("sector")
+                    .count()
+                    .min("z")
+                    .max("x")
+                    .mean("x")
+                    .orderByDescending("sector")
+                    .execute();
+
+            assertArrayEquals("Checking columns", new String[]{"sector", "count", "z_min", "x_max", "x_mean"}, grouped.fieldNames);
+            assertArrayEquals("Checking groups", new Object[]{"LI23", "LI22", "LI21"}, grouped.get("sector"));
+            assertArrayEquals("Checking counts", new Object[]{2, 2, 2}, grouped.get("count"));
+            assertArrayEquals("Checking min", new double[]{2250.5, 2040.5, 2050.5}, grouped.getDoubles("z_min"), 0.0);
+            assertArrayEquals("Checking max", new double[]{0.6f, 0.4f, 0.1f}, grouped.getDoubles("x_max"), 0.0);
+            assertArrayEquals("Checking mean", new double[]{((double) -0.5f + 0.6f) / 2.0, ((double) 0.3f + 0.4f) / 2.0, ((double) 0.1f - 0.2f) / 2.0}, grouped.getDoubles("x_mean"), 1e-12);
+
+            log.info("query: returned: " + grouped);
+            log.info("_____________________________________________\n");
+        } catch (RPCRequestException e) {
+            fail(e.getMessage());
+        }
+    }
+
+    @Test
+    public void testIndex() {
+        try {
+            log.info("#############################################");
+            log.info("Test for PvaTable.index() - single and composite keys");
+
+            PvaTable table = bpmTable();
+            PvaTableIndex byName = table.index("name");
+            assertSame("Checking index is cached", byName, table.index("name"));
+            assertEquals("Checking row lookup", 3, byName.rowOf("BPMS:LI22:301"));
+            assertEquals("Checking missing row lookup", -1, byName.rowOf("BPMS:LI99:201"));
+            assertEquals("Checking value lookup", 0.3f, byName.get("BPMS:LI22:201", "x"));
+            assertNull("Checking missing value lookup", byName.get("BPMS:LI99:201", "x"));
+
+            PvaTableIndex bySector = table.index("sector");
+            assertArrayEquals("Checking duplicate keys", new int[]{4, 5}, bySector.rowsOf("LI23"));
+
+            PvaTableIndex bySectorAndStat = table.index("sector", "stat");
+            assertEquals("Checking composite key with numeric widening", 5, bySectorAndStat.rowOf("LI23", 0));
+            assertEquals("Checking composite value lookup", "BPMS:LI21:201", bySectorAndStat.get(new Object[]{"LI21", 1.0}, "name"));
+            assertArrayEquals("Checking composite duplicate keys", new int[]{0, 1}, bySectorAndStat.rowsOf("LI21", 1));
+            assertFalse("Checking composite key not found", bySectorAndStat.contains("LI22", 2));
+
+            log.info("_____________________________________________\n");
+        } catch (RPCRequestException e) {
+            fail(e.getMessage());
+        }
+    }
+
+    @Test
+    public void testDictionaryEncoding() {
+        try {
+            log.info("#############################################");
+            log.info("Test for PvaTable dictionary encoded string columns");
+
+            PvaTable table = bpmTable();
+            assertArrayEquals("Checking dictionary", new String[]{"LI21", "LI22", "LI23"}, table.getDictionary("sector"));
+            assertArrayEquals("Checking codes", new int[]{0, 0, 1, 1, 2, 2}, table.getCodes("sector"));
+            assertNull("Checking numeric columns are not dictionary encoded", table.getCodes("z"));
+            assertSame("Checking rows share dictionary values", table.get("sector")[0], table.get("sector")[1]);
+
+            PvaTable other = bpmTable();
+            assertSame("Checking values are interned across responses", table.get("name")[0], other.get("name")[0]);
+            assertSame("Checking labels are interned across responses", table.labels[0], other.labels[0]);
+            assertSame("Checking interning", table.getDictionary("sector")[1], StringPool.intern(new String("LI22")));
+
+            PvaTable li22 = table.query().whereEquals("sector", "LI22").execute();
+            assertArrayEquals("Checking code filter", new Object[]{"BPMS:LI22:201", "BPMS:LI22:301"}, li22.get("name"));
+            assertArrayEquals("Checking gathered codes", new int[]{1, 1}, li22.getCodes("sector"));
+
+            log.info("_____________________________________________\n");
+        } catch (RPCRequestException e) {
+            fail(e.getMessage());
+        }
+    }
+
+    @Test
+    public void testStringPoolEviction() {
+        log.info("#############################################");
+        log.info("Test for evicting strings from a full pool");
+
+        String kept = StringPool.intern(new String("BPMS:LI21:201"));
+        int interned = StringPool.capacity() + 1000;
+        String last = null;
+        for (int i = 0; i < interned; i++) {
+            String string = "DEVICE:" + i;
+            assertSame("Checking new string pooled", string, StringPool.intern(string));
+            last = string;
+            if (i % 100 == 0) {
+                assertSame("Checking string in use kept", kept, StringPool.intern(new String("BPMS:LI21:201")));
+            }
+        }
+        log.info(interned + " strings interned, " + StringPool.size() + " pooled");
+        assertTrue("Checking pool bounded", StringPool.size() <= StringPool.capacity());
+        assertSame("Checking latest string pooled", last, StringPool.intern(new String(last)));
+
+        log.info("_____________________________________________\n");
+    }
+
+    @Test
+    public void testJoin() {
+        try {
+            log.info("#############################################");
+            log.info("Test for PvaTableJoin - hash, left and merge joins");
+
+            PvaTable bpms = bpmTable(), magnets = magnetTable();
+            PvaTable joined = PvaTableJoin.hashJoin(bpms, magnets, "name");
+            assertArrayEquals("Checking columns", new String[]{"name", "sector", "z", "x", "stat", "sector_2", "x_2", "bact"}, joined.fieldNames);
+            assertArrayEquals("Checking matched rows", new Object[]{"BPMS:LI21:301", "BPMS:LI22:201", "BPMS:LI22:201"}, joined.get("name"));
+            assertArrayEquals("Checking right values", new double[]{1.5, 2.5, 3.5}, joined.getDoubles("bact"), 0.0);
+            assertArrayEquals("Checking left values", new double[]{2060.5, 2150.5, 2150.5}, joined.getDoubles("z"), 0.0);
+            assertSame("Checking cells are shared", bpms.get("z")[1], joined.get("z")[0]);
+            assertArrayEquals("Checking dictionary carried over", new int[]{0, 1, 1}, joined.getCodes("sector"));
+
+            PvaTable left = PvaTableJoin.leftJoin(bpms, magnets, "name");
+            assertEquals("Checking left join keeps unmatched rows", 7, left.size.intValue());
+            assertNull("Checking missing right value", left.get("bact")[0]);
+            assertTrue("Checking missing right double", Double.isNaN(left.getDoubles("bact")[0]));
+            assertEquals("Checking matched right value", 3.5, left.getDoubles("bact")[3], 0.0);
+
+            PvaTable merged = PvaTableJoin.mergeJoin(bpms, magnets, "name");
+            assertArrayEquals("Checking merge join rows", joined.get("name"), merged.get("name"));
+            assertArrayEquals("Checking merge join values", joined.getDoubles("bact"), merged.getDoubles("bact"), 0.0);
+
+            PvaTable bySector = PvaTableJoin.mergeJoin(bpms, magnets, "sector");
+            assertEquals("Checking merge join cross product of duplicate keys", 2 + 2 * 2, bySector.size.intValue());
+
+            log.info("_____________________________________________\n");
+        } catch (RPCRequestException e) {
+            fail(e.getMessage());
+        }
+    }
+
+    @Test
+    public void testSignedZeroKeys() {
+        try {
+            log.info("#############################################");
+            log.info("Test for PvaTableJoin - -0.0 and 0.0 are the same key for every join");
+
+            PvaTable left = keyTable(-0.0, 0.0, 1.0), right = keyTable(0.0, 1.0);
+            PvaTable hashed = PvaTableJoin.hashJoin(left, right, "key");
+            PvaTable merged = PvaTableJoin.mergeJoin(left, right, "key");
+            assertEquals("Checking hash join matches both zeros", 3, hashed.size.intValue());
+            assertEquals("Checking merge join matches both zeros", 3, merged.size.intValue());
+            assertArrayEquals("Checking same rows joined", hashed.getDoubles("row"), merged.getDoubles("row"), 0.0);
+
+            log.info("_____________________________________________\n");
+        } catch (RPCRequestException e) {
+            fail(e.getMessage());
+        }
+    }
+
+    /**
+     * Make a table of double keys and their row numbers
+     *
+     * @param keys the keys
+     * @return the PvaTable
+     */
+    private static PvaTable keyTable(double... keys) throws RPCRequestException {
+        String[] fieldNames = {"key", "row"};
+        PVStructure table = NTTable.createBuilder()
+                .addColumn("key", pvDouble)
+                .addColumn("row", pvInt)
+                .createPVStructure();
+        ((PVStringArray) table.getSubField("labels")).put(0, fieldNames.length, fieldNames, 0);
+        int[] rows = new int[keys.length];
+        for (int i = 0; i < rows.length; i++) {
+            rows[i] = i;
+        }
+        PVStructure value = table.getStructureField("value");
+        ((PVDoubleArray) value.getSubField("key")).put(0, keys.length, keys, 0);
+        ((PVIntArray) value.getSubField("row")).put(0, rows.length, rows, 0);
+        return (PvaTable) pvaUnpack(table);
+    }
+
+    @Test
+    public void testDerivedColumns() {
+        try {
+            log.info("#############################################");
+            log.info("Test for the columns that cached views are derived from");
+
+            PvaTable bpms = bpmTable();
+            double[] z = bpms.getDoubles("z");
+            try {
+                bpms.values.put("z", new Object[]{0.0, 0.0, 0.0, 0.0, 0.0, 0.0});
+                fail("Checking columns can't be replaced");
+            } catch (UnsupportedOperationException e) {
+                assertSame("Checking cached view unchanged", z, bpms.getDoubles("z"));
+            }
+
+            PvaTable unmatched = PvaTableJoin.leftJoin(bpms, magnetTable().query().whereEquals("sector", "LI99").execute(), "name");
+            assertNull("Checking missing right value", unmatched.get("bact")[0]);
+            assertFalse("Checking column of missing values not numeric", unmatched.isNumeric("bact"));
+            assertTrue("Checking empty column numeric", bpms.query().whereEquals("sector", "LI99").execute().isNumeric("z"));
+
+            log.info("_____________________________________________\n");
+        } catch (RPCRequestException e) {
+            fail(e.getMessage());
+        }
+    }
+
+    @Test
+    public void testUnion() {
+        try {
+            log.info("#############################################");
+            log.info("Test for PvaTableJoin.union() - concatenate batched results");
+
+            PvaTable bpms = bpmTable(), magnets = magnetTable();
+            bpms.getDoubles("x");
+            magnets.getDoubles("x");
+            Map<String, PvaTable> results = new LinkedHashMap<String, PvaTable>();
+            results.put("BPMS:BATCH1", bpms);
+            results.put("MAGNETS:BATCH2", magnets);
+
+            PvaTable all = PvaTableJoin.union(results);
+            assertEquals("Checking number of rows", 10, all.size.intValue());
+            assertArrayEquals("Checking columns", new String[]{PvaTableJoin.SOURCE_COLUMN, "name", "sector", "z", "x", "stat", "bact"}, all.fieldNames);
+            assertArrayEquals("Checking source dictionary", new String[]{"BPMS:BATCH1", "MAGNETS:BATCH2"}, all.getDictionary(PvaTableJoin.SOURCE_COLUMN));
+            assertEquals("Checking source of last row", "MAGNETS:BATCH2", all.get(PvaTableJoin.SOURCE_COLUMN)[9]);
+            assertArrayEquals("Checking merged dictionary", new String[]{"LI21", "LI22", "LI23", "LI99"}, all.getDictionary("sector"));
+            assertEquals("Checking concatenated doubles", 9.0, all.getDoubles("x")[9], 0.0);
+            assertNull("Checking missing column", all.get("z")[6]);
+            assertTrue("Checking missing double", Double.isNaN(all.getDoubles("z")[6]));
+
+            PvaTable fromMagnets = all.query().whereEquals(PvaTableJoin.SOURCE_COLUMN, "MAGNETS:BATCH2").execute();
+            assertEquals("Checking filter on source", 4, fromMagnets.size.intValue());
+
+            log.info("_____________________________________________\n");
+        } catch (RPCRequestException e) {
+            fail(e.getMessage());
+        }
+    }
+}
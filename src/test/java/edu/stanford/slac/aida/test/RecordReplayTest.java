@@ -0,0 +1,99 @@
+package edu.stanford.slac.aida.test;
+
+import edu.stanford.slac.aida.client.AidaPvaRequest;
+import edu.stanford.slac.aida.client.PvaRequestExecutor;
+import edu.stanford.slac.aida.client.PvaTable;
+import edu.stanford.slac.aida.client.impl.RecordingRequestExecutor;
+import edu.stanford.slac.aida.client.impl.ReplayRequestExecutor;
+import lombok.extern.java.Log;
+import org.epics.pvaccess.server.rpc.RPCRequestException;
+import org.epics.pvdata.pv.PVStructure;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+import java.io.File;
+import java.io.IOException;
+
+import static edu.stanford.slac.aida.client.AidaPvaClientUtils.*;
+import static edu.stanford.slac.aida.client.AidaType.AIDA_FLOAT_ARRAY;
+import static edu.stanford.slac.aida.test.SyntheticTestService.TABLE_CHANNEL_NAME;
+import static edu.stanford.slac.aida.test.SyntheticTestService.WAVEFORM_CHANNEL_NAME;
+import static org.junit.Assert.assertArrayEquals;
+
+/**
+ * Tests for recording requests and replaying their responses.
+ * A Test Server is started to respond to the recorded requests
+ */
+@RunWith(JUnit4.class)
+@Log
+public class RecordReplayTest extends AbstractAidaClientTest {
+    private static final String WAVEFORM = SYNTHETIC_PROVIDER_NAME + "::" + WAVEFORM_CHANNEL_NAME;
+    private static final String TABLE = SYNTHETIC_PROVIDER_NAME + "::" + TABLE_CHANNEL_NAME;
+    private static final String ERROR = PROVIDER_NAME + "::" + TEST6_CHANNEL_NAME;
+
+    @Test
+    public void testRecordAndReplay() throws IOException, RPCRequestException {
+        log.info("#############################################");
+        log.info("Test for recording and replaying requests");
+
+        File file = File.createTempFile("aida-pva-client", ".log");
+        file.deleteOnExit();
+
+        PvaRequestExecutor executor = getRequestExecutor();
+        Object[] waveform;
+        PvaTable table;
+        try {
+            RecordingRequestExecutor recorder = new RecordingRequestExecutor(executor, file);
+            setRequestExecutor(recorder);
+            waveform = (Object[]) pvaRequest(WAVEFORM).with("SIZE", 1 << 20).returning(AIDA_FLOAT_ARRAY).get();
+            table = (PvaTable) pvaRequest(TABLE).with("SIZE", 1000).with("CARDINALITY", 10).get();
+            try {
+                pvaGet(ERROR);
+                fail("pvaGet: should have failed");
+            } catch (RPCRequestException e) {
+                log.info("pvaGet: failed as expected while recording: " + e.getMessage());
+            }
+            recorder.close();
+            log.info("Recorded " + file.length() + " bytes");
+
+            ReplayRequestExecutor replay = new ReplayRequestExecutor(file);
+            assertEquals("Checking requests recorded", 3, replay.size());
+            setRequestExecutor(replay);
+
+            assertArrayEquals("Checking replayed waveform", waveform,
+                    (Object[]) pvaRequest(WAVEFORM).with("SIZE", 1 << 20).returning(AIDA_FLOAT_ARRAY).get());
+            PvaTable replayed = (PvaTable) pvaRequest(TABLE).with("SIZE", 1000).with("CARDINALITY", 10).get();
+            assertArrayEquals("Checking replayed table", table.get("name"), replayed.get("name"));
+            assertArrayEquals("Checking replayed table", table.get("value"), replayed.get("value"));
+
+            try {
+                pvaGet(ERROR);
+                fail("pvaGet: should have replayed the error");
+            } catch (RPCRequestException e) {
+                log.info("pvaGet: failed as expected when replayed: " + e.getMessage());
+                assertTrue("Checking replayed error", e.getMessage().contains("UnableToGetDataException"));
+            }
+
+            try {
+                pvaRequest(TABLE).with("SIZE", 10).get();
+                fail("pvaRequest: should have failed for a request that was not recorded");
+            } catch (RPCRequestException e) {
+                log.info("pvaRequest: failed as expected: " + e.getMessage());
+            }
+
+            AidaPvaRequest request = pvaRequest(TABLE).with("SIZE", 1000).with("CARDINALITY", 10);
+            PVStructure uri = request.uri();
+            int lookups = 200000;
+            long start = System.nanoTime();
+            for (int i = 0; i < lookups; i++) {
+                replay.executeRequest(TABLE, uri, 1.0);
+            }
+            log.info("Replay lookups: " + lookups * 1000000000L / (System.nanoTime() - start) + "/s");
+        } finally {
+            setRequestExecutor(executor);
+        }
+
+        log.info("_____________________________________________\n");
+    }
+}
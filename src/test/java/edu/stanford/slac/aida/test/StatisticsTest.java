@@ -0,0 +1,99 @@
+package edu.stanford.slac.aida.test;
+
+import edu.stanford.slac.aida.client.AidaStatistics;
+import edu.stanford.slac.aida.client.PvaTable;
+import edu.stanford.slac.aida.client.RunningStatistics;
+import junit.framework.TestCase;
+import lombok.extern.java.Log;
+import org.epics.pvaccess.server.rpc.RPCRequestException;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+import static org.junit.Assert.assertArrayEquals;
+
+/**
+ * Tests for the client side numeric statistics
+ */
+@RunWith(JUnit4.class)
+@Log
+public class StatisticsTest extends TestCase {
+    private static final double[] VALUES = {2.0, 4.0, 4.0, 4.0, 5.0, 5.0, 7.0, 9.0, -1.0};
+
+    @Test
+    public void testArrayStatistics() {
+        log.info("#############################################");
+        log.info("Test for AidaStatistics - array reductions");
+
+        assertEquals("Checking sum", 39.0, AidaStatistics.sum(VALUES), 0.0);
+        assertEquals("Checking mean", 39.0 / 9, AidaStatistics.mean(VALUES), 1e-12);
+        assertEquals("Checking range sum", 12.0, AidaStatistics.sum(VALUES, 1, 3), 0.0);
+        assertEquals("Checking min", -1.0, AidaStatistics.min(VALUES), 0.0);
+        assertEquals("Checking max", 9.0, AidaStatistics.max(VALUES), 0.0);
+        assertEquals("Checking range max", 5.0, AidaStatistics.max(VALUES, 0, 6), 0.0);
+        assertEquals("Checking rms", Math.sqrt(233.0 / 9), AidaStatistics.rms(VALUES), 1e-12);
+
+        double mean = 39.0 / 9, squares = 0;
+        for (double value : VALUES) {
+            squares += (value - mean) * (value - mean);
+        }
+        assertEquals("Checking variance", squares / 9, AidaStatistics.variance(VALUES), 1e-12);
+        assertEquals("Checking weighted sum", 2.0 + 8.0, AidaStatistics.weightedSum(new double[]{2.0, 4.0}, new double[]{1.0, 2.0}), 0.0);
+        assertEquals("Checking weighted mean", 10.0 / 3, AidaStatistics.weightedMean(new double[]{2.0, 4.0}, new double[]{1.0, 2.0}), 1e-12);
+        assertArrayEquals("Checking mean across pulses", new double[]{2.0, 3.0}, AidaStatistics.meanAcross(new double[][]{{1.0, 2.0}, {3.0, 4.0}}), 0.0);
+        assertArrayEquals("Checking unboxing", new double[]{1.0, 2.5, 1.0}, AidaStatistics.toDoubles(new Object[]{1, 2.5f, true}), 0.0);
+        assertTrue("Checking empty mean", Double.isNaN(AidaStatistics.mean(new double[0])));
+
+        try {
+            AidaStatistics.sum(VALUES, 5, 5);
+            fail("Checking range outside array");
+        } catch (IllegalArgumentException e) {
+            log.info("Expected: " + e.getMessage());
+        }
+
+        log.info("_____________________________________________\n");
+    }
+
+    @Test
+    public void testRunningStatistics() {
+        log.info("#############################################");
+        log.info("Test for RunningStatistics - streaming and merging");
+
+        RunningStatistics all = AidaStatistics.summarize(VALUES);
+        assertEquals("Checking count", 9, all.getCount());
+        assertEquals("Checking streaming mean", AidaStatistics.mean(VALUES), all.getMean(), 1e-12);
+        assertEquals("Checking streaming variance", AidaStatistics.variance(VALUES), all.getVariance(), 1e-12);
+        assertEquals("Checking streaming rms", AidaStatistics.rms(VALUES), all.getRms(), 1e-12);
+        assertEquals("Checking streaming min", -1.0, all.getMin(), 0.0);
+        assertEquals("Checking streaming max", 9.0, all.getMax(), 0.0);
+
+        RunningStatistics first = new RunningStatistics().addAll(VALUES, 0, 4);
+        RunningStatistics second = new RunningStatistics().addAll(VALUES, 4, 5);
+        first.merge(second);
+        assertEquals("Checking merged count", 9, first.getCount());
+        assertEquals("Checking merged mean", all.getMean(), first.getMean(), 1e-12);
+        assertEquals("Checking merged variance", all.getVariance(), first.getVariance(), 1e-12);
+        assertEquals("Checking merged min", -1.0, first.getMin(), 0.0);
+
+        assertTrue("Checking empty statistics", Double.isNaN(new RunningStatistics().getMean()));
+
+        log.info("_____________________________________________\n");
+    }
+
+    @Test
+    public void testTableStatistics() {
+        try {
+            log.info("#############################################");
+            log.info("Test for AidaStatistics - table columns");
+
+            PvaTable table = PvaTableTest.bpmTable();
+            assertEquals("Checking column mean", AidaStatistics.mean(table.getDoubles("z")), AidaStatistics.mean(table, "z"), 0.0);
+            assertEquals("Checking column summary", 6, AidaStatistics.summarize(table, "x").getCount());
+            assertEquals("Checking column weighted sum", 0.1 + -0.2 + 0.4 + -0.5, AidaStatistics.weightedSum(table, "x", "stat"), 1e-6);
+
+            log.info("_____________________________________________\n");
+        } catch (RPCRequestException e) {
+            fail(e.getMessage());
+        }
+    }
+}
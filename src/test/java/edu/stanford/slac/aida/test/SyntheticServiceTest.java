@@ -0,0 +1,88 @@
+package edu.stanford.slac.aida.test;
+
+import edu.stanford.slac.aida.client.PvaTable;
+import lombok.extern.java.Log;
+import org.epics.pvaccess.server.rpc.RPCRequestException;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+import java.util.Arrays;
+import java.util.HashSet;
+
+import static edu.stanford.slac.aida.client.AidaPvaClientUtils.*;
+import static edu.stanford.slac.aida.client.AidaType.AIDA_FLOAT_ARRAY;
+import static edu.stanford.slac.aida.client.AidaType.AIDA_STRING_ARRAY;
+import static edu.stanford.slac.aida.test.SyntheticTestService.*;
+
+/**
+ * Tests for large payloads from the synthetic service
+ */
+@RunWith(JUnit4.class)
+@Log
+public class SyntheticServiceTest extends AbstractAidaClientTest {
+    private static final String WAVEFORM = SYNTHETIC_PROVIDER_NAME + "::" + WAVEFORM_CHANNEL_NAME;
+    private static final String TABLE = SYNTHETIC_PROVIDER_NAME + "::" + TABLE_CHANNEL_NAME;
+
+    @Test
+    public void testLargeWaveform() {
+        try {
+            log.info("#############################################");
+            log.info("Test for 1M element waveforms");
+
+            long start = System.nanoTime();
+            double[] waveform = new double[1 << 20];
+            int n = pvaRequest(WAVEFORM).with("SIZE", waveform.length).returning(AIDA_FLOAT_ARRAY).getInto(waveform, 0);
+            log.info("1M float waveform in " + (System.nanoTime() - start) / 1000000 + "ms");
+            assertEquals("Checking number of elements", waveform.length, n);
+            assertEquals("Checking last element", (float) Math.sin((waveform.length - 1) * 0.01), waveform[waveform.length - 1], 0.0);
+
+            Object[] strings = (Object[]) pvaRequest(WAVEFORM)
+                    .with("SIZE", 1000)
+                    .with("CARDINALITY", 7)
+                    .returning(AIDA_STRING_ARRAY)
+                    .get();
+            assertEquals("Checking number of strings", 1000, strings.length);
+            assertEquals("Checking strings repeat", strings[0], strings[7]);
+            assertEquals("Checking distinct strings", 7, new HashSet<Object>(Arrays.asList(strings)).size());
+
+            log.info("_____________________________________________\n");
+        } catch (RPCRequestException e) {
+            fail(e.getMessage());
+        }
+    }
+
+    @Test
+    public void testLargeTable() {
+        try {
+            log.info("#############################################");
+            log.info("Test for 100k row tables");
+
+            long start = System.nanoTime();
+            PvaTable table = (PvaTable) pvaRequest(TABLE)
+                    .with("SIZE", 100000)
+                    .with("COLUMNS", Arrays.asList("STRING", "DOUBLE", "INTEGER", "BOOLEAN"))
+                    .with("CARDINALITY", 100)
+                    .get();
+            log.info("100k row table in " + (System.nanoTime() - start) / 1000000 + "ms");
+            assertEquals("Checking number of rows", 100000, (int) table.size);
+            assertEquals("Checking column names", Arrays.asList("string0", "double1", "integer2", "boolean3"), Arrays.asList(table.fieldNames));
+            assertEquals("Checking integer column", 99999, table.get("integer2")[99999]);
+            assertEquals("Checking string cardinality", 100, table.getDictionary("string0").length);
+
+            table = (PvaTable) pvaRequest(TABLE).with("SIZE", 10).with("COLUMNS", "LONG,SHORT").get();
+            assertEquals("Checking columns from a comma separated list", Arrays.asList("long0", "short1"), Arrays.asList(table.fieldNames));
+
+            try {
+                pvaRequest(TABLE).with("COLUMNS", "WAVEFORM").get();
+                fail("pvaRequest: should have failed with an unsupported column type");
+            } catch (RPCRequestException e) {
+                log.info("pvaRequest: failed as expected: " + e.getMessage());
+            }
+
+            log.info("_____________________________________________\n");
+        } catch (RPCRequestException e) {
+            fail(e.getMessage());
+        }
+    }
+}
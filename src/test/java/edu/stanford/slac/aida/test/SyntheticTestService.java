@@ -0,0 +1,302 @@
+package edu.stanford.slac.aida.test;
+
+import edu.stanford.slac.aida.client.AidaType;
+import org.epics.nt.NTScalar;
+import org.epics.nt.NTScalarArray;
+import org.epics.nt.NTURI;
+import org.epics.pvaccess.server.rpc.RPCRequestException;
+import org.epics.pvaccess.server.rpc.RPCService;
+import org.epics.pvdata.pv.*;
+
+import java.util.Random;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import static edu.stanford.slac.aida.client.AidaType.NT_FIELD_NAME;
+import static edu.stanford.slac.aida.client.AidaType.NT_LABELS_NAME;
+import static org.epics.pvdata.pv.ScalarType.*;
+import static org.epics.pvdata.pv.Status.StatusType.ERROR;
+
+/**
+ * Synthetic service for load tests, scaling tests and benchmarks, with responses of any size, type and
+ * string cardinality, and tunable latency.
+ * <p>
+ * Channels:
+ * - `WAVEFORM`: an array of `SIZE` elements of the element type of the `TYPE` argument, e.g. `FLOAT_ARRAY`.
+ * Doubles if no type is given
+ * - `TABLE`: a table of `SIZE` rows with one column for each type in the `COLUMNS` argument, a list or a comma
+ * separated string of types like `STRING,DOUBLE,INTEGER`.  Columns are named after their type and position, e.g.
+ * `string0`, `double1`.  Name, value and status columns if no columns are given
+ * - `SETTING`: accepts a `VALUE` and returns nothing
+ * <p>
+ * Every channel takes:
+ * - `CARDINALITY`: the number of distinct values in string arrays and columns.  All values are different if not given
+ * - `DELAY`: milliseconds to wait before responding
+ * - `JITTER`: up to this many milliseconds are added to the delay at random
+ * - `ERRORS`: the percentage of requests to fail
+ * <p>
+ * Responses are built once for each combination of arguments and then shared, so that serving them costs as
+ * little as possible in the client's process.  Only the most recently used few are kept.
+ */
+public class SyntheticTestService extends AbstractTestService implements RPCService {
+    public static final String WAVEFORM_CHANNEL_NAME = "WAVEFORM";
+    public static final String TABLE_CHANNEL_NAME = "TABLE";
+    public static final String SETTING_CHANNEL_NAME = "SETTING";
+
+    /**
+     * Size of responses if none is given
+     */
+    public static final int DEFAULT_SIZE = 1024;
+
+    /**
+     * Maximum number of responses kept.  Cleared when full
+     */
+    private static final int MAX_CACHED_RESPONSES = 16;
+
+    private final ConcurrentMap<String, PVStructure> responses = new ConcurrentHashMap<String, PVStructure>();
+    private final Random random = new Random();
+
+    @Override
+    public PVStructure request(PVStructure pvUri) throws RPCRequestException {
+        if (!NTURI.is_a(pvUri.getStructure())) {
+            throw new RPCRequestException(ERROR, "Unable to get data, unexpected request type: " + pvUri.getStructure().getID());
+        }
+
+        String channelName = pvUri.getStringField("path").get();
+        channelName = channelName.substring(channelName.indexOf("::") + 2);
+
+        int size = DEFAULT_SIZE;
+        int cardinality = 0;
+        int delay = 0;
+        int jitter = 0;
+        int errors = 0;
+        boolean set = false;
+        ScalarType elementType = pvDouble;
+        ScalarType[] columns = {pvString, pvDouble, pvInt};
+        String[] columnNames = {"name", "value", "status"};
+        PVStructure pvUriQuery = pvUri.getStructureField("query");
+        if (pvUriQuery != null) {
+            for (PVField field : pvUriQuery.getPVFields()) {
+                String argumentName = field.getFieldName();
+                if ("SIZE".equalsIgnoreCase(argumentName)) {
+                    size = Integer.parseInt(fieldToString(field));
+                } else if ("CARDINALITY".equalsIgnoreCase(argumentName)) {
+                    cardinality = Integer.parseInt(fieldToString(field));
+                } else if ("DELAY".equalsIgnoreCase(argumentName)) {
+                    delay = Integer.parseInt(fieldToString(field));
+                } else if ("JITTER".equalsIgnoreCase(argumentName)) {
+                    jitter = Integer.parseInt(fieldToString(field));
+                } else if ("ERRORS".equalsIgnoreCase(argumentName)) {
+                    errors = Integer.parseInt(fieldToString(field));
+                } else if ("TYPE".equalsIgnoreCase(argumentName)) {
+                    elementType = scalarType(fieldToString(field));
+                } else if ("COLUMNS".equalsIgnoreCase(argumentName)) {
+                    String[] types = field instanceof PVStringArray ? stringArray((PVStringArray) field) : fieldToString(field).split(",");
+                    columns = new ScalarType[types.length];
+                    columnNames = new String[types.length];
+                    for (int i = 0; i < types.length; i++) {
+                        columns[i] = scalarType(types[i]);
+                        columnNames[i] = types[i].trim().toLowerCase() + i;
+                    }
+                } else if ("VALUE".equalsIgnoreCase(argumentName)) {
+                    set = true;
+                }
+            }
+        }
+
+        int wait = delay + (jitter > 0 ? random.nextInt(jitter + 1) : 0);
+        if (wait > 0) {
+            try {
+                Thread.sleep(wait);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        if (errors > 0 && random.nextInt(100) < errors) {
+            throw new RPCRequestException(ERROR, "Injected error");
+        }
+
+        if (SETTING_CHANNEL_NAME.equals(channelName) && set) {
+            return NTScalar.createBuilder().value(pvString).createPVStructure();
+        }
+        if (cardinality <= 0) {
+            cardinality = Math.max(size, 1);
+        }
+
+        StringBuilder key = new StringBuilder(channelName).append('/').append(size).append('/').append(cardinality);
+        if (WAVEFORM_CHANNEL_NAME.equals(channelName)) {
+            key.append('/').append(elementType);
+        } else {
+            for (int i = 0; i < columns.length; i++) {
+                key.append('/').append(columnNames[i]).append(':').append(columns[i]);
+            }
+        }
+
+        PVStructure response = responses.get(key.toString());
+        if (response == null) {
+            if (WAVEFORM_CHANNEL_NAME.equals(channelName)) {
+                response = NTScalarArray.createBuilder().value(elementType).createPVStructure();
+                fill(response.getSubField(PVScalarArray.class, NT_FIELD_NAME), size, cardinality);
+            } else if (TABLE_CHANNEL_NAME.equals(channelName)) {
+                response = tableResponse(columnNames, columns, size, cardinality);
+            } else {
+                throw new RPCRequestException(ERROR, "Unsupported channel: " + channelName);
+            }
+            if (responses.size() >= MAX_CACHED_RESPONSES) {
+                responses.clear();
+            }
+            responses.putIfAbsent(key.toString(), response);
+        }
+        return response;
+    }
+
+    /**
+     * Get the scalar type for an AIDA type name, with or without the `_ARRAY` suffix
+     *
+     * @param type the AIDA type name, e.g. `FLOAT` or `FLOAT_ARRAY`
+     * @return the scalar type
+     * @throws RPCRequestException if the type is not a scalar or scalar array type
+     */
+    private static ScalarType scalarType(String type) throws RPCRequestException {
+        String name = type.trim().toUpperCase();
+        if (name.endsWith("_ARRAY")) {
+            name = name.substring(0, name.length() - "_ARRAY".length());
+        }
+        try {
+            switch (AidaType.valueOf("AIDA_" + name)) {
+                case AIDA_BOOLEAN:
+                    return pvBoolean;
+                case AIDA_BYTE:
+                    return pvByte;
+                case AIDA_SHORT:
+                    return pvShort;
+                case AIDA_INTEGER:
+                    return pvInt;
+                case AIDA_LONG:
+                    return pvLong;
+                case AIDA_FLOAT:
+                    return pvFloat;
+                case AIDA_DOUBLE:
+                    return pvDouble;
+                case AIDA_STRING:
+                    return pvString;
+            }
+        } catch (IllegalArgumentException ignored) {
+        }
+        throw new RPCRequestException(ERROR, "Unsupported synthetic type: " + type);
+    }
+
+    /**
+     * Get the contents of a string array argument
+     *
+     * @param field the argument
+     * @return the strings
+     */
+    private static String[] stringArray(PVStringArray field) {
+        StringArrayData data = new StringArrayData();
+        field.get(0, field.getLength(), data);
+        String[] values = new String[field.getLength()];
+        System.arraycopy(data.data, data.offset, values, 0, values.length);
+        return values;
+    }
+
+    /**
+     * Create a table with the given columns and number of rows
+     *
+     * @param fieldNames  the column names
+     * @param types       the column types
+     * @param rows        the number of rows
+     * @param cardinality the number of distinct values in string columns
+     * @return the table response
+     */
+    private static PVStructure tableResponse(String[] fieldNames, ScalarType[] types, int rows, int cardinality) {
+        PVStructure retVal = getNtTableBuilder(fieldNames, types).createPVStructure();
+        retVal.getSubField(PVStringArray.class, NT_LABELS_NAME).put(0, fieldNames.length, fieldNames, 0);
+
+        PVStructure ntTable = retVal.getStructureField(NT_FIELD_NAME);
+        for (String fieldName : fieldNames) {
+            fill(ntTable.getSubField(PVScalarArray.class, fieldName), rows, cardinality);
+        }
+        return retVal;
+    }
+
+    /**
+     * Fill an array with generated values.  Numbers follow a sine wave or count up, booleans alternate and
+     * strings cycle through the given number of distinct values
+     *
+     * @param array       the array to fill
+     * @param size        the number of elements
+     * @param cardinality the number of distinct strings
+     */
+    private static void fill(PVScalarArray array, int size, int cardinality) {
+        switch (array.getScalarArray().getElementType()) {
+            case pvBoolean: {
+                boolean[] values = new boolean[size];
+                for (int i = 0; i < size; i++) {
+                    values[i] = i % 2 == 0;
+                }
+                ((PVBooleanArray) array).put(0, size, values, 0);
+                break;
+            }
+            case pvByte: {
+                byte[] values = new byte[size];
+                for (int i = 0; i < size; i++) {
+                    values[i] = (byte) i;
+                }
+                ((PVByteArray) array).put(0, size, values, 0);
+                break;
+            }
+            case pvShort: {
+                short[] values = new short[size];
+                for (int i = 0; i < size; i++) {
+                    values[i] = (short) i;
+                }
+                ((PVShortArray) array).put(0, size, values, 0);
+                break;
+            }
+            case pvInt: {
+                int[] values = new int[size];
+                for (int i = 0; i < size; i++) {
+                    values[i] = i;
+                }
+                ((PVIntArray) array).put(0, size, values, 0);
+                break;
+            }
+            case pvLong: {
+                long[] values = new long[size];
+                for (int i = 0; i < size; i++) {
+                    values[i] = i * 1000000007L;
+                }
+                ((PVLongArray) array).put(0, size, values, 0);
+                break;
+            }
+            case pvFloat: {
+                float[] values = new float[size];
+                for (int i = 0; i < size; i++) {
+                    values[i] = (float) Math.sin(i * 0.01);
+                }
+                ((PVFloatArray) array).put(0, size, values, 0);
+                break;
+            }
+            case pvDouble: {
+                double[] values = new double[size];
+                for (int i = 0; i < size; i++) {
+                    values[i] = Math.sin(i * 0.01);
+                }
+                ((PVDoubleArray) array).put(0, size, values, 0);
+                break;
+            }
+            default: {
+                String[] distinct = new String[Math.min(cardinality, size)];
+                for (int i = 0; i < distinct.length; i++) {
+                    distinct[i] = "BPMS:LI11:" + i;
+                }
+                String[] values = new String[size];
+                for (int i = 0; i < size; i++) {
+                    values[i] = distinct[i % distinct.length];
+                }
+                ((PVStringArray) array).put(0, size, values, 0);
+            }
+        }
+    }
+}
@@ -0,0 +1,66 @@
+package edu.stanford.slac.aida.test;
+
+import edu.stanford.slac.aida.client.PvaRequestExecutor;
+import edu.stanford.slac.aida.client.impl.TraceRecordingRequestExecutor;
+import edu.stanford.slac.aida.client.impl.TraceReplayer;
+import lombok.extern.java.Log;
+import org.epics.pvaccess.server.rpc.RPCRequestException;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+import java.io.File;
+import java.io.IOException;
+
+import static edu.stanford.slac.aida.client.AidaPvaClientUtils.*;
+import static edu.stanford.slac.aida.test.SyntheticTestService.WAVEFORM_CHANNEL_NAME;
+
+/**
+ * Tests for tracing requests and replaying the trace as load.
+ * A Test Server is started to respond to these requests
+ */
+@RunWith(JUnit4.class)
+@Log
+public class TraceReplayTest extends AbstractAidaClientTest {
+    private static final String WAVEFORM = SYNTHETIC_PROVIDER_NAME + "::" + WAVEFORM_CHANNEL_NAME;
+    private static final String ERROR = PROVIDER_NAME + "::" + TEST6_CHANNEL_NAME;
+
+    @Test
+    public void testTraceReplay() throws IOException, InterruptedException {
+        log.info("#############################################");
+        log.info("Test for tracing requests and replaying them faster");
+
+        File file = File.createTempFile("aida-pva-client", ".trace");
+        file.deleteOnExit();
+
+        int requests = 20;
+        PvaRequestExecutor executor = getRequestExecutor();
+        long start = System.nanoTime();
+        try {
+            TraceRecordingRequestExecutor tracer = new TraceRecordingRequestExecutor(executor, file);
+            setRequestExecutor(tracer);
+            for (int i = 0; i < requests; i++) {
+                try {
+                    pvaRequest(i == requests / 2 ? ERROR : WAVEFORM).with("SIZE", 16 + i).get();
+                } catch (RPCRequestException e) {
+                    log.info("pvaRequest: failed as expected: " + e.getMessage());
+                }
+                Thread.sleep(20);
+            }
+            tracer.close();
+        } finally {
+            setRequestExecutor(executor);
+        }
+        double recordedSeconds = (System.nanoTime() - start) / 1e9;
+        log.info("Traced " + requests + " requests in " + file.length() + " bytes");
+
+        TraceReplayer.Report report = new TraceReplayer(executor, file).speed(10.0).threads(4).run();
+        log.info(report.toString());
+        assertEquals("Checking requests replayed", requests, report.getRequests());
+        assertEquals("Checking recorded errors", 1, report.getRecordedErrors());
+        assertEquals("Checking replayed errors", 1, report.getErrors());
+        assertTrue("Checking requests were replayed faster", report.getDurationSeconds() < recordedSeconds);
+
+        log.info("_____________________________________________\n");
+    }
+}